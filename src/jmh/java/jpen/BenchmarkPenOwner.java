@@ -0,0 +1,128 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.awt.geom.Point2D;
+import java.awt.Point;
+import java.util.Collection;
+import java.util.Collections;
+import jpen.owner.AbstractPenOwner;
+import jpen.owner.PenClip;
+import jpen.provider.AbstractPenDevice;
+import jpen.provider.AbstractPenProvider;
+
+/**
+A {@link jpen.owner.PenOwner} without GUI giving one synthetic device. Used to drive the benchmarks.
+*/
+final class BenchmarkPenOwner
+	extends AbstractPenOwner{
+
+	private Provider provider;
+
+	/**
+	@return a new unpaused pen manager owned by a new {@code BenchmarkPenOwner}
+	*/
+	static PenManager createPenManager(){
+		return createPenManager(PenClock.SYSTEM);
+	}
+
+	/**
+	@return a new unpaused pen manager owned by a new {@code BenchmarkPenOwner} and timed by the given clock
+	*/
+	static PenManager createPenManager(PenClock clock){
+		PenManager penManager=new PenManager(new BenchmarkPenOwner(), clock);
+		penManager.getProviderConstructors(); // waits for the providers construction.
+		return penManager;
+	}
+
+	static PenDevice getDevice(PenManager penManager){
+		return ((BenchmarkPenOwner)penManager.penOwner).provider.device;
+	}
+
+	//@Override
+	public Collection<PenProvider.Constructor> getPenProviderConstructors(){
+		return Collections.<PenProvider.Constructor>singleton(new ProviderConstructor());
+	}
+
+	//@Override
+	public PenClip getPenClip(){
+		return penClip;
+	}
+
+	private final PenClip penClip=new PenClip(){
+				//@Override
+				public void evalLocationOnScreen(Point pointOnScreen){
+					pointOnScreen.x=pointOnScreen.y=0;
+				}
+				//@Override
+				public boolean contains(Point2D.Float point){
+					return true;
+				}
+			};
+
+	@Override
+	protected void init(){
+		penManagerHandle.setPenManagerPaused(false);
+	}
+
+	@Override
+	protected void draggingOutDisengaged(){}
+
+	private final class ProviderConstructor
+		extends AbstractPenProvider.AbstractConstructor{
+		//@Override
+		public String getName(){
+			return "Benchmark";
+		}
+		//@Override
+		public boolean constructable(PenManager penManager){
+			return true;
+		}
+		@Override
+		protected PenProvider constructProvider(){
+			return provider=new Provider(this);
+		}
+	}
+
+	private final class Provider
+		extends AbstractPenProvider{
+		final Device device;
+
+		Provider(ProviderConstructor constructor){
+			super(constructor);
+			devices.add(device=new Device(this));
+		}
+
+		//@Override
+		public void penManagerPaused(boolean paused){}
+	}
+
+	private static final class Device
+		extends AbstractPenDevice{
+		Device(PenProvider provider){
+			super(provider);
+			setKindTypeNumber(PKind.Type.STYLUS.ordinal());
+			setEnabled(true);
+		}
+		//@Override
+		public String getName(){
+			return "Benchmark stylus";
+		}
+	}
+}
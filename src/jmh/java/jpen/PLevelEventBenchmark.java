@@ -0,0 +1,56 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+Construction of {@link PLevelEvent}s as done by the providers.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PLevelEventBenchmark{
+
+	private PenDevice device;
+	private long deviceTime;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		device=BenchmarkPenOwner.getDevice(BenchmarkPenOwner.createPenManager());
+	}
+
+	@Benchmark
+	public PLevelEvent newLevelEvent(){
+		deviceTime++;
+		return new PLevelEvent(device, deviceTime, new PLevel[]{
+														 new PLevel(PLevel.Type.X, deviceTime),
+														 new PLevel(PLevel.Type.Y, deviceTime),
+														 new PLevel(PLevel.Type.PRESSURE, 0.5f)
+													 });
+	}
+}
@@ -0,0 +1,52 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+Tilt to azimuth and altitude conversion: {@link PLevel.Type#evalAzimuthXAndAltitude(double[], double, double)}.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PLevelTypeBenchmark{
+
+	private static final int TILTS_MASK=0xff;
+	private final double[] tilts=new double[TILTS_MASK+1];
+	{
+		for(int i=tilts.length; --i>=0;)
+			tilts[i]=(i-tilts.length/2)*Math.PI/tilts.length; // -pi/2 to pi/2
+	}
+	private final double[] azimuthXAndAltitude=new double[2];
+	private int tiltIndex;
+
+	@Benchmark
+	public double[] evalAzimuthXAndAltitude(){
+		tiltIndex++;
+		PLevel.Type.evalAzimuthXAndAltitude(azimuthXAndAltitude, tilts[tiltIndex&TILTS_MASK], tilts[(tiltIndex*7)&TILTS_MASK]);
+		return azimuthXAndAltitude;
+	}
+}
@@ -0,0 +1,105 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jpen.event.PenAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+Firing of level events by the {@link Pen} to its listeners. {@link #dispatchLevelEvent()} measures only applying an event to the pen state and firing it, {@link #scheduleAndFireLevelEvent()} measures the whole path of a provider event: scheduling (filters and queue) and one round of the pen thread (taking it from the queue, dispatching, batching and the tock). The pen thread stays parked on a {@link VirtualPenClock} which is never advanced, the rounds run on the benchmark thread.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PenDispatchBenchmark{
+
+	@Param({"1", "4", "16"})
+	public int listenersCount;
+
+	private static final int EVENTS_MASK=0xff;
+	private PenManager penManager;
+	private Pen pen;
+	private PenDevice device;
+	private final PLevelEvent[] events=new PLevelEvent[EVENTS_MASK+1];
+	private final List<List<PLevel>> levelsList=new ArrayList<List<PLevel>>(EVENTS_MASK+1);
+	private int eventIndex;
+	private long deviceTime;
+
+	@Setup(Level.Trial)
+	public void setUp(final Blackhole blackhole) throws InterruptedException{
+		penManager=BenchmarkPenOwner.createPenManager(new VirtualPenClock());
+		pen=penManager.pen;
+		for(int i=listenersCount; --i>=0;)
+			pen.addListener(new PenAdapter(){
+						@Override
+						public void penLevelEvent(PLevelEvent ev){
+							blackhole.consume(ev.pen.getLevelValue(PLevel.Type.X));
+						}
+					});
+		device=BenchmarkPenOwner.getDevice(penManager);
+		for(int i=0; i<events.length; i++){
+			PLevel[] levels=new PLevel[]{
+											new PLevel(PLevel.Type.X, i),
+											new PLevel(PLevel.Type.Y, i),
+											new PLevel(PLevel.Type.PRESSURE, i/(float)events.length)
+										};
+			levelsList.add(Arrays.asList(levels));
+		}
+		for(int i=events.length; --i>=0;){
+			events[i]=new PLevelEvent(device, i, new PLevel[]{
+																	new PLevel(PLevel.Type.X, i),
+																	new PLevel(PLevel.Type.Y, i),
+																	new PLevel(PLevel.Type.PRESSURE, i/(float)events.length)
+																});
+			events[i].setTimeNanos(System.nanoTime());
+		}
+		penManager.scheduleLevelEvent(device, deviceTime++, levelsList.get(0), false); // the pen thread takes it and parks until a time never reached.
+		while(pen.eventQueue.size()!=0)
+			Thread.sleep(1);
+		Thread.sleep(10);
+	}
+
+	@Benchmark
+	public void dispatchLevelEvent(){
+		PLevelEvent event=events[eventIndex++&EVENTS_MASK];
+		event.copyTo(pen);
+		pen.dispatch(event);
+	}
+
+	@Benchmark
+	public int scheduleAndFireLevelEvent() throws InterruptedException, InvocationTargetException{
+		penManager.scheduleLevelEvent(device, deviceTime, levelsList.get((int)deviceTime&EVENTS_MASK), false);
+		deviceTime++;
+		return pen.fireEventsRound();
+	}
+}
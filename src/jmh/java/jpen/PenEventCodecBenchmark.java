@@ -0,0 +1,100 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import jpen.codec.PenEventDecoder;
+import jpen.codec.PenEventEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+Encoding and decoding of a stroke of {@link PLevelEvent}s with the {@link jpen.codec} classes.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PenEventCodecBenchmark{
+
+	private static final int EVENTS_COUNT=1024;
+
+	private final PLevelEvent[] events=new PLevelEvent[EVENTS_COUNT];
+	private final ByteBuffer buffer=ByteBuffer.allocate(EVENTS_COUNT*64);
+	private ByteBuffer encodedBuffer;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		PenDevice device=BenchmarkPenOwner.getDevice(BenchmarkPenOwner.createPenManager());
+		long timeNanos=System.nanoTime();
+		for(int i=0; i<EVENTS_COUNT; i++){
+			events[i]=new PLevelEvent(device, i, new PLevel[]{
+																	new PLevel(PLevel.Type.X, 100+i*0.7f),
+																	new PLevel(PLevel.Type.Y, 200+i*0.3f),
+																	new PLevel(PLevel.Type.PRESSURE, (i%100)/100f)
+																});
+			events[i].setTimeNanos(timeNanos+i*1000000l);
+		}
+		encode();
+		encodedBuffer=buffer.duplicate();
+		encodedBuffer.flip();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS_COUNT)
+	public ByteBuffer encode(){
+		PenEventEncoder encoder=new PenEventEncoder();
+		buffer.clear();
+		encoder.writeHeader(buffer);
+		for(int i=0; i<EVENTS_COUNT; i++)
+			encoder.encode(events[i], buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS_COUNT)
+	public void decode(final Blackhole blackhole){
+		ByteBuffer encodedBuffer=this.encodedBuffer.duplicate();
+		PenEventDecoder decoder=new PenEventDecoder();
+		decoder.readHeader(encodedBuffer);
+		PenEventDecoder.Handler handler=new PenEventDecoder.Handler(){
+			//@Override
+			public void deviceDefined(byte deviceId, String physicalId){}
+			//@Override
+			public void levelEvent(byte deviceId, long deviceTime, long timeNanos, int levelsCount, int[] levelTypeNumbers, float[] levelValues){
+				blackhole.consume(levelValues[levelsCount-1]);
+			}
+			//@Override
+			public void buttonEvent(byte deviceId, long deviceTime, long timeNanos, int buttonTypeNumber, boolean value){}
+			//@Override
+			public void scrollEvent(byte deviceId, long deviceTime, long timeNanos, int scrollTypeNumber, int value){}
+			//@Override
+			public void kindEvent(byte deviceId, long deviceTime, long timeNanos, int kindTypeNumber){}
+		};
+		while(decoder.decode(encodedBuffer, handler));
+	}
+}
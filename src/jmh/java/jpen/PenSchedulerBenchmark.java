@@ -0,0 +1,70 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+Scheduling of level events by a provider: {@link PenManager#scheduleLevelEvent(PenDevice, long, java.util.Collection, boolean)}. The pen thread fires the events concurrently at 1000Hz without listeners. The relative location filter is not measured: it needs the system pointer location, not available when running headless.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PenSchedulerBenchmark{
+
+	/** Emulates the left button from the pressure, see {@link PLevelEmulator#setPressureTriggerForLeftCursorButton(float)}. */
+	@Param({"false", "true"})
+	public boolean levelEmulator;
+
+	private PenManager penManager;
+	private PenDevice device;
+	private final List<PLevel> levels=new ArrayList<PLevel>();
+	private int sample;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		penManager=BenchmarkPenOwner.createPenManager();
+		device=BenchmarkPenOwner.getDevice(penManager);
+		penManager.pen.setFrequencyLater(1000);
+		penManager.pen.setOverloadPolicy(Pen.OverloadPolicy.DROP_OLDEST_MOTION);
+		if(levelEmulator)
+			penManager.pen.levelEmulator.setPressureTriggerForLeftCursorButton(0.5f);
+	}
+
+	@Benchmark
+	public boolean scheduleLevelEvent(){
+		sample++;
+		levels.clear();
+		levels.add(new PLevel(PLevel.Type.X, sample&0x3ff));
+		levels.add(new PLevel(PLevel.Type.Y, sample>>10&0x3ff));
+		levels.add(new PLevel(PLevel.Type.PRESSURE, (sample&0x3f)/64f)); // crosses the emulator trigger every 64 samples.
+		return penManager.scheduleLevelEvent(device, sample, levels, false);
+	}
+}
@@ -0,0 +1,69 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+Updates of the {@link PenState.Levels}.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PenStateLevelsBenchmark{
+
+	private final PenState.Levels levels=new PenState.Levels();
+	private final PenState.Levels otherLevels=new PenState.Levels();
+	private final PLevel[] movementLevels={
+				new PLevel(PLevel.Type.X, 10),
+				new PLevel(PLevel.Type.Y, 20),
+				new PLevel(PLevel.Type.PRESSURE, 0.5f)
+			};
+	private final PLevel[] allLevels=new PLevel[PLevel.Type.VALUES.size()];
+	{
+		for(int i=allLevels.length; --i>=0;){
+			allLevels[i]=new PLevel(i, i);
+			otherLevels.setValue(i, i);
+		}
+	}
+
+	@Benchmark
+	public PenState.Levels setMovementValues(){
+		levels.setValues(movementLevels);
+		return levels;
+	}
+
+	@Benchmark
+	public PenState.Levels setAllValues(){
+		levels.setValues(allLevels);
+		return levels;
+	}
+
+	@Benchmark
+	public PenState.Levels copyLevels(){
+		levels.setValues(otherLevels);
+		return levels;
+	}
+}
@@ -0,0 +1,110 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+Tunes the tock period of the {@link Pen} thread between a minimum and a maximum frequency, see {@link Pen#setAdaptiveFrequency(int, int)}. The input rate and the time spent by the pen thread dispatching events and firing tocks (listeners processing time) are measured on windows of {@link #WINDOW_NANOS}. At the end of each window the frequency is lowered if the listeners overran a period or kept the pen thread too busy, and raised towards the input rate if the listeners have headroom.<p>
+
+Only the pen thread calls {@link #evalPeriodNanos(long, long, long, int, boolean)}.
+*/
+final class AdaptiveFrequencyController{
+	private static final Logger L=Logger.getLogger(AdaptiveFrequencyController.class.getName());
+	//static { L.setLevel(Level.ALL); }
+
+	static final long WINDOW_NANOS=250000000l;
+	/** Fraction of the window the pen thread can be busy before the frequency is lowered. */
+	static final double HIGH_LOAD=0.7;
+	/** Fraction of the window under which the listeners are considered to have headroom. */
+	static final double LOW_LOAD=0.35;
+	static final double BACK_OFF_FACTOR=0.7;
+	static final double RAISE_FACTOR=1.25;
+
+	final int minFrequency;
+	final int maxFrequency;
+	private long windowStartTime=-1;
+	private int windowEventsCount;
+	private long windowBusyNanos;
+	private int windowOverrunsCount;
+	private volatile double inputRate;
+
+	AdaptiveFrequencyController(int minFrequency, int maxFrequency){
+		if(minFrequency<=0 || maxFrequency<minFrequency)
+			throw new IllegalArgumentException("illegal frequency bounds: "+minFrequency+", "+maxFrequency);
+		this.minFrequency=minFrequency;
+		this.maxFrequency=maxFrequency;
+	}
+
+	/**
+	@return the events per second scheduled on the last measured window.
+	*/
+	double getInputRate(){
+		return inputRate;
+	}
+
+	static long evalPeriodNanos(double frequency){
+		return Math.max(1l, Math.round(1e9/frequency));
+	}
+
+	int clamp(int frequency){
+		return Math.max(minFrequency, Math.min(maxFrequency, frequency));
+	}
+
+	/**
+	Called after each tock.
+
+	@param periodNanos the current period
+	@param tockStartTime {@link PenClock#nanoTime()} when the tock started
+	@param tockEndTime {@link PenClock#nanoTime()} when the events were dispatched and the tock fired
+	@param eventsCount number of events dispatched on the tock
+	@param overrun {@code true} if the tock ended after its deadline
+	@return the period for the next tocks
+	*/
+	long evalPeriodNanos(long periodNanos, long tockStartTime, long tockEndTime, int eventsCount, boolean overrun){
+		if(windowStartTime==-1)
+			windowStartTime=tockStartTime;
+		windowEventsCount+=eventsCount;
+		windowBusyNanos+=tockEndTime-tockStartTime;
+		if(overrun)
+			windowOverrunsCount++;
+		long windowNanos=tockEndTime-windowStartTime;
+		if(windowNanos<WINDOW_NANOS)
+			return periodNanos;
+
+		double frequency=1e9/periodNanos;
+		double inputRate=windowEventsCount*1e9/windowNanos;
+		double load=(double)windowBusyNanos/windowNanos;
+		if(windowOverrunsCount>0 || load>HIGH_LOAD)
+			frequency*=BACK_OFF_FACTOR;
+		else if(load<LOW_LOAD && inputRate>frequency)
+			frequency=Math.min(frequency*RAISE_FACTOR, inputRate);
+		frequency=Math.max(minFrequency, Math.min(maxFrequency, frequency));
+		if(L.isLoggable(Level.FINE))
+			L.fine("inputRate="+inputRate+", load="+load+", overruns="+windowOverrunsCount+", frequency="+frequency);
+
+		this.inputRate=inputRate;
+		windowStartTime=-1;
+		windowEventsCount=0;
+		windowBusyNanos=0;
+		windowOverrunsCount=0;
+		return evalPeriodNanos(frequency);
+	}
+}
@@ -0,0 +1,141 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+Distribution of latencies measured on the pen pipeline, see {@link PenManager#getLatencyHistogram(LatencyHistogram.Stage)}. The latencies are counted on fixed buckets: each power of two range of nanoseconds is split on 4 buckets, so the values given by this histogram are precise to 25%. Recording does not allocate.
+*/
+public final class LatencyHistogram{
+
+	public static enum Stage{
+		/** Jitter of the delay from the device time given by the provider to the scheduling of the event by the pen. Device times are given by each provider using its own clock, so the absolute delay is unknown: what is recorded is the delay over the smallest delay observed for each device. */
+		DEVICE_TO_SCHEDULE_JITTER,
+		/** From the scheduling of the event (see {@link PenEvent#getTimeNanos()}) to the start of its firing to the listeners. */
+		SCHEDULE_TO_DISPATCH;
+	}
+
+	private static final int SUB_BUCKETS_BITS=2;
+	private static final int SUB_BUCKETS_COUNT=1<<SUB_BUCKETS_BITS;
+	/** Covers up to {@code 2^40} nanoseconds (about 18 minutes), bigger latencies are counted on the last bucket. */
+	public static final int BUCKETS_COUNT=(40-SUB_BUCKETS_BITS+1)*SUB_BUCKETS_COUNT;
+
+	private final AtomicLongArray bucketCounts=new AtomicLongArray(BUCKETS_COUNT);
+	private final AtomicLong totalNanos=new AtomicLong();
+	private final AtomicLong maxNanos=new AtomicLong();
+
+	LatencyHistogram(){}
+
+	/**
+	@param nanos the latency, negative values are counted as {@code 0}.
+	*/
+	void record(long nanos){
+		if(nanos<0)
+			nanos=0;
+		bucketCounts.incrementAndGet(evalBucketIndex(nanos));
+		totalNanos.addAndGet(nanos);
+		long maxNanos;
+		while(nanos>(maxNanos=this.maxNanos.get()) && !this.maxNanos.compareAndSet(maxNanos, nanos))
+			;
+	}
+
+	static int evalBucketIndex(long nanos){
+		if(nanos<SUB_BUCKETS_COUNT)
+			return (int)nanos;
+		int exponent=63-Long.numberOfLeadingZeros(nanos);
+		int index=((exponent-SUB_BUCKETS_BITS+1)<<SUB_BUCKETS_BITS)+(int)((nanos>>>(exponent-SUB_BUCKETS_BITS))&(SUB_BUCKETS_COUNT-1));
+		return index<BUCKETS_COUNT? index: BUCKETS_COUNT-1;
+	}
+
+	/**
+	@return the smallest latency counted on the given bucket
+	*/
+	public static long getBucketLowerBoundNanos(int bucketIndex){
+		if(bucketIndex<SUB_BUCKETS_COUNT)
+			return bucketIndex;
+		int exponent=(bucketIndex>>SUB_BUCKETS_BITS)+SUB_BUCKETS_BITS-1;
+		return (long)(SUB_BUCKETS_COUNT+(bucketIndex&(SUB_BUCKETS_COUNT-1)))<<(exponent-SUB_BUCKETS_BITS);
+	}
+
+	/**
+	@return the number of latencies counted on the given bucket, see {@link #getBucketLowerBoundNanos(int)}.
+	*/
+	public long getBucketCount(int bucketIndex){
+		return bucketCounts.get(bucketIndex);
+	}
+
+	/**
+	@return the number of latencies recorded
+	*/
+	public long getCount(){
+		long count=0;
+		for(int i=BUCKETS_COUNT; --i>=0;)
+			count+=bucketCounts.get(i);
+		return count;
+	}
+
+	public long getMaxNanos(){
+		return maxNanos.get();
+	}
+
+	/**
+	@return the mean latency or {@code 0} if nothing was recorded
+	*/
+	public double getMeanNanos(){
+		long count=getCount();
+		return count==0? 0: totalNanos.get()/(double)count;
+	}
+
+	/**
+	@param percentile from {@code 0} to {@code 100}
+	@return the upper bound of the bucket holding the latency at the given percentile, {@code 0} if nothing was recorded
+	*/
+	public long getNanosAtPercentile(double percentile){
+		if(percentile<0 || percentile>100)
+			throw new IllegalArgumentException("percentile out of range: "+percentile);
+		long count=getCount();
+		if(count==0)
+			return 0;
+		long rank=Math.max(1, (long)Math.ceil(count*percentile/100));
+		long cumulativeCount=0;
+		for(int i=0; i<BUCKETS_COUNT; i++){
+			cumulativeCount+=bucketCounts.get(i);
+			if(cumulativeCount>=rank)
+				return Math.min(i+1<BUCKETS_COUNT? getBucketLowerBoundNanos(i+1)-1: Long.MAX_VALUE, getMaxNanos());
+		}
+		return getMaxNanos();
+	}
+
+	/**
+	Clears all the recorded latencies. Latencies recorded while resetting may be partially lost.
+	*/
+	public void reset(){
+		for(int i=BUCKETS_COUNT; --i>=0;)
+			bucketCounts.set(i, 0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+	@Override
+	public String toString(){
+		return "[LatencyHistogram: count="+getCount()+", meanMicros="+(long)(getMeanNanos()/1000)+", p50Micros="+getNanosAtPercentile(50)/1000+", p99Micros="+getNanosAtPercentile(99)/1000+", maxMicros="+getMaxNanos()/1000+"]";
+	}
+}
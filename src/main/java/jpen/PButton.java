@@ -91,12 +91,44 @@ public class PButton
 		}
 	}
 
-	public PButton(Type type, Boolean value){
+	/**
+	{@code true} if the button is pressed. Primitive to avoid boxing, {@link #getValue()} is the boxed view.
+	*/
+	public transient boolean value;
+
+	public PButton(Type type, boolean value){
 		this(type.ordinal(), value);
 	}
 
+	public PButton(int typeNumber, boolean value) {
+		super(typeNumber);
+		this.value=value;
+	}
+
+	/**
+	@deprecated kept for binary compatibility, use {@link #PButton(PButton.Type, boolean)}.
+	*/
+	@Deprecated
+	public PButton(Type type, Boolean value){
+		this(type.ordinal(), value.booleanValue());
+	}
+
+	/**
+	@deprecated kept for binary compatibility, use {@link #PButton(int, boolean)}.
+	*/
+	@Deprecated
 	public PButton(int typeNumber, Boolean value) {
-		super(typeNumber, value);
+		this(typeNumber, value.booleanValue());
+	}
+
+	@Override
+	public Boolean getValue() {
+		return value;
+	}
+
+	@Override
+	void setValue(Boolean value) {
+		this.value=value;
 	}
 
 	@Override
@@ -19,6 +19,8 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 package jpen;
 
 import jpen.event.PenListener;
+import jpen.event.PenListenerMask;
+import jpen.internal.MpscRingBuffer;
 
 public class PButtonEvent
 	extends PenEvent
@@ -32,15 +34,34 @@ public class PButtonEvent
 		this.button=button;
 	}
 
+	PButtonEvent(Pen pen, MpscRingBuffer<PenEvent> pool, PButton button) {
+		super(pen, pool);
+		this.button=button;
+	}
+
+	private PButtonEvent(PButtonEvent ev) {
+		super(ev);
+		this.button=new PButton(ev.button.typeNumber, ev.button.value);
+	}
+
+	@Override
+	public PButtonEvent copy(){
+		return new PButtonEvent(this);
+	}
+
 	@Override
 	void copyTo(PenState penState){
 		penState.setButtonValue(button.typeNumber, button.value);
 	}
 
 	@Override
-	void dispatch() {
-		for(PenListener l:pen.getListenersArray())
-			l.penButtonEvent(this);
+	void dispatch(PenListener l) {
+		l.penButtonEvent(this);
+	}
+
+	@Override
+	PenListenerMask.EventKind getListenerEventKind(){
+		return PenListenerMask.EventKind.BUTTON;
 	}
 
 	@Override
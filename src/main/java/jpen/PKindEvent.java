@@ -19,6 +19,8 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 package jpen;
 
 import jpen.event.PenListener;
+import jpen.event.PenListenerMask;
+import jpen.internal.MpscRingBuffer;
 
 public class PKindEvent
 	extends PenEvent
@@ -32,15 +34,34 @@ public class PKindEvent
 		this.kind=kind;
 	}
 
+	PKindEvent(Pen pen, MpscRingBuffer<PenEvent> pool, PKind kind) {
+		super(pen, pool);
+		this.kind=kind;
+	}
+
+	private PKindEvent(PKindEvent ev) {
+		super(ev);
+		this.kind=ev.kind;
+	}
+
+	@Override
+	public PKindEvent copy(){
+		return new PKindEvent(this);
+	}
+
 	@Override
 	void copyTo(PenState penState){
 		penState.setKind(PKind.valueOf(kind.typeNumber));
 	}
 
 	@Override
-	void dispatch() {
-		for(PenListener l:pen.getListenersArray())
-			l.penKindEvent(this);
+	void dispatch(PenListener l) {
+		l.penKindEvent(this);
+	}
+
+	@Override
+	PenListenerMask.EventKind getListenerEventKind(){
+		return PenListenerMask.EventKind.KIND;
 	}
 
 	@Override
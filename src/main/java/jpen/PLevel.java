@@ -18,9 +18,6 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen;
 
-import java.awt.Component;
-import java.awt.Dimension;
-import java.awt.geom.Point2D;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -133,6 +130,11 @@ public class PLevel
 		}
 	}
 
+	/**
+	Level value. Primitive to avoid boxing when scheduling and dispatching level events, {@link #getValue()} is the boxed view.
+	*/
+	public transient float value;
+
 	public PLevel(PLevel level) {
 		this(level.typeNumber, level.value);
 	}
@@ -142,7 +144,18 @@ public class PLevel
 	}
 
 	public PLevel(int typeNumber, float value) {
-		super(typeNumber, value);
+		super(typeNumber);
+		this.value=value;
+	}
+
+	@Override
+	public Float getValue() {
+		return value;
+	}
+
+	@Override
+	void setValue(Float value) {
+		this.value=value;
 	}
 
 	@Override
@@ -24,7 +24,9 @@ import java.io.ObjectStreamClass;
 import java.util.Arrays;
 import java.util.Set;
 import jpen.event.PenListener;
+import jpen.event.PenListenerMask;
 import jpen.internal.AccessibleField;
+import jpen.internal.MpscRingBuffer;
 
 public class PLevelEvent
 			extends PenEvent
@@ -32,11 +34,60 @@ public class PLevelEvent
 	public static final long serialVersionUID=2l;
 
 	public final PLevel[] levels;
+	/** Device times of the samples merged into this event by the {@link Pen} before the last one, see {@link Pen#setCoalesceLevelEvents(boolean)}. Only the first {@link #historySize} are valid: a recycled event keeps its history arrays. {@code null} if this event never had history. */
+	transient long[] historicalTimes;
+	/** Level values after each historical sample: one row of {@code levels.length} values per sample. */
+	transient float[] historicalValues;
+	private transient int historySize;
 
 	public PLevelEvent(PenDevice device, long deviceTime, PLevel[] levels) {
 		super(device, deviceTime);
 		this.levels=levels;
 	}
+
+	PLevelEvent(Pen pen, MpscRingBuffer<PenEvent> pool, PLevel[] levels) {
+		super(pen, pool);
+		this.levels=levels;
+	}
+
+	/**
+	Constructs a not recyclable coalesced event, see {@link PLevelEventCoalescer}.
+
+	@param lastSample the event giving the device and times of this event
+	*/
+	PLevelEvent(PLevelEvent lastSample, PLevel[] levels) {
+		super(lastSample);
+		this.levels=levels;
+	}
+
+	private PLevelEvent(PLevelEvent ev) {
+		super(ev);
+		this.levels=new PLevel[ev.levels.length];
+		for(int i=levels.length; --i>=0;)
+			levels[i]=new PLevel(ev.levels[i]);
+		setHistorySize(ev.historySize); // the history arrays of a recyclable event are reused
+		if(historySize!=0){
+			System.arraycopy(ev.historicalTimes, 0, historicalTimes, 0, historySize);
+			System.arraycopy(ev.historicalValues, 0, historicalValues, 0, historySize*levels.length);
+		}
+	}
+
+	/**
+	Sets the history size, growing the history arrays if they are too small. The {@link PLevelEventCoalescer} fills them next.
+	*/
+	void setHistorySize(int historySize){
+		if(historySize!=0 && (historicalTimes==null || historicalTimes.length<historySize)){
+			int capacity=historicalTimes==null? historySize: Math.max(historySize, historicalTimes.length<<1);
+			historicalTimes=new long[capacity];
+			historicalValues=new float[capacity*levels.length];
+		}
+		this.historySize=historySize;
+	}
+
+	@Override
+	public PLevelEvent copy(){
+		return new PLevelEvent(this);
+	}
 	
 	@Override
 	void copyTo(PenState penState){
@@ -44,9 +95,52 @@ public class PLevelEvent
 	}
 
 	@Override
-	void dispatch() {
-		for(PenListener l:pen.getListenersArray())
-			l.penLevelEvent(this);
+	void dispatch(PenListener l) {
+		l.penLevelEvent(this);
+	}
+
+	@Override
+	PenListenerMask.EventKind getListenerEventKind(){
+		return PenListenerMask.EventKind.LEVEL;
+	}
+
+	/**
+	@return the number of samples merged into this event before the last one, {@code 0} if this event was not coalesced. See {@link Pen#setCoalesceLevelEvents(boolean)}.
+	*/
+	public int getHistorySize(){
+		return historySize;
+	}
+
+	/**
+	@param pos from {@code 0} (oldest) to {@code getHistorySize()-1}
+	@return the {@link #getDeviceTime()} of the historical sample
+	*/
+	public long getHistoricalDeviceTime(int pos){
+		checkHistoryPos(pos);
+		return historicalTimes[pos];
+	}
+
+	public float getHistoricalLevelValue(int pos, PLevel.Type levelType){
+		return getHistoricalLevelValue(pos, levelType.ordinal());
+	}
+
+	/**
+	@param pos from {@code 0} (oldest) to {@code getHistorySize()-1}
+	@param levelTypeNumber the type number of one of the {@link #levels} of this event. The other levels did not change during the history.
+	@return the value of the level after the historical sample was applied to the {@link PenState}
+	@throws IllegalArgumentException if this event has no level of the given type
+	*/
+	public float getHistoricalLevelValue(int pos, int levelTypeNumber){
+		checkHistoryPos(pos);
+		for(int i=levels.length; --i>=0;)
+			if(levels[i].typeNumber==levelTypeNumber)
+				return historicalValues[pos*levels.length+i];
+		throw new IllegalArgumentException("no level of type number "+levelTypeNumber+" on this event");
+	}
+
+	private void checkHistoryPos(int pos){
+		if(pos<0 || pos>=getHistorySize())
+			throw new IndexOutOfBoundsException("pos: "+pos+", historySize: "+getHistorySize());
 	}
 
 	public boolean containsLevelOfType(Set<PLevel.Type> levelTypes){
@@ -62,7 +156,7 @@ public class PLevelEvent
 
 	@Override
 	public String toString() {
-		return "[PLevelEvent: super="+super.toString()+", levels="+Arrays.asList(levels)+"]";
+		return "[PLevelEvent: super="+super.toString()+", levels="+Arrays.asList(levels)+", historySize="+getHistorySize()+"]";
 	}
 
 	private void readObject(ObjectInputStream in)
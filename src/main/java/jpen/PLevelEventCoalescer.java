@@ -0,0 +1,114 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+Merges consecutive {@link PLevelEvent}s of the same device into one event with history. Used only by the {@link Pen} thread, see {@link Pen#setCoalesceLevelEvents(boolean)}.
+*/
+final class PLevelEventCoalescer{
+	private final Pen pen;
+	private final List<PLevelEvent> samples=new ArrayList<PLevelEvent>();
+	private int[] typeNumbers=new int[PLevel.Type.VALUES.size()];
+	private int samplesCount;
+
+	PLevelEventCoalescer(Pen pen){
+		this.pen=pen;
+	}
+
+	/**
+	Takes from the queue the {@link PLevelEvent}s scheduled up to the given time which follow the given event and have the same device, stopping on any other event. Applies all of them to the pen state (as {@link PenEvent#copyTo(PenState)}) and releases them.
+
+	@param first the event just taken from the queue
+	@param whileOverloaded {@code true} to stop taking events as soon as the queue is back under its capacity (see {@link Pen.OverloadPolicy#COALESCE_MOTION})
+	@return the event to be dispatched: the given event if no other could be merged or an event with the levels of the merged events and their history, taken from the {@link PenEventPool} if {@link Pen#setRecycleEvents(boolean)} is enabled.
+	*/
+	PLevelEvent coalesce(PLevelEvent first, PenEventQueue eventQueue, long maxTimeNanos, boolean whileOverloaded){
+		samples.add(first);
+		PenEvent next;
+		while((next=eventQueue.peek()) instanceof PLevelEvent &&
+					next.getDeviceId()==first.getDeviceId() &&
+					next.getTimeNanos()<=maxTimeNanos &&
+					(!whileOverloaded || eventQueue.isOverloaded())){
+			eventQueue.poll();
+			samples.add((PLevelEvent)next);
+		}
+		samplesCount=samples.size();
+		if(samplesCount==1){
+			samples.clear();
+			first.copyTo(pen);
+			return first;
+		}
+		int typesCount=evalTypeNumbers();
+		int historySize=samplesCount-1;
+		PLevelEvent last=samples.get(historySize);
+		PLevelEvent coalescedEvent=pen.eventPool.acquireCoalescedLevelEvent(last, typeNumbers, typesCount, historySize);
+		PLevel[] levels=coalescedEvent.levels;
+		long[] historicalTimes=coalescedEvent.historicalTimes;
+		float[] historicalValues=coalescedEvent.historicalValues;
+		PenState.Levels penLevels=pen.levels;
+		for(int i=0; i<historySize; i++){
+			PLevelEvent sample=samples.get(i);
+			sample.copyTo(pen);
+			historicalTimes[i]=sample.getDeviceTime();
+			for(int j=typesCount; --j>=0;)
+				historicalValues[i*typesCount+j]=penLevels.getValue(levels[j].typeNumber);
+			sample.release();
+		}
+		last.copyTo(pen);
+		for(int j=typesCount; --j>=0;)
+			levels[j].value=penLevels.getValue(levels[j].typeNumber);
+		last.release();
+		samples.clear();
+		return coalescedEvent;
+	}
+
+	/**
+	Collects the distinct type numbers of the levels on the samples.
+
+	@return the number of distinct level types
+	*/
+	private int evalTypeNumbers(){
+		int typesCount=0;
+		for(int i=samples.size(); --i>=0;){
+			PLevel[] levels=samples.get(i).levels;
+			nextLevel:
+			for(int j=levels.length; --j>=0;){
+				int typeNumber=levels[j].typeNumber;
+				for(int k=typesCount; --k>=0;)
+					if(typeNumbers[k]==typeNumber)
+						continue nextLevel;
+				if(typesCount==typeNumbers.length)
+					typeNumbers=Arrays.copyOf(typeNumbers, typesCount<<1);
+				typeNumbers[typesCount++]=typeNumber;
+			}
+		}
+		return typesCount;
+	}
+
+	/**
+	@return the number of events taken from the queue on the last {@link #coalesce(PLevelEvent, PenEventQueue, long, boolean)} call
+	*/
+	int getSamplesCount(){
+		return samplesCount;
+	}
+}
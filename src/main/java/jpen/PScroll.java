@@ -34,8 +34,24 @@ public class PScroll
 		public static final List<Type> VALUES=TypedClass.createStandardTypes(ALL_VALUES);
 	}
 
+	/**
+	Scroll amount. Primitive to avoid boxing, {@link #getValue()} is the boxed view.
+	*/
+	public transient int value;
+
 	public PScroll(int typeNumber, int value) {
-		super(typeNumber, value);
+		super(typeNumber);
+		this.value=value;
+	}
+
+	@Override
+	public Integer getValue() {
+		return value;
+	}
+
+	@Override
+	void setValue(Integer value) {
+		this.value=value;
 	}
 
 	@Override
@@ -19,6 +19,8 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 package jpen;
 
 import jpen.event.PenListener;
+import jpen.event.PenListenerMask;
+import jpen.internal.MpscRingBuffer;
 
 public class PScrollEvent
 			extends PenEvent
@@ -32,13 +34,32 @@ public class PScrollEvent
 		this.scroll=scroll;
 	}
 
+	PScrollEvent(Pen pen, MpscRingBuffer<PenEvent> pool, PScroll scroll) {
+		super(pen, pool);
+		this.scroll=scroll;
+	}
+
+	private PScrollEvent(PScrollEvent ev) {
+		super(ev);
+		this.scroll=new PScroll(ev.scroll.typeNumber, ev.scroll.value);
+	}
+
+	@Override
+	public PScrollEvent copy(){
+		return new PScrollEvent(this);
+	}
+
 	@Override
 	void copyTo(PenState penState){}
 
 	@Override
-	void dispatch() {
-		for(PenListener l:pen.getListenersArray())
-			l.penScrollEvent(this);
+	void dispatch(PenListener l) {
+		l.penScrollEvent(this);
+	}
+
+	@Override
+	PenListenerMask.EventKind getListenerEventKind(){
+		return PenListenerMask.EventKind.SCROLL;
 	}
 
 	@Override
@@ -22,14 +22,24 @@ import java.lang.reflect.InvocationTargetException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import javax.swing.SwingUtilities;
+import jpen.event.PenBatchListener;
 import jpen.event.PenListener;
+import jpen.event.PenListenerMask;
+import jpen.filter.MotionPredictor;
+import jpen.filter.OneEuroFilter;
+import jpen.filter.PenFilterChain;
 import jpen.internal.ThreadUtils;
 import jpen.internal.ThrowableUtils;
 
@@ -38,26 +48,95 @@ public class Pen extends PenState {
 	//static{L.setLevel(Level.ALL);}
 
 	public static final int DEFAULT_FREQUENCY=60; // TODO: 50 is a better default or less??
+	/**
+	Default capacity of the queue holding the events scheduled by the providers and waiting to be dispatched, see {@link #setEventQueueCapacity(int)}.
+	*/
+	public static final int DEFAULT_EVENT_QUEUE_CAPACITY=1<<10;
+
+	/**
+	What to do with the {@link PLevelEvent}s when the event queue is full, see {@link #setOverloadPolicy(OverloadPolicy)}. {@link PButtonEvent}s, {@link PKindEvent}s and {@link PScrollEvent}s are never dropped.
+	*/
+	public static enum OverloadPolicy{
+		/** The providers wait until the queue has room for the new events. All the events are fired. The default: the threads of the native providers block while the listeners can not keep up, except the event dispatch thread and the pen thread (e.g. a listener scheduling events) which never wait. */
+		BLOCK_PRODUCER,
+		/** The oldest level events are applied to the pen state but not fired until the queue is back under its capacity. The providers do not wait for room for level events: over the capacity each new level event replaces the newest not yet queued one of the same device. */
+		DROP_OLDEST_MOTION,
+		/** The oldest level events are coalesced (as when {@link Pen#setCoalesceLevelEvents(boolean)} is enabled) until the queue is back under its capacity. The providers do not wait for room for level events: over the capacity each new level event is merged with the newest not yet queued one of the same device. */
+		COALESCE_MOTION;
+	}
+
+	/**
+	Actions taken by the pen when its event queue is full, see {@link #getOverloadActionCount(OverloadAction)}.
+	*/
+	public static enum OverloadAction{
+		/** A provider waited for room on the queue. */
+		BLOCKED,
+		/** A level event was not fired because of the {@link OverloadPolicy#DROP_OLDEST_MOTION} policy. */
+		DROPPED_OLDEST,
+		/** A level event was merged into another because of the {@link OverloadPolicy#COALESCE_MOTION} policy. */
+		COALESCED,
+		/** A new level event was dropped because there was no room left on the queue and waiting was not possible (e.g. the pen thread is blocked waiting for the event dispatch thread which scheduled the event). */
+		DROPPED_NEWEST;
+	}
 
 	public final PenManager penManager;
+	final PenClock clock;
 	private int frequency;
 	private volatile MyThread thread;
+	private volatile AdaptiveFrequencyController adaptiveFrequencyController;
+	private volatile boolean coalesceLevelEvents;
 
-	/** Tail of event queue. */
-	private PenEvent lastDispatchedEvent=new PenEvent.Dummy();
+	/** Events scheduled by the {@link PenScheduler} (producers) waiting to be dispatched by the {@link MyThread} (consumer). */
+	final PenEventQueue eventQueue=new PenEventQueue(this, DEFAULT_EVENT_QUEUE_CAPACITY);
+	final PenEventPool eventPool=new PenEventPool(this);
 	final PenScheduler scheduler;
 	public final PenState lastScheduledState;
 	private final List<PenListener> listeners=new ArrayList<PenListener>();
+	/** The masks of the {@code listeners}, on the same order. */
+	private final List<PenListenerMask> listenerMasks=new ArrayList<PenListenerMask>();
 	private PenListener[] listenersArray;
+	/** For each {@link PenListenerMask.EventKind}: the indexes on the {@code listenersArray} of the listeners accepting it. */
+	private int[][] listenerIndexesArrays;
+	/** The {@link PenListenerMask#getLevelTypesBits()} of the {@code listenersArray}, on the same order. */
+	private int[] listenerLevelTypesBitsArray;
+	private final Map<PenListener, LatencyHistogram> listenerLatencyHistograms=new IdentityHashMap<PenListener, LatencyHistogram>();
+	/** The histograms of the {@code listenersArray}, on the same order. */
+	private LatencyHistogram[] listenerLatencyHistogramsArray;
+	final LatencyHistogram[] stageLatencyHistograms=new LatencyHistogram[LatencyHistogram.Stage.values().length];
+	{
+		for(int i=stageLatencyHistograms.length; --i>=0;)
+			stageLatencyHistograms[i]=new LatencyHistogram();
+	}
+	private final List<PenBatchListener> batchListeners=new ArrayList<PenBatchListener>();
+	private PenBatchListener[] batchListenersArray;
 	private boolean firePenTockOnSwing;
 	public final PLevelEmulator levelEmulator;
 
+	/**
+	A fixed or adaptive frequency mode requested to the {@link MyThread}.
+	*/
+	private static final class FrequencyMode{
+		final long periodNanos;
+		final AdaptiveFrequencyController adaptiveFrequencyController;
+
+		FrequencyMode(long periodNanos, AdaptiveFrequencyController adaptiveFrequencyController){
+			this.periodNanos=periodNanos;
+			this.adaptiveFrequencyController=adaptiveFrequencyController;
+		}
+	}
+
 	private final class MyThread
 		extends Thread {
-		final int periodMillis;
+		/** Written only by this thread (after it is started), changed by the {@code adaptiveFrequencyController} when set. */
+		volatile long periodNanos;
+		/** The mode to be applied by this thread before its next tock. */
+		private final AtomicReference<FrequencyMode> requestedFrequencyMode=new AtomicReference<FrequencyMode>();
+		/** Tunes the {@code periodNanos}, {@code null} on the fixed frequency mode. Used only by this thread. */
+		private AdaptiveFrequencyController adaptiveFrequencyController;
+		/** {@link PenClock#nanoTime()} when the current tock started. */
 		long beforeTime;
-		long waitTime;
-		long availablePeriod;
+		/** {@link PenClock#nanoTime()} when the current tock period ends. Advanced by {@code periodNanos} on each tock to pace without drift. */
+		long deadline;
 		PenEvent event;
 		boolean waitedNewEvents;
 		Exception exception;
@@ -68,26 +147,31 @@ public class Pen extends PenState {
 		final class Waiter
 			extends Object{
 
-			boolean waitForNewEvent() throws InterruptedException{
-				if(lastDispatchedEvent.next!=null)
+			/** The thread parked waiting for new events, {@code null} if not waiting. */
+			private volatile Thread waitingThread;
+
+			boolean waitForNewEvent(){
+				if(!eventQueue.isEmpty())
 					return false;
-				synchronized(this){
-					if(lastDispatchedEvent.next!=null)
-						return false;
-					if(!stopRunning)
-						wait(0);
-					return true;
-				}
+				waitingThread=MyThread.this;
+				// the volatile write above and the queue check below pair with the producer's queue publication and waitingThread read: one of both sides sees the other.
+				while(eventQueue.isEmpty() && !stopRunning)
+					LockSupport.park(this);
+				waitingThread=null;
+				return true;
 			}
-			synchronized void notifyNewEvent(){
-				notify();
+
+			void notifyNewEvent(){
+				Thread waitingThread=this.waitingThread;
+				if(waitingThread!=null)
+					LockSupport.unpark(waitingThread);
 			}
 		}
 
 		MyThread(Thread oldThread){
-			periodMillis=1000/Pen.this.frequency;
+			periodNanos=AdaptiveFrequencyController.evalPeriodNanos(Pen.this.frequency);
 			this.oldThread=oldThread;
-			setName("jpen-Pen-["+periodMillis+"ms]");
+			setName("jpen-Pen-["+Pen.this.frequency+"Hz]");
 			AccessController.doPrivileged(new PrivilegedAction<Object>(){
 						//@Override
 						public Object run(){
@@ -96,13 +180,21 @@ public class Pen extends PenState {
 						}
 					});
 		}
+		private final PenEventBatch eventBatch=new PenEventBatch();
+		private final PLevelEventCoalescer levelEventCoalescer=new PLevelEventCoalescer(Pen.this);
 		private final Runnable penTockFirer=new Runnable(){
 					//@Override
 					public void run(){
 						//System.out.println("firing tocks "+System.currentTimeMillis());
-						for(PenListener l:getListenersArray()){
+						PenListener[] listenersArray;
+						int[] tockListenerIndexes;
+						synchronized(listeners){
+							listenersArray=getListenersArray();
+							tockListenerIndexes=listenerIndexesArrays[PenListenerMask.EventKind.TOCK.ordinal()];
+						}
+						for(int i=0; i<tockListenerIndexes.length; i++){
 							//System.out.println("firing pentock, procTime="+evalCurrentProcTime()+", l="+l);
-							l.penTock(availablePeriodLeft());
+							listenersArray[tockListenerIndexes[i]].penTock(availablePeriodLeft());
 						}
 					}
 				};
@@ -114,31 +206,21 @@ public class Pen extends PenState {
 					oldThread.join();
 				oldThread=null;
 				while(!stopRunning) {
+					applyRequestedFrequencyMode();
+					if(eventQueue.isEmpty())
+						scheduler.motionPredictor.clear(Pen.this); // going idle: no round clears it until new events arrive.
 					waitedNewEvents=waiter.waitForNewEvent();
-					beforeTime=System.currentTimeMillis();
-					if(waitedNewEvents)
-						waitTime=0;
-					boolean eventDispatched=false;
-					while((event=lastDispatchedEvent.next)!=null && event.getTime()<=beforeTime) {
-						event.copyTo(Pen.this);
-						event.dispatch();
-						lastDispatchedEvent.next=null;
-						lastDispatchedEvent=event;
-						eventDispatched=true;
-					}
-					//System.out.println("after event dispatching, procTime="+evalCurrentProcTime());
-					availablePeriod=periodMillis+waitTime; // waitTime here is always <=0, if it is <0 then the whole processing of the previous round took longer than the time available.
-					//System.out.println("going to fire tock "+System.currentTimeMillis());
-					if(eventDispatched)
-						firePenTock();
-					//System.out.println("after penTock, procTime="+evalCurrentProcTime());
-					waitTime=availablePeriodLeft();// the same:  (periodMillis-evalCurrentProcTime())+waitTime;
-					if(waitTime>0) {
-						//System.out.println("going to wait: "+waitTime);
-						ThreadUtils.sleepUninterrupted(waitTime);
-						//waiter.doWait(waitTime); // in some cases, this (instead of sleepUninterrupted ^ ) gives better overall performance (wintab-pulling, jpen demo). We can put this as an alternate behavior if  needed.
-						waitTime=0;
+					applyRequestedFrequencyMode();
+					beforeTime=clock.nanoTime();
+					if(waitedNewEvents || beforeTime-deadline>periodNanos) // after being idle or when more than one whole period late: restart the timeline instead of bursting to catch up.
+						deadline=beforeTime;
+					deadline+=periodNanos; // if the previous round took longer than its period then this round has less time available.
+					int eventsCount=fireEvents();
+					if(adaptiveFrequencyController!=null){
+						long afterTime=clock.nanoTime();
+						periodNanos=adaptiveFrequencyController.evalPeriodNanos(periodNanos, beforeTime, afterTime, eventsCount, afterTime>deadline);
 					}
+					clock.parkUntilNanos(deadline);
 				}
 			} catch(Exception ex) {
 				L.severe("jpen-Pen thread threw an exception: "+ThrowableUtils.evalStackTraceString(ex));
@@ -147,15 +229,82 @@ public class Pen extends PenState {
 			L.finest("^");
 		}
 
-		private long evalCurrentProcTime(){
-			return System.currentTimeMillis()-beforeTime;
+		/**
+		Fires the events scheduled up to {@code beforeTime} and the tock: the round of this thread without its pacing.
+
+		@return the count of events taken from the queue.
+		*/
+		int fireEvents() throws InterruptedException, InvocationTargetException{
+			int eventsCount=0;
+			PenBatchListener[] batchListeners=getBatchListenersArray();
+			boolean batching=batchListeners.length!=0;
+			boolean coalescing=coalesceLevelEvents;
+			while((event=eventQueue.peek())!=null && event.getTimeNanos()<=beforeTime) {
+				eventQueue.poll(); // frees the slot before dispatching: the producers don't wait for the listeners.
+				if(event instanceof PLevelEvent){
+					OverloadPolicy overloadPolicy=coalescing || !eventQueue.isOverloaded()? null: eventQueue.getOverloadPolicy();
+					if(overloadPolicy==OverloadPolicy.DROP_OLDEST_MOTION){
+						event.copyTo(Pen.this); // the pen state is kept, only the firing is dropped.
+						event.release();
+						eventQueue.countOverloadAction(OverloadAction.DROPPED_OLDEST, 1);
+						eventsCount++;
+						continue;
+					}
+					if(coalescing || overloadPolicy==OverloadPolicy.COALESCE_MOTION){
+						event=levelEventCoalescer.coalesce((PLevelEvent)event, eventQueue, beforeTime, !coalescing);
+						int coalescedCount=levelEventCoalescer.getSamplesCount()-1;
+						if(!coalescing)
+							eventQueue.countOverloadAction(OverloadAction.COALESCED, coalescedCount);
+						eventsCount+=coalescedCount;
+					}else
+						event.copyTo(Pen.this);
+				}else
+					event.copyTo(Pen.this);
+				dispatch(event);
+				if(batching)
+					eventBatch.add(event, Pen.this); // released on eventBatch.clear()
+				else
+					event.release();
+				eventsCount++;
+			}
+			event=null;
+			if(batching && !eventBatch.isEmpty()){
+				for(PenBatchListener l: batchListeners)
+					l.penEventBatch(eventBatch);
+				eventBatch.clear();
+			}
+			if(eventsCount!=0)
+				firePenTock();
+			else
+				scheduler.motionPredictor.clear(Pen.this);
+			return eventsCount;
+		}
+
+		/**
+		Requests a mode change, applied by this thread: other threads do not write its {@code periodNanos} because it may be tuning it at the same time.
+		*/
+		void requestFrequencyMode(long periodNanos, AdaptiveFrequencyController adaptiveFrequencyController){
+			requestedFrequencyMode.set(new FrequencyMode(periodNanos, adaptiveFrequencyController));
+		}
+
+		private void applyRequestedFrequencyMode(){
+			FrequencyMode frequencyMode=requestedFrequencyMode.getAndSet(null);
+			if(frequencyMode==null)
+				return;
+			periodNanos=frequencyMode.periodNanos;
+			adaptiveFrequencyController=frequencyMode.adaptiveFrequencyController;
+		}
+
+		private long availablePeriodLeftNanos(){
+			return deadline-clock.nanoTime();
 		}
 
 		private long availablePeriodLeft(){
-			return availablePeriod-evalCurrentProcTime();
+			return availablePeriodLeftNanos()/1000000l;
 		}
 
 		private void firePenTock() throws InterruptedException, InvocationTargetException{
+			scheduler.motionPredictor.update(Pen.this); // also read outside of the tock listeners, e.g. by a renderer.
 			if(getListenersArray().length==0)
 				return;
 			if(firePenTockOnSwing)
@@ -167,6 +316,7 @@ public class Pen extends PenState {
 		void stop(boolean join){
 			stopRunning=true;
 			processNewEvents(); // because it may be waiting for new events.
+			clock.unpark(this); // because it may be waiting for its next round, on a clock not advancing.
 			if(join)
 				try{
 					join();
@@ -177,8 +327,9 @@ public class Pen extends PenState {
 		}
 	}
 
-	Pen(PenManager penManager) {
+	Pen(PenManager penManager, PenClock clock) {
 		this.penManager=penManager;
+		this.clock=clock;
 		this.scheduler=new PenScheduler(this);
 		this.lastScheduledState=scheduler.lastScheduledState;
 		this.levelEmulator=new PLevelEmulator(this);
@@ -189,8 +340,30 @@ public class Pen extends PenState {
 		thread.waiter.notifyNewEvent();
 	}
 
-	PenEvent getLastDispatchedEvent(){
-		return lastDispatchedEvent;
+	/**
+	Runs one round of the pen thread on the calling thread, at the current time of the clock: takes the due events from the queue, coalesces, dispatches and batches them and fires the tock. Used by the benchmarks while the pen thread is parked on a {@link VirtualPenClock} not advanced.
+
+	@return the count of events taken from the queue.
+	*/
+	int fireEventsRound() throws InterruptedException, InvocationTargetException{
+		MyThread thread=this.thread;
+		thread.beforeTime=clock.nanoTime();
+		thread.deadline=thread.beforeTime+thread.periodNanos;
+		return thread.fireEvents();
+	}
+
+	/**
+	@return {@code true} if the pen thread is idle, waiting for new events to be scheduled.
+	*/
+	boolean isPenThreadWaitingForNewEvents(){
+		return thread.waiter.waitingThread!=null && eventQueue.isEmpty();
+	}
+
+	/**
+	@return {@code true} if the given thread is the thread firing the events of this pen.
+	*/
+	boolean isPenThread(Thread thread){
+		return thread==this.thread;
 	}
 
 	public boolean getFirePenTockOnSwing() {
@@ -204,18 +377,127 @@ public class Pen extends PenState {
 		this.firePenTockOnSwing = firePenTockOnSwing;
 	}
 
+	/**
+	@return {@code true} if the dispatched {@link PenEvent}s are recycled.
+	@see #setRecycleEvents(boolean)
+	*/
+	public boolean getRecycleEvents(){
+		return eventPool.getEnabled();
+	}
+
+	/**
+	Enables/disables recycling of the {@link PenEvent}s fired by this pen to avoid producing garbage on long sessions. When enabled, each event is returned to a pool after being dispatched to all the listeners and its values are overwritten when reused by a later event: listeners must not keep references to the events they receive. A listener needing an event after it returns must call {@link PenEvent#retain()} (and {@link PenEvent#release()} when done) or keep a {@link PenEvent#copy()}. {@code false} by default.
+
+	@param recycleEvents {@code true} to recycle the events scheduled from now on
+	*/
+	public void setRecycleEvents(boolean recycleEvents){
+		eventPool.setEnabled(recycleEvents);
+	}
+
+	/**
+	@return the number of events over which the {@link OverloadPolicy} is applied
+	@see #setEventQueueCapacity(int)
+	*/
+	public int getEventQueueCapacity(){
+		return eventQueue.getCapacity();
+	}
+
+	/**
+	Sets the capacity of the queue holding the events scheduled by the providers and waiting to be fired. When the listeners can not keep up with the devices and the queue reaches its capacity the {@link OverloadPolicy} is applied. {@link #DEFAULT_EVENT_QUEUE_CAPACITY} by default.
+	*/
+	public void setEventQueueCapacity(int capacity){
+		synchronized(scheduler){
+			eventQueue.setCapacity(capacity);
+		}
+	}
+
+	public OverloadPolicy getOverloadPolicy(){
+		return eventQueue.getOverloadPolicy();
+	}
+
+	/**
+	@param overloadPolicy what to do when the event queue reaches its capacity (see {@link #setEventQueueCapacity(int)}). {@link OverloadPolicy#BLOCK_PRODUCER} by default: unlike the unbounded queue of previous versions, the provider threads wait when the listeners fall {@link #DEFAULT_EVENT_QUEUE_CAPACITY} events behind. Use a lossy policy to never block them on level events.
+	*/
+	public void setOverloadPolicy(OverloadPolicy overloadPolicy){
+		eventQueue.setOverloadPolicy(overloadPolicy);
+	}
+
+	/**
+	@return the number of times the given action was taken since the pen was created or {@link #resetOverloadActionCounts()} was called
+	*/
+	public long getOverloadActionCount(OverloadAction overloadAction){
+		return eventQueue.getOverloadActionCount(overloadAction);
+	}
+
+	public void resetOverloadActionCounts(){
+		eventQueue.resetOverloadActionCounts();
+	}
+
+	/**
+	@return {@code true} if consecutive {@link PLevelEvent}s are coalesced.
+	@see #setCoalesceLevelEvents(boolean)
+	*/
+	public boolean getCoalesceLevelEvents(){
+		return coalesceLevelEvents;
+	}
+
+	/**
+	Enables/disables coalescing of {@link PLevelEvent}s: on each tock the consecutive level events of the same device are fired as one event having the last values of all their levels. The values of the merged events are available through the {@link PLevelEvent#getHistorySize()} history of the fired event. Level events are never coalesced across {@link PButtonEvent}s, {@link PKindEvent}s or events of other devices. Reduces the number of listener calls when the devices produce events at a higher rate than the firing frequency. {@code false} by default.
+	*/
+	public void setCoalesceLevelEvents(boolean coalesceLevelEvents){
+		this.coalesceLevelEvents=coalesceLevelEvents;
+	}
+
 	/**
 	Changes the event firing frequency. The pen collects device (tablet) data points and stores them in a buffer. The data  points are taken from this buffer and fired as {@link PenEvent}s at this frequency.<p> 
 
 	This method returns immediately, the change of frequency will happen after all the pending buffered events are processed.
 	
-	@param frequency event firing frequency. If frequency is greater than {@code 1000} then pen events will be fired as soon as possible (no buffering).
+	@param frequency event firing frequency. Frequencies greater than {@code 1000} give sub-millisecond periods.
 
 	@see #addListener(PenListener) 
 	@see #removeListener(PenListener)
 	*/
-	public void setFrequencyLater(int frequency){
+	public synchronized void setFrequencyLater(int frequency){
+		adaptiveFrequencyController=null;
 		setFrequency(frequency, false);
+		thread.requestFrequencyMode(AdaptiveFrequencyController.evalPeriodNanos(frequency), null);
+	}
+
+	/**
+	Enables the adaptive frequency mode: the event firing frequency (see {@link #setFrequencyLater(int)}) is tuned by the pen between the given bounds. The pen raises the frequency towards the rate at which the devices produce events while the listeners have time left on each period, and lowers it when the listeners take longer than the period ({@link PenListener#penTock(long)} {@code availableMillis<0}). Calling {@code setFrequencyLater(int)} disables this mode.
+
+	@param minFrequency minimum event firing frequency
+	@param maxFrequency maximum event firing frequency
+	@see #getEffectiveFrequency()
+	*/
+	public synchronized void setAdaptiveFrequency(int minFrequency, int maxFrequency){
+		AdaptiveFrequencyController adaptiveFrequencyController=new AdaptiveFrequencyController(minFrequency, maxFrequency);
+		setFrequency(adaptiveFrequencyController.clamp(frequency), false);
+		this.adaptiveFrequencyController=adaptiveFrequencyController;
+		thread.requestFrequencyMode(AdaptiveFrequencyController.evalPeriodNanos(frequency), adaptiveFrequencyController);
+	}
+
+	/**
+	@return {@code true} if the adaptive frequency mode is enabled, see {@link #setAdaptiveFrequency(int, int)}.
+	*/
+	public boolean getAdaptiveFrequency(){
+		return adaptiveFrequencyController!=null;
+	}
+
+	/**
+	@return the event firing frequency currently used by the pen. It is the frequency given to {@link #setFrequencyLater(int)} unless the adaptive frequency mode is enabled.
+	*/
+	public double getEffectiveFrequency(){
+		return 1e9/thread.periodNanos;
+	}
+
+	/**
+	@return the events per second scheduled by the devices as measured by the adaptive frequency mode, or {@code -1} if it is not enabled.
+	*/
+	public double getMeasuredInputRate(){
+		AdaptiveFrequencyController adaptiveFrequencyController=this.adaptiveFrequencyController;
+		return adaptiveFrequencyController==null? -1: adaptiveFrequencyController.getInputRate();
 	}
 
 	private synchronized void setFrequency(int frequency, boolean wait) {
@@ -223,7 +505,7 @@ public class Pen extends PenState {
 			throw new IllegalArgumentException();
 		if(frequency==this.frequency)
 			return;
-		if(wait && SwingUtilities.isEventDispatchThread())
+		if(wait && ThreadUtils.isEventDispatchThread())
 			throw new Error("Cannot call setFrequency(int, <true>) from the event dispatcher thread");
 		L.finest("v");
 		MyThread oldThread=this.thread;
@@ -236,12 +518,47 @@ public class Pen extends PenState {
 		L.finest("^");
 	}
 
+	/**
+	@return the clock timing this pen, see {@link PenManager#PenManager(jpen.owner.PenOwner, PenClock)}
+	*/
+	public PenClock getClock(){
+		return clock;
+	}
+
+	/**
+	@return the chain of filters run on each level sample scheduled by the devices, add stages to it to process the samples before they become {@link PLevelEvent}s.
+	*/
+	public PenFilterChain getFilterChain(){
+		return scheduler.filterChain;
+	}
+
+	/**
+	@return the jitter reduction filter run on the {@link PenFilterChain#SMOOTHING_ORDER} stage of the {@link #getFilterChain()}. It does nothing until its parameters are set.
+	*/
+	public OneEuroFilter getOneEuroFilter(){
+		return scheduler.oneEuroFilter;
+	}
+
+	/**
+	@return the predictor of the movement and pressure levels run on the {@link PenFilterChain#PREDICTION_ORDER} stage of the {@link #getFilterChain()}, updated before each {@link PenListener#penTock(long)}. It is off until its horizon is set.
+	*/
+	public MotionPredictor getMotionPredictor(){
+		return scheduler.motionPredictor;
+	}
+
+	/**
+	@return the frequency given to {@link #setFrequencyLater(int)}, or the initial frequency of the adaptive frequency mode. See {@link #getEffectiveFrequency()}.
+	*/
 	public int getFrequency() {
 		return frequency;
 	}
 
 	public int getPeriodMillis(){
-		return thread.periodMillis;
+		return (int)(thread.periodNanos/1000000l);
+	}
+
+	public long getPeriodNanos(){
+		return thread.periodNanos;
 	}
 
 	public synchronized Exception getThreadException(){
@@ -254,29 +571,151 @@ public class Pen extends PenState {
 	@param l the listener to be added
 	*/
 	public void addListener(PenListener l) {
+		addListener(l, PenListenerMask.ALL);
+	}
+
+	/**
+	Adds a {@link PenListener} called only for the events accepted by the given mask. The events outside of the mask are skipped without calling the listener.
+	
+	@param l the listener to be added
+	@param mask the events the listener is interested in
+	*/
+	public void addListener(PenListener l, PenListenerMask mask) {
+		if(mask==null)
+			throw new IllegalArgumentException("null mask");
 		synchronized(listeners) {
 			listeners.add(l);
+			listenerMasks.add(mask);
 			listenersArray=null;
 		}
 	}
 
 	/**
-	Removes a {@link PenListener} previously added using {@link #addListener(PenListener)}.
+	Removes a {@link PenListener} previously added using {@link #addListener(PenListener)} or {@link #addListener(PenListener, PenListenerMask)}.
 	
 	@param l the listener to be removed
 	*/
 	public void removeListener(PenListener l) {
 		synchronized(listeners) {
-			listeners.remove(l);
+			int index=listeners.indexOf(l);
+			if(index<0)
+				return;
+			listeners.remove(index);
+			listenerMasks.remove(index);
 			listenersArray=null;
 		}
 	}
 
 	PenListener[] getListenersArray() {
 		synchronized(listeners){
-			if(listenersArray==null)
+			if(listenersArray==null){
 				listenersArray=listeners.toArray(new PenListener[listeners.size()]);
+				listenerLatencyHistograms.keySet().retainAll(listeners);
+				listenerLatencyHistogramsArray=new LatencyHistogram[listenersArray.length];
+				for(int i=listenersArray.length; --i>=0;){
+					LatencyHistogram latencyHistogram=listenerLatencyHistograms.get(listenersArray[i]);
+					if(latencyHistogram==null)
+						listenerLatencyHistograms.put(listenersArray[i], latencyHistogram=new LatencyHistogram());
+					listenerLatencyHistogramsArray[i]=latencyHistogram;
+				}
+				listenerLevelTypesBitsArray=new int[listenersArray.length];
+				for(int i=listenersArray.length; --i>=0;)
+					listenerLevelTypesBitsArray[i]=listenerMasks.get(i).getLevelTypesBits();
+				listenerIndexesArrays=new int[PenListenerMask.EventKind.VALUES.length][];
+				for(PenListenerMask.EventKind eventKind: PenListenerMask.EventKind.VALUES){
+					int[] indexes=new int[listenersArray.length];
+					int count=0;
+					for(int i=0; i<listenersArray.length; i++)
+						if(listenerMasks.get(i).accepts(eventKind))
+							indexes[count++]=i;
+					listenerIndexesArrays[eventKind.ordinal()]=Arrays.copyOf(indexes, count);
+				}
+			}
 			return listenersArray;
 		}
 	}
+
+	/**
+	Fires the event to the listeners whose {@link PenListenerMask} accepts it, recording the latencies.
+	*/
+	void dispatch(PenEvent event){
+		PenListener[] listenersArray;
+		LatencyHistogram[] listenerLatencyHistogramsArray;
+		int[] listenerIndexes;
+		int[] listenerLevelTypesBitsArray;
+		synchronized(listeners){
+			listenersArray=getListenersArray();
+			listenerLatencyHistogramsArray=this.listenerLatencyHistogramsArray;
+			listenerIndexes=listenerIndexesArrays[event.getListenerEventKind().ordinal()];
+			listenerLevelTypesBitsArray=this.listenerLevelTypesBitsArray;
+		}
+		int levelTypesBits=event instanceof PLevelEvent? PenListenerMask.evalLevelTypesBits((PLevelEvent)event): 0;
+		long time=clock.nanoTime();
+		stageLatencyHistograms[LatencyHistogram.Stage.SCHEDULE_TO_DISPATCH.ordinal()].record(time-event.getTimeNanos());
+		for(int j=0; j<listenerIndexes.length; j++){
+			int i=listenerIndexes[j];
+			if(levelTypesBits!=0 && (listenerLevelTypesBitsArray[i] & levelTypesBits)==0)
+				continue;
+			event.dispatch(listenersArray[i]);
+			long endTime=clock.nanoTime();
+			listenerLatencyHistogramsArray[i].record(endTime-time);
+			time=endTime;
+		}
+	}
+
+	LatencyHistogram getLatencyHistogram(LatencyHistogram.Stage stage){
+		return stageLatencyHistograms[stage.ordinal()];
+	}
+
+	/**
+	@return the histogram of the time taken by the given listener to process each event or {@code null} if the listener is not added to this pen.
+	*/
+	LatencyHistogram getListenerLatencyHistogram(PenListener l){
+		synchronized(listeners){
+			getListenersArray();
+			return listenerLatencyHistograms.get(l);
+		}
+	}
+
+	void resetLatencyHistograms(){
+		scheduler.resetDeviceDelays(); // the jitter is measured again from the new smallest delays.
+		for(LatencyHistogram latencyHistogram: stageLatencyHistograms)
+			latencyHistogram.reset();
+		synchronized(listeners){
+			for(LatencyHistogram latencyHistogram: listenerLatencyHistograms.values())
+				latencyHistogram.reset();
+		}
+	}
+
+	/**
+	Adds a {@link PenBatchListener} receiving all the {@link PenEvent}s fired by this pen on each tock as one {@link PenEventBatch}. The batch listeners are called on the pen thread after the events were dispatched to the {@link PenListener}s.
+
+	@param l the listener to be added
+	*/
+	public void addBatchListener(PenBatchListener l) {
+		synchronized(batchListeners) {
+			batchListeners.add(l);
+			batchListenersArray=null;
+		}
+	}
+
+	/**
+	Removes a {@link PenBatchListener} previously added using {@link #addBatchListener(PenBatchListener)}.
+
+	@param l the listener to be removed
+	*/
+	public void removeBatchListener(PenBatchListener l) {
+		synchronized(batchListeners) {
+			batchListeners.remove(l);
+			batchListenersArray=null;
+		}
+	}
+
+	PenBatchListener[] getBatchListenersArray() {
+		synchronized(batchListeners){
+			if(batchListenersArray==null)
+				batchListenersArray=batchListeners.toArray(new PenBatchListener[batchListeners.size()]);
+			return batchListenersArray;
+		}
+	}
 }
\ No newline at end of file
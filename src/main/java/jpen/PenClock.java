@@ -0,0 +1,82 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import jpen.internal.ThreadUtils;
+
+/**
+Source of the time used by the pen pipeline: the {@link PenScheduler} timestamps the events and filters with it, the {@link Pen} thread paces its tocks with it and the providers can use it to pace their events. {@link #SYSTEM} is used by default, a {@link VirtualPenClock} can be given to {@link PenManager#PenManager(jpen.owner.PenOwner, PenClock)} to run the pipeline on virtual time.
+*/
+public abstract class PenClock{
+
+	/**
+	The real time, as given by {@link System#nanoTime()}.
+	*/
+	public static final PenClock SYSTEM=new PenClock(){
+				private final long millisOrigin=System.currentTimeMillis();
+				private final long nanosOrigin=System.nanoTime();
+
+				@Override
+				public long nanoTime(){
+					return System.nanoTime();
+				}
+
+				@Override
+				public void parkUntilNanos(long deadlineNanos){
+					ThreadUtils.parkUntilNanos(deadlineNanos);
+				}
+
+				@Override
+				public long toMillis(long nanoTime){
+					return millisOrigin+(nanoTime-nanosOrigin)/1000000l;
+				}
+
+				@Override
+				public String toString(){
+					return "[PenClock: SYSTEM]";
+				}
+			};
+
+	/**
+	@return the current time in nanoseconds. As {@link System#nanoTime()}, only the differences between values are meaningful.
+	*/
+	public abstract long nanoTime();
+
+	/**
+	Blocks the current thread until {@link #nanoTime()} reaches the given deadline or, on clocks supporting it, {@link #unpark(Thread)} is called for it.
+	*/
+	public abstract void parkUntilNanos(long deadlineNanos);
+
+	/**
+	Makes {@link #parkUntilNanos(long)} return early on the given thread, e.g. to stop it. As {@link java.util.concurrent.locks.LockSupport#unpark(Thread)}, if the thread is not parked its next park returns at once. The default implementation does nothing: the real time reaches the deadline anyway.
+	*/
+	public void unpark(Thread thread){}
+
+	/**
+	@return the time in milliseconds since the epoch corresponding to the given {@link #nanoTime()} value
+	*/
+	public abstract long toMillis(long nanoTime);
+
+	/**
+	@return {@link #nanoTime()} converted to milliseconds since the epoch, unlike {@link System#currentTimeMillis()} it is not affected by system clock adjustments.
+	*/
+	public final long currentTimeMillis(){
+		return toMillis(nanoTime());
+	}
+}
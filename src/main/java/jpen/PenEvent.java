@@ -21,53 +21,163 @@ package jpen;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import jpen.event.PenListener;
+import jpen.event.PenListenerMask;
 import jpen.internal.AccessibleField;
+import jpen.internal.MpscRingBuffer;
 
 public abstract class PenEvent
 	implements java.io.Serializable {
 	public static final long serialVersionUID=2l;
 
 	protected long time=-1;
-	transient volatile PenEvent next;
+	private transient long timeNanos=-1;
 	public final transient Pen pen;
-	private final byte deviceId;
-	private final long deviceTime;
+	private byte deviceId;
+	private long deviceTime;
 	private transient Object penOwnerTag;
+	/** Where this event returns when released, {@code null} if this event is not recycled. */
+	private final transient MpscRingBuffer<PenEvent> pool;
+	private transient volatile int referenceCount;
+	private static final AtomicIntegerFieldUpdater<PenEvent> referenceCountUpdater=AtomicIntegerFieldUpdater.newUpdater(PenEvent.class, "referenceCount");
 
 	PenEvent(PenDevice device, long deviceTime) {
 		this(device.getProvider().getConstructor().getPenManager().pen,
 				 device.getId(),
-				 deviceTime);
+				 deviceTime, null);
 	}
 
-	private PenEvent(Pen pen, byte deviceId, long deviceTime){
+	/**
+	Constructs a recyclable event, see {@link PenEventPool}.
+	*/
+	PenEvent(Pen pen, MpscRingBuffer<PenEvent> pool){
+		this(pen, (byte)0, 0, pool);
+	}
+
+	/**
+	Constructs a not recyclable copy of the given event.
+	*/
+	PenEvent(PenEvent ev){
+		this(ev.pen, ev.deviceId, ev.deviceTime, null);
+		this.time=ev.time;
+		this.timeNanos=ev.timeNanos;
+		this.penOwnerTag=ev.penOwnerTag;
+	}
+
+	private PenEvent(Pen pen, byte deviceId, long deviceTime, MpscRingBuffer<PenEvent> pool){
 		this.pen=pen;
 		this.deviceId=deviceId;
 		this.deviceTime=deviceTime;
+		this.pool=pool;
+	}
+
+	/**
+	Called by the {@link PenEventPool} when taking this event from its pool.
+	*/
+	final void reuse(byte deviceId, long deviceTime){
+		this.deviceId=deviceId;
+		this.deviceTime=deviceTime;
+		this.time=-1;
+		this.timeNanos=-1;
+		this.penOwnerTag=null;
+		referenceCountUpdater.set(this, 1);
+	}
+
+	/**
+	Called by the {@link PenEventPool} when taking this event from its pool to stand for the given event: takes its device and times.
+	*/
+	final void reuse(PenEvent ev){
+		reuse(ev.deviceId, ev.deviceTime);
+		this.time=ev.time;
+		this.timeNanos=ev.timeNanos;
+		this.penOwnerTag=ev.penOwnerTag;
+	}
+
+	/**
+	@return {@code true} if this event is returned to a pool and reused after being released, see {@link Pen#setRecycleEvents(boolean)}.
+	*/
+	public final boolean isRecyclable(){
+		return pool!=null;
+	}
+
+	/**
+	Keeps this event from being recycled after it is dispatched. Each call must be balanced with a call to {@link #release()} when the event is no longer used. Does nothing if this event is not {@link #isRecyclable()}.
+
+	@return this event
+	@throws IllegalStateException if this event was already recycled
+	@see Pen#setRecycleEvents(boolean)
+	*/
+	public final PenEvent retain(){
+		if(pool==null)
+			return this;
+		int referenceCount;
+		do{
+			referenceCount=this.referenceCount;
+			if(referenceCount<=0)
+				throw new IllegalStateException("event already recycled");
+		}while(!referenceCountUpdater.compareAndSet(this, referenceCount, referenceCount+1)); // validated before writing: a misuse does not corrupt the count.
+		return this;
 	}
 
-	static final class Dummy
-		extends PenEvent{
-		Dummy(){
-			super(null, (byte)0, 0);
+	/**
+	Releases a reference taken with {@link #retain()}. The {@link Pen} releases its own reference after dispatching this event to all the listeners. When no references are left the event returns to its pool and its values can change at any moment. Does nothing if this event is not {@link #isRecyclable()}.
+
+	@throws IllegalStateException if this event was already recycled
+	*/
+	public final void release(){
+		if(pool==null)
+			return;
+		int referenceCount;
+		do{
+			referenceCount=this.referenceCount;
+			if(referenceCount<=0)
+				throw new IllegalStateException("event already recycled");
+		}while(!referenceCountUpdater.compareAndSet(this, referenceCount, referenceCount-1));
+		if(referenceCount==1){
+			penOwnerTag=null;
+			pool.offer(this); // if the pool is full then the event is left to the garbage collector.
 		}
-		@Override
-		void copyTo(PenState penState){}
-		@Override
-		void dispatch(){}
 	}
 
 	/**
-	@return the time in milliseconds of when this event was scheduled by the {@link Pen}
+	@return a copy of this event which is never recycled.
+	*/
+	public abstract PenEvent copy();
+
+	/**
+	@return the time in milliseconds of when this event was scheduled by the {@link Pen}. Derived from {@link #getTimeNanos()}, so it is not affected by system clock adjustments done after the pen was started.
 	*/
 	public long getTime() {
 		return time;
 	}
 
+	/**
+	@return the time in nanoseconds of when this event was scheduled by the {@link Pen}, as given by its {@link Pen#getClock()} ({@link System#nanoTime()} by default). Only meaningful inside the JVM which scheduled the event: it is {@code -1} after deserialization.
+	*/
+	public long getTimeNanos() {
+		return timeNanos;
+	}
+
+	/**
+	Sets the scheduling time, see {@link #getTimeNanos()}.
+	*/
+	final void setTimeNanos(long timeNanos){
+		this.timeNanos=timeNanos;
+		this.time=pen.clock.toMillis(timeNanos);
+	}
+
 	abstract void copyTo(PenState penState);
 
-	abstract void dispatch();
+	/**
+	Calls the method of the given listener receiving this kind of event.
+	*/
+	abstract void dispatch(PenListener l);
+
+	/**
+	@return the {@link PenListenerMask.EventKind} of this event, used by the {@link Pen} to skip the listeners not interested on it.
+	*/
+	abstract PenListenerMask.EventKind getListenerEventKind();
 
 	/**
 	@return the id of the {@link PenDevice} which generated this event
@@ -0,0 +1,97 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.Arrays;
+import jpen.event.PenBatchListener;
+
+/**
+The {@link PenEvent}s dispatched by the {@link Pen} on one tock, in dispatching order, given to the {@link PenBatchListener}s. For each event index the batch also gives the {@link PenState} of the pen right after the event was applied.<p>
+
+The same batch instance is reused on each tock: it and its events (see {@link Pen#setRecycleEvents(boolean)}) must not be used after {@link PenBatchListener#penEventBatch(PenEventBatch)} returns.
+*/
+public final class PenEventBatch{
+	private PenEvent[] events=new PenEvent[64];
+	private PenStateCopy[] penStates=new PenStateCopy[64];
+	private int size;
+
+	PenEventBatch(){}
+
+	/**
+	@return the number of events on this batch
+	*/
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size==0;
+	}
+
+	/**
+	@param index from {@code 0} to {@code size()-1}
+	@return the event dispatched at the given index
+	*/
+	public PenEvent getEvent(int index){
+		checkIndex(index);
+		return events[index];
+	}
+
+	/**
+	@param index from {@code 0} to {@code size()-1}
+	@return the state of the pen after the event at the given index was applied. Valid only during the batch listener call.
+	*/
+	public PenState getPenState(int index){
+		checkIndex(index);
+		return penStates[index];
+	}
+
+	private void checkIndex(int index){
+		if(index<0 || index>=size)
+			throw new IndexOutOfBoundsException("index: "+index+", size: "+size);
+	}
+
+	void add(PenEvent ev, PenState penState){
+		if(size==events.length){
+			events=Arrays.copyOf(events, size<<1);
+			penStates=Arrays.copyOf(penStates, size<<1);
+		}
+		PenStateCopy eventPenState=penStates[size];
+		if(eventPenState==null)
+			penStates[size]=eventPenState=new PenStateCopy();
+		eventPenState.setValues(penState);
+		events[size++]=ev;
+	}
+
+	/**
+	Releases the events and empties this batch.
+	*/
+	void clear(){
+		for(int i=size; --i>=0;){
+			events[i].release();
+			events[i]=null;
+		}
+		size=0;
+	}
+
+	@Override
+	public String toString(){
+		return "[PenEventBatch: size="+size+"]";
+	}
+}
@@ -0,0 +1,193 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import jpen.filter.PenSample;
+import jpen.internal.MpscRingBuffer;
+
+/**
+Recycles the {@link PenEvent}s scheduled by the {@link PenScheduler} when {@link Pen#setRecycleEvents(boolean)} is enabled. There is one pool per event "shape": level events are pooled by the set of {@link PLevel.Type}s they carry (so the {@link PLevelEvent#levels} array and its {@code PLevel}s keep their type and only their values are set), button and scroll events by their type and kind events by their {@link PKind}. Custom types are not pooled. The level events merged by the {@link PLevelEventCoalescer} have their own pools and keep their history arrays.<p>
+
+The {@code acquire} methods must be called while holding the scheduler lock, the events are released from the pen thread or from the listeners ({@link PenEvent#release()}).
+*/
+final class PenEventPool{
+	/** Maximum number of idle events kept for each event shape. */
+	static final int POOL_CAPACITY=64;
+
+	private final Pen pen;
+	private volatile boolean enabled;
+	private final MpscRingBuffer<PenEvent>[] levelEventPools=createPools(1<<PLevel.Type.VALUES.size());
+	/** Taken only by the pen thread: the pools have a single consumer. */
+	private final MpscRingBuffer<PenEvent>[] coalescedLevelEventPools=createPools(1<<PLevel.Type.VALUES.size());
+	private final MpscRingBuffer<PenEvent>[] buttonEventPools=createPools(PButton.Type.VALUES.size());
+	private final MpscRingBuffer<PenEvent>[] scrollEventPools=createPools(PScroll.Type.VALUES.size());
+	private final MpscRingBuffer<PenEvent>[] kindEventPools=createPools(PKind.Type.VALUES.size());
+
+	PenEventPool(Pen pen){
+		this.pen=pen;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static MpscRingBuffer<PenEvent>[] createPools(int size){
+		return (MpscRingBuffer<PenEvent>[])new MpscRingBuffer<?>[size];
+	}
+
+	private static MpscRingBuffer<PenEvent> getPool(MpscRingBuffer<PenEvent>[] pools, int index){
+		MpscRingBuffer<PenEvent> pool=pools[index];
+		if(pool==null)
+			pools[index]=pool=new MpscRingBuffer<PenEvent>(POOL_CAPACITY);
+		return pool;
+	}
+
+	void setEnabled(boolean enabled){
+		this.enabled=enabled;
+	}
+
+	boolean getEnabled(){
+		return enabled;
+	}
+
+	/**
+	@param sample the device, device time and levels to copy on the event. Not kept.
+	*/
+	PLevelEvent acquireLevelEvent(PenSample sample){
+		int levelTypesMask=enabled? evalLevelTypesMask(sample): -1;
+		if(levelTypesMask==-1){
+			PLevel[] levels=new PLevel[sample.size()];
+			for(int i=levels.length; --i>=0;)
+				levels[i]=new PLevel(sample.getTypeNumber(i), sample.getValue(i));
+			return new PLevelEvent(sample.getDevice(), sample.getDeviceTime(), levels);
+		}
+		MpscRingBuffer<PenEvent> pool=getPool(levelEventPools, levelTypesMask);
+		PLevelEvent levelEvent=(PLevelEvent)pool.poll();
+		if(levelEvent==null)
+			levelEvent=new PLevelEvent(pen, pool, createLevels(levelTypesMask));
+		levelEvent.reuse(sample.getDevice().getId(), sample.getDeviceTime());
+		levelEvent.setHistorySize(0); // the scheduler gives history to the events merged while shedding motion.
+		for(int i=sample.size(); --i>=0;)
+			levelEvent.levels[evalLevelIndex(levelTypesMask, sample.getTypeNumber(i))].value=sample.getValue(i);
+		return levelEvent;
+	}
+
+	/**
+	Called from the pen thread by the {@link PLevelEventCoalescer}. Unlike the other {@code acquire} methods, it does not need the scheduler lock: the coalesced events have their own pools, taken only by the pen thread.
+
+	@param lastSample the event giving the device and times of the coalesced event
+	@param typeNumbers the level types of the coalesced event on the first {@code typesCount} positions
+	@return an event with the given level types (the values are to be set) and history size, its history arrays are to be filled.
+	*/
+	PLevelEvent acquireCoalescedLevelEvent(PLevelEvent lastSample, int[] typeNumbers, int typesCount, int historySize){
+		int levelTypesMask=enabled? evalLevelTypesMask(typeNumbers, typesCount): -1;
+		PLevelEvent levelEvent;
+		if(levelTypesMask==-1){
+			PLevel[] levels=new PLevel[typesCount];
+			for(int i=typesCount; --i>=0;)
+				levels[i]=new PLevel(typeNumbers[i], 0f);
+			levelEvent=new PLevelEvent(lastSample, levels);
+		}else{
+			MpscRingBuffer<PenEvent> pool=getPool(coalescedLevelEventPools, levelTypesMask);
+			levelEvent=(PLevelEvent)pool.poll();
+			if(levelEvent==null)
+				levelEvent=new PLevelEvent(pen, pool, createLevels(levelTypesMask));
+			levelEvent.reuse(lastSample);
+		}
+		levelEvent.setHistorySize(historySize);
+		return levelEvent;
+	}
+
+	/**
+	@return the mask of the given distinct level type numbers or {@code -1} if they can not be pooled (custom types).
+	*/
+	private static int evalLevelTypesMask(int[] typeNumbers, int typesCount){
+		int mask=0;
+		for(int i=typesCount; --i>=0;){
+			if(typeNumbers[i]>=PLevel.Type.VALUES.size())
+				return -1;
+			mask|=1<<typeNumbers[i];
+		}
+		return mask;
+	}
+
+	/**
+	@return the mask of the level type numbers or {@code -1} if the levels can not be pooled (custom or repeated types).
+	*/
+	private static int evalLevelTypesMask(PenSample sample){
+		int mask=0;
+		for(int i=sample.size(); --i>=0;){
+			int typeNumber=sample.getTypeNumber(i);
+			if(typeNumber>=PLevel.Type.VALUES.size())
+				return -1;
+			int typeBit=1<<typeNumber;
+			if((mask & typeBit)!=0)
+				return -1;
+			mask|=typeBit;
+		}
+		return mask;
+	}
+
+	/**
+	@return the index of the level of the given type in a pooled levels array: levels are sorted by type number.
+	*/
+	private static int evalLevelIndex(int levelTypesMask, int typeNumber){
+		return Integer.bitCount(levelTypesMask & ((1<<typeNumber)-1));
+	}
+
+	private static PLevel[] createLevels(int levelTypesMask){
+		PLevel[] levels=new PLevel[Integer.bitCount(levelTypesMask)];
+		for(int typeNumber=0, i=0; i<levels.length; typeNumber++)
+			if((levelTypesMask & (1<<typeNumber))!=0)
+				levels[i++]=new PLevel(typeNumber, 0f);
+		return levels;
+	}
+
+	PButtonEvent acquireButtonEvent(PenDevice device, long deviceTime, int buttonTypeNumber, boolean value){
+		if(!enabled || buttonTypeNumber>=buttonEventPools.length)
+			return new PButtonEvent(device, deviceTime, new PButton(buttonTypeNumber, value));
+		MpscRingBuffer<PenEvent> pool=getPool(buttonEventPools, buttonTypeNumber);
+		PButtonEvent buttonEvent=(PButtonEvent)pool.poll();
+		if(buttonEvent==null)
+			buttonEvent=new PButtonEvent(pen, pool, new PButton(buttonTypeNumber, value));
+		buttonEvent.reuse(device.getId(), deviceTime);
+		buttonEvent.button.value=value;
+		return buttonEvent;
+	}
+
+	PScrollEvent acquireScrollEvent(PenDevice device, long deviceTime, int scrollTypeNumber, int value){
+		if(!enabled || scrollTypeNumber>=scrollEventPools.length)
+			return new PScrollEvent(device, deviceTime, new PScroll(scrollTypeNumber, value));
+		MpscRingBuffer<PenEvent> pool=getPool(scrollEventPools, scrollTypeNumber);
+		PScrollEvent scrollEvent=(PScrollEvent)pool.poll();
+		if(scrollEvent==null)
+			scrollEvent=new PScrollEvent(pen, pool, new PScroll(scrollTypeNumber, value));
+		scrollEvent.reuse(device.getId(), deviceTime);
+		scrollEvent.scroll.value=value;
+		return scrollEvent;
+	}
+
+	PKindEvent acquireKindEvent(PenDevice device, long deviceTime, PKind kind){
+		if(!enabled || kind.typeNumber>=kindEventPools.length)
+			return new PKindEvent(device, deviceTime, kind);
+		MpscRingBuffer<PenEvent> pool=getPool(kindEventPools, kind.typeNumber);
+		PKindEvent kindEvent=(PKindEvent)pool.poll();
+		if(kindEvent==null)
+			kindEvent=new PKindEvent(pen, pool, kind);
+		kindEvent.reuse(device.getId(), deviceTime);
+		return kindEvent;
+	}
+}
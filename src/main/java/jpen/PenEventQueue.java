@@ -0,0 +1,282 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import jpen.internal.MpscRingBuffer;
+import jpen.internal.ThreadUtils;
+
+/**
+Events scheduled by the {@link PenScheduler} (producers) waiting to be dispatched by the {@link Pen} thread (consumer). Bounded by a capacity over which the {@link Pen.OverloadPolicy} is applied. The buffer holding the events has room for twice the capacity: with the policies which do not block the producers, the events already queued over the capacity are shed by the consumer and the events which are not shed (button, kind and scroll events) use this extra room.<p>
+
+The producers wait for room on {@link #awaitRoom(boolean)}, before taking the scheduler lock, and the consumer signals them as it takes the events. With the lossy policies the producers do not wait for room for the {@link PLevelEvent}s: over the capacity they are merged by the producers into one pending motion event following all the queued events (see {@link #takePendingMotion()}), so they shed the load even when the consumer is stalled. Only {@link PLevelEvent}s are dropped when the buffer is still full (the producer could not wait): the other events go to an unbounded overflow queue.
+*/
+final class PenEventQueue{
+	static final int MAX_CAPACITY=1<<28;
+	/** Longest time a producer waits for a signal of the consumer before checking again for room. */
+	private static final long WAIT_MILLIS=10;
+
+	private final Pen pen;
+	/** Where the producers put the events. Replaced when the capacity changes. Written only while holding the scheduler lock. */
+	private volatile MpscRingBuffer<PenEvent> producersBuffer;
+	/** Where the consumer takes the events: it moves to the {@code producersBuffer} when empty. */
+	private MpscRingBuffer<PenEvent> consumerBuffer;
+	/** The events which did not fit on the buffers. While not empty all the new events go here (or are dropped if they are {@link PLevelEvent}s) to keep the order. Written by the producers only while holding the scheduler lock. */
+	private final Queue<PenEvent> overflow=new ConcurrentLinkedQueue<PenEvent>();
+	private volatile int capacity;
+	private volatile Pen.OverloadPolicy overloadPolicy=Pen.OverloadPolicy.BLOCK_PRODUCER;
+	private final AtomicLongArray overloadActionCounts=new AtomicLongArray(Pen.OverloadAction.values().length);
+	private final Object roomLock=new Object();
+	/** Number of producers waiting on {@link #awaitRoom(boolean)}. Written only while holding the {@code roomLock}. */
+	private volatile int waitingProducersCount;
+	private final Object pendingMotionLock=new Object();
+	/** The newest level event when the queue is over its capacity with a lossy {@link Pen.OverloadPolicy}: it follows all the queued events. Written only while holding the {@code pendingMotionLock}. */
+	private volatile PLevelEvent pendingMotion;
+	/** The {@code pendingMotion} taken by the consumer when there was no other event queued, polled before any other event. */
+	private PLevelEvent takenPendingMotion;
+
+	PenEventQueue(Pen pen, int capacity){
+		this.pen=pen;
+		this.capacity=capacity;
+		consumerBuffer=producersBuffer=createBuffer(capacity);
+	}
+
+	private static MpscRingBuffer<PenEvent> createBuffer(int capacity){
+		return new MpscRingBuffer<PenEvent>(capacity<<1);
+	}
+
+	int getCapacity(){
+		return capacity;
+	}
+
+	/**
+	Must be called holding the scheduler lock. The events already queued are kept.
+	*/
+	void setCapacity(int capacity){
+		if(capacity<=0 || capacity>MAX_CAPACITY)
+			throw new IllegalArgumentException("capacity out of range: "+capacity);
+		this.capacity=capacity;
+		int bufferCapacity=producersBuffer.capacity();
+		if(bufferCapacity<capacity<<1 || bufferCapacity>=capacity<<2)
+			producersBuffer=createBuffer(capacity);
+		signalRoom();
+	}
+
+	Pen.OverloadPolicy getOverloadPolicy(){
+		return overloadPolicy;
+	}
+
+	void setOverloadPolicy(Pen.OverloadPolicy overloadPolicy){
+		if(overloadPolicy==null)
+			throw new IllegalArgumentException();
+		this.overloadPolicy=overloadPolicy;
+		signalRoom();
+	}
+
+	long getOverloadActionCount(Pen.OverloadAction overloadAction){
+		return overloadActionCounts.get(overloadAction.ordinal());
+	}
+
+	void resetOverloadActionCounts(){
+		for(int i=overloadActionCounts.length(); --i>=0;)
+			overloadActionCounts.set(i, 0);
+	}
+
+	void countOverloadAction(Pen.OverloadAction overloadAction, int count){
+		overloadActionCounts.addAndGet(overloadAction.ordinal(), count);
+	}
+
+	/**
+	@return an estimation of the number of queued events. Can be called from any thread.
+	*/
+	int size(){
+		MpscRingBuffer<PenEvent> producersBuffer=this.producersBuffer;
+		MpscRingBuffer<PenEvent> consumerBuffer=this.consumerBuffer;
+		int size=producersBuffer==consumerBuffer? producersBuffer.size(): producersBuffer.size()+consumerBuffer.size();
+		return overflow.isEmpty()? size: size+overflow.size();
+	}
+
+	/**
+	@return {@code true} if there are more events than the capacity. Can be called from any thread.
+	*/
+	boolean isOverloaded(){
+		return size()>=capacity;
+	}
+
+	/**
+	@return {@code true} if new level events must be merged into the pending motion event instead of being queued: over the capacity with a lossy {@link Pen.OverloadPolicy}. Called by a producer holding the scheduler lock.
+	*/
+	boolean mustShedMotion(){
+		return overloadPolicy!=Pen.OverloadPolicy.BLOCK_PRODUCER && size()>=capacity;
+	}
+
+	/**
+	@param levelEvent {@code true} if the producer schedules a {@link PLevelEvent}
+	@return {@code true} if a producer must wait before scheduling: over the capacity with the {@link Pen.OverloadPolicy#BLOCK_PRODUCER} policy, or when there is no room left on the buffer for an event which is not shed by the lossy policies.
+	*/
+	private boolean mustWait(boolean levelEvent){
+		int size=size();
+		return overloadPolicy==Pen.OverloadPolicy.BLOCK_PRODUCER? size>=capacity: !levelEvent && size>=capacity<<1;
+	}
+
+	/**
+	Called by a producer before taking the scheduler lock, so the other producers and the pen thread listeners needing the lock are not blocked while it waits. Does not wait when called from the event dispatch thread because the {@link Pen} thread may be waiting for it (see {@link Pen#setFirePenTockOnSwing(boolean)}), nor when called from the {@link Pen} thread (e.g. by a listener) because it is the thread making room.
+
+	@param levelEvent {@code true} if the producer schedules a {@link PLevelEvent}: they never wait with the lossy policies.
+	*/
+	void awaitRoom(boolean levelEvent){
+		if(!mustWait(levelEvent) || ThreadUtils.isEventDispatchThread() || pen.isPenThread(Thread.currentThread()))
+			return;
+		countOverloadAction(Pen.OverloadAction.BLOCKED, 1);
+		synchronized(roomLock){
+			waitingProducersCount++;
+			try{
+				while(mustWait(levelEvent) && pen.getThreadException()==null)
+					roomLock.wait(WAIT_MILLIS);
+			}catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+			}finally{
+				waitingProducersCount--;
+			}
+		}
+	}
+
+	private void signalRoom(){
+		synchronized(roomLock){
+			roomLock.notifyAll();
+		}
+	}
+
+	/**
+	Called by a producer holding the scheduler lock. Never waits: {@link #awaitRoom(boolean)} must be called before taking the lock. Queues the pending motion event first.
+
+	@return {@code false} if the event was dropped. Only {@link PLevelEvent}s are dropped, when there is no room left on the buffer.
+	*/
+	boolean offer(PenEvent ev){
+		if(pendingMotion!=null){
+			PLevelEvent pendingMotion=takePendingMotion();
+			if(pendingMotion!=null)
+				enqueue(pendingMotion);
+		}
+		if(overflow.isEmpty() && producersBuffer.offer(ev))
+			return true;
+		if(ev instanceof PLevelEvent){
+			countOverloadAction(Pen.OverloadAction.DROPPED_NEWEST, 1);
+			return false;
+		}
+		overflow.add(ev);
+		return true;
+	}
+
+	/**
+	Called by a producer holding the scheduler lock. Queues the given event, on the overflow queue if there is no room left.
+	*/
+	void enqueue(PenEvent ev){
+		if(!overflow.isEmpty() || !producersBuffer.offer(ev))
+			overflow.add(ev);
+	}
+
+	/**
+	Called by a producer holding the scheduler lock, to merge the pending motion event with a new level event.
+
+	@return the pending motion event, {@code null} if there is none or if the consumer already took it.
+	*/
+	PLevelEvent takePendingMotion(){
+		synchronized(pendingMotionLock){
+			PLevelEvent pendingMotion=this.pendingMotion;
+			this.pendingMotion=null;
+			return pendingMotion;
+		}
+	}
+
+	/**
+	Called by a producer holding the scheduler lock, after {@link #takePendingMotion()}.
+	*/
+	void setPendingMotion(PLevelEvent pendingMotion){
+		synchronized(pendingMotionLock){
+			this.pendingMotion=pendingMotion;
+		}
+	}
+
+	/**
+	Called by the consumer when there is no other event queued.
+
+	@return the pending motion event, {@code null} if there is none or if the producers queued events after checking.
+	*/
+	private PLevelEvent takeLastPendingMotion(){
+		if(pendingMotion==null)
+			return null;
+		synchronized(pendingMotionLock){
+			PLevelEvent pendingMotion=this.pendingMotion;
+			if(pendingMotion==null || !getConsumerBuffer().isEmpty() || !overflow.isEmpty()) // the producers set it after queuing the older events.
+				return null;
+			this.pendingMotion=null;
+			return pendingMotion;
+		}
+	}
+
+	private MpscRingBuffer<PenEvent> getConsumerBuffer(){
+		MpscRingBuffer<PenEvent> producersBuffer=this.producersBuffer; // read before checking the consumer buffer: a buffer is replaced after the events put on the old one are published.
+		if(consumerBuffer!=producersBuffer && consumerBuffer.isEmpty())
+			consumerBuffer=producersBuffer;
+		return consumerBuffer;
+	}
+
+	/**
+	Called by the consumer.
+	*/
+	PenEvent peek(){
+		if(takenPendingMotion!=null)
+			return takenPendingMotion;
+		PenEvent ev=getConsumerBuffer().peek();
+		if(ev==null)
+			ev=overflow.peek(); // the overflow events are newer than the buffered ones: no event is put on the buffer while the overflow is not empty.
+		if(ev==null)
+			ev=takenPendingMotion=takeLastPendingMotion();
+		return ev;
+	}
+
+	/**
+	Called by the consumer. Signals the producers waiting for room.
+	*/
+	PenEvent poll(){
+		PenEvent ev=takenPendingMotion;
+		if(ev!=null)
+			takenPendingMotion=null;
+		else{
+			ev=getConsumerBuffer().poll();
+			if(ev==null)
+				ev=overflow.poll();
+			if(ev==null)
+				ev=takeLastPendingMotion();
+		}
+		if(waitingProducersCount!=0 && !mustWait(false))
+			signalRoom();
+		return ev;
+	}
+
+	/**
+	Called by the consumer.
+	*/
+	boolean isEmpty(){
+		return takenPendingMotion==null && getConsumerBuffer().isEmpty() && overflow.isEmpty() && pendingMotion==null;
+	}
+}
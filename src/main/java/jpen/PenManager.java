@@ -29,6 +29,7 @@ import java.util.logging.Logger;
 import java.util.Map;
 import java.util.Set;
 
+import jpen.event.PenListener;
 import jpen.event.PenManagerListener;
 import jpen.internal.BuildInfo;
 import jpen.internal.ObjectUtils;
@@ -65,7 +66,7 @@ public final class PenManager {
 		PenManager.singletonMode=singletonMode;
 	}
 
-	public final Pen  pen=new Pen(this);
+	public final Pen  pen;
 	public final PenOwner penOwner;
 	private final Set<PenProvider.Constructor> providerConstructors=Collections.synchronizedSet(new HashSet<PenProvider.Constructor>());
 	private final Set<PenProvider.Constructor> providerConstructorsA=Collections.unmodifiableSet(providerConstructors);
@@ -76,7 +77,8 @@ public final class PenManager {
 	private final List<PenManagerListener> listeners=new ArrayList<PenManagerListener>();
 	private PenManagerListener[] listenersArray;
 	final PenDevice emulationDevice;
-	private PenDevice systemMouseDevice; // may be null
+	private volatile PenDevice systemMouseDevice; // may be null, written holding the deviceIdToDevice lock
+	private final PenStartupReport startupReport=new PenStartupReport();
 
 	/**
 	Creates an {@code AwtPenOwner} and calls the {@link #PenManager(PenOwner)} constructor. <b>Warning:</b> see {@link AwtPenOwner}.
@@ -88,6 +90,16 @@ public final class PenManager {
 	}
 
 	public PenManager(PenOwner penOwner) {
+		this(penOwner, PenClock.SYSTEM);
+	}
+
+	/**
+	@param clock the time source of the {@link #pen}, e.g. a {@link VirtualPenClock} to run the pipeline on virtual time
+	*/
+	public PenManager(PenOwner penOwner, PenClock clock) {
+		if(clock==null)
+			throw new IllegalArgumentException("null clock");
+		pen=new Pen(this, clock);
 		if(penOwner.enforceSinglePenManager())
 			setSingletonMode(true);
 		incrementInstanceCount();
@@ -123,25 +135,76 @@ public final class PenManager {
 	}
 
 	/**
-	In some cases, constructing providers takes considerable time (wintab), so we add them in a new thread.
+	In some cases, constructing providers takes considerable time (wintab), so we construct each one on its own thread without holding the pen scheduler lock, which is held only to add the constructed provider and its devices. The providers are added in the order given by the owner, so the device ids and the {@link #getSystemMouseProvider()} do not depend on which construction finishes first.
 	*/
 	private void addPenOwnerProviders() {
 		Thread thread=new Thread("jpen-PenManager-addPenOwnerProviders") {
 			@Override
 			public void run() {
-				synchronized(pen.scheduler) {
-					for(PenProvider.Constructor penProviderConstructor: PenManager.this.penOwner.getPenProviderConstructors())
-						addProvider(penProviderConstructor);
-				}
-				synchronized(PenManager.this) {
-					providerConstructorsInitialized=true;
-					PenManager.this.notifyAll();
+				try{
+					List<PenStartupReport.Entry> entries=new ArrayList<PenStartupReport.Entry>();
+					Set<PenProvider.Constructor> constructors=new HashSet<PenProvider.Constructor>();
+					for(PenProvider.Constructor penProviderConstructor: PenManager.this.penOwner.getPenProviderConstructors()) {
+						if(!constructors.add(penProviderConstructor)) {
+							L.warning("constructor already added: "+penProviderConstructor.getName());
+							continue;
+						}
+						entries.add(new PenStartupReport.Entry(penProviderConstructor));
+					}
+					startupReport.setEntries(entries);
+					PenStartupReport.Entry previousEntry=null;
+					for(final PenStartupReport.Entry entry: entries) {
+						final PenStartupReport.Entry entryBefore=previousEntry;
+						Thread constructorThread=new Thread("jpen-PenManager-addProvider-"+entry.constructor.getName()) {
+							@Override
+							public void run() {
+								addProvider(entry, entryBefore);
+							}
+						};
+						constructorThread.setPriority(Thread.MIN_PRIORITY);
+						constructorThread.start();
+						previousEntry=entry;
+					}
+					for(PenStartupReport.Entry entry: entries)
+						entry.waitDone();
+				} finally {
+					startupReport.setReady();
+					synchronized(PenManager.this) {
+						providerConstructorsInitialized=true;
+						PenManager.this.notifyAll();
+					}
 				}
 			}
 		};
 		thread.setPriority(Thread.MIN_PRIORITY);
 		thread.start();
 	}
+
+	/**
+	@param entryBefore the entry given before by the owner, its provider and devices must be added before. {@code null} if this is the first entry.
+	*/
+	private void addProvider(PenStartupReport.Entry entry, PenStartupReport.Entry entryBefore) {
+		PenProvider.Constructor providerConstructor=entry.constructor;
+		boolean constructable=false;
+		long constructionNanos=-1, registrationNanos=-1;
+		try {
+			long startNanos=System.nanoTime();
+			constructable=providerConstructor.constructable(this);
+			if(constructable) {
+				providerConstructor.construct(this); // a failure is kept on the constructor ConstructionException
+				constructionNanos=System.nanoTime()-startNanos;
+				if(entryBefore!=null)
+					entryBefore.waitDone();
+				long constructedNanos=System.nanoTime();
+				synchronized(pen.scheduler) {
+					registerProvider(providerConstructor);
+				}
+				registrationNanos=System.nanoTime()-constructedNanos;
+			}
+		} finally {
+			entry.setDone(constructable, constructionNanos, registrationNanos, System.nanoTime()-startupReport.getStartNanos());
+		}
+	}
 	private volatile boolean providerConstructorsInitialized=false;
 
 	private synchronized void waitForProviderConstructorsInitialization() {
@@ -149,6 +212,24 @@ public final class PenManager {
 			ObjectUtils.waitUninterrupted(this);
 	}
 
+	/**
+	Waits until the given constructor, which must be one of the {@link PenOwner#getPenProviderConstructors()}, was used to construct its {@link PenProvider} and the provider and its devices were added. Unlike {@link #getProviderConstructors()}, it does not wait for the constructors given after it by the owner.
+
+	@return the {@link PenProvider} constructed or {@code null} if it was not constructable or the construction failed (see {@link PenProvider.Constructor#getConstructionException()}).
+	*/
+	public PenProvider waitForProvider(PenProvider.Constructor providerConstructor) {
+		if(startupReport.waitForEntry(providerConstructor)==null)
+			throw new IllegalArgumentException("constructor not given by the pen owner");
+		return providerConstructor.getConstructed();
+	}
+
+	/**
+	@return the timings of the construction of the {@link PenOwner#getPenProviderConstructors()}, which are constructed concurrently. It is complete when {@link PenStartupReport#getReadyNanos()} is not {@code -1} (e.g. after {@link #getProviderConstructors()} returns).
+	*/
+	public PenStartupReport getStartupReport() {
+		return startupReport;
+	}
+
 	/**
 	@return the mouse PenProvider or {@code null} if no mouse provider has been added.
 	@see #addProvider(PenProvider.Constructor)
@@ -161,26 +242,41 @@ public final class PenManager {
 		return device!=null && device==systemMouseDevice;
 	}
 
+	/**
+	@return {@code true} if the given device is the one used by the pen to schedule emulated events (e.g. {@link PButton.Type#ON_PRESSURE} button events or the events of the {@link PLevelEmulator}).
+	*/
+	public boolean isEmulationDevice(PenDevice device) {
+		return device!=null && device==emulationDevice;
+	}
+
 	/**
 	Constructs and adds provider if {@link PenProvider.Constructor#constructable(PenManager)} is true.
 	@return The {@link PenProvider} added or null if it couldn't be constructed.
 	*/
 	private  PenProvider addProvider(PenProvider.Constructor providerConstructor) {
 		if(providerConstructor.constructable(this)) {
-			if(!this.providerConstructors.add(providerConstructor))
-				throw new IllegalArgumentException("constructor already added");
-			if(providerConstructor.construct(this)) {
-				PenProvider provider=providerConstructor.getConstructed();
-				if(!getPaused())
-					provider.penManagerPaused(false);// the provider is paused after construction, so it is not necessary to call when true
-				for(PenDevice device:provider.getDevices())
-					firePenDeviceAdded(providerConstructor, device);
-				return provider;
-			}
+			providerConstructor.construct(this);
+			return registerProvider(providerConstructor);
 		}
 		return null;
 	}
 
+	/**
+	Adds the provider constructed (if any) and its devices. Must be called holding the pen scheduler lock after {@link PenProvider.Constructor#construct(PenManager)}.
+	*/
+	private PenProvider registerProvider(PenProvider.Constructor providerConstructor) {
+		if(!this.providerConstructors.add(providerConstructor))
+			throw new IllegalArgumentException("constructor already added");
+		PenProvider provider=providerConstructor.getConstructed();
+		if(provider!=null) {
+			if(!getPaused())
+				provider.penManagerPaused(false);// the provider is paused after construction, so it is not necessary to call when true
+			for(PenDevice device:provider.getDevices())
+				firePenDeviceAdded(providerConstructor, device);
+		}
+		return provider;
+	}
+
 	public void addListener(PenManagerListener l) {
 		synchronized(listeners) {
 			listeners.add(l);
@@ -204,12 +300,15 @@ public final class PenManager {
 	}
 
 	public void firePenDeviceAdded(PenProvider.Constructor constructor, PenDevice device) {
-		byte nextDeviceId=getNextDeviceId();
-		device.penManagerSetId(nextDeviceId);
-		if(deviceIdToDevice.put(nextDeviceId, device)!=null)
-			throw new AssertionError();
-		if(systemMouseDevice==null && device instanceof MouseDevice)
-			this.systemMouseDevice=device;
+		synchronized(deviceIdToDevice) { // providers can add devices from their own threads while others are being added
+			byte nextDeviceId=getNextDeviceId();
+			device.penManagerSetId(nextDeviceId);
+			if(deviceIdToDevice.put(nextDeviceId, device)!=null)
+				throw new AssertionError();
+			if(systemMouseDevice==null && device instanceof MouseDevice)
+				this.systemMouseDevice=device;
+		}
+		pen.scheduler.resetDeviceDelay(device.getId()); // the id may have been used by another device.
 		for(PenManagerListener l: getListenersArray()) {
 			l.penDeviceAdded(constructor, device);
 		}
@@ -225,12 +324,15 @@ public final class PenManager {
 	}
 
 	public void firePenDeviceRemoved(PenProvider.Constructor constructor, PenDevice device) {
-		if(deviceIdToDevice.remove(device.getId())==null)
-			throw new IllegalArgumentException("device not found");
+		synchronized(deviceIdToDevice) {
+			if(deviceIdToDevice.remove(device.getId())==null)
+				throw new IllegalArgumentException("device not found");
+			if(systemMouseDevice==device)
+				this.systemMouseDevice=null;
+		}
+		pen.scheduler.resetDeviceDelay(device.getId());
 		for(PenManagerListener l: getListenersArray())
 			l.penDeviceRemoved(constructor, device);
-		if(systemMouseDevice==device)
-			this.systemMouseDevice=null;
 	}
 
 	public PenDevice getDevice(byte deviceId) {
@@ -276,6 +378,7 @@ public final class PenManager {
 	public void scheduleButtonEvent(PenDevice device, long deviceTime, PButton button) {
 		if(paused)
 			return;
+		pen.eventQueue.awaitRoom(false);
 		pen.scheduler.scheduleButtonEvent(device, deviceTime, button);
 	}
 
@@ -289,6 +392,7 @@ public final class PenManager {
 	public void scheduleScrollEvent(PenDevice device, long deviceTime, PScroll scroll) {
 		if(paused)
 			return;
+		pen.eventQueue.awaitRoom(false);
 		pen.scheduler.scheduleScrollEvent(device, deviceTime, scroll);
 	}
 
@@ -303,12 +407,46 @@ public final class PenManager {
 	@param deviceTime time of even creation on device
 	@param levels level values
 	@param levelsOnScreen {@code true} if the level movement values are on the screen coordinate system, {@code false} otherwise
-	@return {@code true} if an event was scheduled, {@code false} false if it was filter out
+	@return {@code true} if an event was scheduled, {@code false} false if it was filter out or dropped because the event queue was full (see {@link Pen.OverloadAction#DROPPED_NEWEST})
 	*/
 	public boolean scheduleLevelEvent(PenDevice device, long deviceTime, Collection<PLevel> levels, boolean levelsOnScreen) {
 		if(paused)
 			return false;
-		return pen.scheduler.scheduleLevelEvent(device, deviceTime, levels, levelsOnScreen);
+		pen.eventQueue.awaitRoom(true);
+		return pen.scheduler.scheduleLevelEvent(device, deviceTime, levels, levelsOnScreen, false);
+	}
+
+	/**
+	Schedules level events whose values were already smoothed, e.g. replayed from a recording of the fired events: the {@link jpen.filter.PenFilterChain#SMOOTHING_ORDER} filter stages are skipped so the values are not smoothed twice. The levels are not on the screen coordinate system.
+
+	@see #scheduleLevelEvent(PenDevice, long, Collection, boolean)
+	*/
+	public boolean scheduleSmoothedLevelEvent(PenDevice device, long deviceTime, Collection<PLevel> levels) {
+		if(paused)
+			return false;
+		pen.eventQueue.awaitRoom(true);
+		return pen.scheduler.scheduleLevelEvent(device, deviceTime, levels, false, true);
+	}
+
+	/**
+	@return the latencies (or the jitter, see {@link LatencyHistogram.Stage#DEVICE_TO_SCHEDULE_JITTER}) measured on the given stage of the pipeline since the pen manager was created or {@link #resetLatencyHistograms()} was called
+	*/
+	public LatencyHistogram getLatencyHistogram(LatencyHistogram.Stage stage){
+		return pen.getLatencyHistogram(stage);
+	}
+
+	/**
+	@return the time taken by the given listener to process each event fired by the {@link #pen}, {@code null} if the listener is not added to the pen
+	*/
+	public LatencyHistogram getListenerLatencyHistogram(PenListener l){
+		return pen.getListenerLatencyHistogram(l);
+	}
+
+	/**
+	Clears the latencies recorded on all the {@link LatencyHistogram}s.
+	*/
+	public void resetLatencyHistograms(){
+		pen.resetLatencyHistograms();
 	}
 
 	/**
@@ -20,13 +20,19 @@ package jpen;
 
 import java.awt.geom.Point2D;
 import java.awt.Point;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Map;
+import java.util.RandomAccess;
+import jpen.filter.MotionPredictor;
+import jpen.filter.OneEuroFilter;
+import jpen.filter.PenFilter;
+import jpen.filter.PenFilterChain;
+import jpen.filter.PenSample;
 import jpen.owner.PenOwner;
 import jpen.internal.filter.RelativeLocationFilter;
 
@@ -36,15 +42,26 @@ final class PenScheduler {
 	//static { L.setLevel(Level.ALL); }
 
 	private final Pen pen;
-	private PenEvent lastScheduledEvent;
+	private int droppedEventsCount;
+	/** Smallest difference between the scheduling time and the device time of each device, see {@link LatencyHistogram.Stage#DEVICE_TO_SCHEDULE_JITTER}. */
+	private final long[] minDeviceDelays=new long[1<<Byte.SIZE];
+	{
+		Arrays.fill(minDeviceDelays, Long.MAX_VALUE);
+	}
 	public final PenState lastScheduledState=new PenState();
 	private final SystemMouseFilter systemMouseFilter;
-	private final List<PLevel> scheduledLevels=new ArrayList<PLevel>();
 
 	PenScheduler(Pen pen) {
 		this.pen=pen;
-		lastScheduledEvent=pen.getLastDispatchedEvent();
 		this.systemMouseFilter=new SystemMouseFilter(pen.penManager);
+		filterChain.add("relativeLocation", PenFilterChain.RELATIVE_LOCATION_ORDER, new RelativeLocationStage());
+		filterChain.add("systemMouse", PenFilterChain.SYSTEM_MOUSE_ORDER, new SystemMouseStage());
+		filterChain.add("levelEmulator", PenFilterChain.LEVEL_EMULATOR_ORDER, new LevelEmulatorStage());
+		filterChain.add("oneEuro", PenFilterChain.SMOOTHING_ORDER, oneEuroFilter=new OneEuroFilter());
+		filterChain.add("prediction", PenFilterChain.PREDICTION_ORDER, motionPredictor=new MotionPredictor(pen.clock));
+		filterChain.add("location", PenFilterChain.LOCATION_ORDER, new LocationStage());
+		filterChain.add("dedupe", PenFilterChain.DEDUPE_ORDER, new DedupeStage());
+		filterChain.add("clip", PenFilterChain.CLIP_ORDER, new ClipStage());
 	}
 
 	/**
@@ -52,11 +69,13 @@ final class PenScheduler {
 	*/
 	private static class SystemMouseFilter {
 
-		public static int THRESHOLD_PERIOD=100;
+		public static int THRESHOLD_PERIOD=100; // millis
 		private final PenManager penManager;
-		private PLevelEvent lastLevelEvent; // last level event scheduled (not filtered)
+		// last level event scheduled (not filtered). The event is not kept because it can be recycled:
+		private byte lastLevelEventDeviceId=-1;
+		private long lastLevelEventTime; // nanos
 		boolean filteredFirstInSecuence;
-		private long firstInSecuenceTime;
+		private long firstInSecuenceTime; // nanos
 		boolean nonSystemMouseDevicePresent;
 		private int preferredKindTypeNumber=PKind.Type.IGNORE.ordinal();
 		boolean mayBeDraggingIn=true;
@@ -72,10 +91,11 @@ final class PenScheduler {
 				return false;
 			if(penManager.isSystemMouseDevice(device)) {
 				mayBeDraggingIn=false;
-				long time=System.currentTimeMillis();
-				if(lastLevelEvent!=null &&
-						lastLevelEvent.getDeviceId()!=device.getId() &&
-						time-lastLevelEvent.time<=THRESHOLD_PERIOD
+				long time=penManager.pen.clock.nanoTime();
+				long thresholdPeriodNanos=THRESHOLD_PERIOD*1000000l;
+				if(lastLevelEventDeviceId!=-1 &&
+						lastLevelEventDeviceId!=device.getId() &&
+						time-lastLevelEventTime<=thresholdPeriodNanos
 				  ) {
 					return true;
 				}
@@ -84,7 +104,7 @@ final class PenScheduler {
 					firstInSecuenceTime=time;
 					return nonSystemMouseDevicePresent;
 				}
-				if(time-firstInSecuenceTime<=THRESHOLD_PERIOD) {
+				if(time-firstInSecuenceTime<=thresholdPeriodNanos) {
 					return nonSystemMouseDevicePresent;
 				}
 				preferredKindTypeNumber=device.getKindTypeNumber();
@@ -103,7 +123,8 @@ final class PenScheduler {
 		void setLastLevelEvent(PLevelEvent lastLevelEvent) {
 			if(lastLevelEvent.getDeviceId()==penManager.emulationDevice.getId())
 				return;
-			this.lastLevelEvent=lastLevelEvent;
+			this.lastLevelEventDeviceId=lastLevelEvent.getDeviceId();
+			this.lastLevelEventTime=lastLevelEvent.getTimeNanos();
 		}
 
 		void setFirstTimeFilteringAfterPause() {
@@ -125,23 +146,31 @@ final class PenScheduler {
 			scheduleButtonReleasedEvents();
 		} else {
 			firstScheduleAfterPause=true;
-			relativeLocationFilter.reset();
-			systemMouseFilter.setFirstTimeFilteringAfterPause();
+			filterChain.reset();
 		}
 	}
 
 	private synchronized void scheduleEmulatedZeroPressureEvent() {
 		if(lastScheduledState.levels.getValue(PLevel.Type.PRESSURE)>0)
-			scheduleLevelEvent(new PLevelEvent(getEmulationDevice(), System.currentTimeMillis(),new PLevel[] {new PLevel(PLevel.Type.PRESSURE, 0)}));
+			scheduleLevelEvent(new PLevelEvent(getEmulationDevice(), pen.clock.currentTimeMillis(),new PLevel[] {new PLevel(PLevel.Type.PRESSURE, 0)}));
 	}
 
 	private final Point clipLocationOnScreen=new Point();
 	private final Point2D.Float scheduledLocation=new Point2D.Float();
 	private final RelativeLocationFilter relativeLocationFilter=new RelativeLocationFilter();
-
-	synchronized boolean scheduleLevelEvent(PenDevice device, long deviceTime, Collection<PLevel> levels, boolean levelsOnScreen) {
-		if(device.getProvider().getUseRelativeLocationFilter()) {
-			if(relativeLocationFilter.filter(lastScheduledState, device, levels, levelsOnScreen))
+	private final PenSample sample=new PenSample();
+	final PenFilterChain filterChain=new PenFilterChain();
+	final OneEuroFilter oneEuroFilter;
+	final MotionPredictor motionPredictor;
+
+	private final class RelativeLocationStage
+		implements PenFilter {
+		//@Override
+		public boolean filter(PenSample sample) {
+			PenDevice device=sample.getDevice();
+			if(!device.getProvider().getUseRelativeLocationFilter())
+				return true;
+			if(relativeLocationFilter.filter(lastScheduledState, sample))
 				switch(relativeLocationFilter.getState()) {
 				case RELATIVE:
 					device.penManagerSetUseFractionalMovements(false);
@@ -151,100 +180,235 @@ final class PenScheduler {
 					break;
 				default:
 				}
+			return true;
 		}
-		
-		if(systemMouseFilter.filterOut(device))
-			return false;
+		//@Override
+		public void reset() {
+			relativeLocationFilter.reset();
+		}
+	}
+
+	private final class SystemMouseStage
+		implements PenFilter {
+		//@Override
+		public boolean filter(PenSample sample) {
+			PenDevice device=sample.getDevice();
+			if(systemMouseFilter.filterOut(device))
+				return false;
 
-		int kindTypeNumber=systemMouseFilter.getPreferredKindTypeNumber();
-		if(kindTypeNumber!=PKind.Type.IGNORE.ordinal() &&
-				kindTypeNumber!=lastScheduledState.getKind().typeNumber &&
-				!lastScheduledState.hasPressedButtons()) {
-			PKind newKind=PKind.valueOf(kindTypeNumber);
-			if(L.isLoggable(Level.FINE)) {
-				L.fine("changing kind to:"+newKind);
-				L.fine("scheduledLevels: "+scheduledLevels);
-				L.fine("device: "+device);
+			int kindTypeNumber=systemMouseFilter.getPreferredKindTypeNumber();
+			if(kindTypeNumber!=PKind.Type.IGNORE.ordinal() &&
+					kindTypeNumber!=lastScheduledState.getKind().typeNumber &&
+					!lastScheduledState.hasPressedButtons()) {
+				PKind newKind=PKind.valueOf(kindTypeNumber);
+				if(L.isLoggable(Level.FINE)) {
+					L.fine("changing kind to:"+newKind);
+					L.fine("sample: "+sample);
+				}
+				lastScheduledState.setKind(newKind);
+				scheduleEmulatedZeroPressureEvent();
+				schedule(pen.eventPool.acquireKindEvent(device, sample.getDeviceTime(), newKind));
 			}
-			lastScheduledState.setKind(newKind);
-			scheduleEmulatedZeroPressureEvent();
-			schedule(new PKindEvent(device, deviceTime, newKind));
+			return true;
+		}
+		//@Override
+		public void reset() {
+			systemMouseFilter.setFirstTimeFilteringAfterPause();
+		}
+	}
+
+	private final class LevelEmulatorStage
+		implements PenFilter {
+		//@Override
+		public boolean filter(PenSample sample) {
+			if(sample.getDevice()==getEmulationDevice() || pen.levelEmulator==null)
+				return true;
+			int kindType=lastScheduledState.getKind().getType().ordinal();
+			for(int i=sample.size(); --i>=0;)
+				if(pen.levelEmulator.onActivePolicy(kindType, sample.getTypeNumber(i)))
+					sample.remove(i);
+			return true;
 		}
+		//@Override
+		public void reset() {}
+	}
 
-		scheduledLevels.clear();
-		float scheduledPressure=-1;
-		boolean scheduledMovement=false;
-		scheduledLocation.x=lastScheduledState.getLevelValue(PLevel.Type.X);
-		scheduledLocation.y=lastScheduledState.getLevelValue(PLevel.Type.Y);
-		PenOwner penOwner=pen.penManager==null? null:pen.penManager.penOwner; // pen.penManager can be null when running tests
-		if(penOwner!=null && levelsOnScreen)
+	private final class LocationStage
+		implements PenFilter {
+		//@Override
+		public boolean filter(PenSample sample) {
+			PenOwner penOwner=getPenOwner();
+			if(penOwner==null || !sample.getLevelsOnScreen())
+				return true;
 			penOwner.getPenClip().evalLocationOnScreen(clipLocationOnScreen);
-		for(PLevel level:levels) {
-			if(device!=getEmulationDevice() && pen.levelEmulator!=null &&
-					pen.levelEmulator.onActivePolicy(lastScheduledState.getKind().getType().ordinal(),
-							level.typeNumber))
-				continue;
-			if(level.value.isNaN())
-				continue;
-			if(level.isMovement()) {
-				float levelValue=level.value;
-				switch(level.getType() ) {
-				case X:
-					if(levelsOnScreen)
-						levelValue-=clipLocationOnScreen.x;
-					scheduledLocation.x=levelValue;
-					break;
-				case Y:
-					if(levelsOnScreen)
-						levelValue-=clipLocationOnScreen.y;
-					scheduledLocation.y=levelValue;
-					break;
-				default:
-					throw new AssertionError();
-				}
-				if(!firstScheduleAfterPause) {
-					float lastLevelValue=lastScheduledState.getLevelValue(level.typeNumber);
-					if(levelValue==lastLevelValue)
-						continue;
-					if(pen.penManager.isSystemMouseDevice(device) && Math.abs(levelValue-lastLevelValue)<1)
-						continue;
-				}
-				level.value=levelValue;
-				scheduledMovement=true;
-			} else {
-				if(!firstScheduleAfterPause && level.value==lastScheduledState.getLevelValue(level.typeNumber))
-					continue;
-				switch(level.getType()) {
-				case PRESSURE:
-					scheduledPressure=level.value;
-					break;
-				default:
-				}
+			for(int i=sample.size(); --i>=0;) {
+				int typeNumber=sample.getTypeNumber(i);
+				if(typeNumber==X)
+					sample.setValue(i, sample.getValue(i)-clipLocationOnScreen.x);
+				else if(typeNumber==Y)
+					sample.setValue(i, sample.getValue(i)-clipLocationOnScreen.y);
 			}
-			scheduledLevels.add(level);
+			return true;
 		}
-		if(scheduledLevels.isEmpty())
-			return false;
+		//@Override
+		public void reset() {}
+	}
 
-		if(scheduledMovement) {
-			if(penOwner!=null &&  !penOwner.isDraggingOut() && !penOwner.getPenClip().contains(scheduledLocation))
-				return false;
+	private final class DedupeStage
+		implements PenFilter {
+		//@Override
+		public boolean filter(PenSample sample) {
+			if(firstScheduleAfterPause)
+				return true;
+			boolean isSystemMouseDevice=pen.penManager.isSystemMouseDevice(sample.getDevice());
+			for(int i=sample.size(); --i>=0;) {
+				int typeNumber=sample.getTypeNumber(i);
+				float levelValue=sample.getValue(i);
+				float lastLevelValue=lastScheduledState.getLevelValue(typeNumber);
+				if(levelValue==lastLevelValue ||
+						isSystemMouseDevice && (typeNumber==X || typeNumber==Y) && Math.abs(levelValue-lastLevelValue)<1)
+					sample.remove(i);
+			}
+			return true;
 		}
+		//@Override
+		public void reset() {}
+	}
+
+	private final class ClipStage
+		implements PenFilter {
+		//@Override
+		public boolean filter(PenSample sample) {
+			int xIndex=sample.indexOf(X), yIndex=sample.indexOf(Y);
+			if(xIndex==-1 && yIndex==-1)
+				return true;
+			PenOwner penOwner=getPenOwner();
+			if(penOwner==null || penOwner.isDraggingOut())
+				return true;
+			scheduledLocation.x=xIndex==-1? lastScheduledState.getLevelValue(PLevel.Type.X): sample.getValue(xIndex);
+			scheduledLocation.y=yIndex==-1? lastScheduledState.getLevelValue(PLevel.Type.Y): sample.getValue(yIndex);
+			return penOwner.getPenClip().contains(scheduledLocation);
+		}
+		//@Override
+		public void reset() {}
+	}
 
-		scheduleOnPressureButtonEvent(scheduledPressure);
+	private static final int X=PLevel.Type.X.ordinal(), Y=PLevel.Type.Y.ordinal(), PRESSURE=PLevel.Type.PRESSURE.ordinal();
 
-		scheduleLevelEvent(new PLevelEvent(device, deviceTime,
-										   scheduledLevels.toArray(new PLevel[scheduledLevels.size()])));
+	private PenOwner getPenOwner() {
+		return pen.penManager==null? null:pen.penManager.penOwner; // pen.penManager can be null when running tests
+	}
+
+	synchronized boolean scheduleLevelEvent(PenDevice device, long deviceTime, Collection<PLevel> levels, boolean levelsOnScreen, boolean smoothed) {
+		sample.reset(device, deviceTime, levelsOnScreen, smoothed);
+		if(levels instanceof List && levels instanceof RandomAccess) {
+			List<PLevel> levelsList=(List<PLevel>)levels;
+			for(int i=0, size=levelsList.size(); i<size; i++)
+				addToSample(levelsList.get(i));
+		} else
+			for(PLevel level: levels)
+				addToSample(level);
+
+		if(!filterChain.filter(sample))
+			return false;
+
+		int pressureIndex=sample.indexOf(PRESSURE);
+		if(pressureIndex!=-1)
+			scheduleOnPressureButtonEvent(sample.getValue(pressureIndex));
+
+		if(!scheduleLevelEvent(pen.eventPool.acquireLevelEvent(sample)))
+			return false;
 
 		firstScheduleAfterPause=false;
 
 		return true;
 	}
 
-	private void scheduleLevelEvent(PLevelEvent levelEvent) {
+	private void addToSample(PLevel level) {
+		if(!Float.isNaN(level.value))
+			sample.add(level.typeNumber, level.value);
+	}
+
+	/** The {@code lastScheduledState} level values replaced by the level event being scheduled, restored if the event is dropped. */
+	private float[] replacedLevelValues=new float[PLevel.Type.VALUES.size()];
+
+	private boolean scheduleLevelEvent(PLevelEvent levelEvent) {
+		PLevel[] levels=levelEvent.levels;
+		if(replacedLevelValues.length<levels.length)
+			replacedLevelValues=new float[levels.length];
+		for(int i=levels.length; --i>=0;)
+			replacedLevelValues[i]=lastScheduledState.levels.getValue(levels[i].typeNumber);
 		lastScheduledState.levels.setValues(levelEvent);
-		schedule(levelEvent);
+		if(pen.eventQueue.mustShedMotion()) {
+			levelEvent=shedMotion(levelEvent);
+			prepare(levelEvent);
+			pen.eventQueue.setPendingMotion(levelEvent);
+			pen.processNewEvents();
+		} else if(!schedule(levelEvent)) {
+			for(int i=0; i<levels.length; i++) // the released event is not reused while we hold the scheduler lock.
+				lastScheduledState.levels.setValue(levels[i].typeNumber, replacedLevelValues[i]);
+			return false;
+		}
 		systemMouseFilter.setLastLevelEvent(levelEvent);
+		return true;
+	}
+
+	/** The levels of the pending motion event merged with a new level event, see {@link #shedMotion(PLevelEvent)}. */
+	private final PenSample mergedSample=new PenSample();
+
+	/**
+	Applies the lossy {@link Pen.OverloadPolicy} on the producer side while the event queue is over its capacity: merges the given event with the {@link PenEventQueue#takePendingMotion() pending motion} event of the same device instead of queuing it. The merged event has the levels of both events, its history keeps the pending motion samples with {@link Pen.OverloadPolicy#COALESCE_MOTION}. Must be called after the {@code lastScheduledState} levels were set from the given event, the {@code replacedLevelValues} having the previous ones.
+
+	@return the new pending motion event: the given event or a merged event. The merged events are released.
+	*/
+	private PLevelEvent shedMotion(PLevelEvent levelEvent) {
+		PenEventQueue eventQueue=pen.eventQueue;
+		PLevelEvent pendingMotion=eventQueue.takePendingMotion();
+		if(pendingMotion==null)
+			return levelEvent;
+		if(pendingMotion.getDeviceId()!=levelEvent.getDeviceId()) { // as the coalescer, never merges events of different devices.
+			eventQueue.enqueue(pendingMotion);
+			return levelEvent;
+		}
+		PLevel[] pendingLevels=pendingMotion.levels, levels=levelEvent.levels;
+		mergedSample.reset(levelEvent.getDevice(), levelEvent.getDeviceTime(), false);
+		for(int i=0; i<pendingLevels.length; i++)
+			mergedSample.add(pendingLevels[i].typeNumber, lastScheduledState.levels.getValue(pendingLevels[i].typeNumber));
+		for(int i=0; i<levels.length; i++)
+			if(mergedSample.indexOf(levels[i].typeNumber)==-1)
+				mergedSample.add(levels[i].typeNumber, levels[i].value);
+		PLevelEvent mergedEvent=pen.eventPool.acquireLevelEvent(mergedSample);
+		if(eventQueue.getOverloadPolicy()==Pen.OverloadPolicy.COALESCE_MOTION) {
+			int pendingHistorySize=pendingMotion.getHistorySize();
+			mergedEvent.setHistorySize(pendingHistorySize+1);
+			PLevel[] mergedLevels=mergedEvent.levels;
+			for(int i=0; i<=pendingHistorySize; i++) {
+				mergedEvent.historicalTimes[i]=i==pendingHistorySize? pendingMotion.getDeviceTime(): pendingMotion.getHistoricalDeviceTime(i);
+				for(int j=mergedLevels.length; --j>=0;)
+					mergedEvent.historicalValues[i*mergedLevels.length+j]=evalPendingLevelValue(pendingMotion, i, levels, mergedLevels[j].typeNumber);
+			}
+			eventQueue.countOverloadAction(Pen.OverloadAction.COALESCED, 1);
+		} else
+			eventQueue.countOverloadAction(Pen.OverloadAction.DROPPED_OLDEST, 1);
+		pendingMotion.release();
+		levelEvent.release();
+		return mergedEvent;
+	}
+
+	/**
+	@param historyPos a position on the history of the pending motion event, its {@link PLevelEvent#getHistorySize()} for its last sample
+	@param levels the levels of the new event merged with the pending motion event, the {@code replacedLevelValues} having their previous values
+	@return the value of the level of the given type after the pending motion sample: the levels not on the pending motion event did not change until the new event.
+	*/
+	private float evalPendingLevelValue(PLevelEvent pendingMotion, int historyPos, PLevel[] levels, int typeNumber) {
+		PLevel[] pendingLevels=pendingMotion.levels;
+		for(int i=pendingLevels.length; --i>=0;)
+			if(pendingLevels[i].typeNumber==typeNumber)
+				return historyPos==pendingMotion.getHistorySize()? pendingLevels[i].value: pendingMotion.getHistoricalLevelValue(historyPos, typeNumber);
+		for(int i=levels.length; --i>=0;)
+			if(levels[i].typeNumber==typeNumber)
+				return replacedLevelValues[i];
+		throw new AssertionError();
 	}
 
 	private void scheduleOnPressureButtonEvent(float scheduledPressure) {
@@ -254,20 +418,20 @@ final class PenScheduler {
 		if(scheduledPressure>0) {
 			if(isOnPressure)
 				return;
-			scheduleEmulatedButtonEvent(new PButton(PButton.Type.ON_PRESSURE.ordinal(), true));
+			scheduleEmulatedButtonEvent(PButton.Type.ON_PRESSURE.ordinal(), true);
 		} else if(isOnPressure) // here scheduledPressure==0
-			scheduleEmulatedButtonEvent(new PButton(PButton.Type.ON_PRESSURE.ordinal(), false));
+			scheduleEmulatedButtonEvent(PButton.Type.ON_PRESSURE.ordinal(), false);
 	}
 
 	synchronized void scheduleButtonReleasedEvents() {
 		for(int i=PButton.Type.VALUES.size(); --i>=0;)
-			scheduleEmulatedButtonEvent(new PButton(i, false));
-		for(Integer extButtonTypeNumber: lastScheduledState.extButtonTypeNumberToValue.keySet())
-			scheduleEmulatedButtonEvent(new PButton(extButtonTypeNumber, false));
+			scheduleEmulatedButtonEvent(i, false);
+		for(int extButtonTypeNumber: lastScheduledState.extButtonTypeNumberToValue.keys())
+			scheduleEmulatedButtonEvent(extButtonTypeNumber, false);
 	}
 
-	private void scheduleEmulatedButtonEvent(PButton button) {
-		scheduleButtonEvent(getEmulationDevice(), System.currentTimeMillis(), button);
+	private void scheduleEmulatedButtonEvent(int buttonTypeNumber, boolean value) {
+		scheduleButtonEvent(getEmulationDevice(), pen.clock.currentTimeMillis(), buttonTypeNumber, value);
 	}
 
 	private PenDevice getEmulationDevice() {
@@ -275,26 +439,68 @@ final class PenScheduler {
 	}
 
 	synchronized void scheduleButtonEvent(PenDevice device, long deviceTime, PButton button) {
-		if(lastScheduledState.setButtonValue(button.typeNumber, button.value)) {
+		scheduleButtonEvent(device, deviceTime, button.typeNumber, button.value);
+	}
+
+	private void scheduleButtonEvent(PenDevice device, long deviceTime, int buttonTypeNumber, boolean value) {
+		if(lastScheduledState.setButtonValue(buttonTypeNumber, value)) {
+			PButtonEvent buttonEvent=pen.eventPool.acquireButtonEvent(device, deviceTime, buttonTypeNumber, value);
 			if(L.isLoggable(Level.FINE))
-				L.fine("scheduling button event: "+button);
-			PButtonEvent buttonEvent=new PButtonEvent(device, deviceTime, button);
+				L.fine("scheduling button event: "+buttonEvent.button);
 			schedule(buttonEvent);
 			if(pen.levelEmulator!=null)
-				pen.levelEmulator.scheduleEmulatedEvent(buttonEvent);
+				pen.levelEmulator.scheduleEmulatedEvent(buttonEvent); // the event may be already dispatched and released here but it is not reused while we hold the scheduler lock.
 		}
 	}
 
 	synchronized void scheduleScrollEvent(PenDevice device, long deviceTime, PScroll scroll) {
-		schedule(new PScrollEvent(device, deviceTime, scroll));
+		schedule(pen.eventPool.acquireScrollEvent(device, deviceTime, scroll.typeNumber, scroll.value));
+	}
+
+	/**
+	Forgets the smallest delay of the given device id: called when the id is given to or taken from a device, as the new device has its own clock.
+	*/
+	synchronized void resetDeviceDelay(byte deviceId){
+		minDeviceDelays[deviceId&0xff]=Long.MAX_VALUE;
 	}
 
-	private void schedule(PenEvent ev) {
-		ev.time=System.currentTimeMillis();
-		//System.out.println("*** scheduled event *** "+System.currentTimeMillis()+", ev.time="+ev.time);
+	synchronized void resetDeviceDelays(){
+		Arrays.fill(minDeviceDelays, Long.MAX_VALUE);
+	}
+
+	private void recordDeviceToScheduleJitter(PenEvent ev){
+		long deviceDelay=ev.getTime()-ev.getDeviceTime();
+		int deviceIndex=ev.getDeviceId()&0xff;
+		if(deviceDelay<minDeviceDelays[deviceIndex])
+			minDeviceDelays[deviceIndex]=deviceDelay;
+		pen.getLatencyHistogram(LatencyHistogram.Stage.DEVICE_TO_SCHEDULE_JITTER).record((deviceDelay-minDeviceDelays[deviceIndex])*1000000l);
+	}
+
+	/**
+	Sets the scheduling time and the pen owner tag of the given event.
+	*/
+	private void prepare(PenEvent ev) {
+		ev.setTimeNanos(pen.clock.nanoTime());
+		recordDeviceToScheduleJitter(ev);
 		ev.setPenOwnerTag(pen.penManager.penOwner.evalPenEventTag(ev));
-		lastScheduledEvent.next=ev;
-		lastScheduledEvent=ev;
+	}
+
+	/**
+	@return {@code false} if the event was dropped because the event queue is full. Only {@link PLevelEvent}s are dropped (see {@link PenEventQueue#offer(PenEvent)}): the caller must restore the {@code lastScheduledState} levels.
+	*/
+	private boolean schedule(PenEvent ev) {
+		prepare(ev);
+		if(!pen.eventQueue.offer(ev)){
+			ev.release();
+			if(droppedEventsCount++==0)
+				L.warning("pen event queue full, dropping level events");
+			return false;
+		}
+		if(droppedEventsCount!=0){
+			L.warning(droppedEventsCount+" pen level events were dropped");
+			droppedEventsCount=0;
+		}
 		pen.processNewEvents();
+		return true;
 	}
 }
\ No newline at end of file
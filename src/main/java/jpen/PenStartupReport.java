@@ -0,0 +1,201 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jpen.internal.ObjectUtils;
+import jpen.provider.AbstractPenProvider;
+
+/**
+Timings of the construction of the {@link PenProvider}s given by the {@link jpen.owner.PenOwner#getPenProviderConstructors()}, see {@link PenManager#getStartupReport()}. The durations are in nanoseconds, {@code -1} when not known (yet).
+*/
+public final class PenStartupReport{
+
+	/**
+	The construction timings of one {@link PenProvider.Constructor}.
+	*/
+	public static final class Entry{
+		public final PenProvider.Constructor constructor;
+		private boolean done;
+		private boolean constructable;
+		private long constructionNanos=-1;
+		private long nativeLoadNanos=-1;
+		private long registrationNanos=-1;
+		private long readyNanos=-1;
+
+		Entry(PenProvider.Constructor constructor){
+			this.constructor=constructor;
+		}
+
+		synchronized void setDone(boolean constructable, long constructionNanos, long registrationNanos, long readyNanos){
+			this.constructable=constructable;
+			this.constructionNanos=constructionNanos;
+			if(constructor instanceof AbstractPenProvider.AbstractConstructor)
+				this.nativeLoadNanos=((AbstractPenProvider.AbstractConstructor)constructor).getNativeLoadNanos();
+			this.registrationNanos=registrationNanos;
+			this.readyNanos=readyNanos;
+			done=true;
+			notifyAll();
+		}
+
+		synchronized void waitDone(){
+			while(!done)
+				ObjectUtils.waitUninterrupted(this);
+		}
+
+		/**
+		@return {@code true} if the construction was attempted and the provider (if constructed) and its devices were added to the {@link PenManager}.
+		*/
+		public synchronized boolean getDone(){
+			return done;
+		}
+
+		public synchronized boolean getConstructable(){
+			return constructable;
+		}
+
+		/**
+		@return the time taken by {@link PenProvider.Constructor#construct(PenManager)}, including {@link #getNativeLoadNanos()}.
+		*/
+		public synchronized long getConstructionNanos(){
+			return constructionNanos;
+		}
+
+		/**
+		@return the part of the {@link #getConstructionNanos()} taken to load the native library, see {@link AbstractPenProvider.AbstractConstructor#getNativeLoadNanos()}.
+		*/
+		public synchronized long getNativeLoadNanos(){
+			return nativeLoadNanos;
+		}
+
+		/**
+		@return the time taken to add the provider and fire its devices to the {@link PenManager}, including the wait for the pen scheduler lock.
+		*/
+		public synchronized long getRegistrationNanos(){
+			return registrationNanos;
+		}
+
+		/**
+		@return the time since the {@link PenManager} creation until this entry was done.
+		*/
+		public synchronized long getReadyNanos(){
+			return readyNanos;
+		}
+
+		@Override
+		public synchronized String toString(){
+			StringBuilder sb=new StringBuilder(128);
+			sb.append(constructor.getName());
+			if(!done)
+				return sb.append(": pending").toString();
+			if(!constructable)
+				return sb.append(": not constructable").toString();
+			sb.append(constructor.getConstructed()!=null? ": constructed": ": failed");
+			sb.append(", construction=").append(toMillisString(constructionNanos));
+			if(nativeLoadNanos!=-1)
+				sb.append(" (native load=").append(toMillisString(nativeLoadNanos)).append(')');
+			sb.append(", registration=").append(toMillisString(registrationNanos));
+			sb.append(", ready at=").append(toMillisString(readyNanos));
+			return sb.toString();
+		}
+	}
+
+	private final long startNanos=System.nanoTime();
+	private volatile List<Entry> entries=Collections.emptyList();
+	private boolean entriesSet;
+	private long readyNanos=-1;
+
+	PenStartupReport(){}
+
+	long getStartNanos(){
+		return startNanos;
+	}
+
+	synchronized void setEntries(List<Entry> entries){
+		this.entries=Collections.unmodifiableList(new ArrayList<Entry>(entries));
+		entriesSet=true;
+		notifyAll();
+	}
+
+	/**
+	Waits until the entry of the given constructor is done.
+	@return the entry or {@code null} if the constructor does not come from the {@link jpen.owner.PenOwner}.
+	*/
+	Entry waitForEntry(PenProvider.Constructor constructor){
+		synchronized(this){
+			while(!entriesSet && readyNanos==-1) // ready without entries if getting the constructors from the owner failed
+				ObjectUtils.waitUninterrupted(this);
+		}
+		Entry entry=getEntry(constructor);
+		if(entry!=null)
+			entry.waitDone();
+		return entry;
+	}
+
+	synchronized void setReady(){
+		readyNanos=System.nanoTime()-startNanos;
+		notifyAll();
+	}
+
+	synchronized void waitReady(){
+		while(readyNanos==-1)
+			ObjectUtils.waitUninterrupted(this);
+	}
+
+	/**
+	@return the entries in the order given by the {@link jpen.owner.PenOwner#getPenProviderConstructors()}, empty until the {@code PenManager} gets the constructors from its owner.
+	*/
+	public List<Entry> getEntries(){
+		return entries;
+	}
+
+	/**
+	@return the entry of the given constructor or {@code null} if it does not come from the {@link jpen.owner.PenOwner}.
+	*/
+	public Entry getEntry(PenProvider.Constructor constructor){
+		for(Entry entry: entries)
+			if(entry.constructor==constructor)
+				return entry;
+		return null;
+	}
+
+	/**
+	@return the time since the {@link PenManager} creation until all the entries were done.
+	*/
+	public synchronized long getReadyNanos(){
+		return readyNanos;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder sb=new StringBuilder(256);
+		long readyNanos=getReadyNanos();
+		sb.append("[PenStartupReport: ready at=").append(readyNanos==-1? "pending": toMillisString(readyNanos));
+		for(Entry entry: entries)
+			sb.append("\n\t").append(entry);
+		return sb.append(']').toString();
+	}
+
+	private static String toMillisString(long nanos){
+		return String.format("%.1fms", nanos/1e6);
+	}
+}
@@ -18,10 +18,17 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import jpen.internal.AccessibleField;
+import jpen.internal.IntFloatMap;
+import jpen.internal.IntIntMap;
 
 public class PenState
 	implements java.io.Serializable {
@@ -30,7 +37,7 @@ public class PenState
 	public static class Levels implements java.io.Serializable {
 		public static final long serialVersionUID=1l;
 		private final float[] values=new float[PLevel.Type.VALUES.size()]; // CUSTOM type does not store value but VALUES does not have the CUSTOM
-		private final Map<Integer, Float> extTypeNumberToValue=new HashMap<Integer, Float>(2, 1); 
+		private final IntFloatMap extTypeNumberToValue=new IntFloatMap(2);
 
 		public void setValues(PenState penState){
 			setValues(penState.levels);
@@ -39,12 +46,12 @@ public class PenState
 		public void setValues(PenState.Levels levels){
 			for(int i=levels.values.length; --i>=0;)
 				values[i]=levels.values[i];
-			extTypeNumberToValue.clear();
-			extTypeNumberToValue.putAll(levels.extTypeNumberToValue);
+			extTypeNumberToValue.setAll(levels.extTypeNumberToValue);
 			for(int i=levels.values.length; i<values.length; i++){ // If a new PLevel.Type is added then transform the ext to this newer type (library backwards compat.)
-				Float value=extTypeNumberToValue.remove(i);
-				if(value!=null)
-					values[i]=value;
+				if(extTypeNumberToValue.containsKey(i)){
+					values[i]=extTypeNumberToValue.get(i, 0f);
+					extTypeNumberToValue.remove(i);
+				}
 			}
 		}
 
@@ -92,8 +99,7 @@ public class PenState
 		}
 		
 		private float getExtValue(int extLevelTypeNumber) {
-			Float value=extTypeNumberToValue.get(extLevelTypeNumber);
-			return value==null? 0f: value;
+			return extTypeNumberToValue.get(extLevelTypeNumber, 0f);
 		}
 		
 		/**
@@ -108,12 +114,48 @@ public class PenState
 		public String toString(){
 			return "(values="+Arrays.toString(values)+", extTypeNumberToValue="+extTypeNumberToValue+")";
 		}
+
+		//v Backwards compatibility: the serialized form keeps the Map the extension values were stored in before the IntFloatMap.
+		private static final ObjectStreamField[] serialPersistentFields={
+			new ObjectStreamField("values", float[].class),
+			new ObjectStreamField("extTypeNumberToValue", Map.class)
+		};
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			Map<Integer, Float> extTypeNumberToValueMap=new HashMap<Integer, Float>(2, 1);
+			for(int extTypeNumber: extTypeNumberToValue.keys())
+				extTypeNumberToValueMap.put(extTypeNumber, extTypeNumberToValue.get(extTypeNumber, 0f));
+			ObjectOutputStream.PutField fields=out.putFields();
+			fields.put("values", values);
+			fields.put("extTypeNumberToValue", extTypeNumberToValueMap);
+			out.writeFields();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			ObjectInputStream.GetField fields=in.readFields();
+			IntFloatMap extTypeNumberToValue=new IntFloatMap(2);
+			Map<Integer, Float> extTypeNumberToValueMap=(Map<Integer, Float>)fields.get("extTypeNumberToValue", null);
+			if(extTypeNumberToValueMap!=null)
+				for(Map.Entry<Integer, Float> entry: extTypeNumberToValueMap.entrySet())
+					extTypeNumberToValue.put(entry.getKey(), entry.getValue());
+			try{
+				valuesField.getField().set(this, fields.get("values", null));
+				extTypeNumberToValueField.getField().set(this, extTypeNumberToValue);
+			}catch(IllegalAccessException ex){
+				throw new AssertionError(ex);
+			}
+		}
+
+		private static final AccessibleField valuesField=new AccessibleField(Levels.class, "values");
+		private static final AccessibleField extTypeNumberToValueField=new AccessibleField(Levels.class, "extTypeNumberToValue");
+		//^
 	}
 
 	private PKind kind=PKind.valueOf(PKind.Type.CURSOR);
 	final Levels levels=new Levels();
 	private final int[] buttonValues=new int[PButton.Type.VALUES.size()]; // CUSTOM type does not store value.
-	final Map<Integer, Integer> extButtonTypeNumberToValue=new HashMap<Integer, Integer>();
+	final IntIntMap extButtonTypeNumberToValue=new IntIntMap();
 	private int pressedButtonsCount;
 
 
@@ -152,8 +194,7 @@ public class PenState
 	}
 
 	private int getExtButtonValue(int buttonTypeNumber) {
-		Integer buttonValue=extButtonTypeNumberToValue.get(buttonTypeNumber);
-		return buttonValue==null? 0: buttonValue;
+		return extButtonTypeNumberToValue.get(buttonTypeNumber, 0);
 	}
 
 	boolean setButtonValue(int buttonTypeNumber, boolean value) {
@@ -180,7 +221,7 @@ public class PenState
 		if(value){
 			if(currentValue==0)
 				pressedButtonsCount++;
-			extButtonTypeNumberToValue.put(buttonTypeNumber, getExtButtonValue(buttonTypeNumber)+1);
+			extButtonTypeNumberToValue.put(buttonTypeNumber, currentValue+1);
 		}
 		else{
 			if(currentValue>0)
@@ -194,10 +235,54 @@ public class PenState
 
 		for(int i=buttonValues.length; --i>=0;)
 			buttonValues[i]=penState.buttonValues[i];
-		extButtonTypeNumberToValue.clear();
-		extButtonTypeNumberToValue.putAll(penState.extButtonTypeNumberToValue);
+		extButtonTypeNumberToValue.setAll(penState.extButtonTypeNumberToValue);
 
 		kind=penState.kind;
 	}
 
+	//v Backwards compatibility: the serialized form keeps the Map the extension buttons were stored in before the IntIntMap.
+	private static final ObjectStreamField[] serialPersistentFields={
+		new ObjectStreamField("kind", PKind.class),
+		new ObjectStreamField("levels", Levels.class),
+		new ObjectStreamField("buttonValues", int[].class),
+		new ObjectStreamField("extButtonTypeNumberToValue", Map.class),
+		new ObjectStreamField("pressedButtonsCount", int.class)
+	};
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		Map<Integer, Integer> extButtonTypeNumberToValueMap=new HashMap<Integer, Integer>();
+		for(int extButtonTypeNumber: extButtonTypeNumberToValue.keys())
+			extButtonTypeNumberToValueMap.put(extButtonTypeNumber, extButtonTypeNumberToValue.get(extButtonTypeNumber, 0));
+		ObjectOutputStream.PutField fields=out.putFields();
+		fields.put("kind", kind);
+		fields.put("levels", levels);
+		fields.put("buttonValues", buttonValues);
+		fields.put("extButtonTypeNumberToValue", extButtonTypeNumberToValueMap);
+		fields.put("pressedButtonsCount", pressedButtonsCount);
+		out.writeFields();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields=in.readFields();
+		IntIntMap extButtonTypeNumberToValue=new IntIntMap();
+		Map<Integer, Integer> extButtonTypeNumberToValueMap=(Map<Integer, Integer>)fields.get("extButtonTypeNumberToValue", null);
+		if(extButtonTypeNumberToValueMap!=null)
+			for(Map.Entry<Integer, Integer> entry: extButtonTypeNumberToValueMap.entrySet())
+				extButtonTypeNumberToValue.put(entry.getKey(), entry.getValue());
+		kind=(PKind)fields.get("kind", null);
+		pressedButtonsCount=fields.get("pressedButtonsCount", 0);
+		try{
+			levelsField.getField().set(this, fields.get("levels", null));
+			buttonValuesField.getField().set(this, fields.get("buttonValues", null));
+			extButtonTypeNumberToValueField.getField().set(this, extButtonTypeNumberToValue);
+		}catch(IllegalAccessException ex){
+			throw new AssertionError(ex);
+		}
+	}
+
+	private static final AccessibleField levelsField=new AccessibleField(PenState.class, "levels");
+	private static final AccessibleField buttonValuesField=new AccessibleField(PenState.class, "buttonValues");
+	private static final AccessibleField extButtonTypeNumberToValueField=new AccessibleField(PenState.class, "extButtonTypeNumberToValue");
+	//^
 }
\ No newline at end of file
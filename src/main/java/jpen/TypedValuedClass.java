@@ -18,20 +18,53 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+
+/**
+The value is stored on a primitive {@code value} field declared by each subclass ({@link PLevel}, {@link PButton}, {@link PScroll}) so that the event scheduling path does not box. {@link #getValue()} is the boxed view kept for generic code.
+*/
 public abstract class TypedValuedClass<T extends Enum<T>, V>
 	extends TypedClass<T>
 	implements java.io.Serializable {
 	public static final long serialVersionUID=1l;
 
-	public V value;
-
-	TypedValuedClass(int typeNumber, V value) {
+	TypedValuedClass(int typeNumber) {
 		super(typeNumber);
-		this.value=value;
 	}
 
+	/**
+	@return the boxed value. Prefer reading the primitive {@code value} field of the subclass.
+	*/
+	public abstract V getValue();
+
+	abstract void setValue(V value);
+
 	@Override
 	public String toString() {
-		return "(type="+getType()+", value="+value+")";
+		return "(type="+getType()+", value="+getValue()+")";
+	}
+
+	//v Backwards compatibility: the serialized form keeps the old generic (erased to Object) value field.
+	private static final ObjectStreamField[] serialPersistentFields={
+		new ObjectStreamField("value", Object.class)
+	};
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields=out.putFields();
+		fields.put("value", getValue());
+		out.writeFields();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields=in.readFields();
+		Object value=fields.get("value", null);
+		if(value!=null)
+			setValue((V)value);
 	}
+	//^
 }
@@ -0,0 +1,95 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+A {@link PenClock} whose time only moves when it is advanced explicitly, allowing tests and simulations to run the pen pipeline deterministically and faster than real time. The threads parked on this clock (e.g. the {@link Pen} thread waiting for its next tock) are released when the time reaches their deadline.
+*/
+public class VirtualPenClock
+	extends PenClock{
+
+	private final long millisOrigin;
+	private long nanoTime;
+	/** Threads to release from their current or next park. Weak: a thread unparked when ending never parks again. */
+	private final Set<Thread> unparkedThreads=Collections.newSetFromMap(new WeakHashMap<Thread, Boolean>());
+
+	/**
+	Starts the virtual time at the current time.
+	*/
+	public VirtualPenClock(){
+		this(System.currentTimeMillis());
+	}
+
+	/**
+	@param millisOrigin the time in milliseconds since the epoch corresponding to the {@code 0} {@link #nanoTime()}
+	*/
+	public VirtualPenClock(long millisOrigin){
+		this.millisOrigin=millisOrigin;
+	}
+
+	@Override
+	public synchronized long nanoTime(){
+		return nanoTime;
+	}
+
+	public synchronized void advanceNanos(long nanos){
+		if(nanos<0)
+			throw new IllegalArgumentException("the time can not go back: "+nanos);
+		nanoTime+=nanos;
+		notifyAll();
+	}
+
+	public void advanceMillis(long millis){
+		advanceNanos(millis*1000000l);
+	}
+
+	/**
+	Blocks until the time is advanced up to the given deadline. Returns earlier if the thread is {@link #unpark(Thread)}ed or, keeping the interrupted status, interrupted.
+	*/
+	@Override
+	public synchronized void parkUntilNanos(long deadlineNanos){
+		while(nanoTime-deadlineNanos<0 && !unparkedThreads.remove(Thread.currentThread()))
+			try{
+				wait();
+			}catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+				return;
+			}
+	}
+
+	@Override
+	public synchronized void unpark(Thread thread){
+		unparkedThreads.add(thread);
+		notifyAll();
+	}
+
+	@Override
+	public long toMillis(long nanoTime){
+		return millisOrigin+nanoTime/1000000l;
+	}
+
+	@Override
+	public synchronized String toString(){
+		return "[VirtualPenClock: nanoTime="+nanoTime+"]";
+	}
+}
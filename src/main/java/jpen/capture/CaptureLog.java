@@ -0,0 +1,457 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import jpen.PButtonEvent;
+import jpen.PenEvent;
+import jpen.PKindEvent;
+import jpen.PLevelEvent;
+import jpen.PScrollEvent;
+import jpen.codec.PenEventEncoder;
+import jpen.event.PenListener;
+import static jpen.capture.CaptureLogFormat.*;
+
+/**
+Appends the events fired by the {@link jpen.Pen} to memory-mapped segment files on a directory (see {@link CaptureLogFormat}), so the captured events survive if the JVM dies. Add it to the pen using {@link jpen.Pen#addListener(PenListener)} and {@link #close()} it after removing it. The segments can be read, also while they are being written, using a {@link CaptureLogReader}.<p>
+
+The events are encoded on the pen thread into a frame buffer which is copied to the mapped segment and committed on each {@link #penTock(long)}, or before when the frame buffer is full. Disk I/O is done by a background thread: it forces the mapped segments to disk periodically, keeps the next segment file prepared ahead and deletes the old segments exceeding the retained count. The pen thread never waits for the disk: if a segment fills up before the next one is prepared, the events are kept on the frame buffer until it is, and the events not fitting on the frame buffer are dropped (see {@link #getDroppedEventsCount()}).
+*/
+public class CaptureLog
+	implements PenListener{
+	private static final Logger L=Logger.getLogger(CaptureLog.class.getName());
+	//static { L.setLevel(Level.ALL); }
+
+	public static final int DEFAULT_SEGMENT_SIZE=1<<24;
+	public static final int DEFAULT_RETAINED_SEGMENTS_COUNT=16;
+	public static final long DEFAULT_FORCE_PERIOD_MILLIS=1000;
+	private static final int FRAME_SIZE_MAX=1<<16;
+
+	private static final class Segment{
+		final long index;
+		final File file;
+		final MappedByteBuffer buffer;
+		int writePosition=HEADER_SIZE;
+
+		Segment(long index, File file, MappedByteBuffer buffer){
+			this.index=index;
+			this.file=file;
+			this.buffer=buffer;
+		}
+	}
+
+	private final File directory;
+	private final int segmentSize;
+	private final int retainedSegmentsCount;
+	private final long forcePeriodMillis;
+	private final PenEventEncoder encoder=new PenEventEncoder();
+	private final ByteBuffer frameBuffer;
+	private final CRC32 crc32=new CRC32();
+	private Segment segment;
+	private long frameEventsCount;
+	private long committedEventsCount;
+	private long droppedEventsCount;
+	/** {@code true} while the {@code segment} is full and the next one is not prepared yet: the frame buffer is not limited by a segment and is committed to the next one. */
+	private boolean awaitingNextSegment;
+	private volatile IOException ioException;
+	private boolean closed;
+
+	private final Object segmentsLock=new Object();
+	private volatile Segment segmentToForce;
+	/** Prepared by the background thread, taken by the pen thread. */
+	private Segment nextSegment;
+	/** Used only by the background thread once started. */
+	private long nextSegmentIndex;
+	private final List<Segment> retiredSegments=new ArrayList<Segment>();
+	private boolean retentionPending=true;
+	private boolean stopped;
+	private final Thread thread;
+
+	public CaptureLog(File directory) throws IOException{
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_RETAINED_SEGMENTS_COUNT, DEFAULT_FORCE_PERIOD_MILLIS);
+	}
+
+	/**
+	@param directory where the segment files are created. The new segments are indexed after the ones already on the directory, the last one is reused if it has no committed frame.
+	@param segmentSize the size in bytes of each segment file
+	@param retainedSegmentsCount how many segment files are kept on the directory, including the one being written. {@code 0} keeps all the segments.
+	@param forcePeriodMillis the period of the forcing of the mapped segments to disk
+	*/
+	public CaptureLog(File directory, int segmentSize, int retainedSegmentsCount, long forcePeriodMillis) throws IOException{
+		if(segmentSize<HEADER_SIZE+FRAME_HEAD_SIZE+(1<<10))
+			throw new IllegalArgumentException("segmentSize too small: "+segmentSize);
+		if(retainedSegmentsCount<0)
+			throw new IllegalArgumentException("negative retainedSegmentsCount: "+retainedSegmentsCount);
+		if(forcePeriodMillis<=0)
+			throw new IllegalArgumentException("forcePeriodMillis must be positive: "+forcePeriodMillis);
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create the capture log directory: "+directory);
+		this.directory=directory;
+		this.segmentSize=segmentSize;
+		this.retainedSegmentsCount=retainedSegmentsCount;
+		this.forcePeriodMillis=forcePeriodMillis;
+		this.frameBuffer=ByteBuffer.allocate(Math.min(FRAME_SIZE_MAX, segmentSize-HEADER_SIZE-FRAME_HEAD_SIZE-4));
+		long[] segmentIndexes=getSegmentIndexes(directory);
+		nextSegmentIndex=segmentIndexes.length==0? 0: segmentIndexes[segmentIndexes.length-1]+1;
+		if(nextSegmentIndex!=0 && isUnusedSegment(nextSegmentIndex-1))
+			nextSegmentIndex--; // the next segment prepared by a writer which died: reused so the segments readers wait for stay contiguous.
+		startSegment(createSegment(nextSegmentIndex++));
+		thread=new Thread("jpen-CaptureLog"){
+						 @Override
+						 public void run(){
+							 runBackground();
+						 }
+					 };
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public File getDirectory(){
+		return directory;
+	}
+
+	//@Override
+	public synchronized void penKindEvent(PKindEvent ev){
+		write(ev);
+	}
+
+	//@Override
+	public synchronized void penLevelEvent(PLevelEvent ev){
+		write(ev);
+	}
+
+	//@Override
+	public synchronized void penButtonEvent(PButtonEvent ev){
+		write(ev);
+	}
+
+	//@Override
+	public synchronized void penScrollEvent(PScrollEvent ev){
+		write(ev);
+	}
+
+	/**
+	Commits the events received since the last tock.
+	*/
+	//@Override
+	public synchronized void penTock(long availableMillis){
+		if(closed || ioException!=null)
+			return;
+		commitFrame();
+	}
+
+	private void write(PenEvent ev){
+		if(closed || ioException!=null)
+			return;
+		if(!encoder.encode(ev, frameBuffer)){
+			commitFrame();
+			if(!encoder.encode(ev, frameBuffer)){
+				rollOver();
+				if(!encoder.encode(ev, frameBuffer)){
+					L.warning("event too big for the capture log frame, not captured: "+ev);
+					return;
+				}
+			}
+		}
+		frameEventsCount++;
+	}
+
+	/**
+	Copies the frame buffer to the segment and then writes its payload length, the commit marker. Does nothing while the next segment is not prepared.
+	*/
+	private void commitFrame(){
+		int payloadLength=frameBuffer.position();
+		if(payloadLength==0 || awaitingNextSegment && !takeNextSegment())
+			return;
+		crc32.reset();
+		crc32.update(frameBuffer.array(), 0, payloadLength);
+		int framePosition=segment.writePosition;
+		ByteBuffer segmentBuffer=segment.buffer.duplicate();
+		segmentBuffer.position(framePosition+FRAME_HEAD_SIZE);
+		segmentBuffer.put(frameBuffer.array(), 0, payloadLength);
+		segment.buffer.putInt(framePosition+4, (int)crc32.getValue());
+		segment.buffer.putInt(framePosition, payloadLength);
+		segment.writePosition=framePosition+FRAME_HEAD_SIZE+payloadLength;
+		committedEventsCount+=frameEventsCount;
+		frameEventsCount=0;
+		frameBuffer.clear();
+		limitFrameBuffer();
+	}
+
+	/**
+	Limits the frame buffer to the space remaining on the segment, keeping room for the end of segment marker.
+	*/
+	private void limitFrameBuffer(){
+		frameBuffer.limit(Math.max(0, Math.min(frameBuffer.capacity(), segmentSize-4-segment.writePosition-FRAME_HEAD_SIZE)));
+	}
+
+	/**
+	Ends the full segment and starts the next one. If the next segment is not prepared yet the frame buffer is restarted unlimited, to be committed to the next segment when it is. Called again while waiting for it (the frame buffer is full), drops the events on the frame buffer.
+	*/
+	private void rollOver(){
+		commitFrame();
+		if(awaitingNextSegment){
+			L.fine("next segment not prepared yet, dropping "+frameEventsCount+" events");
+			droppedEventsCount+=frameEventsCount;
+			frameEventsCount=0;
+			startFrame();
+			return;
+		}
+		segment.buffer.putInt(segment.writePosition, END_OF_SEGMENT);
+		synchronized(segmentsLock){
+			retiredSegments.add(segment);
+			retentionPending=true;
+			segmentsLock.notifyAll();
+		}
+		awaitingNextSegment=true;
+		if(!takeNextSegment()){
+			L.fine("next segment not prepared yet, keeping the events on the frame buffer");
+			startFrame();
+			return;
+		}
+		startFrame();
+		limitFrameBuffer();
+	}
+
+	/**
+	Takes the next segment, if prepared, as the segment being written and lets the background thread prepare the following one.
+
+	@return {@code false} if the next segment is not prepared yet.
+	*/
+	private boolean takeNextSegment(){
+		Segment next;
+		synchronized(segmentsLock){
+			next=nextSegment;
+			nextSegment=null;
+			if(next!=null)
+				segmentsLock.notifyAll();
+		}
+		if(next==null)
+			return false;
+		awaitingNextSegment=false;
+		segment=next;
+		segmentToForce=next;
+		return true;
+	}
+
+	private void startSegment(Segment segment){
+		this.segment=segment;
+		segmentToForce=segment;
+		startFrame();
+		limitFrameBuffer();
+	}
+
+	/**
+	Clears the frame buffer and writes on it the encoder header: the first frame of a segment starts a new encoding.
+	*/
+	private void startFrame(){
+		frameBuffer.clear();
+		encoder.reset();
+		encoder.writeHeader(frameBuffer);
+	}
+
+	/**
+	@return {@code true} if the segment has the size of the segments of this log and no committed frame.
+	*/
+	private boolean isUnusedSegment(long index) throws IOException{
+		RandomAccessFile randomAccessFile=new RandomAccessFile(new File(directory, getSegmentFileName(index)), "r");
+		try{
+			if(randomAccessFile.length()!=segmentSize)
+				return false;
+			randomAccessFile.seek(HEADER_SIZE);
+			return randomAccessFile.readInt()==0;
+		}finally{
+			randomAccessFile.close();
+		}
+	}
+
+	private Segment createSegment(long index) throws IOException{
+		File file=new File(directory, getSegmentFileName(index));
+		RandomAccessFile randomAccessFile=new RandomAccessFile(file, "rw");
+		try{
+			randomAccessFile.setLength(segmentSize);
+			MappedByteBuffer buffer=randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			buffer.putLong(8, index);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(0, MAGIC);
+			return new Segment(index, file, buffer);
+		}finally{
+			randomAccessFile.close();
+		}
+	}
+
+	private void runBackground(){
+		List<Segment> segmentsToForce=new ArrayList<Segment>();
+		while(true){
+			boolean applyRetention;
+			long nextIndex=-1;
+			synchronized(segmentsLock){
+				if(nextSegment==null && ioException==null)
+					nextIndex=nextSegmentIndex++;
+				segmentsToForce.addAll(retiredSegments);
+				retiredSegments.clear();
+				applyRetention=retentionPending;
+				retentionPending=false;
+			}
+			if(nextIndex!=-1)
+				prepareNextSegment(nextIndex);
+			Segment segmentToForce=this.segmentToForce;
+			if(segmentToForce!=null)
+				segmentsToForce.add(segmentToForce);
+			for(Segment segment: segmentsToForce)
+				segment.buffer.force();
+			segmentsToForce.clear();
+			if(applyRetention && !deleteOldSegments())
+				synchronized(segmentsLock){
+					retentionPending=true;
+				}
+			synchronized(segmentsLock){
+				if(stopped)
+					return;
+				if(retiredSegments.isEmpty() && (nextSegment!=null || ioException!=null))
+					try{
+						segmentsLock.wait(forcePeriodMillis);
+					}catch(InterruptedException ex){
+						return;
+					}
+			}
+		}
+	}
+
+	/**
+	Creates the next segment out of the segments lock, so the pen thread does not wait on the file creation and mapping when it commits or rolls over.
+	*/
+	private void prepareNextSegment(long index){
+		Segment segment;
+		try{
+			segment=createSegment(index);
+		}catch(IOException ex){
+			fail(ex);
+			return;
+		}
+		synchronized(segmentsLock){
+			nextSegment=segment;
+			segmentsLock.notifyAll();
+		}
+	}
+
+	/**
+	Waits until the background thread prepared the next segment, so the pen thread will not need to wait for it when rolling over. Used by the tests.
+	*/
+	void awaitNextSegmentPrepared() throws InterruptedException{
+		synchronized(segmentsLock){
+			while(nextSegment==null && ioException==null && !stopped)
+				segmentsLock.wait();
+		}
+	}
+
+	/**
+	@return {@code false} if a segment which must be deleted could not be deleted.
+	*/
+	private boolean deleteOldSegments(){
+		if(retainedSegmentsCount==0)
+			return true;
+		long firstRetainedIndex=segmentToForce.index-retainedSegmentsCount+1;
+		boolean allDeleted=true;
+		for(long segmentIndex: getSegmentIndexes(directory)){
+			if(segmentIndex>=firstRetainedIndex)
+				break;
+			File file=new File(directory, getSegmentFileName(segmentIndex));
+			if(file.delete())
+				L.fine("deleted old segment: "+file);
+			else{
+				L.fine("could not delete old segment (still mapped?): "+file);
+				allDeleted=false;
+			}
+		}
+		return allDeleted;
+	}
+
+	private void fail(IOException ex){
+		if(ioException!=null)
+			return;
+		L.severe("capture log stopped: "+ex);
+		ioException=ex;
+	}
+
+	/**
+	@return the exception which stopped the capture or {@code null} if the capture is going well
+	*/
+	public IOException getIOException(){
+		return ioException;
+	}
+
+	/**
+	@return the count of events which have been committed to the segments.
+	*/
+	public synchronized long getCommittedEventsCount(){
+		return committedEventsCount;
+	}
+
+	/**
+	@return the count of events which were not captured because a segment filled up before the background thread prepared the next one. Use bigger segments if it is not {@code 0}.
+	*/
+	public synchronized long getDroppedEventsCount(){
+		return droppedEventsCount;
+	}
+
+	/**
+	Stops the background thread, commits the pending events (creating the next segment if they are waiting for it), forces the segments to disk and deletes the prepared next segment. The events received after closing are ignored.
+	*/
+	public synchronized void close() throws IOException{
+		if(closed)
+			return;
+		closed=true;
+		synchronized(segmentsLock){
+			stopped=true;
+			segmentsLock.notifyAll();
+		}
+		try{
+			thread.join();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+		}
+		if(ioException==null){
+			if(awaitingNextSegment && nextSegment==null)
+				prepareNextSegment(nextSegmentIndex++);
+			commitFrame();
+		}
+		segment.buffer.force();
+		synchronized(segmentsLock){
+			for(Segment retiredSegment: retiredSegments)
+				retiredSegment.buffer.force();
+			retiredSegments.clear();
+			if(nextSegment!=null && !nextSegment.file.delete())
+				L.fine("could not delete the unused segment: "+nextSegment.file);
+			nextSegment=null;
+		}
+		if(ioException!=null)
+			throw ioException;
+	}
+}
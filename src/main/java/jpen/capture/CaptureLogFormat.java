@@ -0,0 +1,62 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.capture;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+Layout of the segment files of a {@link CaptureLog} directory. Each segment is named after its index ({@link #getSegmentFileName(long)}), has a fixed size and starts with the header {@code MAGIC:int VERSION:int segmentIndex:long}. Then follow the frames: {@code payloadLength:int crc32:int payload}, where the payload are records encoded by a {@link jpen.codec.PenEventEncoder} and the first frame of each segment starts with the encoder header. The payload length is written last and acts as the commit marker: the segment files are zero filled, so a zero payload length marks the end of the committed frames. A payload length of {@link #END_OF_SEGMENT} tells that the writer rolled over to the next segment.
+*/
+final class CaptureLogFormat{
+	static final int MAGIC=0x4a50434c; // "JPCL"
+	static final int VERSION=1;
+	static final int HEADER_SIZE=16;
+	static final int FRAME_HEAD_SIZE=8;
+	static final int END_OF_SEGMENT=-1;
+	static final String SEGMENT_FILE_SUFFIX=".jpcl";
+
+	private CaptureLogFormat(){}
+
+	static String getSegmentFileName(long segmentIndex){
+		return String.format("%019d", segmentIndex)+SEGMENT_FILE_SUFFIX;
+	}
+
+	/**
+	@return the indexes of the segment files on the given directory, in ascending order.
+	*/
+	static long[] getSegmentIndexes(File directory){
+		String[] fileNames=directory.list();
+		if(fileNames==null)
+			return new long[0];
+		long[] segmentIndexes=new long[fileNames.length];
+		int segmentsCount=0;
+		for(String fileName: fileNames){
+			if(!fileName.endsWith(SEGMENT_FILE_SUFFIX))
+				continue;
+			try{
+				segmentIndexes[segmentsCount]=Long.parseLong(fileName.substring(0, fileName.length()-SEGMENT_FILE_SUFFIX.length()));
+				segmentsCount++;
+			}catch(NumberFormatException ex){}
+		}
+		segmentIndexes=Arrays.copyOf(segmentIndexes, segmentsCount);
+		Arrays.sort(segmentIndexes);
+		return segmentIndexes;
+	}
+}
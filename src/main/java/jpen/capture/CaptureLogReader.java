@@ -0,0 +1,225 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import jpen.codec.PenEventDecoder;
+import static jpen.capture.CaptureLogFormat.*;
+
+/**
+Reads the events committed to the segments of a {@link CaptureLog} directory, from the oldest segment on. It can be used while the capture log is being written: {@link #next(PenEventDecoder.Handler)} returns {@code false} when there are no more committed frames and can be called again later to tail the log. A frame whose checksum does not match is considered not yet committed. When the end of the committed frames of a segment is reached (for example, because the writer died) the reading goes on with the next segment containing committed frames, if any. While tailing, only the segment following the one being read is checked: its mapping is kept and the directory is listed again only when that segment does not exist yet. This class is not thread safe.
+*/
+public class CaptureLogReader{
+	private static final Logger L=Logger.getLogger(CaptureLogReader.class.getName());
+	//static { L.setLevel(Level.ALL); }
+
+	private static final PenEventDecoder.Handler SKIP_HANDLER=new PenEventDecoder.Handler(){
+				//@Override
+				public void deviceDefined(byte deviceId, String physicalId){}
+				//@Override
+				public void levelEvent(byte deviceId, long deviceTime, long timeNanos, int levelsCount, int[] levelTypeNumbers, float[] levelValues){}
+				//@Override
+				public void buttonEvent(byte deviceId, long deviceTime, long timeNanos, int buttonTypeNumber, boolean value){}
+				//@Override
+				public void scrollEvent(byte deviceId, long deviceTime, long timeNanos, int scrollTypeNumber, int value){}
+				//@Override
+				public void kindEvent(byte deviceId, long deviceTime, long timeNanos, int kindTypeNumber){}
+			};
+
+	private final File directory;
+	private final PenEventDecoder decoder=new PenEventDecoder();
+	private final CRC32 crc32=new CRC32();
+	private long segmentIndex=-1;
+	private MappedByteBuffer segmentBuffer;
+	/** The mapping of the segment following the one being read, prepared ahead by the writer. {@code null} if not mapped yet. */
+	private MappedByteBuffer nextSegmentBuffer;
+	private int readPosition;
+	private byte[] payload=new byte[1<<10];
+
+	public CaptureLogReader(File directory){
+		this.directory=directory;
+	}
+
+	public File getDirectory(){
+		return directory;
+	}
+
+	/**
+	@return the index of the segment being read, {@code -1} if no segment has been opened yet.
+	*/
+	public long getSegmentIndex(){
+		return segmentIndex;
+	}
+
+	/**
+	Decodes the events of the next committed frame, giving them to the handler.
+
+	@return {@code false} if there is no committed frame to read now.
+	@throws IOException if a segment is corrupted or can not be read.
+	*/
+	public boolean next(PenEventDecoder.Handler handler) throws IOException{
+		if(segmentBuffer==null && !openNextSegment())
+			return false;
+		while(true){
+			int payloadLength=segmentBuffer.getInt(readPosition);
+			if(payloadLength==END_OF_SEGMENT){
+				if(!openNextSegment())
+					return false;
+				continue;
+			}
+			if(isCommittedFrame(payloadLength)){
+				decodeFrame(payloadLength, handler);
+				return true;
+			}
+			// the writer did not commit more frames yet, or it died and another writer goes on with the next segment:
+			MappedByteBuffer nextSegmentBuffer=getNextSegmentBuffer();
+			if(nextSegmentBuffer==null? payloadLength==0 || !hasCommittedFrameAfterSegment(): !hasCommittedFrame(nextSegmentBuffer)) // lists the directory only on a torn frame
+				return false;
+			L.fine("uncommitted end of segment "+segmentIndex+", going on with the next segment");
+			if(!openNextSegment())
+				return false;
+		}
+	}
+
+	/**
+	Skips all the committed frames, the following calls to {@link #next(PenEventDecoder.Handler)} return only the frames committed after this call.
+	*/
+	public void skipToEnd() throws IOException{
+		long[] segmentIndexes=getSegmentIndexes(directory);
+		for(int i=segmentIndexes.length; --i>=0 && segmentIndexes[i]>segmentIndex;)
+			if(hasCommittedFrame(map(segmentIndexes[i]))){
+				segmentIndex=segmentIndexes[i]-1;
+				segmentBuffer=null;
+				nextSegmentBuffer=null;
+				break;
+			}
+		while(next(SKIP_HANDLER));
+	}
+
+	private boolean isCommittedFrame(int payloadLength){
+		if(payloadLength<=0 || payloadLength>segmentBuffer.limit()-4-FRAME_HEAD_SIZE-readPosition)
+			return false;
+		if(payload.length<payloadLength)
+			payload=new byte[Math.max(payloadLength, payload.length<<1)];
+		ByteBuffer frameBuffer=segmentBuffer.duplicate();
+		frameBuffer.position(readPosition+FRAME_HEAD_SIZE);
+		frameBuffer.get(payload, 0, payloadLength);
+		crc32.reset();
+		crc32.update(payload, 0, payloadLength);
+		return (int)crc32.getValue()==segmentBuffer.getInt(readPosition+4);
+	}
+
+	private void decodeFrame(int payloadLength, PenEventDecoder.Handler handler) throws IOException{
+		ByteBuffer payloadBuffer=ByteBuffer.wrap(payload, 0, payloadLength);
+		try{
+			if(decoder.getVersion()==0 && !decoder.readHeader(payloadBuffer))
+				throw new IOException("Missing event stream header on segment "+segmentIndex);
+			while(decoder.decode(payloadBuffer, handler));
+		}catch(IllegalArgumentException ex){
+			throw new IOException("Corrupted frame on segment "+segmentIndex+": "+ex.getMessage(), ex);
+		}
+		if(payloadBuffer.hasRemaining())
+			throw new IOException("Incomplete record at the end of a frame on segment "+segmentIndex);
+		readPosition+=FRAME_HEAD_SIZE+payloadLength;
+	}
+
+	/**
+	Opens the segment following the current one, listing the directory only if it is not the next index (the first segment to be read or segments were deleted).
+
+	@return {@code false} if there is no segment after the current one, or it is not yet initialized.
+	*/
+	private boolean openNextSegment() throws IOException{
+		long nextSegmentIndex=segmentIndex+1;
+		MappedByteBuffer nextSegmentBuffer=getNextSegmentBuffer();
+		if(nextSegmentBuffer==null){
+			long[] segmentIndexes=getSegmentIndexes(directory);
+			int i=0;
+			while(i<segmentIndexes.length && segmentIndexes[i]<=segmentIndex)
+				i++;
+			if(i==segmentIndexes.length)
+				return false;
+			nextSegmentIndex=segmentIndexes[i];
+			nextSegmentBuffer=map(nextSegmentIndex);
+			if(nextSegmentBuffer==null)
+				return false;
+		}
+		segmentIndex=nextSegmentIndex;
+		segmentBuffer=nextSegmentBuffer;
+		this.nextSegmentBuffer=null;
+		readPosition=HEADER_SIZE;
+		decoder.reset();
+		return true;
+	}
+
+	/**
+	@return the mapping of the segment following the current one, mapped once it exists. {@code null} if it does not exist or is not yet initialized.
+	*/
+	private MappedByteBuffer getNextSegmentBuffer() throws IOException{
+		if(nextSegmentBuffer==null && segmentBuffer!=null && getSegmentFile(segmentIndex+1).exists())
+			nextSegmentBuffer=map(segmentIndex+1);
+		return nextSegmentBuffer;
+	}
+
+	private File getSegmentFile(long segmentIndex){
+		return new File(directory, getSegmentFileName(segmentIndex));
+	}
+
+	/**
+	@return the mapped segment, or {@code null} if its header has not been written yet.
+	*/
+	private MappedByteBuffer map(long segmentIndex) throws IOException{
+		RandomAccessFile randomAccessFile=new RandomAccessFile(getSegmentFile(segmentIndex), "r");
+		try{
+			long size=randomAccessFile.length();
+			if(size<HEADER_SIZE+FRAME_HEAD_SIZE+4)
+				return null;
+			if(size>Integer.MAX_VALUE)
+				throw new IOException("Segment "+segmentIndex+" too big: "+size);
+			MappedByteBuffer buffer=randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if(buffer.getInt(0)==0)
+				return null;
+			if(buffer.getInt(0)!=MAGIC)
+				throw new IOException("Segment "+segmentIndex+" is not a capture log segment.");
+			if(buffer.getInt(4)>VERSION)
+				throw new IOException("Unsupported capture log segment version: "+buffer.getInt(4));
+			return buffer;
+		}finally{
+			randomAccessFile.close();
+		}
+	}
+
+	private boolean hasCommittedFrameAfterSegment() throws IOException{
+		for(long nextSegmentIndex: getSegmentIndexes(directory))
+			if(nextSegmentIndex>segmentIndex && hasCommittedFrame(map(nextSegmentIndex)))
+				return true;
+		return false;
+	}
+
+	private static boolean hasCommittedFrame(MappedByteBuffer segmentBuffer){
+		return segmentBuffer!=null && segmentBuffer.getInt(HEADER_SIZE)!=0;
+	}
+}
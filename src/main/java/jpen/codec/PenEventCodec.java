@@ -0,0 +1,120 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import jpen.PLevel;
+
+/**
+Wire format written by the {@link PenEventEncoder} and read by the {@link PenEventDecoder}.<p>
+
+The stream starts with the header {@code MAGIC:int VERSION:byte standardLevelTypesCount:byte (levelQuantum:float){standardLevelTypesCount+1}}, the last quantum is used by the custom level types. Fixed size values are big endian. Then follow the records, each one starting with a tag byte: the record type on the upper 3 bits and the device id on the lower 5 bits. The device id value {@link #DEVICE_ID_ESCAPE} on the tag means that the device id follows as a {@code byte}.
+<ul>
+<li>{@code DEVICE physicalIdLength:varint physicalId:UTF-8}: dictionary entry, written before the first event of the device. The deltas of the device are restarted.</li>
+<li>{@code LEVEL_EVENT head levelsMask:varint (levelDelta:zvarint)* [extLevelsCount:varint (typeNumber:varint level:zvarint)*]}: the bit {@code n} of the mask tells if there is a level of the standard type {@code n}, the bit {@code standardLevelTypesCount} tells if there are custom levels. Levels are quantized values: {@code round(value/levelQuantum)}. Standard levels are written as the difference with the last value of the same type on the device.</li>
+<li>{@code BUTTON_EVENT head (typeNumber<<1|value):varint}</li>
+<li>{@code SCROLL_EVENT head typeNumber:varint value:zvarint}</li>
+<li>{@code KIND_EVENT head typeNumber:varint}</li>
+</ul>
+Where {@code head} is {@code timeMicrosDelta:zvarint deviceTimeDelta:zvarint}: the scheduling time difference in microseconds with the previous record and the device time difference with the previous event of the device. {@code varint} is the unsigned LEB128 encoding and {@code zvarint} is the zig-zag encoding of a signed value as {@code varint}.
+*/
+final class PenEventCodec{
+	static final int MAGIC=0x4a504556; // "JPEV"
+	static final int VERSION=1;
+
+	static final int DEVICE=0;
+	static final int LEVEL_EVENT=1;
+	static final int BUTTON_EVENT=2;
+	static final int SCROLL_EVENT=3;
+	static final int KIND_EVENT=4;
+
+	static final int TYPE_SHIFT=5;
+	static final int DEVICE_ID_ESCAPE=0x1f;
+
+	static final int DEVICE_SLOTS_COUNT=256;
+	static final int STANDARD_LEVEL_TYPES_COUNT=PLevel.Type.VALUES.size();
+	static final int HEADER_SIZE_MAX=4+1+1+4*(STANDARD_LEVEL_TYPES_COUNT+1);
+	static final int VARINT_SIZE_MAX=10;
+
+	static final Charset UTF_8=Charset.forName("UTF-8");
+
+	private PenEventCodec(){}
+
+	static float getDefaultLevelQuantum(int levelTypeNumber){
+		if(levelTypeNumber>=STANDARD_LEVEL_TYPES_COUNT)
+			return 1f/(1<<12);
+		switch(PLevel.Type.VALUES.get(levelTypeNumber)){
+		case X:
+		case Y:
+			return 1f/(1<<8);
+		case PRESSURE:
+		case SIDE_PRESSURE:
+			return 1f/(1<<16);
+		default:
+			return 1f/(1<<13);
+		}
+	}
+
+	static void putVarLong(ByteBuffer buffer, long value){
+		while((value & ~0x7fl)!=0){
+			buffer.put((byte)((value & 0x7f)|0x80));
+			value>>>=7;
+		}
+		buffer.put((byte)value);
+	}
+
+	static long getVarLong(ByteBuffer buffer){
+		long value=0;
+		for(int shift=0; shift<64; shift+=7){
+			byte b=buffer.get();
+			value|=(long)(b & 0x7f)<<shift;
+			if(b>=0)
+				return value;
+		}
+		throw new IllegalArgumentException("Malformed varint on the pen event stream.");
+	}
+
+	static int getVarInt(ByteBuffer buffer){
+		long value=getVarLong(buffer);
+		if(value<0 || value>Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Out of range varint on the pen event stream: "+value);
+		return (int)value;
+	}
+
+	static void putZigZag(ByteBuffer buffer, long value){
+		putVarLong(buffer, (value<<1)^(value>>63));
+	}
+
+	static long getZigZag(ByteBuffer buffer){
+		long value=getVarLong(buffer);
+		return (value>>>1)^-(value & 1);
+	}
+
+	static void putFixedInt(ByteBuffer buffer, int value){
+		buffer.put((byte)(value>>>24));
+		buffer.put((byte)(value>>>16));
+		buffer.put((byte)(value>>>8));
+		buffer.put((byte)value);
+	}
+
+	static int getFixedInt(ByteBuffer buffer){
+		return (buffer.get() & 0xff)<<24 | (buffer.get() & 0xff)<<16 | (buffer.get() & 0xff)<<8 | (buffer.get() & 0xff);
+	}
+}
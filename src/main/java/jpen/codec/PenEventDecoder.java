@@ -0,0 +1,258 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import jpen.PLevel;
+import static jpen.codec.PenEventCodec.*;
+
+/**
+Reads the event records written by a {@link PenEventEncoder}, giving their values to a {@link Handler} without creating objects. This class is not thread safe.
+*/
+public final class PenEventDecoder{
+
+	/**
+	Receives the decoded records. The times are the values of {@link jpen.PenEvent#getTimeNanos()} truncated to microseconds and the level values are rounded to the quantum of their type.
+	*/
+	public interface Handler{
+		/**
+		Called when the dictionary entry of a device is read, before its first event.
+
+		@param physicalId the {@link jpen.PenDevice#getPhysicalId()}, empty if it was not available
+		*/
+		void deviceDefined(byte deviceId, String physicalId);
+		/**
+		@param levelTypeNumbers the level type numbers on the first {@code levelsCount} positions. The arrays are reused on each call. The standard levels come first, in type number order.
+		*/
+		void levelEvent(byte deviceId, long deviceTime, long timeNanos, int levelsCount, int[] levelTypeNumbers, float[] levelValues);
+		void buttonEvent(byte deviceId, long deviceTime, long timeNanos, int buttonTypeNumber, boolean value);
+		void scrollEvent(byte deviceId, long deviceTime, long timeNanos, int scrollTypeNumber, int value);
+		void kindEvent(byte deviceId, long deviceTime, long timeNanos, int kindTypeNumber);
+	}
+
+	private int version;
+	private int standardLevelTypesCount;
+	private float[] levelQuanta;
+	private long timeMicros;
+	private final boolean[] deviceDefined=new boolean[DEVICE_SLOTS_COUNT];
+	private final long[] deviceTimes=new long[DEVICE_SLOTS_COUNT];
+	private long[] levels;
+	// the record being read, applied when it is complete:
+	private int recordType;
+	private int deviceSlot;
+	private long recordTimeMicros;
+	private long recordDeviceTime;
+	private String physicalId;
+	private int typeNumber;
+	private long value;
+	private long mask;
+	private long[] quantizedLevels;
+	private int levelsCount;
+	private int[] levelTypeNumbers=new int[8];
+	private float[] levelValues=new float[8];
+
+	/**
+	@return {@code false} if there is not enough data remaining on the buffer, nothing is read in that case.
+	@throws IllegalArgumentException if the buffer does not start with a supported header.
+	*/
+	public boolean readHeader(ByteBuffer buffer){
+		if(version!=0)
+			throw new IllegalStateException("The header has already been read.");
+		int position=buffer.position();
+		try{
+			if(getFixedInt(buffer)!=MAGIC)
+				throw new IllegalArgumentException("The buffer does not contain a pen event stream.");
+			int version=buffer.get() & 0xff;
+			if(version<1 || version>VERSION)
+				throw new IllegalArgumentException("Unsupported pen event stream version: "+version);
+			int standardLevelTypesCount=buffer.get() & 0xff;
+			if(standardLevelTypesCount>=Long.SIZE)
+				throw new IllegalArgumentException("Invalid standard level types count: "+standardLevelTypesCount);
+			float[] levelQuanta=new float[standardLevelTypesCount+1];
+			for(int i=0; i<levelQuanta.length; i++)
+				levelQuanta[i]=Float.intBitsToFloat(getFixedInt(buffer));
+			this.version=version;
+			this.standardLevelTypesCount=standardLevelTypesCount;
+			this.levelQuanta=levelQuanta;
+			levels=new long[DEVICE_SLOTS_COUNT*standardLevelTypesCount];
+			quantizedLevels=new long[standardLevelTypesCount];
+			return true;
+		}catch(BufferUnderflowException ex){
+			buffer.position(position);
+			return false;
+		}
+	}
+
+	/**
+	@return the version of the stream, or {@code 0} if the header has not been read.
+	*/
+	public int getVersion(){
+		return version;
+	}
+
+	/**
+	@return the precision of the level values of the given type, as written on the header.
+	*/
+	public float getLevelQuantum(PLevel.Type levelType){
+		checkHeader();
+		return levelQuanta[Math.min(levelType.ordinal(), standardLevelTypesCount)];
+	}
+
+	/**
+	Restarts the stream: the header must be read again.
+	*/
+	public void reset(){
+		version=0;
+		timeMicros=0;
+		Arrays.fill(deviceDefined, false);
+	}
+
+	/**
+	Reads the next record and gives it to the handler.
+
+	@return {@code false} if there is not a complete record remaining on the buffer, nothing is read in that case and the call can be repeated after adding more data.
+	@throws IllegalArgumentException if the stream is corrupted.
+	*/
+	public boolean decode(ByteBuffer buffer, Handler handler){
+		checkHeader();
+		int position=buffer.position();
+		try{
+			readRecord(buffer);
+		}catch(BufferUnderflowException ex){
+			buffer.position(position);
+			return false;
+		}
+		applyRecord(handler);
+		return true;
+	}
+
+	private void checkHeader(){
+		if(version==0)
+			throw new IllegalStateException("The header must be read first.");
+	}
+
+	private void readRecord(ByteBuffer buffer){
+		int tag=buffer.get() & 0xff;
+		recordType=tag>>>TYPE_SHIFT;
+		deviceSlot=tag & DEVICE_ID_ESCAPE;
+		if(deviceSlot==DEVICE_ID_ESCAPE)
+			deviceSlot=buffer.get() & 0xff;
+		if(recordType==DEVICE){
+			byte[] physicalIdBytes=new byte[getVarInt(buffer)];
+			buffer.get(physicalIdBytes);
+			physicalId=new String(physicalIdBytes, UTF_8);
+			return;
+		}
+		if(recordType>KIND_EVENT)
+			throw new IllegalArgumentException("Unknown record type on the pen event stream: "+recordType);
+		if(!deviceDefined[deviceSlot])
+			throw new IllegalArgumentException("Event of undefined device on the pen event stream: "+deviceSlot);
+		recordTimeMicros=timeMicros+getZigZag(buffer);
+		recordDeviceTime=deviceTimes[deviceSlot]+getZigZag(buffer);
+		switch(recordType){
+		case LEVEL_EVENT:
+			readLevels(buffer);
+			break;
+		case BUTTON_EVENT:
+			value=getVarLong(buffer);
+			typeNumber=checkTypeNumber(value>>>1);
+			break;
+		case SCROLL_EVENT:
+			typeNumber=checkTypeNumber(getVarLong(buffer));
+			value=getZigZag(buffer);
+			break;
+		case KIND_EVENT:
+			typeNumber=checkTypeNumber(getVarLong(buffer));
+			break;
+		}
+	}
+
+	private static int checkTypeNumber(long typeNumber){
+		if(typeNumber>Integer.MAX_VALUE || typeNumber<0)
+			throw new IllegalArgumentException("Invalid type number on the pen event stream: "+typeNumber);
+		return (int)typeNumber;
+	}
+
+	private void readLevels(ByteBuffer buffer){
+		mask=getVarLong(buffer);
+		if(mask>>>standardLevelTypesCount>1)
+			throw new IllegalArgumentException("Invalid levels mask on the pen event stream: "+mask);
+		levelsCount=0;
+		int levelsOffset=deviceSlot*standardLevelTypesCount;
+		for(int typeNumber=0; typeNumber<standardLevelTypesCount; typeNumber++)
+			if((mask & 1l<<typeNumber)!=0){
+				quantizedLevels[typeNumber]=levels[levelsOffset+typeNumber]+getZigZag(buffer);
+				addLevel(typeNumber, quantizedLevels[typeNumber]*(double)levelQuanta[typeNumber]);
+			}
+		if(mask>>>standardLevelTypesCount==0)
+			return;
+		int extLevelsCount=getVarInt(buffer);
+		float extLevelQuantum=levelQuanta[standardLevelTypesCount];
+		for(int i=0; i<extLevelsCount; i++){
+			int typeNumber=checkTypeNumber(getVarLong(buffer));
+			addLevel(typeNumber, getZigZag(buffer)*(double)extLevelQuantum);
+		}
+	}
+
+	private void addLevel(int typeNumber, double value){
+		if(levelsCount==levelTypeNumbers.length){
+			levelTypeNumbers=Arrays.copyOf(levelTypeNumbers, levelsCount<<1);
+			levelValues=Arrays.copyOf(levelValues, levelsCount<<1);
+		}
+		levelTypeNumbers[levelsCount]=typeNumber;
+		levelValues[levelsCount]=(float)value;
+		levelsCount++;
+	}
+
+	private void applyRecord(Handler handler){
+		byte deviceId=(byte)deviceSlot;
+		if(recordType==DEVICE){
+			deviceDefined[deviceSlot]=true;
+			deviceTimes[deviceSlot]=0;
+			Arrays.fill(levels, deviceSlot*standardLevelTypesCount, (deviceSlot+1)*standardLevelTypesCount, 0);
+			String physicalId=this.physicalId;
+			this.physicalId=null;
+			handler.deviceDefined(deviceId, physicalId);
+			return;
+		}
+		timeMicros=recordTimeMicros;
+		deviceTimes[deviceSlot]=recordDeviceTime;
+		long timeNanos=recordTimeMicros*1000;
+		switch(recordType){
+		case LEVEL_EVENT:
+			int levelsOffset=deviceSlot*standardLevelTypesCount;
+			for(int typeNumber=0; typeNumber<standardLevelTypesCount; typeNumber++)
+				if((mask & 1l<<typeNumber)!=0)
+					levels[levelsOffset+typeNumber]=quantizedLevels[typeNumber];
+			handler.levelEvent(deviceId, recordDeviceTime, timeNanos, levelsCount, levelTypeNumbers, levelValues);
+			break;
+		case BUTTON_EVENT:
+			handler.buttonEvent(deviceId, recordDeviceTime, timeNanos, typeNumber, (value & 1)!=0);
+			break;
+		case SCROLL_EVENT:
+			handler.scrollEvent(deviceId, recordDeviceTime, timeNanos, typeNumber, (int)value);
+			break;
+		case KIND_EVENT:
+			handler.kindEvent(deviceId, recordDeviceTime, timeNanos, typeNumber);
+			break;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import jpen.PButtonEvent;
+import jpen.PenDevice;
+import jpen.PenEvent;
+import jpen.PKindEvent;
+import jpen.PLevel;
+import jpen.PLevelEvent;
+import jpen.PScrollEvent;
+import static jpen.codec.PenEventCodec.*;
+
+/**
+Writes {@link PenEvent}s on {@link ByteBuffer}s using a compact binary format: scheduling and device times are written as deltas and the level values are quantized and written as deltas with the previous value of the same device, so a typical movement sample takes about 10 bytes. The physical id of each device is written once, before its first event. The samples of the history of coalesced events (see {@link jpen.Pen#setCoalesceLevelEvents(boolean)}) are written as level events with their device time and a scheduling time approximated from it.<p>
+
+Encoding is stateful: the records must be decoded in the same order by a {@link PenEventDecoder}. The stream must start with {@link #writeHeader(ByteBuffer)}. This class is not thread safe.
+*/
+public final class PenEventEncoder{
+
+	private final float[] levelQuanta=new float[STANDARD_LEVEL_TYPES_COUNT+1];
+	private final double[] levelQuantaInverses=new double[levelQuanta.length];
+	private boolean headerWritten;
+	private long timeMicros;
+	private final boolean[] deviceDefined=new boolean[DEVICE_SLOTS_COUNT];
+	private final PenDevice[] devices=new PenDevice[DEVICE_SLOTS_COUNT];
+	private final long[] deviceTimes=new long[DEVICE_SLOTS_COUNT];
+	private final long[] levels=new long[DEVICE_SLOTS_COUNT*STANDARD_LEVEL_TYPES_COUNT];
+	private final long[] quantizedLevels=new long[STANDARD_LEVEL_TYPES_COUNT];
+
+	public PenEventEncoder(){
+		for(int i=levelQuanta.length; --i>=0;)
+			setLevelQuantum(i, getDefaultLevelQuantum(i));
+	}
+
+	/**
+	Sets the precision used to encode the values of the given level type. Must be called before writing the header.
+
+	@param quantum the step between encoded values. The default is 1/256 pixels for the movement levels, 1/65536 for the pressure levels and 1/8192 radians for the angles. {@link PLevel.Type#CUSTOM} sets the quantum of all the custom level types.
+	*/
+	public void setLevelQuantum(PLevel.Type levelType, float quantum){
+		if(headerWritten)
+			throw new IllegalStateException("The header has already been written.");
+		if(!(quantum>0) || Float.isInfinite(quantum))
+			throw new IllegalArgumentException("Invalid quantum: "+quantum);
+		setLevelQuantum(Math.min(levelType.ordinal(), STANDARD_LEVEL_TYPES_COUNT), quantum);
+	}
+
+	private void setLevelQuantum(int index, float quantum){
+		levelQuanta[index]=quantum;
+		levelQuantaInverses[index]=1d/quantum;
+	}
+
+	public float getLevelQuantum(PLevel.Type levelType){
+		return levelQuanta[Math.min(levelType.ordinal(), STANDARD_LEVEL_TYPES_COUNT)];
+	}
+
+	/**
+	Restarts the stream: the header must be written again and all the deltas and device dictionary entries are discarded.
+	*/
+	public void reset(){
+		headerWritten=false;
+		timeMicros=0;
+		Arrays.fill(deviceDefined, false);
+		Arrays.fill(devices, null);
+	}
+
+	/**
+	@return {@code false} if there is not enough space remaining on the buffer, nothing is written in that case.
+	*/
+	public boolean writeHeader(ByteBuffer buffer){
+		if(headerWritten)
+			throw new IllegalStateException("The header has already been written.");
+		if(buffer.remaining()<HEADER_SIZE_MAX)
+			return false;
+		putFixedInt(buffer, MAGIC);
+		buffer.put((byte)VERSION);
+		buffer.put((byte)STANDARD_LEVEL_TYPES_COUNT);
+		for(int i=0; i<levelQuanta.length; i++)
+			putFixedInt(buffer, Float.floatToIntBits(levelQuanta[i]));
+		headerWritten=true;
+		return true;
+	}
+
+	/**
+	Writes the given event and, if it is the first event of its device, the device dictionary entry.
+
+	@return {@code false} if there may not be enough space remaining on the buffer, nothing is written in that case and the call can be repeated after making room.
+	@throws IllegalArgumentException if the event is of an unknown class.
+	*/
+	public boolean encode(PenEvent ev, ByteBuffer buffer){
+		if(!headerWritten)
+			throw new IllegalStateException("The header must be written first.");
+		int deviceSlot=ev.getDeviceId() & 0xff;
+		PenDevice device=getDevice(ev);
+		byte[] physicalId=null;
+		if(!deviceDefined[deviceSlot] || devices[deviceSlot]!=device)
+			physicalId=getPhysicalId(device).getBytes(UTF_8);
+		if(buffer.remaining()<evalRecordsSizeMax(ev, physicalId))
+			return false;
+		if(physicalId!=null){
+			putTag(buffer, DEVICE, deviceSlot);
+			putVarLong(buffer, physicalId.length);
+			buffer.put(physicalId);
+			deviceDefined[deviceSlot]=true;
+			devices[deviceSlot]=device;
+			deviceTimes[deviceSlot]=0;
+			Arrays.fill(levels, deviceSlot*STANDARD_LEVEL_TYPES_COUNT, (deviceSlot+1)*STANDARD_LEVEL_TYPES_COUNT, 0);
+		}
+		if(ev instanceof PLevelEvent){
+			PLevelEvent levelEvent=(PLevelEvent)ev;
+			for(int pos=0, historySize=levelEvent.getHistorySize(); pos<historySize; pos++){
+				long timeOffsetMillis=levelEvent.getHistoricalDeviceTime(pos)-ev.getDeviceTime();
+				putHead(buffer, LEVEL_EVENT, deviceSlot, ev.getTimeNanos()+timeOffsetMillis*1000000l, ev.getDeviceTime()+timeOffsetMillis);
+				putLevels(buffer, deviceSlot, levelEvent, pos);
+			}
+			putHead(buffer, LEVEL_EVENT, deviceSlot, ev);
+			putLevels(buffer, deviceSlot, levelEvent, -1);
+		}else if(ev instanceof PButtonEvent){
+			putHead(buffer, BUTTON_EVENT, deviceSlot, ev);
+			PButtonEvent buttonEvent=(PButtonEvent)ev;
+			putVarLong(buffer, (long)buttonEvent.button.typeNumber<<1 | (buttonEvent.button.value? 1: 0));
+		}else if(ev instanceof PScrollEvent){
+			putHead(buffer, SCROLL_EVENT, deviceSlot, ev);
+			PScrollEvent scrollEvent=(PScrollEvent)ev;
+			putVarLong(buffer, scrollEvent.scroll.typeNumber);
+			putZigZag(buffer, scrollEvent.scroll.value);
+		}else if(ev instanceof PKindEvent){
+			putHead(buffer, KIND_EVENT, deviceSlot, ev);
+			putVarLong(buffer, ((PKindEvent)ev).kind.typeNumber);
+		}else
+			throw new IllegalArgumentException("Unknown event class: "+ev.getClass());
+		return true;
+	}
+
+	private static PenDevice getDevice(PenEvent ev){
+		try{
+			return ev.getDevice();
+		}catch(IllegalStateException ex){ // deserialized event
+			return null;
+		}
+	}
+
+	private static String getPhysicalId(PenDevice device){
+		String physicalId=device==null? null: device.getPhysicalId();
+		return physicalId==null? "": physicalId;
+	}
+
+	private static int evalRecordsSizeMax(PenEvent ev, byte[] physicalId){
+		int size=2+2*VARINT_SIZE_MAX+2*VARINT_SIZE_MAX;
+		if(physicalId!=null)
+			size+=2+VARINT_SIZE_MAX+physicalId.length;
+		if(ev instanceof PLevelEvent){
+			PLevelEvent levelEvent=(PLevelEvent)ev;
+			size+=(levelEvent.getHistorySize()+1)*(2+4*VARINT_SIZE_MAX+levelEvent.levels.length*2*VARINT_SIZE_MAX);
+		}
+		return size;
+	}
+
+	private static void putTag(ByteBuffer buffer, int recordType, int deviceSlot){
+		if(deviceSlot<DEVICE_ID_ESCAPE)
+			buffer.put((byte)(recordType<<TYPE_SHIFT | deviceSlot));
+		else{
+			buffer.put((byte)(recordType<<TYPE_SHIFT | DEVICE_ID_ESCAPE));
+			buffer.put((byte)deviceSlot);
+		}
+	}
+
+	private void putHead(ByteBuffer buffer, int recordType, int deviceSlot, PenEvent ev){
+		putHead(buffer, recordType, deviceSlot, ev.getTimeNanos(), ev.getDeviceTime());
+	}
+
+	private void putHead(ByteBuffer buffer, int recordType, int deviceSlot, long timeNanos, long deviceTime){
+		putTag(buffer, recordType, deviceSlot);
+		long recordTimeMicros=timeNanos/1000;
+		putZigZag(buffer, recordTimeMicros-timeMicros);
+		timeMicros=recordTimeMicros;
+		putZigZag(buffer, deviceTime-deviceTimes[deviceSlot]);
+		deviceTimes[deviceSlot]=deviceTime;
+	}
+
+	/**
+	@param historyPos the position of the historical sample to write, or {@code -1} to write the current values.
+	*/
+	private void putLevels(ByteBuffer buffer, int deviceSlot, PLevelEvent levelEvent, int historyPos){
+		PLevel[] evLevels=levelEvent.levels;
+		long mask=0;
+		int extLevelsCount=0;
+		for(int i=0; i<evLevels.length; i++){
+			int typeNumber=evLevels[i].typeNumber;
+			if(typeNumber<STANDARD_LEVEL_TYPES_COUNT && (mask & 1l<<typeNumber)==0){
+				mask|=1l<<typeNumber;
+				quantizedLevels[typeNumber]=quantize(typeNumber, getLevelValue(levelEvent, i, historyPos));
+			}else
+				extLevelsCount++;
+		}
+		if(extLevelsCount>0)
+			mask|=1l<<STANDARD_LEVEL_TYPES_COUNT;
+		putVarLong(buffer, mask);
+		int levelsOffset=deviceSlot*STANDARD_LEVEL_TYPES_COUNT;
+		for(int typeNumber=0; typeNumber<STANDARD_LEVEL_TYPES_COUNT; typeNumber++)
+			if((mask & 1l<<typeNumber)!=0){
+				putZigZag(buffer, quantizedLevels[typeNumber]-levels[levelsOffset+typeNumber]);
+				levels[levelsOffset+typeNumber]=quantizedLevels[typeNumber];
+			}
+		if(extLevelsCount==0)
+			return;
+		putVarLong(buffer, extLevelsCount);
+		long standardMask=0;
+		for(int i=0; i<evLevels.length; i++){
+			int typeNumber=evLevels[i].typeNumber;
+			if(typeNumber<STANDARD_LEVEL_TYPES_COUNT && (standardMask & 1l<<typeNumber)==0)
+				standardMask|=1l<<typeNumber;
+			else{
+				putVarLong(buffer, typeNumber);
+				putZigZag(buffer, quantize(typeNumber, getLevelValue(levelEvent, i, historyPos)));
+			}
+		}
+	}
+
+	private static float getLevelValue(PLevelEvent levelEvent, int levelIndex, int historyPos){
+		PLevel level=levelEvent.levels[levelIndex];
+		return historyPos<0? level.value: levelEvent.getHistoricalLevelValue(historyPos, level.typeNumber);
+	}
+
+	private long quantize(int typeNumber, float value){
+		return Math.round(value*levelQuantaInverses[Math.min(typeNumber, STANDARD_LEVEL_TYPES_COUNT)]);
+	}
+}
@@ -32,6 +32,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import jpen.demo.Utils;
 import jpen.event.PenAdapter;
+import jpen.event.PenListenerMask;
 import jpen.PButton;
 import jpen.PButtonEvent;
 import jpen.Pen;
@@ -93,6 +94,6 @@ final class ButtonsPanel2{
 												display.update(pen);
 												pen=null;
 											}
-										});
+										}, PenListenerMask.of(PenListenerMask.EventKind.BUTTON, PenListenerMask.EventKind.TOCK));
 	}
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import java.util.Map;
 import javax.swing.Box;
 import javax.swing.JTextField;
 import jpen.event.PenAdapter;
+import jpen.event.PenListenerMask;
 import jpen.Pen;
 import jpen.PLevel;
 import jpen.PLevelEvent;
@@ -114,7 +115,7 @@ class LevelsPanel{
 													display.update(pen);
 												pen=null;
 											}
-		                });
+		                }, PenListenerMask.of(PenListenerMask.EventKind.LEVEL, PenListenerMask.EventKind.TOCK).withLevelTypes(PLevel.Type.VALUES.toArray(new PLevel.Type[0])));
 		for(PLevel.Type levelType: PLevel.Type.VALUES){
 			Display display=levelTypeToDisplay.get(levelType);
 			display.setValue(pen.getLevelValue(levelType));
@@ -22,6 +22,7 @@ import java.util.LinkedList;
 import java.util.List;
 import javax.swing.JTextField;
 import jpen.event.PenAdapter;
+import jpen.event.PenListenerMask;
 import jpen.Pen;
 import jpen.PLevelEvent;
 
@@ -56,7 +57,7 @@ class SampleRatePanel{
 			                public void penTock(long availableMillis){
 				                updateTextField();
 			                }
-		                });
+		                }, PenListenerMask.of(PenListenerMask.EventKind.LEVEL, PenListenerMask.EventKind.TOCK));
 	}
 
 
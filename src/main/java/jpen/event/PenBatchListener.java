@@ -0,0 +1,33 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.event;
+
+import jpen.PenEventBatch;
+
+/**
+Receives all the {@link jpen.PenEvent}s dispatched by the {@link jpen.Pen} on one tock at once, see {@link jpen.Pen#addBatchListener(PenBatchListener)}. Useful to process the events in one tight loop (e.g. rendering or persisting) instead of receiving one {@link PenListener} call per event.
+*/
+public interface PenBatchListener{
+	/**
+	Called from the pen thread after the events of the tock were dispatched to the {@link PenListener}s and before {@link PenListener#penTock(long)} is fired. Not called on tocks without events.
+
+	@param batch the events of the tock. Reused on the next tock: do not keep it.
+	*/
+	void penEventBatch(PenEventBatch batch);
+}
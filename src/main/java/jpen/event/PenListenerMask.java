@@ -0,0 +1,130 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.event;
+
+import jpen.PLevel;
+import jpen.PLevelEvent;
+
+/**
+The kinds of events and the {@link PLevel.Type}s a {@link PenListener} is interested in. The {@link jpen.Pen} does not call a listener added using {@link jpen.Pen#addListener(PenListener, PenListenerMask)} for the events outside of its mask, e.g. a listener interested only in the pressure is registered as {@code PenListenerMask.of(EventKind.LEVEL).withLevelTypes(PLevel.Type.PRESSURE)}. Immutable.
+*/
+public final class PenListenerMask{
+
+	public enum EventKind{
+		KIND, LEVEL, BUTTON, SCROLL,
+		/** {@link PenListener#penTock(long)} calls. */
+		TOCK;
+		public static final EventKind[] VALUES=values();
+	}
+
+	private static final int ALL_EVENT_KINDS_BITS=(1<<EventKind.VALUES.length)-1;
+	private static final int ALL_LEVEL_TYPES_BITS=(1<<PLevel.Type.ALL_VALUES.size())-1;
+
+	/** Mask accepting all the events. Used by {@link jpen.Pen#addListener(PenListener)}. */
+	public static final PenListenerMask ALL=new PenListenerMask(ALL_EVENT_KINDS_BITS, ALL_LEVEL_TYPES_BITS);
+
+	private final int eventKindsBits;
+	private final int levelTypesBits;
+
+	private PenListenerMask(int eventKindsBits, int levelTypesBits){
+		this.eventKindsBits=eventKindsBits;
+		this.levelTypesBits=levelTypesBits;
+	}
+
+	/**
+	@return a mask accepting the given event kinds and, if {@link EventKind#LEVEL} is given, the level events of any type.
+	*/
+	public static PenListenerMask of(EventKind... eventKinds){
+		int eventKindsBits=0;
+		for(EventKind eventKind: eventKinds)
+			eventKindsBits|=1<<eventKind.ordinal();
+		return new PenListenerMask(eventKindsBits, ALL_LEVEL_TYPES_BITS);
+	}
+
+	/**
+	@return a mask accepting the event kinds of this mask plus the {@link EventKind#LEVEL} events having at least one level of the given types. {@link PLevel.Type#CUSTOM} matches all the custom level types.
+	*/
+	public PenListenerMask withLevelTypes(PLevel.Type... levelTypes){
+		int levelTypesBits=0;
+		for(PLevel.Type levelType: levelTypes)
+			levelTypesBits|=1<<levelType.ordinal();
+		return new PenListenerMask(eventKindsBits | 1<<EventKind.LEVEL.ordinal(), levelTypesBits);
+	}
+
+	public boolean accepts(EventKind eventKind){
+		return (eventKindsBits & 1<<eventKind.ordinal())!=0;
+	}
+
+	/**
+	@return {@code true} if this mask accepts the level events having a level of the given type number.
+	*/
+	public boolean acceptsLevelType(int levelTypeNumber){
+		return (levelTypesBits & getLevelTypeBit(levelTypeNumber))!=0;
+	}
+
+	/**
+	@return the bits of the level types accepted by this mask, see {@link #getLevelTypeBit(int)}.
+	*/
+	public int getLevelTypesBits(){
+		return levelTypesBits;
+	}
+
+	/**
+	@return the bit of the given level type number on {@link #getLevelTypesBits()}: all the custom types share the {@link PLevel.Type#CUSTOM} bit.
+	*/
+	public static int getLevelTypeBit(int levelTypeNumber){
+		return 1<<Math.min(levelTypeNumber, PLevel.Type.CUSTOM.ordinal());
+	}
+
+	/**
+	@return the bits of the level types of the given event.
+	*/
+	public static int evalLevelTypesBits(PLevelEvent ev){
+		int levelTypesBits=0;
+		for(int i=ev.levels.length; --i>=0;)
+			levelTypesBits|=getLevelTypeBit(ev.levels[i].typeNumber);
+		return levelTypesBits;
+	}
+
+	@Override
+	public boolean equals(Object o){
+		if(!(o instanceof PenListenerMask))
+			return false;
+		PenListenerMask other=(PenListenerMask)o;
+		return eventKindsBits==other.eventKindsBits && levelTypesBits==other.levelTypesBits;
+	}
+
+	@Override
+	public int hashCode(){
+		return eventKindsBits*31+levelTypesBits;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder sb=new StringBuilder("(eventKinds=[");
+		for(EventKind eventKind: EventKind.VALUES)
+			if(accepts(eventKind))
+				sb.append(eventKind).append(' ');
+		sb.append("], levelTypes=[");
+		for(PLevel.Type levelType: PLevel.Type.ALL_VALUES)
+			if((levelTypesBits & 1<<levelType.ordinal())!=0)
+				sb.append(levelType).append(' ');
+		return sb.append("])").toString();
+	}
+}
@@ -0,0 +1,224 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.filter;
+
+import jpen.PLevel;
+import jpen.PenClock;
+import jpen.PenDevice;
+import jpen.PenState;
+
+/**
+Extrapolates the X, Y and pressure levels a configurable horizon ahead to hide the pipeline latency: renderers can draw a provisional tip at the predicted location and replace it when the real samples arrive. <p>
+
+The pen scheduler runs one on its {@link PenFilterChain#PREDICTION_ORDER} stage, see {@link jpen.Pen#getMotionPredictor()}, where it estimates the velocity of each level by a least squares fit of the device-time-stamped samples in the last {@link #getWindowMillis()}. It does not change the samples: before each {@link jpen.event.PenListener#penTock(long)} (even without tock listeners) the pen calls {@link #update(PenState)}, when it has no events to fire it calls {@link #clear(PenState)}, and the predicted values are given by {@link #getPredictedLevelValue(PLevel.Type)}. It is off until a horizon greater than 0 is set.
+*/
+public final class MotionPredictor
+	implements PenFilter{
+
+	private static final int X=0, Y=1, PRESSURE=2, AXES_COUNT=3;
+	private static final int HISTORY_SIZE=16;
+
+	private final PenClock clock;
+	private volatile float horizonMillis;
+	private volatile float windowMillis=40f;
+
+	// Only used holding the scheduler lock:
+	private PenDevice device;
+	private final long[] deviceTimes=new long[AXES_COUNT*HISTORY_SIZE];
+	private final float[] values=new float[AXES_COUNT*HISTORY_SIZE];
+	private final int[] historySizes=new int[AXES_COUNT];
+	private final int[] historyHeads=new int[AXES_COUNT];
+
+	// Guarded by this:
+	/** Estimated velocity of each axis, in units per millisecond. */
+	private final float[] velocities=new float[AXES_COUNT];
+	private long lastSampleNanos;
+	private final float[] predictedValues=new float[AXES_COUNT];
+	private boolean predicting;
+
+	/**
+	@param clock timing the arrival of the samples, e.g. {@link jpen.Pen#getClock()}
+	*/
+	public MotionPredictor(PenClock clock){
+		this.clock=clock;
+	}
+
+	/**
+	@param horizonMillis how far ahead to predict, e.g. the latency between the device and the rendering. {@code 0} (the default) turns off the prediction.
+	*/
+	public void setHorizonMillis(float horizonMillis){
+		if(!(horizonMillis>=0))
+			throw new IllegalArgumentException();
+		this.horizonMillis=horizonMillis;
+	}
+
+	public float getHorizonMillis(){
+		return horizonMillis;
+	}
+
+	/**
+	@param windowMillis age of the oldest sample used to estimate the velocity. The prediction stops when no sample arrives during this time.
+	*/
+	public void setWindowMillis(float windowMillis){
+		if(!(windowMillis>0))
+			throw new IllegalArgumentException();
+		this.windowMillis=windowMillis;
+	}
+
+	public float getWindowMillis(){
+		return windowMillis;
+	}
+
+	private static int getAxis(int levelTypeNumber){
+		if(levelTypeNumber==PLevel.Type.X.ordinal())
+			return X;
+		if(levelTypeNumber==PLevel.Type.Y.ordinal())
+			return Y;
+		if(levelTypeNumber==PLevel.Type.PRESSURE.ordinal())
+			return PRESSURE;
+		return -1;
+	}
+
+	//@Override
+	public boolean filter(PenSample sample){
+		if(horizonMillis==0)
+			return true;
+		if(device!=sample.getDevice()){
+			device=sample.getDevice();
+			clearHistory();
+		}
+		long deviceTime=sample.getDeviceTime();
+		boolean changed=false;
+		for(int i=sample.size(); --i>=0;){
+			int axis=getAxis(sample.getTypeNumber(i));
+			if(axis==-1)
+				continue;
+			int head=historyHeads[axis];
+			deviceTimes[axis*HISTORY_SIZE+head]=deviceTime;
+			values[axis*HISTORY_SIZE+head]=sample.getValue(i);
+			historyHeads[axis]=(head+1)%HISTORY_SIZE;
+			if(historySizes[axis]<HISTORY_SIZE)
+				historySizes[axis]++;
+			changed=true;
+		}
+		if(changed){
+			long nanos=clock.nanoTime();
+			synchronized(this){
+				for(int axis=0; axis<AXES_COUNT; axis++)
+					velocities[axis]=evalVelocity(axis, deviceTime);
+				lastSampleNanos=nanos;
+			}
+		}
+		return true;
+	}
+
+	/**
+	@return the slope of the least squares line fitting the samples of the given axis not older than the window.
+	*/
+	private float evalVelocity(int axis, long lastDeviceTime){
+		long minDeviceTime=lastDeviceTime-(long)windowMillis;
+		int offset=axis*HISTORY_SIZE;
+		double timesSum=0, valuesSum=0;
+		int n=0;
+		for(int i=historySizes[axis]; --i>=0;){
+			long deviceTime=deviceTimes[offset+i];
+			if(deviceTime<minDeviceTime)
+				continue;
+			timesSum+=deviceTime-lastDeviceTime;
+			valuesSum+=values[offset+i];
+			n++;
+		}
+		if(n<2)
+			return 0f;
+		double timesMean=timesSum/n, valuesMean=valuesSum/n;
+		double covariance=0, timesVariance=0;
+		for(int i=historySizes[axis]; --i>=0;){
+			long deviceTime=deviceTimes[offset+i];
+			if(deviceTime<minDeviceTime)
+				continue;
+			double dt=deviceTime-lastDeviceTime-timesMean;
+			covariance+=dt*(values[offset+i]-valuesMean);
+			timesVariance+=dt*dt;
+		}
+		return timesVariance==0? 0f: (float)(covariance/timesVariance);
+	}
+
+	private void clearHistory(){
+		for(int axis=0; axis<AXES_COUNT; axis++)
+			historySizes[axis]=historyHeads[axis]=0;
+		synchronized(this){
+			for(int axis=0; axis<AXES_COUNT; axis++)
+				velocities[axis]=0;
+		}
+	}
+
+	//@Override
+	public void reset(){
+		device=null;
+		clearHistory();
+	}
+
+	/**
+	Evaluates the predicted values from the given (current) state. Called by the pen before firing {@link jpen.event.PenListener#penTock(long)}.
+	*/
+	public synchronized void update(PenState penState){
+		float x=penState.getLevelValue(PLevel.Type.X);
+		float y=penState.getLevelValue(PLevel.Type.Y);
+		float pressure=penState.getLevelValue(PLevel.Type.PRESSURE);
+		float horizonMillis=this.horizonMillis;
+		predicting=horizonMillis!=0 && clock.nanoTime()-lastSampleNanos<=(long)(windowMillis*1e6f);
+		if(predicting){
+			x+=velocities[X]*horizonMillis;
+			y+=velocities[Y]*horizonMillis;
+			if(pressure!=0) // a predicted pressure must not start a stroke
+				pressure=Math.min(1f, Math.max(0f, pressure+velocities[PRESSURE]*horizonMillis));
+		}
+		predictedValues[X]=x;
+		predictedValues[Y]=y;
+		predictedValues[PRESSURE]=pressure;
+	}
+
+	/**
+	Stops the prediction until the next {@link #update(PenState)}: the predicted values become the given (current) ones. Called by the pen when it has no events to fire, so the renderers do not keep drawing the last prediction after the pen stopped.
+	*/
+	public synchronized void clear(PenState penState){
+		predicting=false;
+		predictedValues[X]=penState.getLevelValue(PLevel.Type.X);
+		predictedValues[Y]=penState.getLevelValue(PLevel.Type.Y);
+		predictedValues[PRESSURE]=penState.getLevelValue(PLevel.Type.PRESSURE);
+	}
+
+	/**
+	@return {@code true} if the last {@link #update(PenState)} extrapolated the values, {@code false} if the prediction is off, the pen is not moving (no recent samples) or it was {@link #clear(PenState)}ed.
+	*/
+	public synchronized boolean getPredicting(){
+		return predicting;
+	}
+
+	/**
+	@param levelType {@link PLevel.Type#X}, {@link PLevel.Type#Y} or {@link PLevel.Type#PRESSURE}
+	@return the predicted value evaluated on the last {@link #update(PenState)}, it is the current value if {@link #getPredicting()} is {@code false}.
+	*/
+	public synchronized float getPredictedLevelValue(PLevel.Type levelType){
+		int axis=getAxis(levelType.ordinal());
+		if(axis==-1)
+			throw new IllegalArgumentException("only X, Y and PRESSURE levels are predicted");
+		return predictedValues[axis];
+	}
+}
@@ -0,0 +1,186 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.filter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import jpen.PLevel;
+import jpen.PenDevice;
+
+/**
+Adaptive low-pass filter (One Euro filter, Casiez et al. 2012) reducing the jitter of the level values of each device: the cutoff frequency rises with the speed of the values, smoothing more when they move slowly (jitter) and lagging less when they move fast. <p>
+
+The pen scheduler runs one on its {@link PenFilterChain#SMOOTHING_ORDER} stage, see {@link jpen.Pen#getOneEuroFilter()}. It filters nothing until {@link Params} are set for some level types: for all the devices or for the devices with a given {@link PenDevice#getPhysicalId()}. Only the standard {@link PLevel.Type}s can be filtered. The state is kept per device and level type and is reset when the pen manager is unpaused. The time steps are taken from the {@link PenSample#getDeviceTime()}.<p>
+
+A {@link PLevel.Type#PRESSURE} of {@code 0} (the pen lifts) and the first pressure after it are not filtered: a smoothed pressure would keep the {@link jpen.PButton.Type#ON_PRESSURE} button pressed after the stroke ended.
+*/
+public final class OneEuroFilter
+	implements PenFilter{
+
+	/**
+	The parameters of the filter for one level type.
+	*/
+	public static final class Params{
+		/** Starting point for movement levels on screen coordinates (pixels). */
+		public static final Params MOVEMENT=new Params(1f, 0.007f, 1f);
+		/** Starting point for the pressure level (0 to 1). */
+		public static final Params PRESSURE=new Params(1f, 0.5f, 1f);
+
+		/** Cutoff frequency (Hz) when the value does not move: decrease it to reduce the jitter. */
+		public final float minCutoff;
+		/** Cutoff increase per unit of speed (value units per second): increase it to reduce the lag. */
+		public final float beta;
+		/** Cutoff frequency (Hz) used to smooth the speed. */
+		public final float derivativeCutoff;
+
+		public Params(float minCutoff, float beta, float derivativeCutoff){
+			if(!(minCutoff>0) || beta<0 || !(derivativeCutoff>0))
+				throw new IllegalArgumentException();
+			this.minCutoff=minCutoff;
+			this.beta=beta;
+			this.derivativeCutoff=derivativeCutoff;
+		}
+
+		@Override
+		public String toString(){
+			return "(minCutoff="+minCutoff+", beta="+beta+", derivativeCutoff="+derivativeCutoff+")";
+		}
+	}
+
+	private static final int TYPES_COUNT=PLevel.Type.VALUES.size();
+	private static final int PRESSURE=PLevel.Type.PRESSURE.ordinal();
+	/** Smallest time step: samples with the same device time are considered 1 millisecond apart. */
+	private static final double MIN_DT=1e-3;
+
+	/** Physical id ({@code null} for all the devices) to params by level type ordinal. Guarded by this. */
+	private final Map<String, Params[]> physicalIdToParams=new HashMap<String, Params[]>();
+	private volatile int paramsVersion;
+	/** Indexed by device id, only used holding the scheduler lock. */
+	private final DeviceState[] deviceStates=new DeviceState[1<<Byte.SIZE];
+
+	private static final class DeviceState{
+		final PenDevice device;
+		int paramsVersion=-1;
+		final Params[] params=new Params[TYPES_COUNT];
+		final boolean[] initialized=new boolean[TYPES_COUNT];
+		final long[] lastDeviceTimes=new long[TYPES_COUNT];
+		final float[] lastValues=new float[TYPES_COUNT];
+		final float[] lastDerivatives=new float[TYPES_COUNT];
+
+		DeviceState(PenDevice device){
+			this.device=device;
+		}
+	}
+
+	/**
+	Sets the parameters used to filter the given level type of the devices with the given physical id.
+
+	@param physicalId a {@link PenDevice#getPhysicalId()} or {@code null} to set the parameters for all the devices without parameters for this type given by their physical id
+	@param params {@code null} to stop filtering
+	*/
+	public synchronized void setParams(String physicalId, PLevel.Type levelType, Params params){
+		int typeIndex=levelType.ordinal();
+		if(typeIndex>=TYPES_COUNT)
+			throw new IllegalArgumentException("only standard level types can be filtered");
+		Params[] typeToParams=physicalIdToParams.get(physicalId);
+		if(typeToParams==null)
+			physicalIdToParams.put(physicalId, typeToParams=new Params[TYPES_COUNT]);
+		typeToParams[typeIndex]=params;
+		paramsVersion++;
+	}
+
+	public synchronized Params getParams(String physicalId, PLevel.Type levelType){
+		Params[] typeToParams=physicalIdToParams.get(physicalId);
+		return typeToParams==null || levelType.ordinal()>=TYPES_COUNT? null: typeToParams[levelType.ordinal()];
+	}
+
+	private synchronized void resolveParams(DeviceState deviceState){
+		Params[] defaultParams=physicalIdToParams.get(null);
+		Params[] deviceParams=physicalIdToParams.get(deviceState.device.getPhysicalId());
+		for(int i=TYPES_COUNT; --i>=0;){
+			Params params=deviceParams==null? null: deviceParams[i];
+			if(params==null && defaultParams!=null)
+				params=defaultParams[i];
+			deviceState.params[i]=params;
+		}
+		deviceState.paramsVersion=paramsVersion;
+	}
+
+	//@Override
+	public boolean filter(PenSample sample){
+		PenDevice device=sample.getDevice();
+		int deviceIndex=device.getId()&0xff;
+		DeviceState deviceState=deviceStates[deviceIndex];
+		if(deviceState==null || deviceState.device!=device)
+			deviceStates[deviceIndex]=deviceState=new DeviceState(device);
+		if(deviceState.paramsVersion!=paramsVersion)
+			resolveParams(deviceState);
+		long deviceTime=sample.getDeviceTime();
+		for(int i=sample.size(); --i>=0;){
+			int typeIndex=sample.getTypeNumber(i);
+			if(typeIndex>=TYPES_COUNT)
+				continue;
+			Params params=deviceState.params[typeIndex];
+			if(params==null)
+				continue;
+			sample.setValue(i, filter(deviceState, typeIndex, params, sample.getValue(i), deviceTime));
+		}
+		return true;
+	}
+
+	private static float filter(DeviceState deviceState, int typeIndex, Params params, float value, long deviceTime){
+		if(typeIndex==PRESSURE && value==0){
+			deviceState.initialized[typeIndex]=false;
+			return value;
+		}
+		if(!deviceState.initialized[typeIndex]){
+			deviceState.initialized[typeIndex]=true;
+			deviceState.lastDeviceTimes[typeIndex]=deviceTime;
+			deviceState.lastValues[typeIndex]=value;
+			deviceState.lastDerivatives[typeIndex]=0;
+			return value;
+		}
+		double dt=Math.max(MIN_DT, (deviceTime-deviceState.lastDeviceTimes[typeIndex])/1e3);
+		float lastValue=deviceState.lastValues[typeIndex];
+		float lastDerivative=deviceState.lastDerivatives[typeIndex];
+		float derivative=lastDerivative+evalAlpha(params.derivativeCutoff, dt)*((float)((value-lastValue)/dt)-lastDerivative);
+		double cutoff=params.minCutoff+params.beta*Math.abs(derivative);
+		float filteredValue=lastValue+evalAlpha(cutoff, dt)*(value-lastValue);
+		deviceState.lastDeviceTimes[typeIndex]=deviceTime;
+		deviceState.lastValues[typeIndex]=filteredValue;
+		deviceState.lastDerivatives[typeIndex]=derivative;
+		return filteredValue;
+	}
+
+	/**
+	@return the smoothing factor of an exponential low-pass filter with the given cutoff frequency and time step.
+	*/
+	private static float evalAlpha(double cutoff, double dt){
+		double tau=1/(2*Math.PI*cutoff);
+		return (float)(1/(1+tau/dt));
+	}
+
+	//@Override
+	public void reset(){
+		for(DeviceState deviceState: deviceStates)
+			if(deviceState!=null)
+				Arrays.fill(deviceState.initialized, false);
+	}
+}
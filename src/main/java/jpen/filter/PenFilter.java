@@ -0,0 +1,36 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.filter;
+
+/**
+A stage of a {@link PenFilterChain}. The methods are called holding the pen scheduler lock, implementations must not block and should not allocate on {@link #filter(PenSample)}: it is called at the device rate.
+*/
+public interface PenFilter{
+	/**
+	Called for each sample of the devices in the scope of the stage. It can change, add or remove levels of the sample.
+
+	@return {@code false} to drop the sample: the next stages are not called and no level event is scheduled for it.
+	*/
+	boolean filter(PenSample sample);
+
+	/**
+	Called when the pen manager is unpaused: the next samples are not continuous with the previous ones.
+	*/
+	void reset();
+}
@@ -0,0 +1,191 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.filter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import jpen.PenDevice;
+import jpen.PenProvider;
+
+/**
+Ordered stages of {@link PenFilter}s run on each level sample before the pen scheduler schedules it as a level event. Stages with a smaller order run first, stages with the same order run in the order they were added. The built-in stages of the pen scheduler are added with the {@code *_ORDER} constants (see {@link #getStages()}) and can be removed too. Each {@link Stage} counts the samples it passed and dropped.<p>
+
+Adding and removing stages is thread safe and does not block the running samples.
+*/
+public final class PenFilterChain{
+
+	/** Detects devices on relative (mouse) mode and replaces their movement levels with the system pointer location. */
+	public static final int RELATIVE_LOCATION_ORDER=100;
+	/** Arbitrates between the system mouse and the other devices, and changes the pen kind to the one of the device. */
+	public static final int SYSTEM_MOUSE_ORDER=200;
+	/** Removes the levels emulated by the {@link jpen.PLevelEmulator}. */
+	public static final int LEVEL_EMULATOR_ORDER=300;
+	/** Smooths the values. Skipped for the {@link PenSample#getSmoothed()} samples. */
+	public static final int SMOOTHING_ORDER=400;
+	public static final int PREDICTION_ORDER=500;
+	/** Changes the movement levels on screen to the {@link jpen.owner.PenClip} coordinate system. */
+	public static final int LOCATION_ORDER=600;
+	/** Removes the levels whose values did not change. */
+	public static final int DEDUPE_ORDER=700;
+	/** Drops the samples moving out of the {@link jpen.owner.PenClip}. */
+	public static final int CLIP_ORDER=800;
+
+	public static final class Stage{
+		public final String name;
+		public final int order;
+		public final PenFilter filter;
+		/** If not {@code null}, the stage runs only on the samples of the devices of this provider. */
+		public final PenProvider.Constructor providerConstructor;
+		/** If not {@code null}, the stage runs only on the samples of this device. */
+		public final PenDevice device;
+		private volatile long passedCount, droppedCount; // written only holding the scheduler lock
+
+		Stage(String name, int order, PenFilter filter, PenProvider.Constructor providerConstructor, PenDevice device){
+			if(filter==null)
+				throw new IllegalArgumentException("null filter");
+			this.name=name;
+			this.order=order;
+			this.filter=filter;
+			this.providerConstructor=providerConstructor;
+			this.device=device;
+		}
+
+		public boolean appliesTo(PenDevice device){
+			return (this.device==null || this.device==device) &&
+						 (providerConstructor==null || device.getProvider().getConstructor()==providerConstructor);
+		}
+
+		public long getPassedCount(){
+			return passedCount;
+		}
+
+		/**
+		@return the samples dropped by the filter or left without levels.
+		*/
+		public long getDroppedCount(){
+			return droppedCount;
+		}
+
+		@Override
+		public String toString(){
+			return "[PenFilterChain.Stage: name="+name+", order="+order+", passedCount="+passedCount+", droppedCount="+droppedCount+"]";
+		}
+	}
+
+	private volatile Stage[] stages=new Stage[0];
+
+	public Stage add(String name, int order, PenFilter filter){
+		return add(new Stage(name, order, filter, null, null));
+	}
+
+	/**
+	Adds a stage running only on the devices of the provider constructed by the given constructor.
+	*/
+	public Stage add(String name, int order, PenFilter filter, PenProvider.Constructor providerConstructor){
+		if(providerConstructor==null)
+			throw new IllegalArgumentException("null providerConstructor");
+		return add(new Stage(name, order, filter, providerConstructor, null));
+	}
+
+	/**
+	Adds a stage running only on the given device.
+	*/
+	public Stage add(String name, int order, PenFilter filter, PenDevice device){
+		if(device==null)
+			throw new IllegalArgumentException("null device");
+		return add(new Stage(name, order, filter, null, device));
+	}
+
+	private synchronized Stage add(Stage stage){
+		Stage[] stages=this.stages;
+		int index=stages.length;
+		while(index>0 && stages[index-1].order>stage.order)
+			index--;
+		Stage[] newStages=new Stage[stages.length+1];
+		System.arraycopy(stages, 0, newStages, 0, index);
+		newStages[index]=stage;
+		System.arraycopy(stages, index, newStages, index+1, stages.length-index);
+		this.stages=newStages;
+		return stage;
+	}
+
+	/**
+	Removes all the stages of the given filter.
+	@return {@code true} if a stage was removed.
+	*/
+	public synchronized boolean remove(PenFilter filter){
+		Stage[] stages=this.stages;
+		Stage[] newStages=new Stage[stages.length];
+		int newStagesCount=0;
+		for(Stage stage: stages)
+			if(stage.filter!=filter)
+				newStages[newStagesCount++]=stage;
+		if(newStagesCount==stages.length)
+			return false;
+		this.stages=Arrays.copyOf(newStages, newStagesCount);
+		return true;
+	}
+
+	/**
+	@return the stages in running order.
+	*/
+	public List<Stage> getStages(){
+		return Collections.unmodifiableList(Arrays.asList(stages));
+	}
+
+	/**
+	@return the first stage with the given name or {@code null} if there is not such stage.
+	*/
+	public Stage getStage(String name){
+		for(Stage stage: stages)
+			if(stage.name.equals(name))
+				return stage;
+		return null;
+	}
+
+	/**
+	Runs the sample through the stages applying to its device. Called holding the pen scheduler lock.
+
+	@return {@code false} if the sample was dropped or left without levels.
+	*/
+	public boolean filter(PenSample sample){
+		Stage[] stages=this.stages;
+		PenDevice device=sample.getDevice();
+		for(int i=0; i<stages.length; i++){
+			Stage stage=stages[i];
+			if(!stage.appliesTo(device) || stage.order==SMOOTHING_ORDER && sample.getSmoothed())
+				continue;
+			if(!stage.filter.filter(sample) || sample.size()==0){
+				stage.droppedCount++;
+				return false;
+			}
+			stage.passedCount++;
+		}
+		return sample.size()!=0;
+	}
+
+	/**
+	Resets all the stages. Called holding the pen scheduler lock when the pen manager is unpaused.
+	*/
+	public void reset(){
+		for(Stage stage: stages)
+			stage.filter.reset();
+	}
+}
@@ -0,0 +1,160 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.filter;
+
+import jpen.PLevel;
+import jpen.PenDevice;
+
+/**
+The levels of one device sample passed through the {@link PenFilter}s of a {@link PenFilterChain}: a reusable buffer of primitive level type numbers and values. Filters must not keep references to it.
+*/
+public final class PenSample{
+	private PenDevice device;
+	private long deviceTime;
+	private boolean levelsOnScreen;
+	private boolean smoothed;
+	private int size;
+	private int[] typeNumbers=new int[8];
+	private float[] values=new float[typeNumbers.length];
+
+	/**
+	Empties this sample to be filled with the levels of a new sample.
+	*/
+	public void reset(PenDevice device, long deviceTime, boolean levelsOnScreen){
+		reset(device, deviceTime, levelsOnScreen, false);
+	}
+
+	/**
+	@param smoothed see {@link #getSmoothed()}
+	*/
+	public void reset(PenDevice device, long deviceTime, boolean levelsOnScreen, boolean smoothed){
+		this.device=device;
+		this.deviceTime=deviceTime;
+		this.levelsOnScreen=levelsOnScreen;
+		this.smoothed=smoothed;
+		size=0;
+	}
+
+	public PenDevice getDevice(){
+		return device;
+	}
+
+	public long getDeviceTime(){
+		return deviceTime;
+	}
+
+	/**
+	@return {@code true} if the movement levels are on the screen coordinate system. The {@link PenFilterChain#LOCATION_ORDER} stage changes them to the {@link jpen.owner.PenClip} coordinate system.
+	*/
+	public boolean getLevelsOnScreen(){
+		return levelsOnScreen;
+	}
+
+	/**
+	@return {@code true} if the values were already smoothed (e.g. replayed from a recording of the fired events), the {@link PenFilterChain#SMOOTHING_ORDER} stages are skipped.
+	*/
+	public boolean getSmoothed(){
+		return smoothed;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public int getTypeNumber(int index){
+		return typeNumbers[index];
+	}
+
+	public float getValue(int index){
+		return values[index];
+	}
+
+	public void setValue(int index, float value){
+		values[index]=value;
+	}
+
+	/**
+	@return the index of the level of the given type or {@code -1} if this sample has not such level.
+	*/
+	public int indexOf(int typeNumber){
+		for(int i=size; --i>=0;)
+			if(typeNumbers[i]==typeNumber)
+				return i;
+		return -1;
+	}
+
+	public int indexOf(PLevel.Type type){
+		return indexOf(type.ordinal());
+	}
+
+	/**
+	Sets the value of the level of the given type, adding the level if this sample has not it.
+	*/
+	public void set(int typeNumber, float value){
+		int index=indexOf(typeNumber);
+		if(index==-1)
+			add(typeNumber, value);
+		else
+			values[index]=value;
+	}
+
+	/**
+	Appends a level. It does not check if this sample already has a level of the given type, see {@link #set(int, float)}.
+	*/
+	public void add(int typeNumber, float value){
+		if(size==typeNumbers.length){
+			int[] typeNumbers=new int[size<<1];
+			float[] values=new float[typeNumbers.length];
+			System.arraycopy(this.typeNumbers, 0, typeNumbers, 0, size);
+			System.arraycopy(this.values, 0, values, 0, size);
+			this.typeNumbers=typeNumbers;
+			this.values=values;
+		}
+		typeNumbers[size]=typeNumber;
+		values[size]=value;
+		size++;
+	}
+
+	/**
+	Removes the level at the given index keeping the order of the other levels: iterate backwards to remove while iterating.
+	*/
+	public void remove(int index){
+		if(index<0 || index>=size)
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		size--;
+		System.arraycopy(typeNumbers, index+1, typeNumbers, index, size-index);
+		System.arraycopy(values, index+1, values, index, size-index);
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder sb=new StringBuilder(64+16*size);
+		sb.append("[PenSample: device=").append(device==null? null: device.getName());
+		sb.append(", deviceTime=").append(deviceTime);
+		sb.append(", levelsOnScreen=").append(levelsOnScreen).append(", levels={");
+		for(int i=0; i<size; i++){
+			if(i!=0)
+				sb.append(", ");
+			int typeNumber=typeNumbers[i];
+			sb.append(typeNumber<PLevel.Type.VALUES.size()? PLevel.Type.VALUES.get(typeNumber): Integer.valueOf(typeNumber));
+			sb.append('=').append(values[i]);
+		}
+		return sb.append("}]").toString();
+	}
+}
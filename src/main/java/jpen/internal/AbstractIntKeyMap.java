@@ -0,0 +1,173 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+import java.util.Arrays;
+
+/**
+Open-addressing (linear probing) hash table with {@code int} keys and 32 bits values, stored as {@code int}s: the subclasses give the values their type (e.g. {@link Float#floatToRawIntBits(float)}). Removal uses backward shift deletion, keeping the probe sequences unbroken without tombstones. Not synchronized.
+*/
+public abstract class AbstractIntKeyMap
+	implements java.io.Serializable{
+	public static final long serialVersionUID=1l;
+
+	private int[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+
+	/**
+	@param capacity the initial number of slots, rounded up to a power of two. The table grows when half full.
+	*/
+	AbstractIntKeyMap(int capacity){
+		int slotsCount=Integer.highestOneBit(Math.max(2, capacity)-1)<<1;
+		keys=new int[slotsCount];
+		values=new int[slotsCount];
+		used=new boolean[slotsCount];
+	}
+
+	static int hash(int key){
+		int h=key*0x9e3779b9;
+		return h^(h>>>16);
+	}
+
+	private int findSlot(int key){
+		int mask=keys.length-1;
+		for(int i=hash(key)&mask; used[i]; i=(i+1)&mask)
+			if(keys[i]==key)
+				return i;
+		return -1;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean containsKey(int key){
+		return findSlot(key)!=-1;
+	}
+
+	final int getBits(int key, int defaultBits){
+		int slot=findSlot(key);
+		return slot==-1? defaultBits: values[slot];
+	}
+
+	final void putBits(int key, int bits){
+		int mask=keys.length-1;
+		int i=hash(key)&mask;
+		for(; used[i]; i=(i+1)&mask)
+			if(keys[i]==key){
+				values[i]=bits;
+				return;
+			}
+		if((size+1)<<1>keys.length){
+			grow();
+			putBits(key, bits);
+			return;
+		}
+		used[i]=true;
+		keys[i]=key;
+		values[i]=bits;
+		size++;
+	}
+
+	private void grow(){
+		int[] oldKeys=keys;
+		int[] oldValues=values;
+		boolean[] oldUsed=used;
+		keys=new int[oldKeys.length<<1];
+		values=new int[keys.length];
+		used=new boolean[keys.length];
+		size=0;
+		for(int i=oldKeys.length; --i>=0;)
+			if(oldUsed[i])
+				putBits(oldKeys[i], oldValues[i]);
+	}
+
+	/**
+	@return {@code true} if the key was present.
+	*/
+	public boolean remove(int key){
+		int gap=findSlot(key);
+		if(gap==-1)
+			return false;
+		int mask=keys.length-1;
+		for(int i=(gap+1)&mask; used[i]; i=(i+1)&mask){ // backward shift deletion: keeps the probe sequences unbroken
+			int home=hash(keys[i])&mask;
+			if(((i-home)&mask)>=((i-gap)&mask)){
+				keys[gap]=keys[i];
+				values[gap]=values[i];
+				gap=i;
+			}
+		}
+		used[gap]=false;
+		size--;
+		return true;
+	}
+
+	public void clear(){
+		if(size==0)
+			return;
+		Arrays.fill(used, false);
+		size=0;
+	}
+
+	/**
+	Makes this map equal to the given one.
+	*/
+	final void setAllBits(AbstractIntKeyMap other){
+		if(keys.length!=other.keys.length){
+			keys=new int[other.keys.length];
+			values=new int[keys.length];
+			used=new boolean[keys.length];
+		}
+		System.arraycopy(other.keys, 0, keys, 0, keys.length);
+		System.arraycopy(other.values, 0, values, 0, keys.length);
+		System.arraycopy(other.used, 0, used, 0, keys.length);
+		size=other.size;
+	}
+
+	/**
+	@return a new array with the keys.
+	*/
+	public int[] keys(){
+		int[] keys=new int[size];
+		for(int i=0, j=0; j<size; i++)
+			if(used[i])
+				keys[j++]=this.keys[i];
+		return keys;
+	}
+
+	/**
+	Appends the value stored with the given bits to the {@link #toString()}.
+	*/
+	abstract void appendValue(StringBuilder sb, int bits);
+
+	@Override
+	public String toString(){
+		StringBuilder sb=new StringBuilder(16*size+2).append('{');
+		for(int i=0; i<keys.length; i++)
+			if(used[i]){
+				if(sb.length()>1)
+					sb.append(", ");
+				appendValue(sb.append(keys[i]).append('='), values[i]);
+			}
+		return sb.append('}').toString();
+	}
+}
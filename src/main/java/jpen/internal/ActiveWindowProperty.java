@@ -22,27 +22,37 @@ import java.awt.KeyboardFocusManager;
 import java.awt.Window;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.TimeUnit;
 import javax.swing.SwingUtilities;
+import jpen.PenClock;
 /**
 Allows to keep an eye on the application active window avoiding the unnecessary null activeWindow change reported by the default KeyboardFocusManager when switching windows. 
 */
 public final class ActiveWindowProperty
-	implements PropertyChangeListener, Runnable{
+	implements PropertyChangeListener{
 
 	public interface Listener{
 		void activeWindowChanged(Window newWindow);
 	}
 
+	private static final long NULL_WINDOW_DELAY_NANOS=50*1000000l;
+
 	private final Listener listener;
+	private final PenClock clock;
 	private Window activeWindow;
 
 	public ActiveWindowProperty(Listener listener){
+		this(listener, PenClock.SYSTEM);
+	}
+
+	/**
+	@param clock used to time the delay of the change to a {@code null} active window
+	*/
+	public ActiveWindowProperty(Listener listener, PenClock clock){
 		this.listener=listener;
+		this.clock=clock;
 		KeyboardFocusManager keyboardFocusManager=KeyboardFocusManager.getCurrentKeyboardFocusManager();
 		keyboardFocusManager.addPropertyChangeListener("activeWindow",this);
 		activeWindow=keyboardFocusManager.getActiveWindow();
@@ -64,18 +74,20 @@ public final class ActiveWindowProperty
 			return;
 		if(activeWindow==null){
 			// if the new activeWindow is null then we do the change only after a delay to avoid unnecessary changes to null (java does change the activeWindow to null when switching).
-			if(nullWindowTask==null || nullWindowTask.isDone())
-				nullWindowTask=nullWindowScheduler.schedule(this, 50, TimeUnit.MILLISECONDS);
+			if(nullWindowTask==null){
+				nullWindowTask=new NullWindowTask(clock.nanoTime()+NULL_WINDOW_DELAY_NANOS);
+				nullWindowExecutor.execute(nullWindowTask);
+			}
 			return;
 		}
 		if(nullWindowTask!=null){
-			nullWindowTask.cancel(false);
+			nullWindowTask.canceled=true;
 			nullWindowTask=null;
 		}
 		set(activeWindow);
 	}
 
-	private final ScheduledExecutorService nullWindowScheduler=Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+	private final ExecutorService nullWindowExecutor=Executors.newSingleThreadExecutor(new ThreadFactory(){
 				//@Override
 				public Thread newThread(Runnable runnable){
 					Thread t=new Thread(runnable, "jpen-ActiveWindow-filter");
@@ -83,21 +95,37 @@ public final class ActiveWindowProperty
 					return t;
 				}
 			});
-	private ScheduledFuture nullWindowTask;
+	private NullWindowTask nullWindowTask;
 
-	//@Override
-	public void run(){
-		try{
-			SwingUtilities.invokeAndWait(nullWindowRunnable);
-		}catch(Exception ex){
-			throw new AssertionError(ex);
+	private final class NullWindowTask
+		implements Runnable{
+		private final long deadlineNanos;
+		volatile boolean canceled;
+
+		NullWindowTask(long deadlineNanos){
+			this.deadlineNanos=deadlineNanos;
 		}
-	}
 
-	private final Runnable nullWindowRunnable=new Runnable(){
-				//@Override
-				public void run(){
-					set(null);
-				}
-			};
+		//@Override
+		public void run(){
+			clock.parkUntilNanos(deadlineNanos);
+			if(canceled)
+				return;
+			try{
+				SwingUtilities.invokeAndWait(nullWindowRunnable);
+			}catch(Exception ex){
+				throw new AssertionError(ex);
+			}
+		}
+
+		private final Runnable nullWindowRunnable=new Runnable(){
+					//@Override
+					public void run(){
+						if(nullWindowTask!=NullWindowTask.this) // canceled while waiting the event dispatch thread
+							return;
+						nullWindowTask=null;
+						set(null);
+					}
+				};
+	}
 }
\ No newline at end of file
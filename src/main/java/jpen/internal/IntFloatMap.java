@@ -0,0 +1,58 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+/**
+An {@code int} to {@code float} hash table, see {@link AbstractIntKeyMap}. Unlike a {@code HashMap<Integer, Float>} it does not box keys nor values, and {@link #setAll(IntFloatMap)} is done with array copies. Not synchronized.
+*/
+public final class IntFloatMap
+	extends AbstractIntKeyMap{
+	public static final long serialVersionUID=1l;
+
+	public IntFloatMap(){
+		this(4);
+	}
+
+	/**
+	@param capacity the initial number of slots, rounded up to a power of two. The table grows when half full.
+	*/
+	public IntFloatMap(int capacity){
+		super(capacity);
+	}
+
+	public float get(int key, float defaultValue){
+		return Float.intBitsToFloat(getBits(key, Float.floatToRawIntBits(defaultValue)));
+	}
+
+	public void put(int key, float value){
+		putBits(key, Float.floatToRawIntBits(value));
+	}
+
+	/**
+	Makes this map equal to the given one.
+	*/
+	public void setAll(IntFloatMap other){
+		setAllBits(other);
+	}
+
+	@Override
+	void appendValue(StringBuilder sb, int bits){
+		sb.append(Float.intBitsToFloat(bits));
+	}
+}
@@ -0,0 +1,58 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+/**
+An {@code int} to {@code int} hash table, see {@link AbstractIntKeyMap}. Unlike a {@code HashMap<Integer, Integer>} it does not box keys nor values, and {@link #setAll(IntIntMap)} is done with array copies. Not synchronized.
+*/
+public final class IntIntMap
+	extends AbstractIntKeyMap{
+	public static final long serialVersionUID=1l;
+
+	public IntIntMap(){
+		this(4);
+	}
+
+	/**
+	@param capacity the initial number of slots, rounded up to a power of two. The table grows when half full.
+	*/
+	public IntIntMap(int capacity){
+		super(capacity);
+	}
+
+	public int get(int key, int defaultValue){
+		return getBits(key, defaultValue);
+	}
+
+	public void put(int key, int value){
+		putBits(key, value);
+	}
+
+	/**
+	Makes this map equal to the given one.
+	*/
+	public void setAll(IntIntMap other){
+		setAllBits(other);
+	}
+
+	@Override
+	void appendValue(StringBuilder sb, int bits){
+		sb.append(bits);
+	}
+}
@@ -0,0 +1,127 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+Bounded lock-free queue for many producer threads and one consumer thread. Each slot carries a sequence number telling if it is free for the producer claiming it or published for the consumer, so producers only contend on a compare-and-set of the tail and never wait for the consumer.<p>
+
+Only one thread at a time can call the consumer methods ({@link #peek()}, {@link #poll()}, {@link #isEmpty()}).
+*/
+public final class MpscRingBuffer<E>{
+
+	private final int mask;
+	private final AtomicReferenceArray<E> elements;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail=new AtomicLong();
+	private volatile long head; // written only by the consumer
+
+	/**
+	@param capacity minimum capacity, rounded up to the next power of two
+	*/
+	public MpscRingBuffer(int capacity){
+		if(capacity<=0)
+			throw new IllegalArgumentException();
+		int size=Integer.highestOneBit(capacity);
+		if(size<capacity)
+			size<<=1;
+		mask=size-1;
+		elements=new AtomicReferenceArray<E>(size);
+		sequences=new AtomicLongArray(size);
+		for(int i=size; --i>=0;)
+			sequences.set(i, i);
+	}
+
+	public int capacity(){
+		return mask+1;
+	}
+
+	/**
+	Called by producers.
+
+	@return {@code false} if the buffer is full and the element was not added.
+	*/
+	public boolean offer(E element){
+		if(element==null)
+			throw new IllegalArgumentException();
+		long position=tail.get();
+		int index;
+		while(true){
+			index=(int)position & mask;
+			long difference=sequences.get(index)-position;
+			if(difference==0){
+				if(tail.compareAndSet(position, position+1))
+					break;
+				position=tail.get();
+			}else if(difference<0)
+				return false;
+			else
+				position=tail.get();
+		}
+		elements.lazySet(index, element);
+		sequences.set(index, position+1); // volatile write: publishes the element and orders it before any wake up check done by the producer.
+		return true;
+	}
+
+	/**
+	Called by the consumer.
+
+	@return the oldest element without removing it or {@code null} if the buffer is empty.
+	*/
+	public E peek(){
+		int index=(int)head & mask;
+		if(sequences.get(index)!=head+1)
+			return null;
+		return elements.get(index);
+	}
+
+	/**
+	Called by the consumer.
+
+	@return the oldest element, removing it, or {@code null} if the buffer is empty.
+	*/
+	public E poll(){
+		int index=(int)head & mask;
+		if(sequences.get(index)!=head+1)
+			return null;
+		E element=elements.get(index);
+		elements.lazySet(index, null);
+		sequences.lazySet(index, head+mask+1);
+		head++;
+		return element;
+	}
+
+	/**
+	Called by the consumer.
+	*/
+	public boolean isEmpty(){
+		return peek()==null;
+	}
+
+	/**
+	@return an estimation of the number of elements in the buffer. Can be called from any thread.
+	*/
+	public int size(){
+		long size=tail.get()-head;
+		return size<0? 0: (int)Math.min(size, mask+1);
+	}
+}
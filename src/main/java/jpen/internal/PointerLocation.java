@@ -0,0 +1,154 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+import java.awt.AWTEvent;
+import java.awt.GraphicsEnvironment;
+import java.awt.MouseInfo;
+import java.awt.PointerInfo;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Point2D;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+Tracks the system pointer location on screen from the AWT mouse events already delivered to the application, falling back to {@link MouseInfo#getPointerInfo()} (a native query) only when the last known location is older than {@link #getMaxStalenessNanos()} (e.g. when the pointer is outside the application windows).
+*/
+public final class PointerLocation{
+	private static final Logger L=Logger.getLogger(PointerLocation.class.getName());
+	//static { L.setLevel(Level.ALL); }
+
+	public static final long DEFAULT_MAX_STALENESS_NANOS=16*1000000l;
+
+	private static PointerLocation INSTANCE;
+
+	private static final class Sample{
+		final int x, y;
+		final long nanos;
+		Sample(int x, int y, long nanos){
+			this.x=x;
+			this.y=y;
+			this.nanos=nanos;
+		}
+	}
+
+	private final boolean available;
+	private volatile Sample sample;
+	private volatile long maxStalenessNanos=DEFAULT_MAX_STALENESS_NANOS;
+	private final AtomicLong pointerInfoQueriesCount=new AtomicLong();
+
+	private final PrivilegedAction<PointerInfo> getPointerInfoAction=new PrivilegedAction<PointerInfo>(){
+				//@Override
+				public PointerInfo run(){
+					return MouseInfo.getPointerInfo();
+				}
+			};
+
+	/**
+	@param available {@code false} if there is no pointer on the system
+	*/
+	PointerLocation(boolean available){
+		this.available=available;
+	}
+
+	private void listenMouseEvents(){
+		final AWTEventListener mouseListener=new AWTEventListener(){
+					//@Override
+					public void eventDispatched(AWTEvent ev){
+						MouseEvent mouseEvent=(MouseEvent)ev;
+						track(mouseEvent.getXOnScreen(), mouseEvent.getYOnScreen(), System.nanoTime());
+					}
+				};
+		try{
+			AccessController.doPrivileged(new PrivilegedAction<Object>(){
+						//@Override
+						public Object run(){
+							Toolkit.getDefaultToolkit().addAWTEventListener(mouseListener,
+									AWTEvent.MOUSE_EVENT_MASK|AWTEvent.MOUSE_MOTION_EVENT_MASK);
+							return null;
+						}
+					});
+		}catch(SecurityException ex){
+			L.info("AWT mouse events can not be listened, the pointer location will be always queried: "+ex);
+		}
+	}
+
+	public static synchronized PointerLocation getInstance(){
+		if(INSTANCE==null){
+			INSTANCE=new PointerLocation(!GraphicsEnvironment.isHeadless());
+			if(INSTANCE.available)
+				INSTANCE.listenMouseEvents();
+		}
+		return INSTANCE;
+	}
+
+	/**
+	Sets the pointer location on screen delivered by a mouse event at the given {@link System#nanoTime()}.
+	*/
+	void track(int x, int y, long nanos){
+		sample=new Sample(x, y, nanos);
+	}
+
+	/**
+	@param location where the pointer location on screen is set
+	@return {@code false} if there is no pointer on the system (e.g. headless environment), {@code location} is left unchanged then.
+	*/
+	public boolean evalLocation(Point2D.Float location){
+		if(!available)
+			return false;
+		long nanos=System.nanoTime();
+		Sample sample=this.sample;
+		if(sample==null || nanos-sample.nanos>maxStalenessNanos){
+			PointerInfo pointerInfo=AccessController.doPrivileged(getPointerInfoAction);
+			pointerInfoQueriesCount.incrementAndGet();
+			if(pointerInfo==null)
+				return false;
+			Point point=pointerInfo.getLocation();
+			this.sample=sample=new Sample(point.x, point.y, nanos);
+		}
+		location.x=sample.x;
+		location.y=sample.y;
+		return true;
+	}
+
+	/**
+	@return the maximum age of the location tracked from the AWT mouse events before querying the {@link MouseInfo} again.
+	*/
+	public long getMaxStalenessNanos(){
+		return maxStalenessNanos;
+	}
+
+	public void setMaxStalenessNanos(long maxStalenessNanos){
+		if(maxStalenessNanos<0)
+			throw new IllegalArgumentException();
+		this.maxStalenessNanos=maxStalenessNanos;
+	}
+
+	/**
+	@return how many times the {@link MouseInfo} was queried because the tracked location was too old.
+	*/
+	public long getPointerInfoQueriesCount(){
+		return pointerInfoQueriesCount.get();
+	}
+}
@@ -18,8 +18,21 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 }] */
 package jpen.internal;
 
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+
 public final class ThreadUtils{
+	private static final boolean HEADLESS=GraphicsEnvironment.isHeadless();
+
 	private ThreadUtils(){}
+
+	/**
+	@return {@code true} if the current thread is the AWT event dispatch thread. Always {@code false} when running headless, without initializing the AWT toolkit.
+	*/
+	public static boolean isEventDispatchThread(){
+		return !HEADLESS && SwingUtilities.isEventDispatchThread();
+	}
 	
 	public static void sleepUninterrupted(long millis){
 		try{
@@ -28,4 +41,13 @@ public final class ThreadUtils{
 			throw new AssertionError(ex);
 		}
 	}
+
+	/**
+	Parks the current thread until the given {@link System#nanoTime()} deadline is reached. Unlike {@link #sleepUninterrupted(long)} it has sub-millisecond resolution.
+	*/
+	public static void parkUntilNanos(long deadlineNanos){
+		long nanosLeft;
+		while((nanosLeft=deadlineNanos-System.nanoTime())>0)
+			LockSupport.parkNanos(nanosLeft);
+	}
 }
\ No newline at end of file
@@ -88,8 +88,8 @@ final class LogToFileRule
 				writePoint(writer, record.samplePoint, record.reference.x, record.reference.y);
 				writer.write(", sample=");
 				writePoint(writer, record.samplePoint,
-									 record.samplePoint.levelX==null? 0: record.samplePoint.levelX.value,
-									 record.samplePoint.levelY==null? 0: record.samplePoint.levelY.value);
+									 record.samplePoint.x,
+									 record.samplePoint.y);
 				writer.write(", deviation=");
 				writePoint(writer, record.samplePoint, record.deviation.x, record.deviation.y);
 				writer.write("\n");
@@ -104,12 +104,12 @@ final class LogToFileRule
 	private void writePoint(Writer writer, RelativeLocationFilter.SamplePoint samplePoint, float x, float y)
 	throws IOException{
 		writer.write("(");
-		if(samplePoint.levelX!=null)
+		if(samplePoint.xIndex!=-1)
 			writeValue(writer, x);
 		else
 			writer.write("??");
 		writer.write(", ");
-		if(samplePoint.levelY!=null)
+		if(samplePoint.yIndex!=-1)
 			writeValue(writer, y);
 		else
 			writer.write("??");
@@ -19,13 +19,9 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 package jpen.internal.filter;
 
 import java.awt.geom.Point2D;
-import java.awt.MouseInfo;
-import java.awt.Point;
-import java.awt.PointerInfo;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
-import java.util.Collection;
 import java.util.logging.Logger;
+import jpen.filter.PenSample;
+import jpen.internal.PointerLocation;
 import jpen.PenDevice;
 import jpen.PenProvider;
 import jpen.PenState;
@@ -63,54 +59,43 @@ public final class RelativeLocationFilter {
 	static class SamplePoint
 		implements Cloneable {
 
-		PLevel levelX, levelY;
+		private PenSample sample;
+		/** Index of the level on the sample, {@code -1} if the sample has not the level. */
+		int xIndex, yIndex;
+		/** Values of the levels when reset. */
+		float x, y;
 		boolean isComplete;
 
-		boolean reset(Collection<PLevel> sample) {
-			levelX=levelY=null;
-			int valuesCount=0;
-			out:
-			for(PLevel level: sample) {
-				switch(level.getType()) {
-				case X:
-					valuesCount++;
-					levelX=level;
-					if(levelY!=null)
-						break out;
-					break;
-				case Y:
-					valuesCount++;
-					levelY=level;
-					if(levelX!=null)
-						break out;
-					break;
-				}
-			}
-			isComplete=valuesCount==2;
-			return valuesCount>0;
+		boolean reset(PenSample sample) {
+			this.sample=sample;
+			xIndex=sample.indexOf(PLevel.Type.X);
+			yIndex=sample.indexOf(PLevel.Type.Y);
+			x=xIndex==-1? 0: sample.getValue(xIndex);
+			y=yIndex==-1? 0: sample.getValue(yIndex);
+			isComplete=xIndex!=-1 && yIndex!=-1;
+			return xIndex!=-1 || yIndex!=-1;
 		}
 
 		private void set(float x, float y) {
-			set(x, y, null);
+			set(x, y, false);
 		}
 
-		private void set(float x, float y, Collection<PLevel> sample) {
-			if(levelX!=null)
-				levelX.value=x;
-			else if(sample!=null)
-				sample.add(new PLevel(PLevel.Type.X, x));
-			if(levelY!=null)
-				levelY.value=y;
-			else if(sample!=null)
-				sample.add(new PLevel(PLevel.Type.Y, y));
+		private void set(float x, float y, boolean addMissing) {
+			if(xIndex!=-1)
+				sample.setValue(xIndex, x);
+			else if(addMissing)
+				sample.add(PLevel.Type.X.ordinal(), x);
+			if(yIndex!=-1)
+				sample.setValue(yIndex, y);
+			else if(addMissing)
+				sample.add(PLevel.Type.Y.ordinal(), y);
 		}
 
 		@Override
 		public SamplePoint clone() {
 			try {
 				SamplePoint clone=(SamplePoint)super.clone();
-				clone.levelX=new PLevel(levelX);
-				clone.levelY=new PLevel(levelY);
+				clone.sample=null;
 				return clone;
 			} catch(CloneNotSupportedException ex) {
 				throw new AssertionError(ex);
@@ -145,13 +130,12 @@ public final class RelativeLocationFilter {
 
 	/**
 	@param penState the current pen values
-	@param penDevice where the {@code sample} levels are coming from
 	@param sample level values to be filtered/changed according to the {@code state} of this {@code RelativeLocationFilter}
-	@param levelsOnScreen {@code true} if the given {@code sample} levels are on the screen coordinate system
 	@return {@code true} if the state of this {@code RelativeLocationFilter} changed to a definitive value.
 	*/
-	public boolean filter(PenState penState, PenDevice penDevice, Collection<PLevel> sample, boolean levelsOnScreen) {
-		if(!levelsOnScreen) // only levelsOnScreen are supported
+	public boolean filter(PenState penState, PenSample sample) {
+		PenDevice penDevice=sample.getDevice();
+		if(!sample.getLevelsOnScreen()) // only levelsOnScreen are supported
 			return false;
 		if(state.equals(State.OFF))
 			return false;
@@ -178,7 +162,7 @@ public final class RelativeLocationFilter {
 		case ABSOLUTE:
 			break;
 		case RELATIVE:
-			samplePoint.set(reference.x, reference.y, sample);
+			samplePoint.set(reference.x, reference.y, true);
 			break;
 		case UNDEFINED:
 			samplePoint.set(penState.getLevelValue(PLevel.Type.X),
@@ -194,30 +178,21 @@ public final class RelativeLocationFilter {
 	}
 
 	private boolean setupReference() {
-		PointerInfo pointerInfo=AccessController.doPrivileged(getPointerInfoAction);
-		if(pointerInfo==null) {
+		if(!PointerLocation.getInstance().evalLocation(reference)) {
 			L.warning("No mouse found. Can not correct devices on relative (mouse) mode.");
 			state=State.OFF;
 			return false;
 		}
-		reference.setLocation(pointerInfo.getLocation());
 		return true;
 	}
 
-	private final PrivilegedAction<PointerInfo> getPointerInfoAction=new PrivilegedAction<PointerInfo>() {
-		//@Override
-		public PointerInfo run() {
-			return MouseInfo.getPointerInfo();
-		}
-	};
-
 	private void setupDeviation() {
-		if(samplePoint.levelX!=null) {
-			deviation.x=samplePoint.levelX.value-reference.x;
+		if(samplePoint.xIndex!=-1) {
+			deviation.x=samplePoint.x-reference.x;
 			absDeviation.x=Math.abs(deviation.x);
 		}
-		if(samplePoint.levelY!=null) {
-			deviation.y=samplePoint.levelY.value-reference.y;
+		if(samplePoint.yIndex!=-1) {
+			deviation.y=samplePoint.y-reference.y;
 			absDeviation.y=Math.abs(deviation.y);
 		}
 	}
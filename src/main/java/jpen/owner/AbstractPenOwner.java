@@ -20,6 +20,7 @@ package jpen.owner;
 
 import jpen.event.PenAdapter;
 import jpen.event.PenListener;
+import jpen.event.PenListenerMask;
 import jpen.PButtonEvent;
 import jpen.Pen;
 import jpen.PenEvent;
@@ -77,7 +78,7 @@ public abstract class AbstractPenOwner
 		if(!getPen().hasPressedButtons())
 			return false;
 		isDraggingOut=true;
-		getPen().addListener(draggingOutPenListener);
+		getPen().addListener(draggingOutPenListener, PenListenerMask.of(PenListenerMask.EventKind.BUTTON));
 		return true;
 	}
 
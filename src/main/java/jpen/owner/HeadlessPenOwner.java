@@ -0,0 +1,79 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.owner;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import jpen.PenProvider;
+
+/**
+A {@link PenOwner} which does not use AWT: it provides a {@link VirtualPenClip} and the pause state of its {@link jpen.PenManager} is controlled by {@link #setPaused(boolean)}. Together with providers not needing AWT (e.g. {@link jpen.provider.replay.ReplayProvider} or {@link jpen.provider.synthetic.SyntheticProvider}) it allows to run the pen pipeline with {@code java.awt.headless=true}.
+*/
+public class HeadlessPenOwner
+	extends AbstractPenOwner{
+
+	private final Collection<PenProvider.Constructor> penProviderConstructors;
+	private final VirtualPenClip penClip=new VirtualPenClip();
+	private volatile boolean paused;
+
+	/**
+	@param penProviderConstructors the providers to construct, besides the emulation provider always constructed by the {@link jpen.PenManager}
+	*/
+	public HeadlessPenOwner(PenProvider.Constructor... penProviderConstructors){
+		this.penProviderConstructors=Collections.unmodifiableList(Arrays.asList(penProviderConstructors.clone()));
+	}
+
+	//@Override
+	public Collection<PenProvider.Constructor> getPenProviderConstructors(){
+		return penProviderConstructors;
+	}
+
+	//@Override
+	public VirtualPenClip getPenClip(){
+		return penClip;
+	}
+
+	@Override
+	protected void init(){
+		applyPaused(); // called holding the scheduler lock
+	}
+
+	/**
+	Pauses or unpauses the scheduling of events. The {@link jpen.PenManager} is unpaused when it is created, unless this method is called before with {@code true}.
+	*/
+	public void setPaused(boolean paused){
+		this.paused=paused;
+		if(penManagerHandle!=null)
+			applyPaused();
+	}
+
+	public boolean getPaused(){
+		return paused;
+	}
+
+	private void applyPaused(){
+		synchronized(penManagerHandle.getPenSchedulerLock()){
+			penManagerHandle.setPenManagerPaused(paused);
+		}
+	}
+
+	@Override
+	protected void draggingOutDisengaged(){}
+}
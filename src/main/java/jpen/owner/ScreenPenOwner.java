@@ -65,7 +65,7 @@ public class ScreenPenOwner implements PenOwner {
 						}
 					}
 				};
-		ActiveWindowProperty activeWindowP=new ActiveWindowProperty(activeWindowPL); // -> registers itself with the current KeyboardFocusManager
+		ActiveWindowProperty activeWindowP=new ActiveWindowProperty(activeWindowPL, penManagerHandle.getPenManager().pen.getClock()); // -> registers itself with the current KeyboardFocusManager
 		activeWindowPL.activeWindowChanged(activeWindowP.get());
 	}
 
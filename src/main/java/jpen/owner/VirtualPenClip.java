@@ -0,0 +1,73 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.owner;
+
+import java.awt.geom.Point2D;
+import java.awt.Point;
+
+/**
+A {@link PenClip} not backed by any window: its location on the screen and size are set programmatically. By default it is located on the screen origin and contains all the points.
+*/
+public class VirtualPenClip
+	implements PenClip{
+
+	private int x, y;
+	private float width=Float.POSITIVE_INFINITY, height=Float.POSITIVE_INFINITY;
+
+	public VirtualPenClip(){}
+
+	public VirtualPenClip(int x, int y, float width, float height){
+		setLocationOnScreen(x, y);
+		setSize(width, height);
+	}
+
+	public synchronized void setLocationOnScreen(int x, int y){
+		this.x=x;
+		this.y=y;
+	}
+
+	/**
+	@param width use {@link Float#POSITIVE_INFINITY} for an unbounded clip
+	*/
+	public synchronized void setSize(float width, float height){
+		if(!(width>=0) || !(height>=0))
+			throw new IllegalArgumentException("invalid size: "+width+"x"+height);
+		this.width=width;
+		this.height=height;
+	}
+
+	public synchronized float getWidth(){
+		return width;
+	}
+
+	public synchronized float getHeight(){
+		return height;
+	}
+
+	//@Override
+	public synchronized void evalLocationOnScreen(Point locationOnScreen){
+		locationOnScreen.x=x;
+		locationOnScreen.y=y;
+	}
+
+	//@Override
+	public synchronized boolean contains(Point2D.Float point){
+		return point.x>=0 && point.y>=0 && point.x<width && point.y<height;
+	}
+}
@@ -19,38 +19,140 @@ along with jpen.  If not, see <http://www.gnu.org/licenses/>.
 package jpen.owner.awt;
 
 import java.awt.Component;
+import java.awt.event.ComponentEvent;
+import java.awt.event.ComponentListener;
+import java.awt.event.HierarchyBoundsListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
 import java.awt.geom.Point2D;
 import java.awt.Point;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.SwingUtilities;
 import jpen.owner.PenClip;
 
+/**
+Caches the active component location on screen and size: they are evaluated again (walking the component hierarchy) only after the component or one of its ancestors is moved, resized or changes in the hierarchy, or when the active component changes.
+*/
 final class ComponentPenClip
 	implements PenClip{
 	final ComponentPenOwner componentPenOwner;
+	private final Invalidator invalidator=new Invalidator();
+	private final AtomicInteger invalidationsCount=new AtomicInteger();
+	private volatile Geometry geometry;
+	private WeakReference<Component> listenedComponentRef; // guarded by this
+
+	private static final class Geometry{
+		final WeakReference<Component> componentRef;
+		final int invalidationsCount;
+		final int x, y, width, height;
+
+		Geometry(Component component, int invalidationsCount, Point locationOnScreen){
+			this.componentRef=new WeakReference<Component>(component);
+			this.invalidationsCount=invalidationsCount;
+			this.x=locationOnScreen.x;
+			this.y=locationOnScreen.y;
+			this.width=component.getWidth();
+			this.height=component.getHeight();
+		}
+	}
+
+	private final class Invalidator
+		implements ComponentListener, HierarchyBoundsListener, HierarchyListener{
+		private void invalidate(){
+			invalidationsCount.incrementAndGet();
+		}
+		//@Override
+		public void componentResized(ComponentEvent ev){
+			invalidate();
+		}
+		//@Override
+		public void componentMoved(ComponentEvent ev){
+			invalidate();
+		}
+		//@Override
+		public void componentShown(ComponentEvent ev){
+			invalidate();
+		}
+		//@Override
+		public void componentHidden(ComponentEvent ev){
+			invalidate();
+		}
+		//@Override
+		public void ancestorMoved(HierarchyEvent ev){
+			invalidate();
+		}
+		//@Override
+		public void ancestorResized(HierarchyEvent ev){
+			invalidate();
+		}
+		//@Override
+		public void hierarchyChanged(HierarchyEvent ev){
+			invalidate();
+		}
+	}
 
 	public ComponentPenClip(ComponentPenOwner componentPenOwner){
 		this.componentPenOwner=componentPenOwner;
 	}
-	
-		//@Override
-	public void evalLocationOnScreen(Point pointOnScreen){
+
+	/**
+	@return the cached geometry of the active component or {@code null} if there is no active component.
+	*/
+	private Geometry getGeometry(){
 		Component activeComponent=componentPenOwner.getActiveComponent();
 		if(activeComponent==null)
+			return null;
+		Geometry geometry=this.geometry;
+		if(geometry!=null &&
+			 geometry.invalidationsCount==invalidationsCount.get() &&
+			 geometry.componentRef.get()==activeComponent)
+			return geometry;
+		return evalGeometry(activeComponent);
+	}
+
+	private synchronized Geometry evalGeometry(Component activeComponent){
+		listen(activeComponent);
+		int invalidationsCount=this.invalidationsCount.get(); // read before evaluating: a concurrent invalidation makes the result stale.
+		Point locationOnScreen=new Point();
+		SwingUtilities.convertPointToScreen(locationOnScreen, activeComponent);
+		return this.geometry=new Geometry(activeComponent, invalidationsCount, locationOnScreen);
+	}
+
+	private void listen(Component activeComponent){
+		Component listenedComponent=listenedComponentRef==null? null: listenedComponentRef.get();
+		if(listenedComponent==activeComponent)
 			return;
-		pointOnScreen.x=pointOnScreen.y=0;
-		SwingUtilities.convertPointToScreen(pointOnScreen, activeComponent);
+		if(listenedComponent!=null){
+			listenedComponent.removeComponentListener(invalidator);
+			listenedComponent.removeHierarchyBoundsListener(invalidator);
+			listenedComponent.removeHierarchyListener(invalidator);
+		}
+		activeComponent.addComponentListener(invalidator);
+		activeComponent.addHierarchyBoundsListener(invalidator);
+		activeComponent.addHierarchyListener(invalidator);
+		listenedComponentRef=new WeakReference<Component>(activeComponent);
+	}
+
+	//@Override
+	public void evalLocationOnScreen(Point pointOnScreen){
+		Geometry geometry=getGeometry();
+		if(geometry==null)
+			return;
+		pointOnScreen.x=geometry.x;
+		pointOnScreen.y=geometry.y;
 	}
 
 	//@Override
 	public boolean contains(Point2D.Float point){
-		Component activeComponent=componentPenOwner.getActiveComponent();
-		if(activeComponent==null)
+		Geometry geometry=getGeometry();
+		if(geometry==null)
 			return false;
 		if(point.x<0 || point.y<0 ||
-			 point.x>activeComponent.getWidth() ||
-			 point.y>activeComponent.getHeight()){
+			 point.x>geometry.width ||
+			 point.y>geometry.height){
 			return false;
 		}
 		return true;
 	}
-}
\ No newline at end of file
+}
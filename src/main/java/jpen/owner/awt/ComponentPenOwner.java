@@ -121,7 +121,7 @@ public abstract class ComponentPenOwner
 
 		void setEnabled(boolean enabled) {
 			if(activeWindowP==null)
-				activeWindowP=new ActiveWindowProperty(this);
+				activeWindowP=new ActiveWindowProperty(this, penManagerHandle.getPenManager().pen.getClock());
 			this.enabled=enabled;
 		}
 
@@ -65,6 +65,7 @@ public abstract class AbstractPenProvider
 		private PenManager penManager;
 		private PenProvider constructed;
 		private ConstructionException constructionException;
+		private long nativeLoadNanos=-1;
 
 		//@Override
 		public PenManager getPenManager(){
@@ -81,13 +82,27 @@ public abstract class AbstractPenProvider
 			return constructed;
 		}
 
+		/**
+		@return the nanoseconds taken on {@link #construct(PenManager)} to load the native library and check its build number, {@code -1} if the provider does not use a native library or {@code construct(PenManager)} has not being called.
+		*/
+		public long getNativeLoadNanos(){
+			return nativeLoadNanos;
+		}
+
 		//@Override
 		public final boolean construct(PenManager penManager){
 			if(this.penManager!=null)
 				throw new IllegalStateException("constructor already used by PenManager");
 			this.penManager=penManager;
 			try{
-				checkExpectedNativeBuild();
+				boolean usesNativeLibrary=getNativeVersion()!=-1;
+				long nativeLoadStartNanos=System.nanoTime();
+				try{
+					checkExpectedNativeBuild();
+				}finally{
+					if(usesNativeLibrary)
+						this.nativeLoadNanos=System.nanoTime()-nativeLoadStartNanos;
+				}
 				this.constructed=constructProvider();
 			}catch(Throwable t){
 				this.constructionException=new ConstructionException(t);
@@ -20,23 +20,126 @@
 % }] */
 package jpen.provider;
 
-import java.awt.DisplayMode;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Rectangle2D;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsDevice;
 import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jpen.PLevel;
 
+/**
+Keeps the geometry of the screens as an immutable {@link Snapshot}, used by the providers to map the tablet movement levels (ranged from 0 to 1) to screen coordinates. The snapshot is swapped atomically and only when the geometry changes.<p>
+
+AWT gives no public display configuration change notification: the screens are enumerated once on a background thread when the instance is created (the first enumeration is expensive) and then again, synchronously, on each {@link #reset()} (called when a provider is unpaused, a display change usually comes with focus/window changes) or {@link #refresh()}. The samples following a reset are mapped with the new geometry. A display change while the providers stay unpaused is not seen until the next reset.
+*/
 public final class VirtualScreenBounds{
 	static final Logger L=Logger.getLogger(VirtualScreenBounds.class.getName());
+	//static { L.setLevel(Level.ALL); }
 	private static VirtualScreenBounds INSTANCE;
-	private final Rectangle2D.Float r=new Rectangle2D.Float();
 
-	{
-		// first time calc is expensive... I do it once in a background thread
+	/**
+	Immutable screens geometry, with the offset and multiplier of each movement level precomputed for the virtual screen (the union of all the screens).
+	*/
+	public static final class Snapshot{
+		private static final int X=0, Y=1;
+		static final Snapshot EMPTY=new Snapshot(new Rectangle[0]);
+
+		private final Rectangle2D.Float bounds=new Rectangle2D.Float();
+		private final Rectangle[] screensBounds;
+		/** Indexed by axis. */
+		private final float[] offsets=new float[2], mults=new float[2];
+
+		Snapshot(Rectangle[] screensBounds){
+			this.screensBounds=screensBounds;
+			for(int i=0; i<screensBounds.length; i++)
+				if(i==0)
+					bounds.setRect(screensBounds[i]);
+				else
+					bounds.add(screensBounds[i]);
+			offsets[X]=bounds.x;
+			mults[X]=bounds.width;
+			offsets[Y]=bounds.y;
+			mults[Y]=bounds.height;
+		}
+
+		private static int getAxis(PLevel.Type type){
+			switch(type){
+			case X:
+				return X;
+			case Y:
+				return Y;
+			default:
+				return -1;
+			}
+		}
+
+		/**
+		@param value a movement level value ranged from 0 to 1
+		@return the value mapped to the virtual screen coordinates. Other level types are returned unchanged.
+		*/
+		public float map(PLevel.Type type, float value){
+			int axis=getAxis(type);
+			if(axis==-1)
+				return value;
+			return offsets[axis]+value*mults[axis];
+		}
+
+		public float getLevelRangeOffset(PLevel.Type type){
+			int axis=getAxis(type);
+			return axis==-1? 0f: offsets[axis];
+		}
+
+		public float getLevelRangeMult(PLevel.Type type){
+			int axis=getAxis(type);
+			return axis==-1? 1f: mults[axis];
+		}
+
+		/**
+		@return the union of all the screens bounds.
+		*/
+		public Rectangle2D getBounds(){
+			return (Rectangle2D)bounds.clone();
+		}
+
+		public int getScreensCount(){
+			return screensBounds.length;
+		}
+
+		public Rectangle getScreenBounds(int screen){
+			return new Rectangle(screensBounds[screen]);
+		}
+
+		/**
+		@return the index of the screen containing the given virtual screen point or {@code -1} if none.
+		*/
+		public int getScreen(float x, float y){
+			for(int i=0; i<screensBounds.length; i++){
+				Rectangle r=screensBounds[i];
+				if(x>=r.x && y>=r.y && x<r.x+r.width && y<r.y+r.height)
+					return i;
+			}
+			return -1;
+		}
+
+		boolean sameGeometry(Rectangle[] screensBounds){
+			return Arrays.equals(this.screensBounds, screensBounds);
+		}
+
+		@Override
+		public String toString(){
+			return "[VirtualScreenBounds.Snapshot: bounds="+bounds+", screensBounds="+Arrays.toString(screensBounds)+"]";
+		}
+	}
+
+	private volatile Snapshot snapshot=Snapshot.EMPTY;
+	/** Set once the first enumeration of the screens, done on a background thread, ended. */
+	private volatile boolean firstRefreshDone;
+
+	private VirtualScreenBounds(){
 		new Thread(){
 			{
 				setName("jpen-VirtualScreenBounds");
@@ -44,52 +147,66 @@ public final class VirtualScreenBounds{
 			}
 			@Override
 			public void run(){
-				reset();
+				refresh(); // first time calc is expensive... it is done once in this background thread
+				firstRefreshDone=true;
 				L.fine("first calculation done.");
 			}
 		}.start();
 	}
 
-	private VirtualScreenBounds(){}
-
-	public static VirtualScreenBounds getInstance(){
+	public static synchronized VirtualScreenBounds getInstance(){
 		if(INSTANCE==null)
 			INSTANCE=new VirtualScreenBounds();
 		return INSTANCE;
 	}
 
-	public synchronized void reset(){
-		r.x=r.y=r.width=r.height=0;
-		calc(r);
+	/**
+	@return the current screens geometry. Read it once to map all the levels of an event.
+	*/
+	public Snapshot getSnapshot(){
+		return snapshot;
 	}
 
-	static void calc(Rectangle2D r){
-		for (GraphicsDevice gd: GraphicsEnvironment.
-		        getLocalGraphicsEnvironment().getScreenDevices()){
-			GraphicsConfiguration graphicsConfiguration=gd.getDefaultConfiguration();
-			r.add(graphicsConfiguration.getBounds());
+	/**
+	Enumerates the screens now, like {@link #refresh()}, unless the first enumeration is still running on the background thread: it will see the current geometry.
+	*/
+	public void reset(){
+		if(firstRefreshDone)
+			refresh();
+	}
+
+	/**
+	Enumerates the screens now, swapping the snapshot if the geometry changed.
+	*/
+	public synchronized void refresh(){ // synchronized: an older enumeration must not replace a newer one.
+		Rectangle[] screensBounds=calcScreensBounds();
+		if(snapshot.sameGeometry(screensBounds))
+			return;
+		snapshot=new Snapshot(screensBounds);
+		if(L.isLoggable(Level.FINE))
+			L.fine("new snapshot: "+snapshot);
+	}
+
+	static Rectangle[] calcScreensBounds(){
+		GraphicsDevice[] graphicsDevices;
+		try{
+			graphicsDevices=GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
+		}catch(HeadlessException ex){
+			return new Rectangle[0];
+		}
+		Rectangle[] screensBounds=new Rectangle[graphicsDevices.length];
+		for(int i=0; i<graphicsDevices.length; i++){
+			GraphicsConfiguration graphicsConfiguration=graphicsDevices[i].getDefaultConfiguration();
+			screensBounds[i]=graphicsConfiguration.getBounds();
 		}
+		return screensBounds;
 	}
 
 	public float getLevelRangeMult(PLevel.Type type) {
-		switch(type){
-		case X:
-			return r.width;
-		case Y:
-			return r.height;
-		default:
-			return 1f;
-		}
+		return snapshot.getLevelRangeMult(type);
 	}
 
 	public float getLevelRangeOffset(PLevel.Type type){
-		switch(type){
-		case X:
-			return r.x;
-		case Y:
-			return r.y;
-		default:
-			return 0f;
-		}
+		return snapshot.getLevelRangeOffset(type);
 	}
 }
@@ -0,0 +1,308 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import jpen.PButton;
+import jpen.PenClock;
+import jpen.PenManager;
+import jpen.PenProvider;
+import jpen.PLevel;
+import jpen.PScroll;
+import jpen.codec.PenEventDecoder;
+import jpen.provider.AbstractPenDevice;
+import jpen.provider.AbstractPenProvider;
+
+/**
+Replays a session recorded by the {@link SessionRecorder}, scheduling its events through the {@link PenManager} as a tablet provider does. The recorded devices are added to the pen manager when their first event is replayed, having the recorded names and physical ids. The recorded level values were already smoothed by the pen filters: they are scheduled using {@link PenManager#scheduleSmoothedLevelEvent(jpen.PenDevice, long, java.util.Collection)} to not be smoothed again.<p>
+
+The events are replayed on their own thread once the pen manager is unpaused and are held while it is paused. Replaying faster than the recorded speed can trigger the {@link jpen.Pen.OverloadPolicy}: the default {@link jpen.Pen.OverloadPolicy#BLOCK_PRODUCER} fires all the replayed events.
+*/
+public final class ReplayProvider
+	extends AbstractPenProvider{
+	private static final Logger L=Logger.getLogger(ReplayProvider.class.getName());
+	//static { L.setLevel(Level.ALL); }
+
+	/** Replay speed to schedule the events without waiting between them. */
+	public static final double AS_FAST_AS_POSSIBLE=Double.POSITIVE_INFINITY;
+
+	public static class Constructor
+		extends AbstractPenProvider.AbstractConstructor{
+		public static final String NAME="Replay";
+		private final File sessionFile;
+		private final double speed;
+
+		/**
+		@param sessionFile written by a {@link SessionRecorder}
+		@param speed {@code 1} to replay at the recorded speed, {@code 2} to replay twice as fast, {@code 0.5} to replay at half speed... or {@link ReplayProvider#AS_FAST_AS_POSSIBLE}
+		*/
+		public Constructor(File sessionFile, double speed){
+			if(!(speed>0))
+				throw new IllegalArgumentException("speed must be positive");
+			this.sessionFile=sessionFile;
+			this.speed=speed;
+		}
+
+		//@Override
+		public String getName(){
+			return NAME;
+		}
+
+		//@Override
+		public boolean constructable(PenManager penManager){
+			return true;
+		}
+
+		@Override
+		protected PenProvider constructProvider() throws Throwable{
+			return new ReplayProvider(this);
+		}
+	}
+
+	static final class ReplayDevice
+		extends AbstractPenDevice{
+		private final String name;
+		private final String physicalId;
+
+		ReplayDevice(ReplayProvider replayProvider, String name, String physicalId, int kindTypeNumber){
+			super(replayProvider);
+			this.name=name;
+			this.physicalId=physicalId;
+			setKindTypeNumber(kindTypeNumber);
+			setEnabled(true);
+		}
+
+		//@Override
+		public String getName(){
+			return name;
+		}
+
+		@Override
+		protected String evalPhysicalId(){
+			return physicalId!=null? physicalId: super.evalPhysicalId();
+		}
+	}
+
+	private final DataInputStream in;
+	private final double speed;
+	private final PenClock clock;
+	private final PenEventDecoder decoder=new PenEventDecoder();
+	private ByteBuffer eventsBuffer=ByteBuffer.allocate(1<<16);
+	/** Replay devices by recorded device id. */
+	private final ReplayDevice[] recordedIdToDevice=new ReplayDevice[1<<Byte.SIZE];
+	private final List<PLevel> levels=new ArrayList<PLevel>();
+	private boolean started;
+	private long firstTimeNanos, startNanos;
+	private boolean paused=true;
+	private boolean finished;
+	private volatile long replayedEventsCount;
+	private volatile IOException ioException;
+
+	private final PenEventDecoder.Handler eventsHandler=new PenEventDecoder.Handler(){
+				//@Override
+				public void deviceDefined(byte deviceId, String physicalId){} // the devices are given by the session device blocks.
+
+				//@Override
+				public void levelEvent(byte deviceId, long deviceTime, long timeNanos, int levelsCount, int[] levelTypeNumbers, float[] levelValues){
+					ReplayDevice device=startEvent(deviceId, timeNanos);
+					levels.clear();
+					for(int i=0; i<levelsCount; i++)
+						levels.add(new PLevel(levelTypeNumbers[i], levelValues[i]));
+					getPenManager().scheduleSmoothedLevelEvent(device, deviceTime, levels);
+				}
+
+				//@Override
+				public void buttonEvent(byte deviceId, long deviceTime, long timeNanos, int buttonTypeNumber, boolean value){
+					getPenManager().scheduleButtonEvent(startEvent(deviceId, timeNanos), deviceTime, new PButton(buttonTypeNumber, value));
+				}
+
+				//@Override
+				public void scrollEvent(byte deviceId, long deviceTime, long timeNanos, int scrollTypeNumber, int value){
+					getPenManager().scheduleScrollEvent(startEvent(deviceId, timeNanos), deviceTime, new PScroll(scrollTypeNumber, value));
+				}
+
+				//@Override
+				public void kindEvent(byte deviceId, long deviceTime, long timeNanos, int kindTypeNumber){
+					startEvent(deviceId, timeNanos).setKindTypeNumber(kindTypeNumber); // the pen schedules the kind event on the next level event of the device.
+				}
+			};
+
+	private ReplayProvider(Constructor constructor) throws IOException{
+		super(constructor);
+		this.speed=constructor.speed;
+		this.clock=constructor.getPenManager().pen.getClock();
+		in=new DataInputStream(new BufferedInputStream(new FileInputStream(constructor.sessionFile)));
+		try{
+			if(in.readInt()!=SessionFormat.MAGIC)
+				throw new IOException("not a pen session file: "+constructor.sessionFile);
+			short version=in.readShort();
+			if(version!=SessionFormat.VERSION)
+				throw new IOException("unsupported pen session version: "+version);
+		}catch(IOException ex){
+			in.close();
+			throw ex;
+		}
+		Thread thread=new Thread("jpen-ReplayProvider"){
+					@Override
+					public void run(){
+						replay();
+					}
+				};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void replay(){
+		try{
+			while(true){
+				byte blockType;
+				try{
+					blockType=in.readByte();
+				}catch(EOFException ex){
+					break;
+				}
+				switch(blockType){
+				case SessionFormat.DEVICE:
+					readDevice();
+					break;
+				case SessionFormat.EVENTS:
+					readEvents();
+					break;
+				default:
+					throw new IOException("unknown block type: "+blockType);
+				}
+			}
+		}catch(IOException ex){
+			L.warning("replay stopped: "+ex);
+			ioException=ex;
+		}finally{
+			try{
+				in.close();
+			}catch(IOException ex){}
+			synchronized(this){
+				finished=true;
+				notifyAll();
+			}
+		}
+	}
+
+	private void readDevice() throws IOException{
+		byte recordedId=in.readByte();
+		String name=in.readUTF();
+		String physicalId=in.readBoolean()? in.readUTF(): null;
+		ReplayDevice device=new ReplayDevice(this, name, physicalId, in.readInt());
+		getPenManager().waitForProvider(getConstructor()); // waits until the pen manager ends adding this provider and its initial devices.
+		ReplayDevice oldDevice=recordedIdToDevice[recordedId&0xff];
+		if(oldDevice!=null){ // the recorded id was taken by another device
+			devices.remove(oldDevice);
+			getPenManager().firePenDeviceRemoved(getConstructor(), oldDevice);
+		}
+		recordedIdToDevice[recordedId&0xff]=device;
+		devices.add(device);
+		getPenManager().firePenDeviceAdded(getConstructor(), device);
+	}
+
+	private void readEvents() throws IOException{
+		int length=in.readInt();
+		if(length<0)
+			throw new IOException("invalid events block length: "+length);
+		if(eventsBuffer.capacity()<length)
+			eventsBuffer=ByteBuffer.allocate(length);
+		in.readFully(eventsBuffer.array(), 0, length);
+		eventsBuffer.clear();
+		eventsBuffer.limit(length);
+		try{
+			if(decoder.getVersion()==0 && !decoder.readHeader(eventsBuffer))
+				throw new IOException("pen event stream header missing");
+			while(eventsBuffer.hasRemaining())
+				if(!decoder.decode(eventsBuffer, eventsHandler))
+					throw new IOException("events block ends on an incomplete record");
+		}catch(IllegalArgumentException ex){
+			throw new IOException("corrupted events block: "+ex.getMessage());
+		}
+	}
+
+	/**
+	Waits until the time of the event on the replay timeline.
+	*/
+	private ReplayDevice startEvent(byte deviceId, long timeNanos){
+		ReplayDevice device=recordedIdToDevice[deviceId&0xff];
+		if(device==null)
+			throw new IllegalArgumentException("event of an unknown device: "+deviceId);
+		if(started && speed!=AS_FAST_AS_POSSIBLE)
+			clock.parkUntilNanos(startNanos+(long)((timeNanos-firstTimeNanos)/speed));
+		if(waitWhilePaused() || !started){ // restarts the timeline
+			started=true;
+			firstTimeNanos=timeNanos;
+			startNanos=clock.nanoTime();
+		}
+		replayedEventsCount++;
+		return device;
+	}
+
+	/**
+	@return {@code true} if it waited.
+	*/
+	private synchronized boolean waitWhilePaused(){
+		if(!paused)
+			return false;
+		while(paused)
+			try{
+				wait();
+			}catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+				return true;
+			}
+		return true;
+	}
+
+	//@Override
+	public synchronized void penManagerPaused(boolean paused){
+		this.paused=paused;
+		notifyAll();
+	}
+
+	/**
+	Waits until all the events of the session were replayed or the replay failed (see {@link #getIOException()}).
+	*/
+	public synchronized void waitForEnd() throws InterruptedException{
+		while(!finished)
+			wait();
+	}
+
+	public long getReplayedEventsCount(){
+		return replayedEventsCount;
+	}
+
+	/**
+	@return the exception which stopped the replay or {@code null}
+	*/
+	public IOException getIOException(){
+		return ioException;
+	}
+}
@@ -0,0 +1,38 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.replay;
+
+/**
+Binary format of the sessions written by the {@link SessionRecorder} and read by the {@link ReplayProvider}. Fixed size values use {@link java.io.DataOutput} encoding:<p>
+
+{@code MAGIC:int VERSION:short} followed by blocks, each one starting with its type:
+<ul>
+<li>{@code DEVICE:byte deviceId:byte name:UTF hasPhysicalId:boolean [physicalId:UTF] kindTypeNumber:int}, written before the first event of the device and again when its id is taken by another device.</li>
+<li>{@code EVENTS:byte length:int events}: the events encoded by a {@link jpen.codec.PenEventEncoder}. The encoded stream goes on across the blocks, its header is on the first block, and each block holds whole records.</li>
+</ul>
+*/
+final class SessionFormat{
+	static final int MAGIC=0x4a50534e; // "JPSN"
+	static final short VERSION=1;
+
+	static final byte DEVICE=0;
+	static final byte EVENTS=1;
+
+	private SessionFormat(){}
+}
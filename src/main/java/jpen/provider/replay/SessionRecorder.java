@@ -0,0 +1,190 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+import jpen.PButtonEvent;
+import jpen.PenDevice;
+import jpen.PenEvent;
+import jpen.PenManager;
+import jpen.PKindEvent;
+import jpen.PLevelEvent;
+import jpen.PScrollEvent;
+import jpen.codec.PenEventEncoder;
+import jpen.event.PenListener;
+
+/**
+Writes the events fired by the {@link jpen.Pen} to a binary session log (see {@link SessionFormat}) which can be replayed later using the {@link ReplayProvider}. Add it to the pen using {@link jpen.Pen#addListener(PenListener)} and {@link #close()} it after removing it.<p>
+
+The events are encoded by a {@link PenEventEncoder} into a memory buffer, written to the output stream only when the buffer is full, on {@link #flush()} and on {@link #close()}: recording does not write to the stream on each tock. The samples of the history of coalesced events are recorded as level events. The events of the emulation device (see {@link PenManager#isEmulationDevice(PenDevice)}) are not recorded because they are scheduled again by the pen when the session is replayed.
+*/
+public class SessionRecorder
+	implements PenListener{
+	private static final Logger L=Logger.getLogger(SessionRecorder.class.getName());
+	//static { L.setLevel(Level.ALL); }
+
+	private static final int EVENTS_BUFFER_SIZE=1<<16;
+
+	private final PenManager penManager;
+	private final DataOutputStream out;
+	private final PenEventEncoder encoder=new PenEventEncoder();
+	private final ByteBuffer eventsBuffer=ByteBuffer.allocate(EVENTS_BUFFER_SIZE);
+	/** The device of each device id when its device block was written: ids are reused by other devices. */
+	private final PenDevice[] recordedDevices=new PenDevice[1<<Byte.SIZE];
+	private long recordedEventsCount;
+	private IOException ioException;
+	private boolean closed;
+
+	/**
+	@param out where the session is written. Buffered by this recorder.
+	*/
+	public SessionRecorder(PenManager penManager, OutputStream out) throws IOException{
+		this.penManager=penManager;
+		this.out=new DataOutputStream(new BufferedOutputStream(out));
+		this.out.writeInt(SessionFormat.MAGIC);
+		this.out.writeShort(SessionFormat.VERSION);
+		encoder.writeHeader(eventsBuffer);
+	}
+
+	//@Override
+	public synchronized void penKindEvent(PKindEvent ev){
+		record(ev);
+	}
+
+	//@Override
+	public synchronized void penLevelEvent(PLevelEvent ev){
+		record(ev);
+	}
+
+	//@Override
+	public synchronized void penButtonEvent(PButtonEvent ev){
+		record(ev);
+	}
+
+	//@Override
+	public synchronized void penScrollEvent(PScrollEvent ev){
+		record(ev);
+	}
+
+	//@Override
+	public void penTock(long availableMillis){}
+
+	private void record(PenEvent ev){
+		if(closed || ioException!=null)
+			return;
+		PenDevice device=penManager.getDevice(ev.getDeviceId());
+		if(device==null || penManager.isEmulationDevice(device))
+			return;
+		try{
+			int deviceIndex=device.getId()&0xff;
+			if(recordedDevices[deviceIndex]!=device){
+				writeEventsBlock();
+				writeDeviceBlock(device);
+				recordedDevices[deviceIndex]=device;
+			}
+			if(!encoder.encode(ev, eventsBuffer)){
+				writeEventsBlock();
+				if(!encoder.encode(ev, eventsBuffer)){
+					L.warning("event too big for the session recorder buffer, not recorded: "+ev);
+					return;
+				}
+			}
+		}catch(IOException ex){
+			fail(ex);
+			return;
+		}
+		recordedEventsCount++;
+		if(ev instanceof PLevelEvent)
+			recordedEventsCount+=((PLevelEvent)ev).getHistorySize();
+	}
+
+	private void writeDeviceBlock(PenDevice device) throws IOException{
+		out.writeByte(SessionFormat.DEVICE);
+		out.writeByte(device.getId());
+		out.writeUTF(device.getName());
+		String physicalId=device.getPhysicalId();
+		out.writeBoolean(physicalId!=null);
+		if(physicalId!=null)
+			out.writeUTF(physicalId);
+		out.writeInt(device.getKindTypeNumber());
+	}
+
+	private void writeEventsBlock() throws IOException{
+		if(eventsBuffer.position()==0)
+			return;
+		out.writeByte(SessionFormat.EVENTS);
+		out.writeInt(eventsBuffer.position());
+		out.write(eventsBuffer.array(), 0, eventsBuffer.position());
+		eventsBuffer.clear();
+	}
+
+	private void fail(IOException ex){
+		L.severe("session recording stopped: "+ex);
+		ioException=ex;
+	}
+
+	/**
+	@return the exception which stopped the recording or {@code null} if the recording is going well
+	*/
+	public synchronized IOException getIOException(){
+		return ioException;
+	}
+
+	/**
+	@return the count of recorded events, counting each sample of the history of coalesced events.
+	*/
+	public synchronized long getRecordedEventsCount(){
+		return recordedEventsCount;
+	}
+
+	/**
+	Writes the buffered events and flushes the output stream.
+	*/
+	public synchronized void flush() throws IOException{
+		if(closed || ioException!=null)
+			return;
+		try{
+			writeEventsBlock();
+			out.flush();
+		}catch(IOException ex){
+			fail(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	Writes the buffered events and closes the output stream. The events received after closing are ignored.
+	*/
+	public synchronized void close() throws IOException{
+		if(closed)
+			return;
+		closed=true;
+		try{
+			if(ioException==null)
+				writeEventsBlock();
+		}finally{
+			out.close();
+		}
+	}
+}
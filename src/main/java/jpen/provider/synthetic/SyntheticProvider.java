@@ -0,0 +1,371 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.synthetic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import jpen.PButton;
+import jpen.PenClock;
+import jpen.PenManager;
+import jpen.PenProvider;
+import jpen.PKind;
+import jpen.PLevel;
+import jpen.provider.AbstractPenDevice;
+import jpen.provider.AbstractPenProvider;
+
+/**
+Simulates devices drawing parametric {@link Stroke}s, each one on its own thread at a fixed sampling rate paced by the {@link jpen.Pen#getClock()}, scheduling the events through the {@link PenManager} as a tablet provider does. Select it returning its {@link Constructor} from {@link jpen.owner.PenOwner#getPenProviderConstructors()}.<p>
+
+Each stroke presses the {@link PButton.Type#LEFT} button after its first sample and releases it after its last sample, while the pressure ramps up to {@code 1} and down again. The devices can also switch between the {@link PKind.Type#STYLUS} and {@link PKind.Type#ERASER} kinds and make the {@link PButton.Type#RIGHT} button chatter periodically. The events are produced once the pen manager is unpaused and are held while it is paused. The count of accepted level events (see {@link #getAcceptedLevelEventsCount()}) can be compared with the level events fired by the {@link jpen.Pen} for the synthetic devices to measure the level events dropped or coalesced by a lossy {@link jpen.Pen.OverloadPolicy}. The counts of produced events can not: the pen filters out level events not changing any value and button events not changing the button state, and it fires emulated {@link PButton.Type#ON_PRESSURE} button events (on the emulation device, see {@link PenManager#isEmulationDevice(jpen.PenDevice)}) when the pressure changes from or to zero.
+*/
+public final class SyntheticProvider
+	extends AbstractPenProvider{
+	private static final Logger L=Logger.getLogger(SyntheticProvider.class.getName());
+	//static { L.setLevel(Level.ALL); }
+
+	public enum Stroke{
+		/** Horizontal lines, one row per device. */
+		LINE,
+		/** Spiral growing from the center of the area. */
+		SPIRAL,
+		/** Random walk. */
+		NOISE,
+		/** Pressure ramp on the center of the area, without movement. */
+		PRESSURE_RAMP
+	}
+
+	/**
+	The setters must be called before adding this constructor to the {@link PenManager}.
+	*/
+	public static class Constructor
+		extends AbstractPenProvider.AbstractConstructor{
+		public static final String NAME="Synthetic";
+		private final int devicesCount;
+		private final double samplesPerSecond;
+		private Stroke stroke=Stroke.LINE;
+		private int strokeSamplesCount;
+		private float areaWidth=800, areaHeight=600;
+		private int kindSwitchPeriod;
+		private int buttonChatterPeriod;
+		private long samplesCount;
+
+		/**
+		@param samplesPerSecond the rate of level events of each device
+		*/
+		public Constructor(int devicesCount, double samplesPerSecond){
+			if(devicesCount<1 || devicesCount>Byte.MAX_VALUE)
+				throw new IllegalArgumentException("invalid devicesCount: "+devicesCount);
+			if(!(samplesPerSecond>0) || Double.isInfinite(samplesPerSecond))
+				throw new IllegalArgumentException("invalid samplesPerSecond: "+samplesPerSecond);
+			this.devicesCount=devicesCount;
+			this.samplesPerSecond=samplesPerSecond;
+			this.strokeSamplesCount=Math.max(2, (int)samplesPerSecond);
+		}
+
+		/**
+		@param stroke the shape drawn by all the devices. The default is {@link Stroke#LINE}.
+		@param strokeSamplesCount the number of level events of each stroke. The default is one second of samples.
+		*/
+		public void setStroke(Stroke stroke, int strokeSamplesCount){
+			if(strokeSamplesCount<2)
+				throw new IllegalArgumentException("strokeSamplesCount must be greater than 1");
+			this.stroke=stroke;
+			this.strokeSamplesCount=strokeSamplesCount;
+		}
+
+		/**
+		Sets the size of the area where the strokes are drawn, on the {@link jpen.owner.PenClip} coordinates. The default is 800x600.
+		*/
+		public void setArea(float areaWidth, float areaHeight){
+			this.areaWidth=areaWidth;
+			this.areaHeight=areaHeight;
+		}
+
+		/**
+		@param kindSwitchPeriod switch the kind of the devices every this number of strokes. {@code 0} (the default) to keep them as {@link PKind.Type#STYLUS}. The pen changes the kind only when there are no pressed buttons, see {@link #setButtonChatterPeriod(int)}.
+		*/
+		public void setKindSwitchPeriod(int kindSwitchPeriod){
+			this.kindSwitchPeriod=Math.max(0, kindSwitchPeriod);
+		}
+
+		/**
+		@param buttonChatterPeriod toggle the {@link PButton.Type#RIGHT} button every this number of samples. {@code 0} (the default) disables the chatter.
+		*/
+		public void setButtonChatterPeriod(int buttonChatterPeriod){
+			this.buttonChatterPeriod=Math.max(0, buttonChatterPeriod);
+		}
+
+		/**
+		@param samplesCount the number of level events produced by each device before stopping. {@code 0} (the default) to produce until {@link SyntheticProvider#stop()} is called.
+		*/
+		public void setSamplesCount(long samplesCount){
+			this.samplesCount=Math.max(0, samplesCount);
+		}
+
+		//@Override
+		public String getName(){
+			return NAME;
+		}
+
+		//@Override
+		public boolean constructable(PenManager penManager){
+			return true;
+		}
+
+		@Override
+		protected PenProvider constructProvider(){
+			return new SyntheticProvider(this);
+		}
+	}
+
+	public final class SyntheticDevice
+		extends AbstractPenDevice{
+		private final int index;
+		private final Random random;
+		private final List<PLevel> levels=new ArrayList<PLevel>(3);
+		private float noiseX=constructor.areaWidth/2, noiseY=constructor.areaHeight/2;
+		private boolean rightButtonPressed;
+		private volatile long producedLevelEventsCount;
+		private volatile long acceptedLevelEventsCount;
+		private volatile long producedButtonEventsCount;
+
+		private SyntheticDevice(int index){
+			super(SyntheticProvider.this);
+			this.index=index;
+			this.random=new Random(index);
+			setKindTypeNumber(PKind.Type.STYLUS.ordinal());
+			setEnabled(true);
+		}
+
+		//@Override
+		public String getName(){
+			return "Synthetic "+index;
+		}
+
+		/**
+		@return the number of level events scheduled by this device, including the ones filtered out by the pen scheduler.
+		*/
+		public long getProducedLevelEventsCount(){
+			return producedLevelEventsCount;
+		}
+
+		/**
+		@return the number of level events scheduled by this device and accepted by the pen manager, see {@link PenManager#scheduleLevelEvent(jpen.PenDevice, long, java.util.Collection, boolean)}.
+		*/
+		public long getAcceptedLevelEventsCount(){
+			return acceptedLevelEventsCount;
+		}
+
+		/**
+		@return the number of button events scheduled by this device, including the ones not changing the button state.
+		*/
+		public long getProducedButtonEventsCount(){
+			return producedButtonEventsCount;
+		}
+
+		private void produce(){
+			long periodNanos=(long)(1e9/constructor.samplesPerSecond);
+			long startNanos=0, startSample=0;
+			boolean started=false;
+			for(long sample=0; constructor.samplesCount==0 || sample<constructor.samplesCount; sample++){
+				if(started)
+					clock.parkUntilNanos(startNanos+(sample-startSample)*periodNanos);
+				if(waitWhilePaused() || !started){ // restarts the timeline
+					started=true;
+					startNanos=clock.nanoTime();
+					startSample=sample;
+				}
+				if(stopped)
+					break;
+				produceSample(sample);
+			}
+		}
+
+		private void produceSample(long sample){
+			PenManager penManager=getPenManager();
+			int strokeSamplesCount=constructor.strokeSamplesCount;
+			int strokeSample=(int)(sample%strokeSamplesCount);
+			long stroke=sample/strokeSamplesCount;
+			long deviceTime=(clock.nanoTime()-originNanos)/1000000l;
+			if(strokeSample==0 && stroke>0 && constructor.kindSwitchPeriod>0 && stroke%constructor.kindSwitchPeriod==0)
+				setKindTypeNumber(getKindTypeNumber()==PKind.Type.STYLUS.ordinal()?
+													PKind.Type.ERASER.ordinal(): PKind.Type.STYLUS.ordinal()); // the pen schedules the kind event on the next level event
+			float phase=strokeSample/(float)(strokeSamplesCount-1);
+			levels.clear();
+			addMovementLevels(stroke, phase);
+			levels.add(new PLevel(PLevel.Type.PRESSURE, 1f-Math.abs(2f*phase-1f)));
+			if(penManager.scheduleLevelEvent(this, deviceTime, levels, false))
+				acceptedLevelEventsCount++;
+			producedLevelEventsCount++;
+			if(strokeSample==0)
+				scheduleButtonEvent(penManager, deviceTime, PButton.Type.LEFT, true);
+			if(constructor.buttonChatterPeriod>0 && sample%constructor.buttonChatterPeriod==0){
+				rightButtonPressed=!rightButtonPressed;
+				scheduleButtonEvent(penManager, deviceTime, PButton.Type.RIGHT, rightButtonPressed);
+			}
+			if(strokeSample==strokeSamplesCount-1)
+				scheduleButtonEvent(penManager, deviceTime, PButton.Type.LEFT, false);
+		}
+
+		private void addMovementLevels(long stroke, float phase){
+			float areaWidth=constructor.areaWidth, areaHeight=constructor.areaHeight;
+			float x, y;
+			switch(constructor.stroke){
+			case LINE:
+				float rowHeight=areaHeight/constructor.devicesCount;
+				x=phase*areaWidth;
+				y=rowHeight*index+rowHeight*((stroke%8)+0.5f)/8f;
+				break;
+			case SPIRAL:
+				double angle=phase*6*Math.PI+index;
+				float radius=phase*Math.min(areaWidth, areaHeight)/2;
+				x=areaWidth/2+radius*(float)Math.cos(angle);
+				y=areaHeight/2+radius*(float)Math.sin(angle);
+				break;
+			case NOISE:
+				noiseX=clamp(noiseX+(float)random.nextGaussian()*2f, areaWidth);
+				noiseY=clamp(noiseY+(float)random.nextGaussian()*2f, areaHeight);
+				x=noiseX;
+				y=noiseY;
+				break;
+			case PRESSURE_RAMP:
+				x=areaWidth/2;
+				y=areaHeight/2;
+				break;
+			default:
+				throw new AssertionError();
+			}
+			levels.add(new PLevel(PLevel.Type.X, x));
+			levels.add(new PLevel(PLevel.Type.Y, y));
+		}
+
+		private void scheduleButtonEvent(PenManager penManager, long deviceTime, PButton.Type buttonType, boolean value){
+			penManager.scheduleButtonEvent(this, deviceTime, new PButton(buttonType.ordinal(), value));
+			producedButtonEventsCount++;
+		}
+	}
+
+	private static float clamp(float value, float max){
+		return value<0? 0: value>max? max: value;
+	}
+
+	private final Constructor constructor;
+	private final SyntheticDevice[] syntheticDevices;
+	private final PenClock clock;
+	private final long originNanos;
+	private boolean paused=true;
+	private volatile boolean stopped;
+	private int runningThreadsCount;
+
+	private SyntheticProvider(Constructor constructor){
+		super(constructor);
+		this.constructor=constructor;
+		this.clock=constructor.getPenManager().pen.getClock();
+		this.originNanos=clock.nanoTime();
+		syntheticDevices=new SyntheticDevice[constructor.devicesCount];
+		for(int i=0; i<syntheticDevices.length; i++)
+			devices.add(syntheticDevices[i]=new SyntheticDevice(i));
+		runningThreadsCount=syntheticDevices.length;
+		for(final SyntheticDevice device: syntheticDevices){
+			Thread thread=new Thread("jpen-SyntheticProvider-"+device.index){
+						@Override
+						public void run(){
+							try{
+								device.produce();
+							}finally{
+								synchronized(SyntheticProvider.this){
+									runningThreadsCount--;
+									SyntheticProvider.this.notifyAll();
+								}
+							}
+						}
+					};
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	@return {@code true} if it waited.
+	*/
+	private synchronized boolean waitWhilePaused(){
+		if(!paused || stopped)
+			return false;
+		while(paused && !stopped)
+			try{
+				wait();
+			}catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+				return true;
+			}
+		return true;
+	}
+
+	//@Override
+	public synchronized void penManagerPaused(boolean paused){
+		this.paused=paused;
+		notifyAll();
+	}
+
+	/**
+	Stops producing events on all the devices.
+	*/
+	public synchronized void stop(){
+		stopped=true;
+		notifyAll();
+	}
+
+	/**
+	Waits until all the devices produced their samples (see {@link Constructor#setSamplesCount(long)}) or were stopped.
+	*/
+	public synchronized void waitForEnd() throws InterruptedException{
+		while(runningThreadsCount>0)
+			wait();
+	}
+
+	public SyntheticDevice getSyntheticDevice(int index){
+		return syntheticDevices[index];
+	}
+
+	public int getSyntheticDevicesCount(){
+		return syntheticDevices.length;
+	}
+
+	/**
+	@return the sum of the level and button events produced by all the devices. Not comparable with the events fired by the pen, see {@link #getAcceptedLevelEventsCount()}.
+	*/
+	public long getProducedEventsCount(){
+		long producedEventsCount=0;
+		for(SyntheticDevice device: syntheticDevices)
+			producedEventsCount+=device.producedLevelEventsCount+device.producedButtonEventsCount;
+		return producedEventsCount;
+	}
+
+	/**
+	@return the sum of the level events accepted by the pen manager from all the devices. Unless a lossy {@link jpen.Pen.OverloadPolicy} is set, the pen fires this number of level events for the synthetic devices.
+	*/
+	public long getAcceptedLevelEventsCount(){
+		long acceptedLevelEventsCount=0;
+		for(SyntheticDevice device: syntheticDevices)
+			acceptedLevelEventsCount+=device.acceptedLevelEventsCount;
+		return acceptedLevelEventsCount;
+	}
+}
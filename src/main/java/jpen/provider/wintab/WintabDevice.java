@@ -190,8 +190,7 @@ class WintabDevice
 		if(PLevel.Type.MOVEMENT_TYPES.contains(type)){
 			if(type.equals(PLevel.Type.Y))
 				rangedValue=1f-rangedValue;
-			rangedValue=wintabProvider.screenBounds.getLevelRangeOffset(type)+
-									rangedValue*wintabProvider.screenBounds.getLevelRangeMult(type);
+			rangedValue=wintabProvider.screenBounds.getSnapshot().map(type, rangedValue);
 		}
 
 		if(PLevel.Type.ROTATION.equals(type)){
@@ -235,8 +235,7 @@ final class XinputDevice extends AbstractPenDevice {
 			return devValue*PI_2;
 
 		if(levelType.isMovement())
-			devValue=xinputProvider.screenBounds.getLevelRangeOffset(levelType)+
-						devValue*xinputProvider.screenBounds.getLevelRangeMult(levelType);
+			devValue=xinputProvider.screenBounds.getSnapshot().map(levelType, devValue);
 
 		return devValue;
 	}
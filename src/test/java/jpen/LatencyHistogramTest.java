@@ -0,0 +1,57 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+	public void testBucketsCoverUpTo2Pow40Nanos() {
+		assertEquals(156, LatencyHistogram.BUCKETS_COUNT);
+		assertEquals(LatencyHistogram.BUCKETS_COUNT-1, LatencyHistogram.evalBucketIndex((1l<<40)-1));
+		assertEquals(LatencyHistogram.BUCKETS_COUNT-1, LatencyHistogram.evalBucketIndex(Long.MAX_VALUE));
+		assertEquals(7l<<37, LatencyHistogram.getBucketLowerBoundNanos(LatencyHistogram.BUCKETS_COUNT-1)); // the last quarter of [2^39, 2^40)
+	}
+
+	public void testBucketBoundsAreContiguous() {
+		for(int i=0; i<LatencyHistogram.BUCKETS_COUNT; i++){
+			long lowerBound=LatencyHistogram.getBucketLowerBoundNanos(i);
+			assertEquals(i, LatencyHistogram.evalBucketIndex(lowerBound));
+			if(i!=0)
+				assertEquals(i-1, LatencyHistogram.evalBucketIndex(lowerBound-1));
+		}
+	}
+
+	public void testPercentilesAreBucketUpperBounds() {
+		LatencyHistogram histogram=new LatencyHistogram();
+		for(int i=0; i<99; i++)
+			histogram.record(1000);
+		histogram.record(1000000);
+		histogram.record(-5);
+		assertEquals(101, histogram.getCount());
+		assertEquals(1000000, histogram.getMaxNanos());
+		long p50=histogram.getNanosAtPercentile(50);
+		assertTrue("p50: "+p50, p50>=1000 && p50<1250);
+		assertEquals(1000000, histogram.getNanosAtPercentile(100));
+		assertEquals(1, histogram.getBucketCount(0));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getNanosAtPercentile(50));
+	}
+}
@@ -0,0 +1,120 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jpen.event.PenAdapter;
+import junit.framework.TestCase;
+
+public class PLevelEventCoalescerTest extends TestCase {
+
+	private TestPenClock clock;
+	private TestPenProvider provider;
+	private Pen pen;
+	/** The fired level events and their copies. */
+	private final List<PLevelEvent> firedEvents=new ArrayList<PLevelEvent>();
+	private final List<PLevelEvent> firedCopies=new ArrayList<PLevelEvent>();
+
+	@Override
+	protected void setUp() throws InterruptedException {
+		clock=new TestPenClock();
+		provider=TestPenProvider.create(clock, 1);
+		pen=provider.getPen();
+		pen.setRecycleEvents(true);
+		pen.setCoalesceLevelEvents(true);
+		pen.addListener(new PenAdapter(){
+			@Override
+			public void penLevelEvent(PLevelEvent ev){
+				synchronized(firedEvents){
+					firedEvents.add(ev);
+					firedCopies.add(ev.copy());
+				}
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() {
+		pen.penManager.setPaused(true);
+	}
+
+	private void scheduleX(long deviceTime, float x) {
+		assertTrue(pen.scheduler.scheduleLevelEvent(provider.testDevices[0], deviceTime, Arrays.asList(new PLevel(PLevel.Type.X, x)), false, false));
+	}
+
+	/**
+	Lets the pen thread take an event with {@code X=1} and park until the virtual time advances, so the next events are taken together.
+	*/
+	private void stallPenThread() throws InterruptedException {
+		scheduleX(0, 1);
+		clock.waitPenThreadParked(pen);
+		synchronized(firedEvents){
+			firedEvents.clear();
+			firedCopies.clear();
+		}
+	}
+
+	private PLevelEvent getFiredCopy(int expectedFiredCount) {
+		synchronized(firedEvents){
+			assertEquals(expectedFiredCount, firedCopies.size());
+			return firedCopies.get(expectedFiredCount-1);
+		}
+	}
+
+	public void testHistoryHasTheDeviceTimes() throws InterruptedException {
+		stallPenThread();
+		scheduleX(100, 3);
+		scheduleX(110, 4);
+		scheduleX(125, 5);
+		TestPenProvider.drain(pen, clock, 10);
+		PLevelEvent ev=getFiredCopy(1);
+		assertEquals(5f, ev.levels[0].value, 0f);
+		assertEquals(125, ev.getDeviceTime());
+		assertEquals(2, ev.getHistorySize());
+		assertEquals(100, ev.getHistoricalDeviceTime(0));
+		assertEquals(110, ev.getHistoricalDeviceTime(1));
+		assertEquals(3f, ev.getHistoricalLevelValue(0, PLevel.Type.X), 0f);
+		assertEquals(4f, ev.getHistoricalLevelValue(1, PLevel.Type.X), 0f);
+	}
+
+	public void testCoalescedEventsAreRecycled() throws InterruptedException {
+		stallPenThread();
+		scheduleX(100, 3);
+		scheduleX(110, 4);
+		scheduleX(120, 5);
+		TestPenProvider.drain(pen, clock, 10);
+		PLevelEvent firstCopy=getFiredCopy(1);
+		PLevelEvent firstEvent=firedEvents.get(0);
+		assertTrue(firstEvent.isRecyclable());
+
+		stallPenThread();
+		scheduleX(130, 6);
+		scheduleX(140, 7);
+		TestPenProvider.drain(pen, clock, 10);
+		getFiredCopy(1);
+		assertSame("taken from the pool", firstEvent, firedEvents.get(0));
+		assertEquals(1, firedCopies.get(0).getHistorySize());
+		assertEquals(130, firedCopies.get(0).getHistoricalDeviceTime(0));
+		assertEquals("the copy keeps its history", 2, firstCopy.getHistorySize());
+		assertEquals(110, firstCopy.getHistoricalDeviceTime(1));
+		assertEquals(4f, firstCopy.getHistoricalLevelValue(1, PLevel.Type.X), 0f);
+	}
+}
@@ -0,0 +1,153 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.List;
+import jpen.event.PenAdapter;
+import jpen.event.PenBatchListener;
+import junit.framework.TestCase;
+
+public class PenEventBatchTest extends TestCase {
+
+	private TestPenClock clock;
+	private TestPenProvider provider;
+	private Pen pen;
+	/** The events of each batch received and the X value of the pen state after each one. */
+	private final List<List<PenEvent>> batches=new ArrayList<List<PenEvent>>();
+	private final List<List<Float>> batchesX=new ArrayList<List<Float>>();
+	/** Fired by the pen thread, in order: "batch" and "tock". */
+	private final List<String> calls=new ArrayList<String>();
+
+	@Override
+	protected void setUp() throws InterruptedException {
+		clock=new TestPenClock();
+		provider=TestPenProvider.create(clock, 1);
+		pen=provider.getPen();
+		pen.addBatchListener(new PenBatchListener(){
+			//@Override
+			public void penEventBatch(PenEventBatch batch){
+				List<PenEvent> events=new ArrayList<PenEvent>();
+				List<Float> xs=new ArrayList<Float>();
+				for(int i=0; i<batch.size(); i++){
+					events.add(batch.getEvent(i));
+					xs.add(batch.getPenState(i).getLevelValue(PLevel.Type.X));
+				}
+				synchronized(batches){
+					batches.add(events);
+					batchesX.add(xs);
+					calls.add("batch");
+				}
+			}
+		});
+		pen.addListener(new PenAdapter(){
+			@Override
+			public void penTock(long availableMillis){
+				synchronized(batches){
+					calls.add("tock");
+				}
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() {
+		pen.penManager.setPaused(true);
+	}
+
+	private void scheduleX(float x) {
+		assertTrue(provider.testDevices[0].scheduleLevels(new PLevel(PLevel.Type.X, x)));
+	}
+
+	/**
+	Lets the pen thread take an event with {@code X=1} (and the kind event of the device) and park until the virtual time advances, so the next events are taken on the same tock.
+	*/
+	private void stallPenThread() throws InterruptedException {
+		scheduleX(1);
+		clock.waitPenThreadParked(pen);
+		synchronized(batches){
+			batches.clear();
+			batchesX.clear();
+			calls.clear();
+		}
+	}
+
+	public void testOneBatchPerTock() throws InterruptedException {
+		stallPenThread();
+		scheduleX(3);
+		scheduleX(4);
+		scheduleX(5);
+		TestPenProvider.drain(pen, clock, 10);
+		synchronized(batches){
+			assertEquals(1, batches.size());
+			assertEquals(3, batches.get(0).size());
+			assertEquals("the batch comes before the tock", "[batch, tock]", calls.toString());
+		}
+	}
+
+	public void testPenStatesAreThoseAfterEachEvent() throws InterruptedException {
+		stallPenThread();
+		scheduleX(3);
+		scheduleX(4);
+		scheduleX(5);
+		TestPenProvider.drain(pen, clock, 10);
+		synchronized(batches){
+			List<Float> xs=batchesX.get(0);
+			assertEquals(3f, xs.get(0), 0f);
+			assertEquals(4f, xs.get(1), 0f);
+			assertEquals(5f, xs.get(2), 0f);
+		}
+	}
+
+	public void testEventsAreReleasedOnClear() throws InterruptedException {
+		pen.setRecycleEvents(true);
+		stallPenThread();
+		scheduleX(3);
+		scheduleX(4);
+		TestPenProvider.drain(pen, clock, 10);
+		List<PenEvent> events;
+		synchronized(batches){
+			events=batches.get(0);
+		}
+		assertEquals(2, events.size());
+		for(PenEvent ev: events){
+			assertTrue(ev.isRecyclable());
+			try{
+				ev.retain();
+				fail("the event must be back on its pool");
+			}catch(IllegalStateException expected){}
+		}
+	}
+
+	public void testCoalescedEventsAreBatchedOnce() throws InterruptedException {
+		pen.setCoalesceLevelEvents(true);
+		stallPenThread();
+		scheduleX(3);
+		scheduleX(4);
+		scheduleX(5);
+		TestPenProvider.drain(pen, clock, 10);
+		synchronized(batches){
+			assertEquals(1, batches.size());
+			assertEquals(1, batches.get(0).size());
+			PLevelEvent ev=(PLevelEvent)batches.get(0).get(0);
+			assertEquals(2, ev.getHistorySize());
+			assertEquals("the state after the coalesced event", 5f, batchesX.get(0).get(0), 0f);
+		}
+	}
+}
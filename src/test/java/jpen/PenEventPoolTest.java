@@ -0,0 +1,121 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import jpen.filter.PenSample;
+import junit.framework.TestCase;
+
+public class PenEventPoolTest extends TestCase {
+
+	private TestPenProvider provider;
+	private PenDevice device;
+	private PenEventPool eventPool;
+
+	@Override
+	protected void setUp() {
+		provider=TestPenProvider.create(new VirtualPenClock(), 1);
+		device=provider.testDevices[0];
+		eventPool=new PenEventPool(provider.getPen());
+		eventPool.setEnabled(true);
+	}
+
+	@Override
+	protected void tearDown() {
+		provider.getPen().penManager.setPaused(true);
+	}
+
+	private PButtonEvent acquireButtonEvent(boolean value) {
+		return eventPool.acquireButtonEvent(device, 0, PButton.Type.LEFT.ordinal(), value);
+	}
+
+	public void testNotRecycledWhenDisabled() {
+		eventPool.setEnabled(false);
+		PButtonEvent ev=acquireButtonEvent(true);
+		assertFalse(ev.isRecyclable());
+		ev.release();
+		ev.release(); // does nothing
+		assertNotSame(ev, acquireButtonEvent(true));
+	}
+
+	public void testReleasedEventIsReused() {
+		PButtonEvent ev=acquireButtonEvent(true);
+		assertTrue(ev.isRecyclable());
+		ev.release();
+		PButtonEvent reused=acquireButtonEvent(false);
+		assertSame(ev, reused);
+		assertFalse(reused.button.value);
+	}
+
+	public void testRetainDefersRecycling() {
+		PButtonEvent ev=acquireButtonEvent(true);
+		assertSame(ev, ev.retain());
+		ev.release();
+		PButtonEvent other=acquireButtonEvent(true);
+		assertNotSame(ev, other);
+		ev.release();
+		assertSame(ev, acquireButtonEvent(true));
+	}
+
+	public void testMisuseDoesNotCorruptTheReferenceCount() {
+		PButtonEvent ev=acquireButtonEvent(true);
+		ev.release();
+		try{
+			ev.release();
+			fail("double release");
+		}catch(IllegalStateException ex){}
+		for(int i=0; i<3; i++)
+			try{
+				ev.retain();
+				fail("retain after recycling");
+			}catch(IllegalStateException ex){}
+		assertSame(ev, acquireButtonEvent(true));
+		assertNotSame("the event was pooled only once", ev, acquireButtonEvent(true));
+		ev.retain();
+		ev.release();
+		assertNotSame("one reference is left", ev, acquireButtonEvent(true));
+	}
+
+	public void testLevelEventsArePooledByLevelTypes() {
+		PenSample sample=new PenSample();
+		sample.reset(device, 10, false);
+		sample.add(PLevel.Type.Y.ordinal(), 2f);
+		sample.add(PLevel.Type.X.ordinal(), 1f);
+		PLevelEvent ev=eventPool.acquireLevelEvent(sample);
+		assertEquals(10, ev.getDeviceTime());
+		ev.release();
+
+		sample.reset(device, 20, false);
+		sample.add(PLevel.Type.PRESSURE.ordinal(), 0.5f);
+		PLevelEvent pressureEvent=eventPool.acquireLevelEvent(sample);
+		assertNotSame(ev, pressureEvent);
+
+		sample.reset(device, 30, false);
+		sample.add(PLevel.Type.X.ordinal(), 3f);
+		sample.add(PLevel.Type.Y.ordinal(), 4f);
+		assertSame(ev, eventPool.acquireLevelEvent(sample));
+		assertEquals(30, ev.getDeviceTime());
+		assertEquals(PLevel.Type.X, ev.levels[0].getType()); // sorted by type number
+		assertEquals(3f, ev.levels[0].value, 0f);
+		assertEquals(4f, ev.levels[1].value, 0f);
+
+		sample.reset(device, 40, false);
+		sample.add(PLevel.Type.CUSTOM.ordinal()+1, 1f);
+		assertFalse("custom types are not pooled", eventPool.acquireLevelEvent(sample).isRecyclable());
+	}
+}
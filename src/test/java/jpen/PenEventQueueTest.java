@@ -0,0 +1,223 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jpen.event.PenAdapter;
+import junit.framework.TestCase;
+
+public class PenEventQueueTest extends TestCase {
+
+	private TestPenClock clock;
+	private TestPenProvider provider;
+	private Pen pen;
+	/** X value and history size of each fired level event. */
+	private final List<float[]> firedLevels=new ArrayList<float[]>();
+
+	@Override
+	protected void setUp() throws InterruptedException {
+		clock=new TestPenClock();
+		provider=TestPenProvider.create(clock, 1);
+		pen=provider.getPen();
+		pen.setEventQueueCapacity(2); // room for 4 events
+		scheduleX(1);
+		TestPenProvider.drain(pen, clock, 10);
+		pen.addListener(new PenAdapter(){
+			@Override
+			public void penLevelEvent(PLevelEvent ev){
+				synchronized(firedLevels){
+					firedLevels.add(new float[]{ev.pen.getLevelValue(PLevel.Type.X), ev.getHistorySize()});
+				}
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() {
+		pen.penManager.setPaused(true);
+	}
+
+	/**
+	Schedules bypassing {@link PenEventQueue#awaitRoom(boolean)}, as done from the event dispatch thread.
+	*/
+	private boolean scheduleX(float x) {
+		return pen.scheduler.scheduleLevelEvent(provider.testDevices[0], clock.currentTimeMillis(), Arrays.asList(new PLevel(PLevel.Type.X, x)), false, false);
+	}
+
+	/**
+	Lets the pen thread take an event with {@code X=2} and park until the virtual time advances.
+	*/
+	private void stallPenThread() throws InterruptedException {
+		scheduleX(2);
+		clock.waitPenThreadParked(pen);
+		synchronized(firedLevels){
+			firedLevels.clear();
+		}
+	}
+
+	private void assertFiredLevels(float... xAndHistorySizes) {
+		synchronized(firedLevels){
+			assertEquals(xAndHistorySizes.length/2, firedLevels.size());
+			for(int i=0; i<firedLevels.size(); i++){
+				assertEquals("x of event "+i, xAndHistorySizes[i*2], firedLevels.get(i)[0], 0f);
+				assertEquals("history size of event "+i, xAndHistorySizes[i*2+1], firedLevels.get(i)[1], 0f);
+			}
+		}
+	}
+
+	public void testBlockProducerWaitsOutsideTheSchedulerLock() throws InterruptedException {
+		assertEquals(Pen.OverloadPolicy.BLOCK_PRODUCER, pen.getOverloadPolicy());
+		stallPenThread();
+		Thread producer=new Thread(){
+			@Override
+			public void run(){
+				for(int x=3; x<=8; x++)
+					provider.testDevices[0].scheduleLevels(new PLevel(PLevel.Type.X, x));
+			}
+		};
+		producer.start();
+		awaitWaiting(producer);
+		assertEquals(2, pen.eventQueue.size());
+		assertEquals(1, pen.getOverloadActionCount(Pen.OverloadAction.BLOCKED));
+		assertEquals("the producer waits before scheduling", 4f, pen.lastScheduledState.getLevelValue(PLevel.Type.X), 0f);
+		final boolean[] locked=new boolean[1];
+		Thread locker=new Thread(){
+			@Override
+			public void run(){
+				synchronized(pen.scheduler){
+					locked[0]=true;
+				}
+			}
+		};
+		locker.start();
+		locker.join(1000);
+		assertTrue("the waiting producer does not hold the scheduler lock", locked[0]);
+
+		while(producer.isAlive())
+			TestPenProvider.drain(pen, clock, 1); // the producer schedules when the pen thread takes the queued events
+		TestPenProvider.drain(pen, clock, 10);
+		assertFiredLevels(3,0, 4,0, 5,0, 6,0, 7,0, 8,0);
+		assertEquals(0, pen.getOverloadActionCount(Pen.OverloadAction.DROPPED_NEWEST));
+	}
+
+	/**
+	Waits until the given thread waits on a monitor.
+	*/
+	private static void awaitWaiting(Thread thread){
+		long timeoutNanos=System.nanoTime()+5000000000l;
+		while(thread.getState()!=Thread.State.WAITING && thread.getState()!=Thread.State.TIMED_WAITING){
+			if(!thread.isAlive() || System.nanoTime()-timeoutNanos>0)
+				throw new AssertionError("the thread did not wait: "+thread.getState());
+			Thread.yield();
+		}
+	}
+
+	public void testDropOldestMotionKeepsThePenState() throws InterruptedException {
+		stallPenThread();
+		for(int x=3; x<=6; x++)
+			assertTrue(scheduleX(x));
+		pen.setOverloadPolicy(Pen.OverloadPolicy.DROP_OLDEST_MOTION); // the queued events are dropped by the pen thread
+		TestPenProvider.drain(pen, clock, 10);
+		assertFiredLevels(5,0, 6,0); // 3 and 4 were taken while the queue was over its capacity
+		assertEquals(2, pen.getOverloadActionCount(Pen.OverloadAction.DROPPED_OLDEST));
+		assertEquals(6f, pen.getLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testCoalesceMotionOnlyMergesTheOverload() throws InterruptedException {
+		stallPenThread();
+		for(int x=3; x<=6; x++)
+			assertTrue(scheduleX(x));
+		pen.setOverloadPolicy(Pen.OverloadPolicy.COALESCE_MOTION); // the queued events are coalesced by the pen thread
+		TestPenProvider.drain(pen, clock, 10);
+		assertFiredLevels(5,2, 6,0); // 3 and 4 are the history of 5
+		assertEquals(2, pen.getOverloadActionCount(Pen.OverloadAction.COALESCED));
+		assertEquals(6f, pen.getLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testDropOldestMotionIsAppliedByTheProducers() throws InterruptedException {
+		pen.setOverloadPolicy(Pen.OverloadPolicy.DROP_OLDEST_MOTION);
+		stallPenThread();
+		for(int x=3; x<=7; x++)
+			assertTrue(scheduleX(x));
+		assertEquals("the events over the capacity are merged while the pen thread is stalled", 2, pen.eventQueue.size());
+		TestPenProvider.drain(pen, clock, 10);
+		assertFiredLevels(3,0, 4,0, 7,0);
+		assertEquals(2, pen.getOverloadActionCount(Pen.OverloadAction.DROPPED_OLDEST));
+		assertEquals(7f, pen.getLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testCoalesceMotionIsAppliedByTheProducers() throws InterruptedException {
+		pen.setOverloadPolicy(Pen.OverloadPolicy.COALESCE_MOTION);
+		final List<Float> history=new ArrayList<Float>();
+		pen.addListener(new PenAdapter(){
+			@Override
+			public void penLevelEvent(PLevelEvent ev){
+				for(int i=0; i<ev.getHistorySize(); i++)
+					history.add(ev.getHistoricalLevelValue(i, PLevel.Type.X));
+			}
+		});
+		stallPenThread();
+		for(int x=3; x<=7; x++)
+			assertTrue(scheduleX(x));
+		assertEquals(2, pen.eventQueue.size());
+		TestPenProvider.drain(pen, clock, 10);
+		assertFiredLevels(3,0, 4,0, 7,2);
+		assertEquals(Arrays.asList(5f, 6f), history);
+		assertEquals(2, pen.getOverloadActionCount(Pen.OverloadAction.COALESCED));
+		assertEquals(7f, pen.getLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testLossyPoliciesDoNotBlockTheProducers() throws InterruptedException {
+		pen.setOverloadPolicy(Pen.OverloadPolicy.COALESCE_MOTION);
+		stallPenThread();
+		Thread producer=new Thread(){
+			@Override
+			public void run(){
+				for(int x=3; x<=100; x++)
+					provider.testDevices[0].scheduleLevels(new PLevel(PLevel.Type.X, x));
+			}
+		};
+		producer.start();
+		producer.join(5000);
+		assertFalse("the producer does not wait for the stalled pen thread", producer.isAlive());
+		assertEquals(0, pen.getOverloadActionCount(Pen.OverloadAction.BLOCKED));
+		assertEquals(2, pen.eventQueue.size());
+		TestPenProvider.drain(pen, clock, 10);
+		assertFiredLevels(3,0, 4,0, 100,95);
+		assertEquals(100f, pen.getLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testPenThreadDoesNotWaitForRoom() throws InterruptedException {
+		pen.addListener(new PenAdapter(){
+			@Override
+			public void penLevelEvent(PLevelEvent ev){
+				if(ev.pen.getLevelValue(PLevel.Type.X)==3)
+					provider.testDevices[0].scheduleLevels(new PLevel(PLevel.Type.X, 100));
+			}
+		});
+		stallPenThread();
+		for(int x=3; x<=5; x++)
+			assertTrue(scheduleX(x));
+		TestPenProvider.drain(pen, clock, 10);
+		assertFiredLevels(3,0, 4,0, 5,0, 100,0);
+		assertEquals(0, pen.getOverloadActionCount(Pen.OverloadAction.BLOCKED));
+	}
+}
@@ -0,0 +1,99 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import jpen.event.PenAdapter;
+import junit.framework.TestCase;
+
+public class PenFrequencyTest extends TestCase {
+
+	private TestPenClock clock;
+	private TestPenProvider provider;
+	private Pen pen;
+	private float x;
+
+	@Override
+	protected void setUp() {
+		clock=new TestPenClock();
+		provider=TestPenProvider.create(clock, 1);
+		pen=provider.getPen();
+	}
+
+	@Override
+	protected void tearDown() {
+		pen.penManager.setPaused(true);
+	}
+
+	/**
+	Schedules {@code 10} events on each period, a higher rate than the pen frequency.
+	*/
+	private void drive(int periodsCount) throws InterruptedException {
+		for(int i=0; i<periodsCount; i++){
+			for(int j=0; j<10; j++)
+				provider.testDevices[0].scheduleLevels(new PLevel(PLevel.Type.X, ++x));
+			clock.advanceNanos(pen.getPeriodNanos());
+			clock.awaitPenThreadRoundEnd(pen);
+		}
+	}
+
+	public void testAdaptiveFrequencyRaisesTowardsTheInputRate() throws InterruptedException {
+		pen.setAdaptiveFrequency(60, 240);
+		assertTrue(pen.getAdaptiveFrequency());
+		drive(200);
+		double frequency=pen.getEffectiveFrequency();
+		assertTrue("raised frequency: "+frequency, frequency>120 && frequency<=240);
+		assertTrue(pen.getMeasuredInputRate()>frequency);
+	}
+
+	public void testFixedFrequencyReplacesTheAdaptivePeriod() throws InterruptedException {
+		pen.setAdaptiveFrequency(60, 240);
+		drive(100);
+		assertTrue(pen.getEffectiveFrequency()>60);
+		pen.setFrequencyLater(60);
+		assertFalse(pen.getAdaptiveFrequency());
+		assertEquals(-1, pen.getMeasuredInputRate(), 0);
+		drive(100);
+		assertEquals(AdaptiveFrequencyController.evalPeriodNanos(60), pen.getPeriodNanos());
+	}
+
+	public void testFrequencyChangeDoesNotWaitForTheVirtualTime() throws InterruptedException {
+		TestPenClock clock=new TestPenClock();
+		TestPenProvider provider=TestPenProvider.create(clock, 1);
+		Pen pen=provider.getPen();
+		try{
+			final CountDownLatch fired=new CountDownLatch(1);
+			pen.addListener(new PenAdapter(){
+				@Override
+				public void penLevelEvent(PLevelEvent ev){
+					if(ev.pen.getLevelValue(PLevel.Type.X)==2f)
+						fired.countDown();
+				}
+			});
+			provider.testDevices[0].scheduleLevels(new PLevel(PLevel.Type.X, 1));
+			clock.waitPenThreadParked(pen);
+			pen.setFrequencyLater(Pen.DEFAULT_FREQUENCY+1); // the new thread waits for the parked one to stop.
+			provider.testDevices[0].scheduleLevels(new PLevel(PLevel.Type.X, 2));
+			assertTrue("the new pen thread fires without advancing the clock", fired.await(5, TimeUnit.SECONDS));
+		}finally{
+			pen.penManager.setPaused(true);
+		}
+	}
+}
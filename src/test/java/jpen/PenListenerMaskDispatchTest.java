@@ -0,0 +1,138 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.ArrayList;
+import java.util.List;
+import jpen.event.PenAdapter;
+import jpen.event.PenListenerMask;
+import junit.framework.TestCase;
+import static jpen.event.PenListenerMask.EventKind.*;
+
+public class PenListenerMaskDispatchTest extends TestCase {
+
+	private static final int CUSTOM_TYPE_NUMBER=PLevel.Type.VALUES.size()+3;
+
+	private TestPenClock clock;
+	private TestPenProvider provider;
+	private Pen pen;
+	/** Names of the listeners called, in order. */
+	private final List<String> calls=new ArrayList<String>();
+
+	private final class Listener
+		extends PenAdapter{
+		private final String name;
+		Listener(String name){
+			this.name=name;
+		}
+		@Override
+		public void penLevelEvent(PLevelEvent ev){
+			called(name);
+		}
+		@Override
+		public void penButtonEvent(PButtonEvent ev){
+			called(name);
+		}
+		@Override
+		public void penTock(long availableMillis){
+			called(name+".tock");
+		}
+	}
+
+	private void called(String call){
+		synchronized(calls){
+			calls.add(call);
+		}
+	}
+
+	private List<String> takeCalls(){
+		synchronized(calls){
+			List<String> takenCalls=new ArrayList<String>(calls);
+			calls.clear();
+			return takenCalls;
+		}
+	}
+
+	private final Listener all=new Listener("all");
+	private final Listener pressure=new Listener("pressure");
+	private final Listener buttons=new Listener("buttons");
+	private final Listener custom=new Listener("custom");
+
+	@Override
+	protected void setUp() {
+		clock=new TestPenClock();
+		provider=TestPenProvider.create(clock, 1);
+		pen=provider.getPen();
+		pen.addListener(all);
+		pen.addListener(pressure, PenListenerMask.of().withLevelTypes(PLevel.Type.PRESSURE));
+		pen.addListener(buttons, PenListenerMask.of(BUTTON, TOCK));
+		pen.addListener(custom, PenListenerMask.of().withLevelTypes(PLevel.Type.CUSTOM));
+	}
+
+	@Override
+	protected void tearDown() {
+		pen.penManager.setPaused(true);
+	}
+
+	private void dispatchLevels(PLevel... levels) {
+		pen.dispatch(new PLevelEvent(provider.testDevices[0], 0, levels));
+	}
+
+	private static List<String> list(String... calls){
+		List<String> list=new ArrayList<String>();
+		for(String call: calls)
+			list.add(call);
+		return list;
+	}
+
+	public void testLevelEventsReachTheListenersOfTheirTypes() {
+		dispatchLevels(new PLevel(PLevel.Type.X, 1));
+		assertEquals(list("all"), takeCalls());
+		dispatchLevels(new PLevel(PLevel.Type.X, 1), new PLevel(PLevel.Type.PRESSURE, 0.5f));
+		assertEquals(list("all", "pressure"), takeCalls());
+		dispatchLevels(new PLevel(CUSTOM_TYPE_NUMBER, 1));
+		assertEquals(list("all", "custom"), takeCalls());
+	}
+
+	public void testOtherEventKindsReachTheListenersOfTheirKind() {
+		pen.dispatch(new PButtonEvent(provider.testDevices[0], 0, new PButton(PButton.Type.LEFT, true)));
+		assertEquals(list("all", "buttons"), takeCalls());
+	}
+
+	public void testRemovedListenerIsNotCalled() {
+		pen.removeListener(all);
+		dispatchLevels(new PLevel(PLevel.Type.PRESSURE, 0.5f));
+		assertEquals(list("pressure"), takeCalls());
+		pen.addListener(all, PenListenerMask.of(BUTTON));
+		dispatchLevels(new PLevel(PLevel.Type.PRESSURE, 0.6f));
+		assertEquals(list("pressure"), takeCalls());
+	}
+
+	public void testTocksReachTheListenersAcceptingThem() throws InterruptedException {
+		TestPenProvider.drain(pen, clock, 10);
+		takeCalls();
+		provider.testDevices[0].scheduleLevels(new PLevel(PLevel.Type.X, 7));
+		TestPenProvider.drain(pen, clock, 10);
+		List<String> calls=takeCalls();
+		assertTrue(calls.toString(), calls.contains("all.tock"));
+		assertTrue(calls.toString(), calls.contains("buttons.tock"));
+		assertFalse(calls.toString(), calls.contains("pressure.tock"));
+		assertFalse(calls.toString(), calls.contains("custom.tock"));
+	}
+}
@@ -0,0 +1,48 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import jpen.owner.HeadlessPenOwner;
+import junit.framework.TestCase;
+
+public class PenManagerTest extends TestCase {
+
+	public void testProvidersAreAddedInOwnerOrder() {
+		TestPenProvider.Constructor slowConstructor=new TestPenProvider.Constructor(2){
+					@Override
+					protected PenProvider constructProvider(){
+						try{
+							Thread.sleep(200);
+						}catch(InterruptedException ex){
+							throw new AssertionError(ex);
+						}
+						return super.constructProvider();
+					}
+				};
+		TestPenProvider.Constructor fastConstructor=new TestPenProvider.Constructor(2);
+		PenManager penManager=new PenManager(new HeadlessPenOwner(slowConstructor, fastConstructor), new VirtualPenClock());
+		TestPenProvider fastProvider=(TestPenProvider)penManager.waitForProvider(fastConstructor);
+		assertTrue(penManager.getStartupReport().getEntries().get(0).getDone());
+		TestPenProvider slowProvider=(TestPenProvider)penManager.waitForProvider(slowConstructor);
+		byte lastSlowDeviceId=slowProvider.testDevices[1].getId();
+		assertTrue(slowProvider.testDevices[0].getId()<lastSlowDeviceId);
+		assertTrue(lastSlowDeviceId<fastProvider.testDevices[0].getId());
+		assertTrue(fastProvider.testDevices[0].getId()<fastProvider.testDevices[1].getId());
+	}
+}
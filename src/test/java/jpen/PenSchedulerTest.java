@@ -0,0 +1,130 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.Arrays;
+import jpen.event.PenAdapter;
+import jpen.filter.MotionPredictor;
+import junit.framework.TestCase;
+
+public class PenSchedulerTest extends TestCase {
+
+	private TestPenClock clock;
+	private TestPenProvider provider;
+	private Pen pen;
+
+	@Override
+	protected void setUp() {
+		clock=new TestPenClock();
+		provider=TestPenProvider.create(clock, 1);
+		pen=provider.getPen();
+	}
+
+	@Override
+	protected void tearDown() {
+		pen.penManager.setPaused(true);
+	}
+
+	/**
+	Schedules bypassing {@link PenEventQueue#awaitRoom(boolean)}, as done from the event dispatch thread.
+	*/
+	private boolean scheduleX(float x) {
+		return scheduleX(clock.currentTimeMillis(), x);
+	}
+
+	private boolean scheduleX(long deviceTime, float x) {
+		return pen.scheduler.scheduleLevelEvent(provider.testDevices[0], deviceTime, Arrays.asList(new PLevel(PLevel.Type.X, x)), false, false);
+	}
+
+	/**
+	Lets the pen thread take an event with {@code X=1} and park until the virtual time advances.
+	*/
+	private void stallPenThread() throws InterruptedException {
+		scheduleX(1);
+		clock.waitPenThreadParked(pen);
+	}
+
+	public void testDroppedLevelEventDoesNotChangeTheScheduledState() throws InterruptedException {
+		pen.setEventQueueCapacity(2); // room for 4 events
+		stallPenThread();
+		for(int x=2; x<=5; x++)
+			scheduleX(x);
+		assertEquals(0, pen.getOverloadActionCount(Pen.OverloadAction.DROPPED_NEWEST));
+		assertFalse(scheduleX(6));
+		assertEquals(1, pen.getOverloadActionCount(Pen.OverloadAction.DROPPED_NEWEST));
+		assertEquals(5f, pen.lastScheduledState.getLevelValue(PLevel.Type.X), 0f);
+
+		TestPenProvider.drain(pen, clock, 10);
+		assertEquals(5f, pen.getLevelValue(PLevel.Type.X), 0f);
+		assertTrue("the dropped value is not deduplicated", scheduleX(6));
+		TestPenProvider.drain(pen, clock, 10);
+		assertEquals(6f, pen.getLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testButtonEventsAreNeverDropped() throws InterruptedException {
+		final int[] buttonEventsCount=new int[1];
+		pen.addListener(new PenAdapter(){
+			@Override
+			public void penButtonEvent(PButtonEvent ev){
+				if(ev.button.getType()==PButton.Type.CENTER)
+					buttonEventsCount[0]++;
+			}
+		});
+		pen.setEventQueueCapacity(1); // room for 2 events
+		stallPenThread();
+		for(int i=0; i<50; i++)
+			pen.scheduler.scheduleButtonEvent(provider.testDevices[0], clock.currentTimeMillis(), new PButton(PButton.Type.CENTER.ordinal(), i%2==0));
+		assertFalse("no room for level events while button events overflow", scheduleX(2));
+		assertEquals(1f, pen.lastScheduledState.getLevelValue(PLevel.Type.X), 0f);
+		TestPenProvider.drain(pen, clock, 100);
+		assertEquals(0, pen.eventQueue.size());
+		assertEquals(50, buttonEventsCount[0]);
+		assertFalse(pen.getButtonValue(PButton.Type.CENTER));
+		assertTrue(scheduleX(2));
+		TestPenProvider.drain(pen, clock, 10);
+		assertEquals(2f, pen.getLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testResetLatencyHistogramsForgetsTheDeviceDelays() {
+		long now=clock.currentTimeMillis();
+		scheduleX(now, 1);
+		pen.penManager.resetLatencyHistograms();
+		scheduleX(now-50, 2);
+		LatencyHistogram jitter=pen.getLatencyHistogram(LatencyHistogram.Stage.DEVICE_TO_SCHEDULE_JITTER);
+		assertTrue(jitter.getCount()!=0);
+		assertEquals("the 50ms delay is the new smallest one", 0, jitter.getMaxNanos());
+	}
+
+	public void testPredictionIsUpdatedWithoutListenersAndClearedWhenIdle() throws InterruptedException {
+		MotionPredictor predictor=pen.getMotionPredictor();
+		predictor.setHorizonMillis(10f);
+		long now=clock.currentTimeMillis();
+		scheduleX(now, 0);
+		scheduleX(now+10, 10); // 1 unit per millisecond
+		clock.waitPenThreadParked(pen);
+		assertEquals(0, pen.getListenersArray().length);
+		assertTrue(predictor.getPredicting());
+		assertEquals(20f, predictor.getPredictedLevelValue(PLevel.Type.X), 1e-3f);
+
+		clock.advanceNanos(pen.getPeriodNanos()); // the pen thread finds no events and goes idle.
+		clock.awaitPenThreadRoundEnd(pen);
+		assertFalse(predictor.getPredicting());
+		assertEquals(10f, predictor.getPredictedLevelValue(PLevel.Type.X), 0f);
+	}
+}
@@ -0,0 +1,64 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Map;
+import junit.framework.TestCase;
+
+public class PenStateTest extends TestCase {
+
+	private static final int EXT_LEVEL_TYPE_NUMBER=PLevel.Type.VALUES.size()+5;
+	private static final int EXT_BUTTON_TYPE_NUMBER=PButton.Type.VALUES.size()+5;
+
+	public void testSerializedFormKeepsTheMaps() {
+		assertEquals(Map.class, ObjectStreamClass.lookup(PenState.class).getField("extButtonTypeNumberToValue").getType());
+		assertEquals(Map.class, ObjectStreamClass.lookup(PenState.Levels.class).getField("extTypeNumberToValue").getType());
+	}
+
+	public void testSerializationRoundTrip() throws Exception {
+		PenState penState=new PenState();
+		penState.setKind(PKind.valueOf(PKind.Type.STYLUS));
+		penState.levels.setValue(PLevel.Type.PRESSURE, 0.5f);
+		penState.levels.setValue(EXT_LEVEL_TYPE_NUMBER, 2f);
+		penState.setButtonValue(PButton.Type.LEFT.ordinal(), true);
+		penState.setButtonValue(EXT_BUTTON_TYPE_NUMBER, true);
+
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+		ObjectOutputStream out=new ObjectOutputStream(bytes);
+		out.writeObject(penState);
+		out.close();
+		PenState copy=(PenState)new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		assertEquals(PKind.Type.STYLUS, copy.getKind().getType());
+		assertEquals(0.5f, copy.getLevelValue(PLevel.Type.PRESSURE));
+		assertEquals(2f, copy.getLevelValue(EXT_LEVEL_TYPE_NUMBER));
+		assertTrue(copy.getButtonValue(PButton.Type.LEFT));
+		assertTrue(copy.getButtonValue(EXT_BUTTON_TYPE_NUMBER));
+		assertEquals(2, copy.getPressedButtonsCount());
+		copy.setButtonValue(EXT_BUTTON_TYPE_NUMBER, false);
+		copy.levels.setValue(EXT_LEVEL_TYPE_NUMBER+1, 3f);
+		assertEquals(1, copy.getPressedButtonsCount());
+		assertEquals(3f, copy.getLevelValue(EXT_LEVEL_TYPE_NUMBER+1));
+	}
+}
@@ -0,0 +1,77 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+/**
+A {@link VirtualPenClock} telling when the {@link Pen} thread is parked on it, waiting for the time of its next round.
+*/
+final class TestPenClock
+	extends VirtualPenClock{
+	private static final long TIMEOUT_MILLIS=5000;
+	private int parkedThreadsCount;
+	private long parkDeadlineNanos;
+
+	@Override
+	public void parkUntilNanos(long deadlineNanos){
+		synchronized(this){
+			parkedThreadsCount++;
+			parkDeadlineNanos=deadlineNanos;
+			notifyAll(); // wakes awaitPenThreadRoundEnd(Pen)
+		}
+		try{
+			super.parkUntilNanos(deadlineNanos);
+		}finally{
+			synchronized(this){
+				parkedThreadsCount--;
+			}
+		}
+	}
+
+	/**
+	@return {@code true} if a thread is parked (or about to park) until a time not reached yet.
+	*/
+	synchronized boolean isPenThreadParked(){
+		return parkedThreadsCount!=0 && nanoTime()-parkDeadlineNanos<0;
+	}
+
+	/**
+	Waits until the pen thread ended its round, firing the taken events and the tock: until it parks until a time not reached yet, or waits for new events. Parking wakes this wait at once, waiting for new events is checked every millisecond.
+	*/
+	synchronized void awaitPenThreadRoundEnd(Pen pen) throws InterruptedException{
+		long timeoutNanos=System.nanoTime()+TIMEOUT_MILLIS*1000000l;
+		while(!isPenThreadParked() && !pen.isPenThreadWaitingForNewEvents()){
+			if(System.nanoTime()-timeoutNanos>0)
+				throw new AssertionError("the pen thread did not end its round");
+			wait(1);
+		}
+	}
+
+	/**
+	Waits until the pen thread took all the scheduled events and parked until its next round, so the events scheduled next are taken together when the time is advanced. Advances the time one period if the pen thread was parked before taking the scheduled events.
+	*/
+	void waitPenThreadParked(Pen pen) throws InterruptedException{
+		awaitPenThreadRoundEnd(pen);
+		if(pen.eventQueue.size()==0)
+			return;
+		advanceNanos(pen.getPeriodNanos());
+		awaitPenThreadRoundEnd(pen);
+		if(pen.eventQueue.size()!=0)
+			throw new AssertionError("the pen thread did not take the scheduled events: "+pen.eventQueue.size());
+	}
+}
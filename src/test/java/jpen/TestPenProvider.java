@@ -0,0 +1,116 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen;
+
+import java.util.Arrays;
+import jpen.owner.HeadlessPenOwner;
+import jpen.provider.AbstractPenDevice;
+import jpen.provider.AbstractPenProvider;
+
+/**
+Provider of devices scheduling the events given by the tests. The pen runs on a {@link VirtualPenClock} and a {@link HeadlessPenOwner}.
+*/
+final class TestPenProvider
+	extends AbstractPenProvider{
+
+	static class Constructor
+		extends AbstractPenProvider.AbstractConstructor{
+		private final int devicesCount;
+
+		Constructor(int devicesCount){
+			this.devicesCount=devicesCount;
+		}
+
+		//@Override
+		public String getName(){
+			return "Test";
+		}
+
+		//@Override
+		public boolean constructable(PenManager penManager){
+			return true;
+		}
+
+		@Override
+		protected PenProvider constructProvider(){
+			return new TestPenProvider(this);
+		}
+	}
+
+	final class Device
+		extends AbstractPenDevice{
+		private final int index;
+
+		private Device(int index){
+			super(TestPenProvider.this);
+			this.index=index;
+			setKindTypeNumber(PKind.Type.STYLUS.ordinal());
+			setEnabled(true);
+		}
+
+		//@Override
+		public String getName(){
+			return "Test "+index;
+		}
+
+		boolean scheduleLevels(PLevel... levels){
+			return getPenManager().scheduleLevelEvent(this, getPen().clock.currentTimeMillis(), Arrays.asList(levels), false);
+		}
+
+		void scheduleButton(PButton.Type buttonType, boolean value){
+			getPenManager().scheduleButtonEvent(this, getPen().clock.currentTimeMillis(), new PButton(buttonType.ordinal(), value));
+		}
+	}
+
+	final Device[] testDevices;
+
+	private TestPenProvider(Constructor constructor){
+		super(constructor);
+		testDevices=new Device[constructor.devicesCount];
+		for(int i=0; i<testDevices.length; i++)
+			devices.add(testDevices[i]=new Device(i));
+	}
+
+	/**
+	@return the provider of a new unpaused pen manager timed by the given clock.
+	*/
+	static TestPenProvider create(PenClock clock, int devicesCount){
+		Constructor constructor=new Constructor(devicesCount);
+		PenManager penManager=new PenManager(new HeadlessPenOwner(constructor), clock);
+		return (TestPenProvider)penManager.waitForProvider(constructor);
+	}
+
+	Pen getPen(){
+		return getPenManager().pen;
+	}
+
+	/**
+	Advances the clock one pen period at a time, until the pen thread took all the scheduled events or the given number of periods passed. Returns when the pen thread ended the round of the last taken events, see {@link TestPenClock#awaitPenThreadRoundEnd(Pen)}.
+	*/
+	static void drain(Pen pen, TestPenClock clock, int maxPeriods) throws InterruptedException{
+		clock.awaitPenThreadRoundEnd(pen);
+		for(int i=0; i<maxPeriods && pen.eventQueue.size()!=0; i++){
+			clock.advanceNanos(pen.getPeriodNanos());
+			clock.awaitPenThreadRoundEnd(pen);
+		}
+	}
+
+	//@Override
+	public void penManagerPaused(boolean paused){}
+}
@@ -0,0 +1,240 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import jpen.PLevel;
+import jpen.PLevelEvent;
+import jpen.PenDevice;
+import jpen.PenManager;
+import jpen.PenProvider;
+import jpen.codec.PenEventDecoder;
+import jpen.owner.HeadlessPenOwner;
+import jpen.provider.AbstractPenDevice;
+import jpen.provider.AbstractPenProvider;
+import junit.framework.TestCase;
+import static jpen.capture.CaptureLogFormat.*;
+
+public class CaptureLogTest extends TestCase {
+
+	private static final int SEGMENT_SIZE=HEADER_SIZE+FRAME_HEAD_SIZE+(1<<10);
+
+	private static final class Provider
+		extends AbstractPenProvider{
+		static final class Constructor
+			extends AbstractPenProvider.AbstractConstructor{
+			//@Override
+			public String getName(){
+				return "CaptureLogTest";
+			}
+			//@Override
+			public boolean constructable(PenManager penManager){
+				return true;
+			}
+			@Override
+			protected PenProvider constructProvider(){
+				return new Provider(this);
+			}
+		}
+
+		final PenDevice device=new AbstractPenDevice(this){
+			//@Override
+			public String getName(){
+				return "CaptureLogTest";
+			}
+		};
+
+		private Provider(Constructor constructor){
+			super(constructor);
+			devices.add(device);
+		}
+
+		//@Override
+		public void penManagerPaused(boolean paused){}
+	}
+
+	/** Collects the X values of the level events read. */
+	private static final class XCollector
+		extends ArrayList<Float>
+		implements PenEventDecoder.Handler{
+		//@Override
+		public void deviceDefined(byte deviceId, String physicalId){}
+		//@Override
+		public void levelEvent(byte deviceId, long deviceTime, long timeNanos, int levelsCount, int[] levelTypeNumbers, float[] levelValues){
+			for(int i=0; i<levelsCount; i++)
+				if(levelTypeNumbers[i]==PLevel.Type.X.ordinal())
+					add(levelValues[i]);
+		}
+		//@Override
+		public void buttonEvent(byte deviceId, long deviceTime, long timeNanos, int buttonTypeNumber, boolean value){}
+		//@Override
+		public void scrollEvent(byte deviceId, long deviceTime, long timeNanos, int scrollTypeNumber, int value){}
+		//@Override
+		public void kindEvent(byte deviceId, long deviceTime, long timeNanos, int kindTypeNumber){}
+	}
+
+	private static PenDevice device;
+	private File directory;
+	private CaptureLog log;
+
+	@Override
+	protected void setUp() throws Exception {
+		if(device==null){
+			Provider.Constructor constructor=new Provider.Constructor();
+			device=((Provider)new PenManager(new HeadlessPenOwner(constructor)).waitForProvider(constructor)).device;
+		}
+		directory=File.createTempFile("CaptureLogTest", "");
+		assertTrue(directory.delete());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if(log!=null)
+			log.close();
+		File[] files=directory.listFiles();
+		if(files!=null)
+			for(File file: files)
+				file.delete();
+		directory.delete();
+	}
+
+	private void writeX(int x){
+		log.penLevelEvent(new PLevelEvent(device, x, new PLevel[]{new PLevel(PLevel.Type.X, x)}));
+	}
+
+	private static List<Float> readAll(CaptureLogReader reader) throws IOException{
+		XCollector xs=new XCollector();
+		while(reader.next(xs));
+		return xs;
+	}
+
+	public void testEventsAreCommittedOnTock() throws IOException {
+		log=new CaptureLog(directory, SEGMENT_SIZE, 0, 1000);
+		CaptureLogReader reader=new CaptureLogReader(directory);
+		writeX(1);
+		writeX(2);
+		assertEquals(0, readAll(reader).size());
+		assertEquals(0, log.getCommittedEventsCount());
+		log.penTock(0);
+		assertEquals(2, log.getCommittedEventsCount());
+		assertEquals(2, readAll(reader).size());
+		writeX(3);
+		log.penTock(0);
+		List<Float> xs=readAll(reader); // tails the log
+		assertEquals(1, xs.size());
+		assertEquals(3f, xs.get(0));
+	}
+
+	public void testRollOverKeepsTheOrder() throws IOException, InterruptedException {
+		log=new CaptureLog(directory, SEGMENT_SIZE, 0, 1000);
+		CaptureLogReader tailingReader=new CaptureLogReader(directory);
+		XCollector tailedXs=new XCollector();
+		int eventsCount=1000;
+		for(int i=0; i<eventsCount; i++){
+			writeX(i);
+			if(i%10==9){
+				log.penTock(0);
+				log.awaitNextSegmentPrepared();
+				while(tailingReader.next(tailedXs));
+			}
+		}
+		log.close();
+		assertEquals(eventsCount, tailedXs.size());
+		assertNull(log.getIOException());
+		assertEquals(eventsCount, log.getCommittedEventsCount());
+		assertEquals(0, log.getDroppedEventsCount());
+		assertTrue(getSegmentIndexes(directory).length>2);
+		List<Float> xs=readAll(new CaptureLogReader(directory));
+		assertEquals(eventsCount, xs.size());
+		for(int i=0; i<eventsCount; i++)
+			assertEquals((float)i, xs.get(i));
+	}
+
+	public void testRollOverDoesNotWaitForTheNextSegment() throws IOException {
+		log=new CaptureLog(directory, SEGMENT_SIZE, 0, 1000);
+		int eventsCount=10000;
+		for(int i=0; i<eventsCount; i++){
+			writeX(i);
+			if(i%10==9)
+				log.penTock(0);
+		}
+		log.close();
+		assertNull(log.getIOException());
+		assertEquals("the events are either committed or counted as dropped", eventsCount, log.getCommittedEventsCount()+log.getDroppedEventsCount());
+		List<Float> xs=readAll(new CaptureLogReader(directory));
+		assertEquals(log.getCommittedEventsCount(), xs.size());
+		for(int i=1; i<xs.size(); i++)
+			assertTrue("the committed events keep their order", xs.get(i-1)<xs.get(i));
+	}
+
+	public void testReaderGoesOnWithTheSegmentOfANewWriter() throws IOException {
+		log=new CaptureLog(directory, SEGMENT_SIZE, 0, 1000);
+		writeX(1);
+		log.penTock(0);
+		log.close();
+		long[] segmentIndexes=getSegmentIndexes(directory);
+		long preparedSegmentIndex=segmentIndexes[segmentIndexes.length-1]+1;
+		RandomAccessFile file=new RandomAccessFile(new File(directory, getSegmentFileName(preparedSegmentIndex)), "rw");
+		try{ // as left by a writer which died before using its prepared segment
+			file.setLength(SEGMENT_SIZE);
+			file.writeInt(MAGIC);
+			file.writeInt(VERSION);
+			file.writeLong(preparedSegmentIndex);
+		}finally{
+			file.close();
+		}
+		CaptureLogReader reader=new CaptureLogReader(directory);
+		assertEquals(1, readAll(reader).size());
+		log=new CaptureLog(directory, SEGMENT_SIZE, 0, 1000);
+		writeX(2);
+		log.penTock(0);
+		List<Float> xs=readAll(reader);
+		assertEquals(1, xs.size());
+		assertEquals(2f, xs.get(0));
+		assertEquals("the prepared segment is reused", preparedSegmentIndex, reader.getSegmentIndex());
+	}
+
+	public void testTornFrameIsNotRead() throws IOException {
+		log=new CaptureLog(directory, SEGMENT_SIZE, 0, 1000);
+		writeX(1);
+		log.penTock(0);
+		writeX(2);
+		log.penTock(0);
+		log.close();
+		File segmentFile=new File(directory, getSegmentFileName(getSegmentIndexes(directory)[0]));
+		RandomAccessFile file=new RandomAccessFile(segmentFile, "rw");
+		try{
+			file.seek(HEADER_SIZE);
+			int secondFramePosition=HEADER_SIZE+FRAME_HEAD_SIZE+file.readInt();
+			file.seek(secondFramePosition+FRAME_HEAD_SIZE);
+			int payloadByte=file.read();
+			file.seek(secondFramePosition+FRAME_HEAD_SIZE);
+			file.write(payloadByte^0xff); // as if the payload did not reach the disk but its length did
+		}finally{
+			file.close();
+		}
+		List<Float> xs=readAll(new CaptureLogReader(directory));
+		assertEquals(1, xs.size());
+		assertEquals(1f, xs.get(0));
+	}
+}
@@ -0,0 +1,106 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import junit.framework.TestCase;
+import static jpen.codec.PenEventCodec.*;
+
+public class PenEventCodecTest extends TestCase {
+
+	private static final long[] VALUES={
+		0, 1, 63, 64, 127, 128, 300, 16383, 16384, Integer.MAX_VALUE, 1l<<35, Long.MAX_VALUE,
+		-1, -64, -65, -128, Integer.MIN_VALUE, Long.MIN_VALUE
+	};
+
+	private final ByteBuffer buffer=ByteBuffer.allocate(VALUES.length*VARINT_SIZE_MAX);
+
+	public void testVarLongRoundTrip() {
+		for(long value: VALUES)
+			putVarLong(buffer, value);
+		buffer.flip();
+		for(long value: VALUES)
+			assertEquals(value, getVarLong(buffer));
+		assertFalse(buffer.hasRemaining());
+	}
+
+	public void testVarLongSizes() {
+		assertEquals(1, sizeOfVarLong(0));
+		assertEquals(1, sizeOfVarLong(127));
+		assertEquals(2, sizeOfVarLong(128));
+		assertEquals(2, sizeOfVarLong(16383));
+		assertEquals(3, sizeOfVarLong(16384));
+		assertEquals(VARINT_SIZE_MAX, sizeOfVarLong(-1));
+	}
+
+	private int sizeOfVarLong(long value) {
+		buffer.clear();
+		putVarLong(buffer, value);
+		return buffer.position();
+	}
+
+	public void testZigZagRoundTripAndSmallNegativesAreShort() {
+		for(long value: VALUES)
+			putZigZag(buffer, value);
+		buffer.flip();
+		for(long value: VALUES)
+			assertEquals(value, getZigZag(buffer));
+		buffer.clear();
+		putZigZag(buffer, -1);
+		putZigZag(buffer, -64);
+		putZigZag(buffer, 63);
+		assertEquals(3, buffer.position());
+		assertEquals(1, buffer.get(0)); // -1 -> 1
+		assertEquals(127, buffer.get(1)); // -64 -> 127
+		assertEquals(126, buffer.get(2)); // 63 -> 126
+	}
+
+	public void testMalformedVarints() {
+		for(int i=0; i<VARINT_SIZE_MAX; i++)
+			buffer.put((byte)0x80);
+		buffer.flip();
+		try{
+			getVarLong(buffer);
+			fail("more than 64 bits");
+		}catch(IllegalArgumentException ex){}
+		buffer.clear();
+		putVarLong(buffer, 1l<<31);
+		buffer.flip();
+		try{
+			getVarInt(buffer);
+			fail("out of int range");
+		}catch(IllegalArgumentException ex){}
+		buffer.clear();
+		buffer.put((byte)0x80).flip();
+		try{
+			getVarLong(buffer);
+			fail("truncated");
+		}catch(BufferUnderflowException ex){}
+	}
+
+	public void testFixedIntIsBigEndian() {
+		putFixedInt(buffer, MAGIC);
+		putFixedInt(buffer, -2);
+		buffer.flip();
+		assertEquals(MAGIC, buffer.getInt(0));
+		assertEquals(MAGIC, getFixedInt(buffer));
+		assertEquals(-2, getFixedInt(buffer));
+	}
+}
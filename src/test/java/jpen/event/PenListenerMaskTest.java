@@ -0,0 +1,62 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.event;
+
+import jpen.PLevel;
+import junit.framework.TestCase;
+import static jpen.event.PenListenerMask.EventKind.*;
+
+public class PenListenerMaskTest extends TestCase {
+
+	private static final int CUSTOM_TYPE_NUMBER=PLevel.Type.VALUES.size()+3;
+
+	public void testAllAcceptsEverything() {
+		for(PenListenerMask.EventKind eventKind: PenListenerMask.EventKind.VALUES)
+			assertTrue(PenListenerMask.ALL.accepts(eventKind));
+		for(PLevel.Type levelType: PLevel.Type.VALUES)
+			assertTrue(PenListenerMask.ALL.acceptsLevelType(levelType.ordinal()));
+		assertTrue(PenListenerMask.ALL.acceptsLevelType(CUSTOM_TYPE_NUMBER));
+	}
+
+	public void testOfAcceptsOnlyTheGivenKinds() {
+		PenListenerMask mask=PenListenerMask.of(BUTTON, TOCK);
+		assertTrue(mask.accepts(BUTTON));
+		assertTrue(mask.accepts(TOCK));
+		assertFalse(mask.accepts(LEVEL));
+		assertFalse(mask.accepts(KIND));
+		assertFalse(mask.accepts(SCROLL));
+		assertTrue("no level type restriction", PenListenerMask.of(LEVEL).acceptsLevelType(PLevel.Type.TILT_X.ordinal()));
+	}
+
+	public void testWithLevelTypesAddsTheLevelKind() {
+		PenListenerMask mask=PenListenerMask.of(BUTTON).withLevelTypes(PLevel.Type.PRESSURE, PLevel.Type.CUSTOM);
+		assertTrue(mask.accepts(BUTTON));
+		assertTrue(mask.accepts(LEVEL));
+		assertTrue(mask.acceptsLevelType(PLevel.Type.PRESSURE.ordinal()));
+		assertFalse(mask.acceptsLevelType(PLevel.Type.X.ordinal()));
+		assertTrue("custom types share the CUSTOM bit", mask.acceptsLevelType(CUSTOM_TYPE_NUMBER));
+		assertEquals(PenListenerMask.getLevelTypeBit(PLevel.Type.CUSTOM.ordinal()), PenListenerMask.getLevelTypeBit(CUSTOM_TYPE_NUMBER));
+	}
+
+	public void testEquality() {
+		assertEquals(PenListenerMask.of(LEVEL, TOCK), PenListenerMask.of(TOCK, LEVEL));
+		assertEquals(PenListenerMask.of(LEVEL, TOCK).hashCode(), PenListenerMask.of(TOCK, LEVEL).hashCode());
+		assertFalse(PenListenerMask.of(LEVEL).equals(PenListenerMask.of(LEVEL).withLevelTypes(PLevel.Type.X)));
+	}
+}
@@ -0,0 +1,158 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.filter;
+
+import jpen.PLevel;
+import jpen.PenDevice;
+import jpen.PenManager;
+import jpen.PenState;
+import jpen.VirtualPenClock;
+import jpen.owner.HeadlessPenOwner;
+import jpen.provider.AbstractPenDevice;
+import junit.framework.TestCase;
+
+public class MotionPredictorTest extends TestCase {
+
+	private static final int X=PLevel.Type.X.ordinal(), Y=PLevel.Type.Y.ordinal(), PRESSURE=PLevel.Type.PRESSURE.ordinal();
+
+	private static PenDevice createDevice(final String name){
+		return new AbstractPenDevice(null){
+			//@Override
+			public String getName(){
+				return name;
+			}
+			@Override
+			protected String evalPhysicalId(){
+				return name+"@Test";
+			}
+		};
+	}
+
+	private final PenDevice device=createDevice("test");
+	private final VirtualPenClock clock=new VirtualPenClock();
+	private final MotionPredictor predictor=new MotionPredictor(clock);
+	private final PenSample sample=new PenSample();
+	private final HeadlessPenOwner penOwner=new HeadlessPenOwner();
+	/** All its levels are {@code 0}: the predicted values are the extrapolated displacements. */
+	private PenState penState;
+
+	@Override
+	protected void setUp() {
+		penState=new PenManager(penOwner, clock).pen;
+	}
+
+	@Override
+	protected void tearDown() {
+		penOwner.setPaused(true);
+	}
+
+	private void filter(PenDevice device, long deviceTime, float x, float y, float pressure) {
+		sample.reset(device, deviceTime, false);
+		sample.add(X, x);
+		sample.add(Y, y);
+		sample.add(PRESSURE, pressure);
+		assertTrue(predictor.filter(sample));
+		assertEquals("the samples are not changed", x, sample.getValue(sample.indexOf(X)), 0f);
+	}
+
+	/**
+	Filters samples moving at the given velocities (units per millisecond) every 5 milliseconds of device and pen clock time.
+	*/
+	private long move(PenDevice device, long deviceTime, int samplesCount, float xVelocity, float yVelocity) {
+		for(int i=0; i<samplesCount; i++, deviceTime+=5){
+			filter(device, deviceTime, 100+xVelocity*deviceTime, 100+yVelocity*deviceTime, 0.5f+deviceTime*0.001f);
+			clock.advanceMillis(5);
+		}
+		return deviceTime;
+	}
+
+	public void testOffByDefault() {
+		move(device, 0, 10, 2f, -1f);
+		predictor.update(penState);
+		assertFalse(predictor.getPredicting());
+		assertEquals(0f, predictor.getPredictedLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testExtrapolatesTheVelocity() {
+		predictor.setHorizonMillis(10f);
+		move(device, 0, 8, 2f, -1f);
+		predictor.update(penState);
+		assertTrue(predictor.getPredicting());
+		assertEquals(20f, predictor.getPredictedLevelValue(PLevel.Type.X), 1e-3f);
+		assertEquals(-10f, predictor.getPredictedLevelValue(PLevel.Type.Y), 1e-3f);
+		assertEquals("a predicted pressure does not start a stroke", 0f, predictor.getPredictedLevelValue(PLevel.Type.PRESSURE), 0f);
+	}
+
+	public void testOnlyTheSamplesOnTheWindowAreFitted() {
+		predictor.setHorizonMillis(10f);
+		predictor.setWindowMillis(20f);
+		long deviceTime=move(device, 0, 10, 3f, 0f);
+		for(int i=0; i<6; i++, deviceTime+=5){ // stops for longer than the window
+			filter(device, deviceTime, 500f, 100f, 0.5f);
+			clock.advanceMillis(5);
+		}
+		predictor.update(penState);
+		assertTrue(predictor.getPredicting());
+		assertEquals(0f, predictor.getPredictedLevelValue(PLevel.Type.X), 1e-3f);
+	}
+
+	public void testStopsPredictingWithoutRecentSamples() {
+		predictor.setHorizonMillis(10f);
+		move(device, 0, 8, 2f, 0f);
+		clock.advanceMillis(100);
+		predictor.update(penState);
+		assertFalse(predictor.getPredicting());
+		assertEquals(0f, predictor.getPredictedLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testClearStopsPredictingUntilTheNextUpdate() {
+		predictor.setHorizonMillis(10f);
+		move(device, 0, 8, 2f, -1f);
+		predictor.update(penState);
+		assertTrue(predictor.getPredicting());
+		predictor.clear(penState);
+		assertFalse(predictor.getPredicting());
+		assertEquals("the current value", 0f, predictor.getPredictedLevelValue(PLevel.Type.X), 0f);
+		predictor.update(penState);
+		assertTrue(predictor.getPredicting());
+	}
+
+	public void testDeviceChangeRestartsTheFit() {
+		predictor.setHorizonMillis(10f);
+		long deviceTime=move(device, 0, 8, 2f, 0f);
+		filter(createDevice("other"), deviceTime, 0f, 0f, 0.5f);
+		predictor.update(penState);
+		assertEquals("a single sample gives no velocity", 0f, predictor.getPredictedLevelValue(PLevel.Type.X), 0f);
+	}
+
+	public void testInvalidParams() {
+		try{
+			predictor.setHorizonMillis(-1f);
+			fail();
+		}catch(IllegalArgumentException ex){}
+		try{
+			predictor.setWindowMillis(0f);
+			fail();
+		}catch(IllegalArgumentException ex){}
+		try{
+			predictor.getPredictedLevelValue(PLevel.Type.TILT_X);
+			fail();
+		}catch(IllegalArgumentException ex){}
+	}
+}
@@ -0,0 +1,104 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.filter;
+
+import jpen.PLevel;
+import jpen.PenDevice;
+import jpen.provider.AbstractPenDevice;
+import junit.framework.TestCase;
+
+public class OneEuroFilterTest extends TestCase {
+
+	private static final int X=PLevel.Type.X.ordinal(), PRESSURE=PLevel.Type.PRESSURE.ordinal();
+
+	private final PenDevice device=new AbstractPenDevice(null){
+		//@Override
+		public String getName(){
+			return "test";
+		}
+		@Override
+		protected String evalPhysicalId(){
+			return "test@Test";
+		}
+	};
+	private final OneEuroFilter filter=new OneEuroFilter();
+	private final PenSample sample=new PenSample();
+
+	private float filter(long deviceTime, int typeNumber, float value) {
+		sample.reset(device, deviceTime, false);
+		sample.add(typeNumber, value);
+		assertTrue(filter.filter(sample));
+		return sample.getValue(0);
+	}
+
+	public void testFiltersNothingWithoutParams() {
+		for(int i=0; i<10; i++)
+			assertEquals(i*7f, filter(i*10, X, i*7f), 0f);
+	}
+
+	public void testTimeStepIsTakenFromTheDeviceTime() {
+		filter.setParams(null, PLevel.Type.X, new OneEuroFilter.Params(1f, 0f, 1f));
+		assertEquals(0f, filter(0, X, 0f), 0f);
+		double alpha=1/(1+1/(2*Math.PI*1*1.0)); // cutoff of 1 Hz, 1 second step
+		assertEquals(100*alpha, filter(1000, X, 100f), 1e-3);
+	}
+
+	public void testSmoothsJitterAndFollowsFastMovements() {
+		filter.setParams(null, PLevel.Type.X, OneEuroFilter.Params.MOVEMENT);
+		long deviceTime=0;
+		float value=0;
+		for(int i=0; i<200; i++, deviceTime+=10)
+			value=filter(deviceTime, X, i%2==0? 99f: 101f);
+		assertEquals("jitter at rest", 100f, value, 0.2f);
+		float x=100f;
+		for(int i=0; i<50; i++, deviceTime+=10)
+			value=filter(deviceTime, X, x+=20f); // 2000 pixels per second
+		float lag=x-value;
+		assertTrue("lag while moving fast: "+lag, lag>0 && lag<40f);
+	}
+
+	public void testPressureLiftAndFirstPressureAreNotSmoothed() {
+		filter.setParams(null, PLevel.Type.PRESSURE, OneEuroFilter.Params.PRESSURE);
+		long deviceTime=0;
+		for(int i=0; i<20; i++, deviceTime+=5)
+			filter(deviceTime, PRESSURE, 0.8f);
+		assertEquals(0f, filter(deviceTime+=5, PRESSURE, 0f), 0f);
+		assertEquals(0.3f, filter(deviceTime+=5, PRESSURE, 0.3f), 0f);
+		float smoothed=filter(deviceTime+=5, PRESSURE, 0.6f);
+		assertTrue("smoothed: "+smoothed, smoothed>0.3f && smoothed<0.6f);
+	}
+
+	public void testPhysicalIdParamsOverrideTheDefault() {
+		filter.setParams(null, PLevel.Type.X, new OneEuroFilter.Params(1f, 0f, 1f));
+		filter.setParams("other@Test", PLevel.Type.X, null);
+		filter(0, X, 0f);
+		assertTrue(filter(10, X, 100f)<100f);
+		filter.setParams(device.getPhysicalId(), PLevel.Type.X, new OneEuroFilter.Params(1e6f, 0f, 1f)); // cutoff high enough to follow the values
+		assertEquals(50f, filter(20, X, 50f), 0.01f);
+		assertEquals(OneEuroFilter.Params.class, filter.getParams(null, PLevel.Type.X).getClass());
+		assertNull(filter.getParams("other@Test", PLevel.Type.X));
+	}
+
+	public void testResetForgetsThePreviousValues() {
+		filter.setParams(null, PLevel.Type.X, OneEuroFilter.Params.MOVEMENT);
+		filter(0, X, 0f);
+		filter.reset();
+		assertEquals(500f, filter(10, X, 500f), 0f);
+	}
+}
@@ -0,0 +1,124 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+import junit.framework.TestCase;
+
+public class IntFloatMapTest extends TestCase {
+
+	private static final int SLOTS_COUNT=16;
+
+	/**
+	@return keys whose home slot is {@code home} in a table of {@link #SLOTS_COUNT} slots.
+	*/
+	static int[] keysWithHome(int home, int count){
+		int[] keys=new int[count];
+		for(int key=0, i=0; i<count; key++)
+			if((IntFloatMap.hash(key)&(SLOTS_COUNT-1))==home)
+				keys[i++]=key;
+		return keys;
+	}
+
+	public void testPutGetAndOverwrite() {
+		IntFloatMap map=new IntFloatMap();
+		assertEquals(0, map.size());
+		assertEquals(-1f, map.get(7, -1f));
+		map.put(7, 1f);
+		map.put(-3, 2f);
+		map.put(7, 3f);
+		assertEquals(2, map.size());
+		assertEquals(3f, map.get(7, -1f));
+		assertEquals(2f, map.get(-3, -1f));
+		assertFalse(map.containsKey(8));
+	}
+
+	public void testGrowKeepsAllEntries() {
+		IntFloatMap map=new IntFloatMap(2);
+		for(int i=0; i<100; i++)
+			map.put(i*31, i);
+		assertEquals(100, map.size());
+		for(int i=0; i<100; i++)
+			assertEquals((float)i, map.get(i*31, -1f));
+		assertEquals(100, map.keys().length);
+	}
+
+	public void testRemoveHeadOfProbeChain() {
+		IntFloatMap map=new IntFloatMap(SLOTS_COUNT);
+		int[] keys=keysWithHome(3, 3);
+		int neighbour=keysWithHome(4, 1)[0]; // pushed to slot 6 by the chain, must be shifted back when the chain shrinks
+		for(int i=0; i<keys.length; i++)
+			map.put(keys[i], i);
+		map.put(neighbour, 10f);
+		assertTrue(map.remove(keys[0]));
+		assertFalse(map.remove(keys[0]));
+		assertEquals(3, map.size());
+		assertFalse(map.containsKey(keys[0]));
+		assertEquals(1f, map.get(keys[1], -1f));
+		assertEquals(2f, map.get(keys[2], -1f));
+		assertEquals(10f, map.get(neighbour, -1f));
+	}
+
+	public void testRemoveKeepsOtherHomesInPlace() {
+		IntFloatMap map=new IntFloatMap(SLOTS_COUNT);
+		int[] keys=keysWithHome(3, 2);
+		int other=keysWithHome(5, 1)[0]; // at its home after the chain: must not be moved before it
+		map.put(keys[0], 0f);
+		map.put(keys[1], 1f);
+		map.put(other, 5f);
+		assertTrue(map.remove(keys[0]));
+		assertEquals(1f, map.get(keys[1], -1f));
+		assertEquals(5f, map.get(other, -1f));
+		assertTrue(map.remove(other));
+		assertEquals(1f, map.get(keys[1], -1f));
+		assertEquals(1, map.size());
+	}
+
+	public void testRemoveInChainWrappingAroundTheTable() {
+		IntFloatMap map=new IntFloatMap(SLOTS_COUNT);
+		int[] keys=keysWithHome(SLOTS_COUNT-1, 3); // takes the last slot and wraps to slots 0 and 1
+		int first=keysWithHome(0, 1)[0];
+		for(int i=0; i<keys.length; i++)
+			map.put(keys[i], i);
+		map.put(first, 10f);
+		assertTrue(map.remove(keys[1]));
+		assertEquals(0f, map.get(keys[0], -1f));
+		assertEquals(2f, map.get(keys[2], -1f));
+		assertEquals(10f, map.get(first, -1f));
+		assertTrue(map.remove(keys[0]));
+		assertEquals(2f, map.get(keys[2], -1f));
+		assertEquals(10f, map.get(first, -1f));
+		assertEquals(2, map.size());
+	}
+
+	public void testSetAllAndClear() {
+		IntFloatMap map=new IntFloatMap(2);
+		for(int i=0; i<10; i++)
+			map.put(i, i);
+		IntFloatMap copy=new IntFloatMap(2);
+		copy.put(50, 1f);
+		copy.setAll(map);
+		assertEquals(10, copy.size());
+		assertFalse(copy.containsKey(50));
+		assertEquals(9f, copy.get(9, -1f));
+		map.clear();
+		assertEquals(0, map.size());
+		assertFalse(map.containsKey(9));
+		assertEquals(9f, copy.get(9, -1f));
+	}
+}
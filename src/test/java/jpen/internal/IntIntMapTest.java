@@ -0,0 +1,61 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+import junit.framework.TestCase;
+
+public class IntIntMapTest extends TestCase {
+
+	private static final int SLOTS_COUNT=16;
+
+	static int[] keysWithHome(int home, int count){
+		int[] keys=new int[count];
+		for(int key=0, i=0; i<count; key++)
+			if((IntIntMap.hash(key)&(SLOTS_COUNT-1))==home)
+				keys[i++]=key;
+		return keys;
+	}
+
+	public void testPutRemoveAndGrow() {
+		IntIntMap map=new IntIntMap(2);
+		for(int i=0; i<50; i++)
+			map.put(i, i+1);
+		for(int i=0; i<50; i+=2)
+			assertTrue(map.remove(i));
+		assertEquals(25, map.size());
+		for(int i=0; i<50; i++)
+			assertEquals(i%2==0? 0: i+1, map.get(i, 0));
+	}
+
+	public void testRemoveShiftsTheProbeChainBack() {
+		IntIntMap map=new IntIntMap(SLOTS_COUNT);
+		int[] keys=keysWithHome(SLOTS_COUNT-2, 4); // wraps around the end of the table
+		int neighbour=keysWithHome(SLOTS_COUNT-1, 1)[0];
+		for(int i=0; i<keys.length; i++)
+			map.put(keys[i], i+1);
+		map.put(neighbour, 10);
+		for(int i=0; i<keys.length; i++){
+			assertTrue(map.remove(keys[i]));
+			for(int j=i+1; j<keys.length; j++)
+				assertEquals(j+1, map.get(keys[j], 0));
+			assertEquals(10, map.get(neighbour, 0));
+		}
+		assertEquals(1, map.size());
+	}
+}
@@ -0,0 +1,79 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+import junit.framework.TestCase;
+
+public class MpscRingBufferTest extends TestCase {
+
+	public void testCapacityIsRoundedUpToPowerOfTwo() {
+		assertEquals(8, new MpscRingBuffer<Object>(5).capacity());
+		assertEquals(8, new MpscRingBuffer<Object>(8).capacity());
+		assertEquals(1, new MpscRingBuffer<Object>(1).capacity());
+	}
+
+	public void testFifoOrderAndFullBuffer() {
+		MpscRingBuffer<Integer> buffer=new MpscRingBuffer<Integer>(4);
+		assertTrue(buffer.isEmpty());
+		assertNull(buffer.poll());
+		for(int i=0; i<4; i++)
+			assertTrue(buffer.offer(i));
+		assertFalse(buffer.offer(4));
+		assertEquals(4, buffer.size());
+		assertEquals(Integer.valueOf(0), buffer.peek());
+		assertEquals(Integer.valueOf(0), buffer.poll());
+		assertTrue(buffer.offer(4)); // wraps around
+		for(int i=1; i<=4; i++)
+			assertEquals(Integer.valueOf(i), buffer.poll());
+		assertTrue(buffer.isEmpty());
+		assertEquals(0, buffer.size());
+	}
+
+	public void testConcurrentProducersKeepTheirOrder() throws InterruptedException {
+		final int producersCount=4, elementsCount=100000;
+		final MpscRingBuffer<long[]> buffer=new MpscRingBuffer<long[]>(64);
+		Thread[] producers=new Thread[producersCount];
+		for(int p=0; p<producersCount; p++){
+			final int producer=p;
+			producers[p]=new Thread(){
+				@Override
+				public void run(){
+					for(int i=0; i<elementsCount; i++)
+						while(!buffer.offer(new long[]{producer, i}))
+							Thread.yield();
+				}
+			};
+			producers[p].start();
+		}
+		long[] next=new long[producersCount];
+		for(int received=0; received<producersCount*elementsCount;){
+			long[] element=buffer.poll();
+			if(element==null){
+				Thread.yield();
+				continue;
+			}
+			int producer=(int)element[0];
+			assertEquals("element of producer "+producer, next[producer]++, element[1]);
+			received++;
+		}
+		for(Thread producer: producers)
+			producer.join();
+		assertTrue(buffer.isEmpty());
+	}
+}
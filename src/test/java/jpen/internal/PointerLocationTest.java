@@ -0,0 +1,54 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.internal;
+
+import java.awt.geom.Point2D;
+import junit.framework.TestCase;
+
+public class PointerLocationTest extends TestCase {
+
+	public void testTrackedLocationIsReadWithoutQuerying() {
+		PointerLocation pointerLocation=new PointerLocation(true);
+		pointerLocation.setMaxStalenessNanos(Long.MAX_VALUE/2);
+		pointerLocation.track(10, 20, System.nanoTime());
+		Point2D.Float location=new Point2D.Float();
+		assertTrue(pointerLocation.evalLocation(location));
+		assertEquals(new Point2D.Float(10, 20), location);
+		pointerLocation.track(11, 21, System.nanoTime());
+		assertTrue(pointerLocation.evalLocation(location));
+		assertEquals(new Point2D.Float(11, 21), location);
+		assertEquals(0, pointerLocation.getPointerInfoQueriesCount());
+	}
+
+	public void testNoPointerLeavesTheLocationUnchanged() {
+		PointerLocation pointerLocation=new PointerLocation(false);
+		pointerLocation.track(10, 20, System.nanoTime());
+		Point2D.Float location=new Point2D.Float(1, 2);
+		assertFalse(pointerLocation.evalLocation(location));
+		assertEquals(new Point2D.Float(1, 2), location);
+		assertEquals(0, pointerLocation.getPointerInfoQueriesCount());
+	}
+
+	public void testNegativeMaxStalenessIsRejected() {
+		try{
+			new PointerLocation(true).setMaxStalenessNanos(-1);
+			fail();
+		}catch(IllegalArgumentException ex){}
+	}
+}
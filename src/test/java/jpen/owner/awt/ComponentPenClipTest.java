@@ -0,0 +1,105 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.owner.awt;
+
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.geom.Point2D;
+import java.awt.Point;
+import javax.swing.JPanel;
+import junit.framework.TestCase;
+
+public class ComponentPenClipTest extends TestCase {
+
+	private final JPanel parent=new JPanel(null);
+	private final JPanel child=new JPanel(null);
+	private final JPanel otherChild=new JPanel(null);
+	private Component activeComponent=child;
+	private final ComponentPenOwner penOwner=new ComponentPenOwner(){
+				@Override
+				public Component getActiveComponent(){
+					return activeComponent;
+				}
+				@Override
+				protected void init(){}
+			};
+	private final ComponentPenClip penClip=(ComponentPenClip)penOwner.getPenClip();
+
+	@Override
+	protected void setUp() {
+		parent.setBounds(100, 50, 200, 200);
+		child.setBounds(10, 20, 30, 40);
+		otherChild.setBounds(50, 60, 5, 6);
+		parent.add(child);
+		parent.add(otherChild);
+	}
+
+	private Point evalLocationOnScreen() throws Exception {
+		flushEvents();
+		Point location=new Point();
+		penClip.evalLocationOnScreen(location);
+		return location;
+	}
+
+	/**
+	Waits until the component events posted to the event queue were dispatched.
+	*/
+	private static void flushEvents() throws Exception {
+		EventQueue.invokeAndWait(new Runnable(){
+					//@Override
+					public void run(){}
+				});
+	}
+
+	public void testLocationFollowsTheComponentAndItsAncestors() throws Exception {
+		assertEquals(new Point(110, 70), evalLocationOnScreen());
+		child.setLocation(15, 25);
+		assertEquals(new Point(115, 75), evalLocationOnScreen());
+		parent.setLocation(0, 0);
+		assertEquals(new Point(15, 25), evalLocationOnScreen());
+	}
+
+	public void testContainsFollowsTheComponentSize() throws Exception {
+		assertTrue(penClip.contains(new Point2D.Float(30, 40)));
+		assertFalse(penClip.contains(new Point2D.Float(31, 0)));
+		assertFalse(penClip.contains(new Point2D.Float(-1, 0)));
+		child.setSize(50, 60);
+		flushEvents();
+		assertTrue(penClip.contains(new Point2D.Float(50, 60)));
+		assertFalse(penClip.contains(new Point2D.Float(50, 61)));
+	}
+
+	public void testActiveComponentChangeEvaluatesItsGeometry() throws Exception {
+		assertEquals(new Point(110, 70), evalLocationOnScreen());
+		activeComponent=otherChild;
+		assertEquals(new Point(150, 110), evalLocationOnScreen());
+		assertFalse(penClip.contains(new Point2D.Float(6, 0)));
+		child.setLocation(0, 0); // the old active component is not listened anymore.
+		otherChild.setLocation(70, 80);
+		assertEquals(new Point(170, 130), evalLocationOnScreen());
+	}
+
+	public void testNoActiveComponent() throws Exception {
+		activeComponent=null;
+		Point location=new Point(1, 2);
+		penClip.evalLocationOnScreen(location);
+		assertEquals(new Point(1, 2), location);
+		assertFalse(penClip.contains(new Point2D.Float(0, 0)));
+	}
+}
@@ -0,0 +1,64 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import jpen.PLevel;
+import junit.framework.TestCase;
+
+public class VirtualScreenBoundsTest extends TestCase {
+
+	/** A 1920x1080 screen and a 1280x1024 screen on its right, 200 pixels higher. */
+	private static final Rectangle[] SCREENS_BOUNDS={
+		new Rectangle(0, 0, 1920, 1080),
+		new Rectangle(1920, -200, 1280, 1024)
+	};
+
+	public void testMapsToTheUnionOfTheScreens() {
+		VirtualScreenBounds.Snapshot snapshot=new VirtualScreenBounds.Snapshot(SCREENS_BOUNDS);
+		assertEquals(new Rectangle2D.Float(0, -200, 3200, 1280), snapshot.getBounds());
+		assertEquals(0f, snapshot.map(PLevel.Type.X, 0f), 0f);
+		assertEquals(1600f, snapshot.map(PLevel.Type.X, 0.5f), 0f);
+		assertEquals(-200f, snapshot.map(PLevel.Type.Y, 0f), 0f);
+		assertEquals(1080f, snapshot.map(PLevel.Type.Y, 1f), 0f);
+		assertEquals("not a movement level", 0.3f, snapshot.map(PLevel.Type.PRESSURE, 0.3f), 0f);
+		assertEquals(-200f, snapshot.getLevelRangeOffset(PLevel.Type.Y), 0f);
+		assertEquals(1280f, snapshot.getLevelRangeMult(PLevel.Type.Y), 0f);
+	}
+
+	public void testScreenOfAPoint() {
+		VirtualScreenBounds.Snapshot snapshot=new VirtualScreenBounds.Snapshot(SCREENS_BOUNDS);
+		assertEquals(2, snapshot.getScreensCount());
+		assertEquals(0, snapshot.getScreen(1919, 1079));
+		assertEquals(1, snapshot.getScreen(1920, -200));
+		assertEquals("below the right screen", -1, snapshot.getScreen(2000, 900));
+	}
+
+	public void testSameGeometry() {
+		VirtualScreenBounds.Snapshot snapshot=new VirtualScreenBounds.Snapshot(SCREENS_BOUNDS);
+		assertTrue(snapshot.sameGeometry(new Rectangle[]{new Rectangle(SCREENS_BOUNDS[0]), new Rectangle(SCREENS_BOUNDS[1])}));
+		assertFalse(snapshot.sameGeometry(new Rectangle[]{SCREENS_BOUNDS[0]}));
+	}
+
+	public void testEmptySnapshotMapsToZero() {
+		assertEquals(0f, VirtualScreenBounds.Snapshot.EMPTY.map(PLevel.Type.X, 0.5f), 0f);
+		assertEquals(0, VirtualScreenBounds.Snapshot.EMPTY.getScreensCount());
+	}
+}
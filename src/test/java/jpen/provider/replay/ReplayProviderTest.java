@@ -0,0 +1,222 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.replay;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jpen.PButton;
+import jpen.PButtonEvent;
+import jpen.PLevel;
+import jpen.PLevelEvent;
+import jpen.PenDevice;
+import jpen.PenManager;
+import jpen.PenProvider;
+import jpen.VirtualPenClock;
+import jpen.event.PenAdapter;
+import jpen.filter.OneEuroFilter;
+import jpen.owner.HeadlessPenOwner;
+import jpen.provider.AbstractPenDevice;
+import jpen.provider.AbstractPenProvider;
+import junit.framework.TestCase;
+
+public class ReplayProviderTest extends TestCase {
+
+	private static final String NAMED_DEVICE_PHYSICAL_ID="stylus-1234";
+	private static final OneEuroFilter.Params STRONG_SMOOTHING=new OneEuroFilter.Params(0.1f, 0f, 1f);
+
+	private static final class Provider
+		extends AbstractPenProvider{
+		static final class Constructor
+			extends AbstractPenProvider.AbstractConstructor{
+			//@Override
+			public String getName(){
+				return "ReplayProviderTest";
+			}
+			//@Override
+			public boolean constructable(PenManager penManager){
+				return true;
+			}
+			@Override
+			protected PenProvider constructProvider(){
+				return new Provider(this);
+			}
+		}
+
+		final PenDevice namedDevice=new AbstractPenDevice(this){
+			{
+				setEnabled(true);
+			}
+			//@Override
+			public String getName(){
+				return "Named";
+			}
+			@Override
+			protected String evalPhysicalId(){
+				return NAMED_DEVICE_PHYSICAL_ID;
+			}
+		};
+
+		final PenDevice anonymousDevice=new AbstractPenDevice(this){
+			{
+				setEnabled(true);
+			}
+			//@Override
+			public String getName(){
+				return "Anonymous";
+			}
+			@Override
+			protected String evalPhysicalId(){
+				return null;
+			}
+		};
+
+		private Provider(Constructor constructor){
+			super(constructor);
+			devices.add(namedDevice);
+			devices.add(anonymousDevice);
+		}
+
+		//@Override
+		public void penManagerPaused(boolean paused){}
+	}
+
+	/** Collects the X values and button events fired by each device, by device name. */
+	private static final class Collector
+		extends PenAdapter{
+		private final PenManager penManager;
+		final Map<String, List<Float>> xs=new HashMap<String, List<Float>>();
+		final Map<String, String> physicalIds=new HashMap<String, String>();
+		int buttonEventsCount;
+		private int eventsCount;
+
+		Collector(PenManager penManager){
+			this.penManager=penManager;
+		}
+
+		@Override
+		public synchronized void penLevelEvent(PLevelEvent ev){
+			PenDevice device=penManager.getDevice(ev.getDeviceId());
+			if(penManager.isEmulationDevice(device))
+				return;
+			List<Float> deviceXs=xs.get(device.getName());
+			if(deviceXs==null){
+				xs.put(device.getName(), deviceXs=new ArrayList<Float>());
+				physicalIds.put(device.getName(), device.getPhysicalId());
+			}
+			for(int pos=0; pos<ev.getHistorySize(); pos++)
+				deviceXs.add(ev.getHistoricalLevelValue(pos, PLevel.Type.X));
+			deviceXs.add(penManager.pen.getLevelValue(PLevel.Type.X));
+			eventsCount+=1+ev.getHistorySize();
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void penButtonEvent(PButtonEvent ev){
+			if(penManager.isEmulationDevice(penManager.getDevice(ev.getDeviceId())))
+				return;
+			buttonEventsCount++;
+			eventsCount++;
+			notifyAll();
+		}
+
+		/**
+		Advances the clock one pen period at a time until the given count of events was fired.
+		*/
+		synchronized void waitEvents(VirtualPenClock clock, int eventsCount) throws InterruptedException{
+			for(int i=0; this.eventsCount<eventsCount; i++){
+				if(i==1000)
+					fail("fired "+this.eventsCount+" of "+eventsCount+" events");
+				clock.advanceNanos(penManager.pen.getPeriodNanos());
+				wait(5);
+			}
+		}
+	}
+
+	private File sessionFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		sessionFile=File.createTempFile("ReplayProviderTest", ".session");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		sessionFile.delete();
+	}
+
+	private static void setSmoothing(PenManager penManager, String physicalId){
+		penManager.pen.getOneEuroFilter().setParams(physicalId, PLevel.Type.X, STRONG_SMOOTHING);
+	}
+
+	public void testReplayFiresTheRecordedEvents() throws Exception {
+		VirtualPenClock recordClock=new VirtualPenClock();
+		Provider.Constructor constructor=new Provider.Constructor();
+		PenManager recordPenManager=new PenManager(new HeadlessPenOwner(constructor), recordClock);
+		Provider provider=(Provider)recordPenManager.waitForProvider(constructor);
+		setSmoothing(recordPenManager, NAMED_DEVICE_PHYSICAL_ID);
+		Collector recorded=new Collector(recordPenManager);
+		SessionRecorder recorder=new SessionRecorder(recordPenManager, new FileOutputStream(sessionFile));
+		recordPenManager.pen.addListener(recorder);
+		recordPenManager.pen.addListener(recorded); // after the recorder: the events waited for were recorded.
+		int eventsCount=0;
+		for(int i=0; i<20; i++){
+			PenDevice device=i%4==3? provider.anonymousDevice: provider.namedDevice;
+			recordPenManager.scheduleLevelEvent(device, i*10, Arrays.asList(new PLevel(PLevel.Type.X, i%2*100), new PLevel(PLevel.Type.Y, i)), false);
+			recorded.waitEvents(recordClock, ++eventsCount);
+		}
+		recordPenManager.scheduleButtonEvent(provider.namedDevice, 200, new PButton(PButton.Type.LEFT, true));
+		recorded.waitEvents(recordClock, ++eventsCount);
+		recordPenManager.pen.removeListener(recorder);
+		recorder.close();
+		assertNull(recorder.getIOException());
+		assertEquals(eventsCount, recorder.getRecordedEventsCount());
+		assertTrue("the values must be smoothed", recorded.xs.get("Named").get(1)<50);
+
+		VirtualPenClock replayClock=new VirtualPenClock();
+		ReplayProvider.Constructor replayConstructor=new ReplayProvider.Constructor(sessionFile, ReplayProvider.AS_FAST_AS_POSSIBLE);
+		HeadlessPenOwner replayPenOwner=new HeadlessPenOwner(replayConstructor);
+		replayPenOwner.setPaused(true); // the replay starts once the collector listens.
+		PenManager replayPenManager=new PenManager(replayPenOwner, replayClock);
+		ReplayProvider replayProvider=(ReplayProvider)replayPenManager.waitForProvider(replayConstructor);
+		setSmoothing(replayPenManager, NAMED_DEVICE_PHYSICAL_ID);
+		Collector replayed=new Collector(replayPenManager);
+		replayPenManager.pen.addListener(replayed);
+		replayPenOwner.setPaused(false);
+		replayed.waitEvents(replayClock, eventsCount);
+		replayProvider.waitForEnd();
+		assertNull(replayProvider.getIOException());
+		assertEquals(eventsCount, replayProvider.getReplayedEventsCount());
+		assertEquals(1, replayed.buttonEventsCount);
+
+		assertEquals(recorded.xs.keySet(), replayed.xs.keySet());
+		for(String name: recorded.xs.keySet()){
+			List<Float> recordedXs=recorded.xs.get(name), replayedXs=replayed.xs.get(name);
+			assertEquals(recordedXs.size(), replayedXs.size());
+			for(int i=0; i<recordedXs.size(); i++)
+				assertEquals("X "+i+" of "+name+" smoothed again?", recordedXs.get(i), replayedXs.get(i), 0.01f);
+		}
+		assertEquals(NAMED_DEVICE_PHYSICAL_ID, replayed.physicalIds.get("Named"));
+		assertEquals("Anonymous@"+ReplayProvider.Constructor.NAME, replayed.physicalIds.get("Anonymous"));
+	}
+}
@@ -0,0 +1,150 @@
+/* [{
+Copyright 2011 Nicolas Carranza <nicarran at gmail.com>
+
+This file is part of jpen.
+
+jpen is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License,
+or (at your option) any later version.
+
+jpen is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with jpen.  If not, see <http://www.gnu.org/licenses/>.
+}] */
+package jpen.provider.synthetic;
+
+import jpen.PButton;
+import jpen.PButtonEvent;
+import jpen.PLevelEvent;
+import jpen.PenDevice;
+import jpen.PenManager;
+import jpen.VirtualPenClock;
+import jpen.event.PenAdapter;
+import jpen.owner.HeadlessPenOwner;
+import junit.framework.TestCase;
+
+public class SyntheticProviderTest extends TestCase {
+
+	/** Counts the level events fired for the synthetic devices and the emulated on pressure button events. */
+	private static final class Counter
+		extends PenAdapter{
+		private final PenManager penManager;
+		int levelEventsCount;
+		int onPressureEventsCount;
+
+		Counter(PenManager penManager){
+			this.penManager=penManager;
+		}
+
+		@Override
+		public synchronized void penLevelEvent(PLevelEvent ev){
+			if(!penManager.isEmulationDevice(penManager.getDevice(ev.getDeviceId())))
+				levelEventsCount++;
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void penButtonEvent(PButtonEvent ev){
+			PenDevice device=penManager.getDevice(ev.getDeviceId());
+			if(penManager.isEmulationDevice(device) && ev.button.getType()==PButton.Type.ON_PRESSURE)
+				onPressureEventsCount++;
+		}
+
+		/**
+		Advances the clock one millisecond at a time until the given count of level events was fired.
+		*/
+		synchronized void waitLevelEvents(VirtualPenClock clock, long levelEventsCount) throws InterruptedException{
+			for(int i=0; this.levelEventsCount<levelEventsCount; i++){
+				if(i==1000)
+					fail("fired "+this.levelEventsCount+" of "+levelEventsCount+" level events");
+				clock.advanceMillis(1);
+				wait(5);
+			}
+		}
+	}
+
+	private VirtualPenClock clock;
+	private HeadlessPenOwner penOwner;
+	private PenManager penManager;
+	private SyntheticProvider provider;
+	private Counter counter;
+
+	private void start(SyntheticProvider.Constructor constructor){
+		clock=new VirtualPenClock();
+		penOwner=new HeadlessPenOwner(constructor);
+		penManager=new PenManager(penOwner, clock);
+		counter=new Counter(penManager);
+		penManager.pen.addListener(counter);
+		provider=(SyntheticProvider)penManager.waitForProvider(constructor);
+	}
+
+	@Override
+	protected void tearDown() {
+		if(provider!=null)
+			provider.stop();
+		if(penOwner!=null)
+			penOwner.setPaused(true);
+	}
+
+	/**
+	Advances the clock until the devices produced all their samples.
+	*/
+	private void runToEnd() throws InterruptedException {
+		Thread ticker=new Thread(){
+			@Override
+			public void run(){
+				while(!isInterrupted()){
+					clock.advanceMillis(1);
+					try{
+						Thread.sleep(1);
+					}catch(InterruptedException ex){
+						return;
+					}
+				}
+			}
+		};
+		ticker.start();
+		try{
+			provider.waitForEnd();
+		}finally{
+			ticker.interrupt();
+			ticker.join();
+		}
+	}
+
+	public void testFiredLevelEventsAreTheAcceptedOnes() throws InterruptedException {
+		SyntheticProvider.Constructor constructor=new SyntheticProvider.Constructor(2, 1000);
+		constructor.setStroke(SyntheticProvider.Stroke.LINE, 10);
+		constructor.setSamplesCount(40);
+		start(constructor);
+		runToEnd();
+		assertEquals(40, provider.getSyntheticDevice(0).getProducedLevelEventsCount());
+		assertEquals(80, provider.getAcceptedLevelEventsCount());
+		counter.waitLevelEvents(clock, provider.getAcceptedLevelEventsCount());
+		synchronized(counter){
+			assertEquals(provider.getAcceptedLevelEventsCount(), counter.levelEventsCount);
+			assertTrue("the pen emulates on pressure button events", counter.onPressureEventsCount>0);
+		}
+	}
+
+	public void testFilteredLevelEventsAreNotAccepted() throws InterruptedException {
+		SyntheticProvider.Constructor constructor=new SyntheticProvider.Constructor(1, 1000);
+		constructor.setStroke(SyntheticProvider.Stroke.PRESSURE_RAMP, 2); // the pressure stays on zero: only the first sample changes the levels.
+		constructor.setSamplesCount(10);
+		start(constructor);
+		runToEnd();
+		SyntheticProvider.SyntheticDevice device=provider.getSyntheticDevice(0);
+		assertEquals(10, device.getProducedLevelEventsCount());
+		assertEquals(1, device.getAcceptedLevelEventsCount());
+		counter.waitLevelEvents(clock, 1);
+		clock.advanceMillis(100);
+		synchronized(counter){
+			assertEquals(1, counter.levelEventsCount);
+		}
+	}
+}